@@ -0,0 +1,52 @@
+package com.dmanchester.playfop.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.apache.xmlgraphics.util.MimeConstants
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+import com.dmanchester.playfop.sinternal.PlayFopImpl
+
+/** Compares rendering a sheet of labels as one XSL-FO document with laying it
+  * out as several parts at once (`processTwirlXmlConcatenated`).
+  *
+  * The gain depends on the processors available; on one, concatenating only
+  * adds the cost of the intermediate format.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class ConcatenationBenchmark {
+
+  @Param(Array("5000"))
+  var labels: Int = _
+
+  @Param(Array("4"))
+  var parts: Int = _
+
+  private val playFop = new PlayFopImpl()
+
+  @Setup
+  def warmUp(): Unit = {
+    playFop.warmUp()
+  }
+
+  @Benchmark
+  def renderWhole(): Array[Byte] = {
+    playFop.processTwirlXml(TwirlXmlBenchmark.labelsSheet(labels), MimeConstants.MIME_PDF)
+  }
+
+  @Benchmark
+  def renderConcatenated(): Array[Byte] = {
+
+    val sheets = Seq.fill(parts)(TwirlXmlBenchmark.labelsSheet(labels / parts))
+    playFop.processTwirlXmlConcatenated(sheets, MimeConstants.MIME_PDF)
+  }
+}
@@ -0,0 +1,71 @@
+package com.dmanchester.playfop.benchmarks
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import scala.collection.JavaConverters.asScalaBufferConverter
+import scala.collection.JavaConverters.seqAsJavaListConverter
+
+import org.apache.xmlgraphics.util.MimeConstants
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OperationsPerInvocation
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+
+import com.dmanchester.playfop.sinternal.PlayFopImpl
+
+/** Measures how rendering scales with the number of requests rendering at
+  * once: each invocation renders 32 sheets, from `threads` threads sharing
+  * one `PlayFopImpl`, and is reported per sheet.
+  *
+  * Renders beyond `playfop.render-gate.max-concurrent` (by default, one per
+  * available processor) wait for others to finish, so past that point the
+  * time per sheet should level off rather than fall.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class ConcurrencyBenchmark {
+
+  @Param(Array("1", "2", "4", "8", "16"))
+  var threads: Int = _
+
+  @Param(Array("100"))
+  var labels: Int = _
+
+  private var playFop: PlayFopImpl = _
+
+  private var executor: ExecutorService = _
+
+  @Setup
+  def setUp(): Unit = {
+    playFop = new PlayFopImpl()
+    playFop.warmUp()
+    executor = Executors.newFixedThreadPool(threads)
+  }
+
+  @TearDown
+  def tearDown(): Unit = {
+    executor.shutdown()
+    playFop.shutdown()
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(32)
+  def processTwirlXml(): Long = {
+
+    val renders = Seq.fill(32)(new Callable[Array[Byte]] {
+      override def call(): Array[Byte] = playFop.processTwirlXml(LabelSheets.twirl(labels), MimeConstants.MIME_PDF)
+    })
+
+    executor.invokeAll(renders.asJava).asScala.map(_.get().length.toLong).sum
+  }
+}
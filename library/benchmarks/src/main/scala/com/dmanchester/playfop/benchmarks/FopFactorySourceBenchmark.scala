@@ -0,0 +1,79 @@
+package com.dmanchester.playfop.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.apache.fop.apps.FopFactory
+import org.apache.xmlgraphics.util.MimeConstants
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+
+import com.dmanchester.playfop.sinternal.FopFactorySource
+import com.dmanchester.playfop.sinternal.PlayFopImpl
+
+/** Compares a cold `FopFactorySource`, whose cache is empty, with a warm one,
+  * both on their own (`get...`) and in the first render of a new `PlayFopImpl`
+  * as opposed to a later one (`render...`).
+  *
+  * A cold source still benefits from Apache FOP's font cache file, if
+  * `playfop.font-cache` keeps one, and from classes the JVM has already
+  * loaded; so "cold" here is a new source in a running application, not a
+  * new application. Run with `-bm ss` (single-shot time) and several forks to
+  * see the first render of a JVM.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class FopFactorySourceBenchmark {
+
+  @Param(Array("1", "100"))
+  var labels: Int = _
+
+  private val fopFactorySource = new FopFactorySource()
+
+  private var playFop: PlayFopImpl = _
+
+  @Setup
+  def setUp(): Unit = {
+    fopFactorySource.get(None)
+    playFop = new PlayFopImpl()
+    playFop.warmUp()
+  }
+
+  @TearDown
+  def tearDown(): Unit = {
+    playFop.shutdown()
+  }
+
+  @Benchmark
+  def getCold(): FopFactory = {
+    new FopFactorySource().get(None)
+  }
+
+  @Benchmark
+  def getWarm(): FopFactory = {
+    fopFactorySource.get(None)
+  }
+
+  @Benchmark
+  def renderCold(): Array[Byte] = {
+
+    val coldPlayFop = new PlayFopImpl()
+    try {
+      coldPlayFop.processTwirlXml(LabelSheets.twirl(labels), MimeConstants.MIME_PDF)
+    } finally {
+      coldPlayFop.shutdown()
+    }
+  }
+
+  @Benchmark
+  def renderWarm(): Array[Byte] = {
+    playFop.processTwirlXml(LabelSheets.twirl(labels), MimeConstants.MIME_PDF)
+  }
+}
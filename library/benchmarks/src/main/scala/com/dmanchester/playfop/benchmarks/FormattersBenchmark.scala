@@ -0,0 +1,111 @@
+package com.dmanchester.playfop.benchmarks
+
+import java.io.StringWriter
+import java.util.concurrent.TimeUnit
+
+import scala.xml.Node
+import scala.xml.Utility
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+import com.dmanchester.playfop.api.Formatters
+
+import play.twirl.api.Xml
+import play.twirl.api.XmlFormat
+
+/** Compares the `Formatters.preserveNewlines...` methods with their earlier
+  * implementations (`FormattersBenchmark.Fold`), which split `text` with a
+  * regular expression and folded the lines into a `String` (quadratic in the
+  * length of the text), a `Seq` (`:+` per line) or nested `Xml` instances.
+  *
+  * The `twirl...` benchmarks include reading the `Xml`'s `body`, as rendering
+  * would.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class FormattersBenchmark {
+
+  @Param(Array("10", "1000", "10000"))
+  var lines: Int = _
+
+  private var text: String = _
+
+  @Setup
+  def setUp(): Unit = {
+    text = (1 to lines).map { i => s"Line $i: The quick brown fox jumps over the lazy dog & cat." }.mkString("\r\n")
+  }
+
+  @Benchmark
+  def stringFold(): String = FormattersBenchmark.Fold.preserveNewlinesForStringXml(text)
+
+  @Benchmark
+  def string(): String = Formatters.preserveNewlinesForStringXml(text)
+
+  @Benchmark
+  def stringToWriter(): StringWriter = Formatters.preserveNewlinesForStringXml(text, new StringWriter())
+
+  @Benchmark
+  def scalaXmlFold(): Seq[Node] = FormattersBenchmark.Fold.preserveNewlinesForScalaXml(text)
+
+  @Benchmark
+  def scalaXml(): Seq[Node] = Formatters.preserveNewlinesForScalaXml(text)
+
+  @Benchmark
+  def twirlFold(): String = FormattersBenchmark.Fold.preserveNewlinesForTwirlXml(text).body
+
+  @Benchmark
+  def twirl(): String = Formatters.preserveNewlinesForTwirlXml(text).body
+}
+
+object FormattersBenchmark {
+
+  /** The `Formatters.preserveNewlines...` methods as they were.
+    */
+  object Fold {
+
+    private val NBSP = "\u00A0"  // non-breaking space
+
+    def preserveNewlinesForTwirlXml(text: String): Xml = {
+
+      preserveNewlines(text, XmlFormat.empty, { (foBlocks: Xml, blockValue) =>
+
+        XmlFormat.fill(
+            foBlocks ::
+            XmlFormat.raw("<fo:block>") ::
+            XmlFormat.escape(blockValue) ::
+            XmlFormat.raw("</fo:block>") :: Nil)
+      })
+    }
+
+    def preserveNewlinesForScalaXml(text: String): Seq[Node] = {
+
+      preserveNewlines(text, Seq.empty[Node], { (foBlocks: Seq[Node], blockValue) =>
+
+        foBlocks :+ <fo:block>{blockValue}</fo:block>
+      })
+    }
+
+    def preserveNewlinesForStringXml(text: String): String = {
+
+      preserveNewlines(text, "" /* empty string */, { (foBlocks: String, blockValue) =>
+
+        foBlocks + "<fo:block>" + Utility.escape(blockValue) + "</fo:block>"
+      })
+    }
+
+    private def preserveNewlines[T](text: String, emptyFOBlocks: T, appendFOBlock: ((T, String) => T)): T = {
+
+      text.split("\r\n|\n").foldLeft(emptyFOBlocks) { (foBlocks, paragraph) =>
+        appendFOBlock(foBlocks, if (paragraph.isEmpty()) NBSP else paragraph)
+      }
+    }
+  }
+}
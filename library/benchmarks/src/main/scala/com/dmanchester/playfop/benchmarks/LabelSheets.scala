@@ -0,0 +1,149 @@
+package com.dmanchester.playfop.benchmarks
+
+import scala.xml.Elem
+
+import play.twirl.api.Xml
+import play.twirl.api.XmlFormat
+
+/** Sheets of labels, in each of the forms PlayFOP accepts XSL-FO in, for
+  * benchmarks of the rendering hot path.
+  *
+  * The labels mirror the sample applications' `Label` model and
+  * `labelFragment` template: a bordered block container holding a two-cell
+  * table, whose second cell holds the label's text. Label `i` of any sheet is
+  * the same in every form, so the forms differ only in how the XSL-FO reaches
+  * Apache FOP.
+  */
+object LabelSheets {
+
+  /** A label, as in the sample applications' `models.Label`.
+    */
+  case class Label(text: String, fontFamily: String, fontSizeInPoints: Int, imageName: Option[String])
+
+  /** The `i`th label of a sheet. Font sizes and text lengths vary, so that
+    * lines break differently from one label to the next.
+    */
+  def label(i: Int): Label = {
+    Label(s"Label $i: The quick brown fox jumps over the lazy dog & cat." + " Again." * (i % 4), "Helvetica",
+        8 + i % 5, None)
+  }
+
+  /** A sheet of `labels` labels, as a Twirl template would produce it: its
+    * fragments, not yet concatenated.
+    */
+  def twirl(labels: Int): Xml = {
+
+    XmlFormat.fill(List(
+      XmlFormat.raw(Header),
+      XmlFormat.fill((1 to labels).map { i => twirlLabel(label(i)) }.toList),
+      XmlFormat.raw(Footer)
+    ))
+  }
+
+  /** A sheet of `labels` labels, as a scala-xml `Elem`.
+    */
+  def scalaXml(labels: Int): Elem = {
+
+    <fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
+      <fo:layout-master-set>
+        <fo:simple-page-master master-name="sheet" page-width="8.5in" page-height="11in" margin="0.5in">
+          <fo:region-body/>
+        </fo:simple-page-master>
+      </fo:layout-master-set>
+      <fo:page-sequence master-reference="sheet">
+        <fo:flow flow-name="xsl-region-body">
+          {(1 to labels).map { i => scalaXmlLabel(label(i)) }}
+        </fo:flow>
+      </fo:page-sequence>
+    </fo:root>
+  }
+
+  /** A sheet of `labels` labels, as a `String`.
+    */
+  def string(labels: Int): String = {
+
+    val builder = new java.lang.StringBuilder(Header.length + Footer.length + labels * 640)
+    builder.append(Header)
+    (1 to labels).foreach { i => appendLabel(label(i), builder) }
+    builder.append(Footer).toString()
+  }
+
+  private val Header =
+    """<fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
+      |  <fo:layout-master-set>
+      |    <fo:simple-page-master master-name="sheet" page-width="8.5in" page-height="11in" margin="0.5in">
+      |      <fo:region-body/>
+      |    </fo:simple-page-master>
+      |  </fo:layout-master-set>
+      |  <fo:page-sequence master-reference="sheet">
+      |    <fo:flow flow-name="xsl-region-body">
+      |""".stripMargin
+
+  private val Footer =
+    """    </fo:flow>
+      |  </fo:page-sequence>
+      |</fo:root>""".stripMargin
+
+  private def twirlLabel(label: Label): Xml = {
+
+    XmlFormat.fill(List(
+      XmlFormat.raw(openLabel(label)),
+      XmlFormat.escape(label.text),
+      XmlFormat.raw(CloseLabel)
+    ))
+  }
+
+  private def scalaXmlLabel(label: Label): Elem = {
+
+    <fo:block-container width="2.5in" height="1in" font-family={label.fontFamily}
+        font-size={s"${label.fontSizeInPoints}pt"} overflow="hidden" border="black solid 1pt">
+      <fo:table>
+        <fo:table-body>
+          <fo:table-row>
+            <fo:table-cell width="1in" padding="0.1in">
+              <fo:block/>
+            </fo:table-cell>
+            <fo:table-cell padding-top="0.1in">
+              <fo:block>{label.text}</fo:block>
+            </fo:table-cell>
+          </fo:table-row>
+        </fo:table-body>
+      </fo:table>
+    </fo:block-container>
+  }
+
+  private def appendLabel(label: Label, builder: java.lang.StringBuilder): Unit = {
+
+    builder.append(openLabel(label))
+    label.text.foreach {
+      case '<' => builder.append("&lt;")
+      case '>' => builder.append("&gt;")
+      case '&' => builder.append("&amp;")
+      case c => builder.append(c)
+    }
+    builder.append(CloseLabel)
+  }
+
+  private def openLabel(label: Label): String = {
+
+    s"""      <fo:block-container width="2.5in" height="1in" font-family="${label.fontFamily}"
+       |          font-size="${label.fontSizeInPoints}pt" overflow="hidden" border="black solid 1pt">
+       |        <fo:table>
+       |          <fo:table-body>
+       |            <fo:table-row>
+       |              <fo:table-cell width="1in" padding="0.1in">
+       |                <fo:block/>
+       |              </fo:table-cell>
+       |              <fo:table-cell padding-top="0.1in">
+       |                <fo:block>""".stripMargin
+  }
+
+  private val CloseLabel =
+    """</fo:block>
+      |              </fo:table-cell>
+      |            </fo:table-row>
+      |          </fo:table-body>
+      |        </fo:table>
+      |      </fo:block-container>
+      |""".stripMargin
+}
@@ -0,0 +1,62 @@
+package com.dmanchester.playfop.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.apache.xmlgraphics.util.MimeConstants
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+import com.dmanchester.playfop.api.LaidOutDocument
+import com.dmanchester.playfop.sinternal.PlayFopImpl
+
+/** Compares producing a document as both PDF and PNG by processing its
+  * XSL-FO twice with producing both from one layout (`layOutTwirlXml` and
+  * `renderLaidOut`), and measures rendering an already laid-out document
+  * alone, as when the layout is cached.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class LayoutOnceBenchmark {
+
+  @Param(Array("100", "1000"))
+  var labels: Int = _
+
+  private val playFop = new PlayFopImpl()
+
+  private var laidOut: LaidOutDocument = _
+
+  @Setup
+  def setUp(): Unit = {
+    playFop.warmUp()
+    laidOut = playFop.layOutTwirlXml(TwirlXmlBenchmark.labelsSheet(labels), MimeConstants.MIME_PDF)
+  }
+
+  @Benchmark
+  def processTwice(): Int = {
+
+    val xslfo = TwirlXmlBenchmark.labelsSheet(labels)
+    playFop.processTwirlXml(xslfo, MimeConstants.MIME_PDF).length +
+      playFop.processTwirlXml(xslfo, MimeConstants.MIME_PNG).length
+  }
+
+  @Benchmark
+  def layOutOnce(): Int = {
+
+    val document = playFop.layOutTwirlXml(TwirlXmlBenchmark.labelsSheet(labels), MimeConstants.MIME_PDF)
+    playFop.renderLaidOut(document, MimeConstants.MIME_PDF).length +
+      playFop.renderLaidOut(document, MimeConstants.MIME_PNG).length
+  }
+
+  @Benchmark
+  def renderCachedLayout(): Int = {
+    playFop.renderLaidOut(laidOut, MimeConstants.MIME_PDF).length +
+      playFop.renderLaidOut(laidOut, MimeConstants.MIME_PNG).length
+  }
+}
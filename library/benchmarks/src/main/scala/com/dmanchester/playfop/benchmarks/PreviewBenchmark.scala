@@ -0,0 +1,45 @@
+package com.dmanchester.playfop.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.apache.xmlgraphics.util.MimeConstants
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+import com.dmanchester.playfop.sinternal.PlayFopImpl
+
+/** Compares rendering a sheet of labels to PNG (which shows only its first
+  * page) with previewing its first page (`previewTwirlXml`), whose layout
+  * ends after that page.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class PreviewBenchmark {
+
+  @Param(Array("100", "5000"))
+  var labels: Int = _
+
+  private val playFop = new PlayFopImpl()
+
+  @Setup
+  def warmUp(): Unit = {
+    playFop.warmUp()
+  }
+
+  @Benchmark
+  def processWhole(): Array[Byte] = {
+    playFop.processTwirlXml(TwirlXmlBenchmark.labelsSheet(labels), MimeConstants.MIME_PNG)
+  }
+
+  @Benchmark
+  def previewFirstPage(): Array[Byte] = {
+    playFop.previewTwirlXml(TwirlXmlBenchmark.labelsSheet(labels), MimeConstants.MIME_PNG).head
+  }
+}
@@ -0,0 +1,64 @@
+package com.dmanchester.playfop.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+
+import com.dmanchester.playfop.sinternal.PlayFopImpl
+
+/** Benchmarks the rendering hot path, `processTwirlXml`, `processScalaXml`
+  * and `processStringXml`, across sheet sizes and output formats, with a warm
+  * `FopFactorySource` (see `[[FopFactorySourceBenchmark]]` for a cold one).
+  *
+  * Each benchmark builds its sheet (see `[[LabelSheets]]`) anew, as an
+  * application would per request, and renders it to a byte array. The larger
+  * sizes take seconds (and, to PNG, minutes) per invocation; to run only some,
+  * pass, e.g., `-p labels=1,100`.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class RenderingBenchmark {
+
+  @Param(Array("1", "10", "100", "1000", "10000"))
+  var labels: Int = _
+
+  @Param(Array("application/pdf", "image/png"))
+  var outputFormat: String = _
+
+  private var playFop: PlayFopImpl = _
+
+  @Setup
+  def setUp(): Unit = {
+    playFop = new PlayFopImpl()
+    playFop.warmUp()
+  }
+
+  @TearDown
+  def tearDown(): Unit = {
+    playFop.shutdown()
+  }
+
+  @Benchmark
+  def processTwirlXml(): Array[Byte] = {
+    playFop.processTwirlXml(LabelSheets.twirl(labels), outputFormat)
+  }
+
+  @Benchmark
+  def processScalaXml(): Array[Byte] = {
+    playFop.processScalaXml(LabelSheets.scalaXml(labels), outputFormat)
+  }
+
+  @Benchmark
+  def processStringXml(): Array[Byte] = {
+    playFop.processStringXml(LabelSheets.string(labels), outputFormat)
+  }
+}
@@ -0,0 +1,133 @@
+package com.dmanchester.playfop.benchmarks
+
+import java.io.OutputStream
+import java.io.StringReader
+import java.io.StringWriter
+import java.util.concurrent.TimeUnit
+
+import scala.xml.Elem
+import scala.xml.XML
+
+import org.apache.xmlgraphics.util.MimeConstants
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.xml.sax.helpers.DefaultHandler
+
+import com.dmanchester.playfop.sinternal.PlayFopImpl
+import com.dmanchester.playfop.sinternal.SaxEmitter
+
+import javax.xml.transform.TransformerFactory
+import javax.xml.transform.sax.SAXResult
+import javax.xml.transform.stream.StreamSource
+
+/** Compares two ways of handing a scala-xml `Node` of XSL-FO to Apache FOP:
+  * serializing it to a `String` and parsing that (as `processScalaXml` once
+  * did, and as `processStringXml` still must), and reporting the tree to FOP
+  * as SAX events directly.
+  *
+  * The `feed...` benchmarks isolate the hand-off, reporting the events to a
+  * handler that just counts characters; the `render...` benchmarks render
+  * PDFs end to end.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class ScalaXmlBenchmark {
+
+  @Param(Array("100", "5000"))
+  var blocks: Int = _
+
+  private var xslfo: Elem = _
+
+  private var playFop: PlayFopImpl = _
+
+  @Setup
+  def setUp(): Unit = {
+    xslfo = ScalaXmlBenchmark.document(blocks)
+    playFop = new PlayFopImpl()
+    playFop.warmUp()
+  }
+
+  @TearDown
+  def tearDown(): Unit = {
+    playFop.shutdown()
+  }
+
+  @Benchmark
+  def feedViaString(): Long = {
+
+    val handler = new ScalaXmlBenchmark.CountingHandler()
+    val source = new StreamSource(new StringReader(ScalaXmlBenchmark.serialize(xslfo)))
+    TransformerFactory.newInstance().newTransformer().transform(source, new SAXResult(handler))
+    handler.count
+  }
+
+  @Benchmark
+  def feedDirect(): Long = {
+
+    val handler = new ScalaXmlBenchmark.CountingHandler()
+    SaxEmitter.emit(xslfo, handler)
+    handler.count
+  }
+
+  @Benchmark
+  def renderViaString(): Unit = {
+    playFop.processStringXmlToStream(ScalaXmlBenchmark.serialize(xslfo), MimeConstants.MIME_PDF,
+        ScalaXmlBenchmark.DiscardingOutputStream)
+  }
+
+  @Benchmark
+  def renderDirect(): Unit = {
+    playFop.processScalaXmlToStream(xslfo, MimeConstants.MIME_PDF, ScalaXmlBenchmark.DiscardingOutputStream)
+  }
+}
+
+object ScalaXmlBenchmark {
+
+  /** An XSL-FO document of `blocks` blocks of text.
+    */
+  def document(blocks: Int): Elem = {
+
+    <fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
+      <fo:layout-master-set>
+        <fo:simple-page-master master-name="page" page-width="8.5in" page-height="11in" margin="1in">
+          <fo:region-body/>
+        </fo:simple-page-master>
+      </fo:layout-master-set>
+      <fo:page-sequence master-reference="page">
+        <fo:flow flow-name="xsl-region-body">
+          {(1 to blocks).map { i =>
+            <fo:block font-size="10pt" space-after="4pt">Block {i}: The quick brown fox jumps over the lazy dog.</fo:block>
+          }}
+        </fo:flow>
+      </fo:page-sequence>
+    </fo:root>
+  }
+
+  def serialize(xslfo: Elem): String = {
+    val stringWriter = new StringWriter()
+    XML.write(stringWriter, xslfo, "utf-8", true /* xmlDecl */, null /* doctype */)
+    stringWriter.toString()
+  }
+
+  class CountingHandler extends DefaultHandler {
+
+    var count: Long = 0
+
+    override def characters(ch: Array[Char], start: Int, length: Int): Unit = {
+      count += length
+    }
+  }
+
+  object DiscardingOutputStream extends OutputStream {
+    override def write(b: Int): Unit = {}
+    override def write(b: Array[Byte], off: Int, len: Int): Unit = {}
+  }
+}
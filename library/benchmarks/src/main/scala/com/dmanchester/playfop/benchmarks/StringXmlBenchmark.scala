@@ -0,0 +1,77 @@
+package com.dmanchester.playfop.benchmarks
+
+import java.io.StringReader
+import java.util.concurrent.TimeUnit
+
+import org.apache.xmlgraphics.util.MimeConstants
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.xml.sax.InputSource
+
+import com.dmanchester.playfop.sinternal.PlayFopImpl
+import com.dmanchester.playfop.sinternal.SaxParsing
+
+import javax.xml.transform.TransformerFactory
+import javax.xml.transform.sax.SAXResult
+import javax.xml.transform.stream.StreamSource
+
+/** Compares two ways of handing a `String` of XSL-FO to Apache FOP: an
+  * identity transform from a `TransformerFactory` looked up per document (as
+  * `processStringXml` once did), and a SAX parser reused per thread.
+  *
+  * The `feed...` benchmarks isolate the hand-off, reporting the events to a
+  * handler that just counts characters; `render` renders PDFs end to end.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class StringXmlBenchmark {
+
+  @Param(Array("10", "5000"))
+  var blocks: Int = _
+
+  private var xslfo: String = _
+
+  private var playFop: PlayFopImpl = _
+
+  @Setup
+  def setUp(): Unit = {
+    xslfo = ScalaXmlBenchmark.serialize(ScalaXmlBenchmark.document(blocks))
+    playFop = new PlayFopImpl()
+    playFop.warmUp()
+  }
+
+  @TearDown
+  def tearDown(): Unit = {
+    playFop.shutdown()
+  }
+
+  @Benchmark
+  def feedViaTransformer(): Long = {
+
+    val handler = new ScalaXmlBenchmark.CountingHandler()
+    val source = new StreamSource(new StringReader(xslfo))
+    TransformerFactory.newInstance().newTransformer().transform(source, new SAXResult(handler))
+    handler.count
+  }
+
+  @Benchmark
+  def feedViaPooledParser(): Long = {
+
+    val handler = new ScalaXmlBenchmark.CountingHandler()
+    SaxParsing.parse(new InputSource(new StringReader(xslfo)), handler)
+    handler.count
+  }
+
+  @Benchmark
+  def render(): Unit = {
+    playFop.processStringXmlToStream(xslfo, MimeConstants.MIME_PDF, ScalaXmlBenchmark.DiscardingOutputStream)
+  }
+}
@@ -0,0 +1,88 @@
+package com.dmanchester.playfop.benchmarks
+
+import java.io.StringReader
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import org.xml.sax.InputSource
+
+import com.dmanchester.playfop.jinternal.TwirlXmlReader
+import com.dmanchester.playfop.sinternal.SaxParsing
+
+import play.twirl.api.Xml
+import play.twirl.api.XmlFormat
+
+/** Compares two ways of parsing the output of a Twirl template: concatenating
+  * its fragments into one `String` (`Xml.body`) and parsing that, as
+  * `processTwirlXml` once did, and reading the fragments in turn through a
+  * `TwirlXmlReader`.
+  *
+  * The template output is built anew for each invocation, since `Xml.body`
+  * is computed only once per instance. Run with `-prof gc` to compare
+  * allocation.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class TwirlXmlBenchmark {
+
+  @Param(Array("100", "5000"))
+  var labels: Int = _
+
+  @Benchmark
+  def feedViaBody(): Long = {
+
+    val handler = new ScalaXmlBenchmark.CountingHandler()
+    SaxParsing.parse(new InputSource(new StringReader(TwirlXmlBenchmark.labelsSheet(labels).body)), handler)
+    handler.count
+  }
+
+  @Benchmark
+  def feedViaReader(): Long = {
+
+    val handler = new ScalaXmlBenchmark.CountingHandler()
+    SaxParsing.parse(new InputSource(new TwirlXmlReader(TwirlXmlBenchmark.labelsSheet(labels))), handler)
+    handler.count
+  }
+}
+
+object TwirlXmlBenchmark {
+
+  /** Mimics a compiled Twirl template of `labels` labels, each from a nested
+    * template call, as the sample applications' `labelsSheet` does.
+    */
+  def labelsSheet(labels: Int): Xml = {
+
+    XmlFormat.fill(List(
+      XmlFormat.raw(
+        """<fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
+          |  <fo:layout-master-set>
+          |    <fo:simple-page-master master-name="page" page-width="8.5in" page-height="11in" margin="1in">
+          |      <fo:region-body/>
+          |    </fo:simple-page-master>
+          |  </fo:layout-master-set>
+          |  <fo:page-sequence master-reference="page">
+          |    <fo:flow flow-name="xsl-region-body">""".stripMargin),
+      XmlFormat.fill((1 to labels).map(label).toList),
+      XmlFormat.raw(
+        """    </fo:flow>
+          |  </fo:page-sequence>
+          |</fo:root>""".stripMargin)
+    ))
+  }
+
+  private def label(i: Int): Xml = {
+
+    XmlFormat.fill(List(
+      XmlFormat.raw("""<fo:block font-size="10pt" space-after="4pt">"""),
+      XmlFormat.escape(s"Label $i: The quick brown fox jumps over the lazy dog & cat."),
+      XmlFormat.raw("</fo:block>\n")
+    ))
+  }
+}
@@ -0,0 +1,44 @@
+package com.dmanchester.playfop.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+
+import com.dmanchester.playfop.api.Units
+
+/** Compares formatting a sheet's worth of dimensions (30 labels' width,
+  * height and padding) with `String.format`, as `Units` once did, and with
+  * `Units.format` and `Units.formatInto`.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class UnitsBenchmark {
+
+  private val units = new Units("in", 3)
+
+  private val dimensions = (1 to 30).flatMap { i => Seq(2.625, 1.0 + i / 64.0, 0.0625 * (i % 3)) }.toArray
+
+  @Benchmark
+  def stringFormat(): Int = {
+    dimensions.map { dimension => "%.3fin".format(dimension) }.map(_.length).sum
+  }
+
+  @Benchmark
+  def format(): Int = {
+    dimensions.map(units.format).map(_.length).sum
+  }
+
+  @Benchmark
+  def formatInto(): Int = {
+
+    val builder = new java.lang.StringBuilder()
+    dimensions.foreach { dimension => units.formatInto(dimension, builder).append(' ') }
+    builder.length()
+  }
+}
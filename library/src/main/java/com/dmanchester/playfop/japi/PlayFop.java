@@ -1,13 +1,36 @@
 package com.dmanchester.playfop.japi;
 
 import java.io.OutputStream;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
 import org.apache.fop.apps.Fop;
 
+import com.dmanchester.playfop.api.BatchSink;
+import com.dmanchester.playfop.api.BatchStats;
+import com.dmanchester.playfop.api.FopFactoryCacheStats;
+import com.dmanchester.playfop.api.ImageCacheStats;
+import com.dmanchester.playfop.api.LaidOutDocument;
+import com.dmanchester.playfop.api.MetricsSnapshot;
+import com.dmanchester.playfop.api.OutputCacheStats;
+import com.dmanchester.playfop.api.RenderResult;
+import com.dmanchester.playfop.api.ResourceCacheStats;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
 import play.twirl.api.Xml;
 
 /**
  * The primary entry point into PlayFOP for Java applications.
+ * <p>
+ * All <code>process...</code> methods are subject to admission control (see
+ * <code>playfop.render-gate</code> in PlayFOP's <code>reference.conf</code>).
+ * When too many renders are in progress or waiting, they throw (or fail with)
+ * a {@link com.dmanchester.playfop.api.RenderRejectedException}.
  */
 public interface PlayFop {
 
@@ -55,6 +78,824 @@ public interface PlayFop {
      */
     public byte[] processStringXml(String xslfo, String outputFormat, ProcessOptions processOptions);
 
+    /**
+     * Processes XSL-FO generated from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template, writing the output to <code>output</code> as it is
+     * generated (rather than buffering it in memory). Generates output in the
+     * specified format.
+     * <p>
+     * <code>output</code> is flushed, but not closed, once processing
+     * completes.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param output the <code>OutputStream</code> to which to write the output
+     */
+    public void processTwirlXml(Xml xslfo, String outputFormat, OutputStream output);
+
+    /**
+     * Processes XSL-FO generated from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template, applying the processing options and writing the output to
+     * <code>output</code> as it is generated (rather than buffering it in
+     * memory). Generates output in the specified format.
+     * <p>
+     * <code>output</code> is flushed, but not closed, once processing
+     * completes.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param output the <code>OutputStream</code> to which to write the output
+     * @param processOptions the processing options
+     */
+    public void processTwirlXml(Xml xslfo, String outputFormat, OutputStream output, ProcessOptions processOptions);
+
+    /**
+     * Processes XSL-FO provided as a <code>String</code> of XML, writing the
+     * output to <code>output</code> as it is generated (rather than buffering
+     * it in memory). Generates output in the specified format.
+     * <p>
+     * <code>output</code> is flushed, but not closed, once processing
+     * completes.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param output the <code>OutputStream</code> to which to write the output
+     */
+    public void processStringXml(String xslfo, String outputFormat, OutputStream output);
+
+    /**
+     * Processes XSL-FO provided as a <code>String</code> of XML, applying the
+     * processing options and writing the output to <code>output</code> as it
+     * is generated (rather than buffering it in memory). Generates output in
+     * the specified format.
+     * <p>
+     * <code>output</code> is flushed, but not closed, once processing
+     * completes.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param output the <code>OutputStream</code> to which to write the output
+     * @param processOptions the processing options
+     */
+    public void processStringXml(String xslfo, String outputFormat, OutputStream output, ProcessOptions processOptions);
+
+    /**
+     * Returns an Akka Streams <code>Source</code> that, when materialized,
+     * processes XSL-FO generated from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template and emits the output as it is generated. Suitable for
+     * passing to <code>ok().chunked(...)</code>.
+     * <p>
+     * Processing runs on PlayFOP's rendering thread pool (see
+     * <code>playfop.render-pool</code> in PlayFOP's <code>reference.conf</code>).
+     * If processing fails, or PlayFOP is saturated, so does the
+     * <code>Source</code>.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @return a <code>Source</code> of the Apache FOP output
+     */
+    public Source<ByteString, NotUsed> processTwirlXmlAsSource(Xml xslfo, String outputFormat);
+
+    /**
+     * Returns an Akka Streams <code>Source</code> that, when materialized,
+     * processes XSL-FO generated from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template, applying the processing options, and emits the output as
+     * it is generated. Suitable for passing to <code>ok().chunked(...)</code>.
+     * <p>
+     * Processing runs on PlayFOP's rendering thread pool (see
+     * <code>playfop.render-pool</code> in PlayFOP's <code>reference.conf</code>).
+     * If processing fails, or PlayFOP is saturated, so does the
+     * <code>Source</code>.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param processOptions the processing options
+     * @return a <code>Source</code> of the Apache FOP output
+     */
+    public Source<ByteString, NotUsed> processTwirlXmlAsSource(Xml xslfo, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Returns an Akka Streams <code>Source</code> that, when materialized,
+     * processes XSL-FO provided as a <code>String</code> of XML and emits the
+     * output as it is generated. Suitable for passing to
+     * <code>ok().chunked(...)</code>.
+     * <p>
+     * Processing runs on PlayFOP's rendering thread pool (see
+     * <code>playfop.render-pool</code> in PlayFOP's <code>reference.conf</code>).
+     * If processing fails, or PlayFOP is saturated, so does the
+     * <code>Source</code>.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @return a <code>Source</code> of the Apache FOP output
+     */
+    public Source<ByteString, NotUsed> processStringXmlAsSource(String xslfo, String outputFormat);
+
+    /**
+     * Returns an Akka Streams <code>Source</code> that, when materialized,
+     * processes XSL-FO provided as a <code>String</code> of XML, applying the
+     * processing options, and emits the output as it is generated. Suitable
+     * for passing to <code>ok().chunked(...)</code>.
+     * <p>
+     * Processing runs on PlayFOP's rendering thread pool (see
+     * <code>playfop.render-pool</code> in PlayFOP's <code>reference.conf</code>).
+     * If processing fails, or PlayFOP is saturated, so does the
+     * <code>Source</code>.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param processOptions the processing options
+     * @return a <code>Source</code> of the Apache FOP output
+     */
+    public Source<ByteString, NotUsed> processStringXmlAsSource(String xslfo, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Asynchronously processes XSL-FO generated from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template. Generates output in the specified format.
+     * <p>
+     * Processing runs on PlayFOP's rendering thread pool (see
+     * <code>playfop.render-pool</code> in PlayFOP's <code>reference.conf</code>),
+     * not on the calling thread.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @return a <code>CompletionStage</code> of the Apache FOP output. If
+     *         PlayFOP is saturated, the <code>CompletionStage</code> completes
+     *         exceptionally with a
+     *         {@link com.dmanchester.playfop.api.RenderRejectedException}.
+     */
+    public CompletionStage<byte[]> processTwirlXmlAsync(Xml xslfo, String outputFormat);
+
+    /**
+     * Asynchronously processes XSL-FO generated from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template, applying the processing options. Generates output in the
+     * specified format.
+     * <p>
+     * Processing runs on PlayFOP's rendering thread pool (see
+     * <code>playfop.render-pool</code> in PlayFOP's <code>reference.conf</code>),
+     * not on the calling thread.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param processOptions the processing options
+     * @return a <code>CompletionStage</code> of the Apache FOP output. If
+     *         PlayFOP is saturated, the <code>CompletionStage</code> completes
+     *         exceptionally with a
+     *         {@link com.dmanchester.playfop.api.RenderRejectedException}.
+     */
+    public CompletionStage<byte[]> processTwirlXmlAsync(Xml xslfo, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Asynchronously processes XSL-FO provided as a <code>String</code> of
+     * XML. Generates output in the specified format.
+     * <p>
+     * Processing runs on PlayFOP's rendering thread pool (see
+     * <code>playfop.render-pool</code> in PlayFOP's <code>reference.conf</code>),
+     * not on the calling thread.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @return a <code>CompletionStage</code> of the Apache FOP output. If
+     *         PlayFOP is saturated, the <code>CompletionStage</code> completes
+     *         exceptionally with a
+     *         {@link com.dmanchester.playfop.api.RenderRejectedException}.
+     */
+    public CompletionStage<byte[]> processStringXmlAsync(String xslfo, String outputFormat);
+
+    /**
+     * Asynchronously processes XSL-FO provided as a <code>String</code> of
+     * XML, applying the processing options. Generates output in the specified
+     * format.
+     * <p>
+     * Processing runs on PlayFOP's rendering thread pool (see
+     * <code>playfop.render-pool</code> in PlayFOP's <code>reference.conf</code>),
+     * not on the calling thread.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param processOptions the processing options
+     * @return a <code>CompletionStage</code> of the Apache FOP output. If
+     *         PlayFOP is saturated, the <code>CompletionStage</code> completes
+     *         exceptionally with a
+     *         {@link com.dmanchester.playfop.api.RenderRejectedException}.
+     */
+    public CompletionStage<byte[]> processStringXmlAsync(String xslfo, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Processes XSL-FO provided as a Twirl <code>Xml</code> object, returning the output along
+     * with its page count and how long each phase of processing took (parsing,
+     * building Apache FOP's tree of formatting objects, layout, and output),
+     * to find where the time for slow documents goes. Generates output in the
+     * specified format.
+     * <p>
+     * Timing the phases adds a small cost to processing. The output cache is
+     * not used.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @return the Apache FOP output, page count, and timings
+     */
+    public RenderResult processTwirlXmlAsResult(Xml xslfo, String outputFormat);
+
+    /**
+     * Processes XSL-FO provided as a Twirl <code>Xml</code> object, applying the processing options, returning the output along
+     * with its page count and how long each phase of processing took (parsing,
+     * building Apache FOP's tree of formatting objects, layout, and output),
+     * to find where the time for slow documents goes. Generates output in the
+     * specified format.
+     * <p>
+     * Timing the phases adds a small cost to processing. The output cache is
+     * not used.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param processOptions the processing options
+     * @return the Apache FOP output, page count, and timings
+     */
+    public RenderResult processTwirlXmlAsResult(Xml xslfo, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Processes XSL-FO provided as a <code>String</code> of XML, returning the output along
+     * with its page count and how long each phase of processing took (parsing,
+     * building Apache FOP's tree of formatting objects, layout, and output),
+     * to find where the time for slow documents goes. Generates output in the
+     * specified format.
+     * <p>
+     * Timing the phases adds a small cost to processing. The output cache is
+     * not used.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @return the Apache FOP output, page count, and timings
+     */
+    public RenderResult processStringXmlAsResult(String xslfo, String outputFormat);
+
+    /**
+     * Processes XSL-FO provided as a <code>String</code> of XML, applying the processing options, returning the output along
+     * with its page count and how long each phase of processing took (parsing,
+     * building Apache FOP's tree of formatting objects, layout, and output),
+     * to find where the time for slow documents goes. Generates output in the
+     * specified format.
+     * <p>
+     * Timing the phases adds a small cost to processing. The output cache is
+     * not used.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param processOptions the processing options
+     * @return the Apache FOP output, page count, and timings
+     */
+    public RenderResult processStringXmlAsResult(String xslfo, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Processes XSL-FO provided as a JAXP <code>Source</code> (for example, a
+     * <code>DOMSource</code> holding a DOM tree, a <code>SAXSource</code>
+     * whose <code>XMLReader</code> generates SAX events, or a
+     * <code>StAXSource</code>). The XSL-FO is fed to Apache FOP directly,
+     * rather than first being serialized to a <code>String</code>. Generates
+     * output in the specified format.
+     * <p>
+     * A DOM tree may be built with or without namespace awareness; comments in
+     * a <code>DOMSource</code> or <code>StAXSource</code> are ignored. A
+     * <code>Source</code> can typically be read only once. The output cache
+     * is not used.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @return the Apache FOP output
+     */
+    public byte[] processXmlSource(javax.xml.transform.Source xslfo, String outputFormat);
+
+    /**
+     * Processes XSL-FO provided as a JAXP <code>Source</code>, applying the
+     * processing options. The XSL-FO is fed to Apache FOP directly, rather
+     * than first being serialized to a <code>String</code>. Generates output
+     * in the specified format.
+     * <p>
+     * A DOM tree may be built with or without namespace awareness; comments in
+     * a <code>DOMSource</code> or <code>StAXSource</code> are ignored. A
+     * <code>Source</code> can typically be read only once. The output cache
+     * is not used.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param processOptions the processing options
+     * @return the Apache FOP output
+     */
+    public byte[] processXmlSource(javax.xml.transform.Source xslfo, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Processes XSL-FO provided as a JAXP <code>Source</code>, writing the
+     * output to <code>output</code> as it is generated (rather than buffering
+     * it in memory). The XSL-FO is fed to Apache FOP directly, rather than
+     * first being serialized to a <code>String</code>. Generates output in the
+     * specified format.
+     * <p>
+     * See {@link #processXmlSource(javax.xml.transform.Source, String)} for
+     * the kinds of <code>Source</code> supported. <code>output</code> is
+     * flushed, but not closed, once processing completes.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param output the <code>OutputStream</code> to which to write the output
+     */
+    public void processXmlSource(javax.xml.transform.Source xslfo, String outputFormat, OutputStream output);
+
+    /**
+     * Processes XSL-FO provided as a JAXP <code>Source</code>, applying the
+     * processing options and writing the output to <code>output</code> as it
+     * is generated (rather than buffering it in memory). The XSL-FO is fed to
+     * Apache FOP directly, rather than first being serialized to a
+     * <code>String</code>. Generates output in the specified format.
+     * <p>
+     * See {@link #processXmlSource(javax.xml.transform.Source, String)} for
+     * the kinds of <code>Source</code> supported. <code>output</code> is
+     * flushed, but not closed, once processing completes.
+     *
+     * @param xslfo the XSL-FO to process
+     * @param outputFormat the format to generate
+     * @param output the <code>OutputStream</code> to which to write the output
+     * @param processOptions the processing options
+     */
+    public void processXmlSource(javax.xml.transform.Source xslfo, String outputFormat, OutputStream output, ProcessOptions processOptions);
+
+    /**
+     * Processes XSL-FO generated by applying an XSLT stylesheet to XML data.
+     * The stylesheet's output is fed to Apache FOP as it is generated, rather
+     * than first being serialized. Generates output in the specified format.
+     * <p>
+     * Stylesheets are compiled once and cached (see
+     * <code>playfop.templates-cache</code> in PlayFOP's
+     * <code>reference.conf</code>). Relative URIs in a stylesheet (for
+     * example, in <code>xsl:include</code>) are resolved against its URL.
+     *
+     * @param data the XML data to transform
+     * @param stylesheet the URL of the XSLT stylesheet (for example, from
+     *        <code>getClass().getResource(...)</code>)
+     * @param outputFormat the format to generate
+     * @return the Apache FOP output
+     */
+    public byte[] processWithXslt(javax.xml.transform.Source data, URL stylesheet, String outputFormat);
+
+    /**
+     * Processes XSL-FO generated by applying an XSLT stylesheet to XML data,
+     * applying the processing options. The stylesheet's output is fed to
+     * Apache FOP as it is generated, rather than first being serialized.
+     * Generates output in the specified format.
+     * <p>
+     * Stylesheets are compiled once and cached (see
+     * <code>playfop.templates-cache</code> in PlayFOP's
+     * <code>reference.conf</code>). Relative URIs in a stylesheet (for
+     * example, in <code>xsl:include</code>) are resolved against its URL.
+     *
+     * @param data the XML data to transform
+     * @param stylesheet the URL of the XSLT stylesheet (for example, from
+     *        <code>getClass().getResource(...)</code>)
+     * @param outputFormat the format to generate
+     * @param processOptions the processing options
+     * @return the Apache FOP output
+     */
+    public byte[] processWithXslt(javax.xml.transform.Source data, URL stylesheet, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Processes XSL-FO generated by applying an XSLT stylesheet to XML data,
+     * writing the output to <code>output</code> as it is generated (rather
+     * than buffering it in memory). The stylesheet's output is fed to Apache
+     * FOP as it is generated, rather than first being serialized. Generates
+     * output in the specified format.
+     * <p>
+     * Stylesheets are compiled once and cached (see
+     * <code>playfop.templates-cache</code> in PlayFOP's
+     * <code>reference.conf</code>). Relative URIs in a stylesheet (for
+     * example, in <code>xsl:include</code>) are resolved against its URL.
+     * <p>
+     * <code>output</code> is flushed, but not closed, once processing
+     * completes.
+     *
+     * @param data the XML data to transform
+     * @param stylesheet the URL of the XSLT stylesheet (for example, from
+     *        <code>getClass().getResource(...)</code>)
+     * @param outputFormat the format to generate
+     * @param output the <code>OutputStream</code> to which to write the output
+     */
+    public void processWithXslt(javax.xml.transform.Source data, URL stylesheet, String outputFormat, OutputStream output);
+
+    /**
+     * Processes XSL-FO generated by applying an XSLT stylesheet to XML data,
+     * applying the processing options and writing the output to
+     * <code>output</code> as it is generated (rather than buffering it in
+     * memory). The stylesheet's output is fed to Apache FOP as it is
+     * generated, rather than first being serialized. Generates output in the
+     * specified format.
+     * <p>
+     * Stylesheets are compiled once and cached (see
+     * <code>playfop.templates-cache</code> in PlayFOP's
+     * <code>reference.conf</code>). Relative URIs in a stylesheet (for
+     * example, in <code>xsl:include</code>) are resolved against its URL.
+     * <p>
+     * <code>output</code> is flushed, but not closed, once processing
+     * completes.
+     *
+     * @param data the XML data to transform
+     * @param stylesheet the URL of the XSLT stylesheet (for example, from
+     *        <code>getClass().getResource(...)</code>)
+     * @param outputFormat the format to generate
+     * @param output the <code>OutputStream</code> to which to write the output
+     * @param processOptions the processing options
+     */
+    public void processWithXslt(javax.xml.transform.Source data, URL stylesheet, String outputFormat, OutputStream output, ProcessOptions processOptions);
+
+    /**
+     * Processes a batch of documents, each from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template, rendering one per available processor at once. Generates
+     * output in the specified format, delivering each document's output (or
+     * failure) to <code>sink</code> as it completes. Blocks until all
+     * documents are done.
+     * <p>
+     * See {@link #processBatch(Iterator, Function, String, BatchSink, int, ProcessOptions)}
+     * for details.
+     *
+     * @param <K> the type of the keys identifying documents
+     * @param inputs the keys of the documents to render
+     * @param xslfo produces the XSL-FO for a key
+     * @param outputFormat the format to generate
+     * @param sink the recipient of each document's output or failure
+     * @return statistics for the batch
+     */
+    public <K> BatchStats processBatch(Iterator<K> inputs, Function<K, Xml> xslfo, String outputFormat, BatchSink<K> sink);
+
+    /**
+     * Processes a batch of documents, each from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template, applying the processing options and rendering several at
+     * once. Generates output in the specified format, delivering each
+     * document's output (or failure) to <code>sink</code> as it completes.
+     * Blocks until all documents are done.
+     * <p>
+     * Documents are rendered on <code>parallelism</code> threads dedicated to
+     * the batch, each taking the next input from <code>inputs</code> (and
+     * calling <code>xslfo</code> for it) once it has delivered the previous
+     * document. The Apache FOP configuration is looked up once for the whole
+     * batch. Each document takes a place in the render gate (see
+     * <code>playfop.render-gate</code> in PlayFOP's
+     * <code>reference.conf</code>), as any other render does. While the gate
+     * is full, documents wait for a place however long it takes, and however
+     * many renders are waiting; they are not rejected.
+     * <p>
+     * A document that fails to render does not stop the batch; see
+     * {@link BatchSink}. To batch XSL-FO from a <code>String</code>, wrap it
+     * with <code>XmlFormat.raw</code>. The options' cache key, if any, is not
+     * applied.
+     *
+     * @param <K> the type of the keys identifying documents
+     * @param inputs the keys of the documents to render
+     * @param xslfo produces the XSL-FO for a key
+     * @param outputFormat the format to generate
+     * @param sink the recipient of each document's output or failure
+     * @param parallelism the number of documents to render at once. 0 means
+     *        one per available processor.
+     * @param processOptions the processing options
+     * @return statistics for the batch
+     */
+    public <K> BatchStats processBatch(Iterator<K> inputs, Function<K, Xml> xslfo, String outputFormat, BatchSink<K> sink, int parallelism, ProcessOptions processOptions);
+
+    /**
+     * Processes XSL-FO from several <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML templates into one document, laying out one part per available
+     * processor at once. Generates output in the specified format.
+     * <p>
+     * See {@link #processTwirlXmlConcatenated(List, String, int, ProcessOptions)}
+     * for details.
+     *
+     * @param parts the XSL-FO of each part, in order
+     * @param outputFormat the format to generate
+     * @return the output
+     */
+    public byte[] processTwirlXmlConcatenated(List<Xml> parts, String outputFormat);
+
+    /**
+     * Processes XSL-FO from several <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML templates into one document, applying the processing options and
+     * laying out several parts at once. Generates output in the specified
+     * format.
+     * <p>
+     * Each part is a complete XSL-FO document. The parts are laid out
+     * independently, on <code>parallelism</code> threads dedicated to the
+     * call, into Apache FOP's intermediate format; the results are then
+     * concatenated, in order, into the output. This spreads the layout of a
+     * large document across processors, where a single XSL-FO document would
+     * be laid out on one.
+     * <p>
+     * Because the parts are laid out independently, page numbers and
+     * cross-references do not span them. Only output formats that Apache FOP
+     * renders via its intermediate format (among them PDF, PostScript, PNG,
+     * and TIFF) are supported. If any part fails to lay out, the first such
+     * part's exception is thrown. The options' cache key, if any, is not
+     * applied.
+     * <p>
+     * The document is admitted to the render gate (see
+     * <code>playfop.render-gate</code> in PlayFOP's
+     * <code>reference.conf</code>) once, before any part is laid out, and may
+     * be rejected then. Once admitted, its parts and their concatenation each
+     * wait for a place in the gate, however long it takes; they are not
+     * rejected.
+     *
+     * @param parts the XSL-FO of each part, in order
+     * @param outputFormat the format to generate
+     * @param parallelism the number of parts to lay out at once. 0 means one
+     *        per available processor.
+     * @param processOptions the processing options
+     * @return the output
+     */
+    public byte[] processTwirlXmlConcatenated(List<Xml> parts, String outputFormat, int parallelism, ProcessOptions processOptions);
+
+    /**
+     * Lays out XSL-FO generated from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template for the specified output format, but does not render it.
+     * <p>
+     * See {@link #layOutTwirlXml(Xml, String, ProcessOptions)} for details.
+     *
+     * @param xslfo the XSL-FO to lay out
+     * @param outputFormat the format to lay out for
+     * @return the laid-out document
+     */
+    public LaidOutDocument layOutTwirlXml(Xml xslfo, String outputFormat);
+
+    /**
+     * Lays out XSL-FO generated from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template for the specified output format, applying the processing
+     * options, but does not render it.
+     * <p>
+     * The returned document can be rendered, to the layout's format or
+     * others, via {@link #renderLaidOut(LaidOutDocument, String)}, without
+     * laying it out again; see {@link LaidOutDocument}. Only output formats
+     * that Apache FOP renders via its intermediate format (among them PDF,
+     * PostScript, PNG, and TIFF) are supported. The options' cache key, if
+     * any, is not applied.
+     *
+     * @param xslfo the XSL-FO to lay out
+     * @param outputFormat the format to lay out for
+     * @param processOptions the processing options
+     * @return the laid-out document
+     */
+    public LaidOutDocument layOutTwirlXml(Xml xslfo, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Lays out XSL-FO provided as a <code>String</code> of XML for the
+     * specified output format, but does not render it.
+     * <p>
+     * See {@link #layOutTwirlXml(Xml, String, ProcessOptions)} for details.
+     *
+     * @param xslfo the XSL-FO to lay out
+     * @param outputFormat the format to lay out for
+     * @return the laid-out document
+     */
+    public LaidOutDocument layOutStringXml(String xslfo, String outputFormat);
+
+    /**
+     * Lays out XSL-FO provided as a <code>String</code> of XML for the
+     * specified output format, applying the processing options, but does not
+     * render it.
+     * <p>
+     * See {@link #layOutTwirlXml(Xml, String, ProcessOptions)} for details.
+     *
+     * @param xslfo the XSL-FO to lay out
+     * @param outputFormat the format to lay out for
+     * @param processOptions the processing options
+     * @return the laid-out document
+     */
+    public LaidOutDocument layOutStringXml(String xslfo, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Renders a laid-out document in the specified output format. The
+     * document's Apache FOP configuration (and font auto-detection) are used.
+     *
+     * @param document the document
+     * @param outputFormat the format to generate
+     * @return the output
+     */
+    public byte[] renderLaidOut(LaidOutDocument document, String outputFormat);
+
+    /**
+     * Renders a laid-out document in the specified output format, applying
+     * the processing options' <code>FOUserAgent</code> block. The document's
+     * Apache FOP configuration (and font auto-detection) are used; the
+     * options' are not.
+     *
+     * @param document the document
+     * @param outputFormat the format to generate
+     * @param processOptions the processing options
+     * @return the output
+     */
+    public byte[] renderLaidOut(LaidOutDocument document, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Renders a laid-out document in the specified output format, applying
+     * the processing options' <code>FOUserAgent</code> block and writing the
+     * output to <code>output</code>. The document's Apache FOP configuration
+     * (and font auto-detection) are used; the options' are not.
+     * <p>
+     * <code>output</code> is flushed, but not closed, once rendering
+     * completes.
+     *
+     * @param document the document
+     * @param outputFormat the format to generate
+     * @param output the <code>OutputStream</code> to which to write the output
+     * @param processOptions the processing options
+     */
+    public void renderLaidOut(LaidOutDocument document, String outputFormat, OutputStream output, ProcessOptions processOptions);
+
+    /**
+     * Previews XSL-FO generated from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template: renders only its first page, in the specified output
+     * format (typically PNG).
+     * <p>
+     * See {@link #previewTwirlXml(Xml, String, ProcessOptions)} for details.
+     *
+     * @param xslfo the XSL-FO to preview
+     * @param outputFormat the format to generate
+     * @return the output for the first page (or none, if the document has no
+     *         pages)
+     */
+    public List<byte[]> previewTwirlXml(Xml xslfo, String outputFormat);
+
+    /**
+     * Previews XSL-FO generated from a <a href="https://www.playframework.com/documentation/2.6.x/ScalaTemplates">Twirl</a>
+     * XML template, applying the processing options: renders only the
+     * options' range of pages (by default, the first page), each separately,
+     * in the specified output format (typically PNG).
+     * <p>
+     * Only as much of the XSL-FO as the pages need is laid out, so
+     * previewing the first pages of a long document takes a fraction of the
+     * time of processing it. As a result, references from those pages to
+     * content after them (for example, to cite the last page's number) are
+     * not resolved. Only output formats that Apache FOP renders via its
+     * intermediate format (among them PDF, PostScript, PNG, and TIFF) are
+     * supported. The options' cache key, if any, is not applied.
+     *
+     * @param xslfo the XSL-FO to preview
+     * @param outputFormat the format to generate
+     * @param processOptions the processing options
+     * @return the output for each page in the range, in order. Pages beyond
+     *         the end of the document are left out.
+     */
+    public List<byte[]> previewTwirlXml(Xml xslfo, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Previews XSL-FO provided as a <code>String</code> of XML: renders only
+     * its first page, in the specified output format (typically PNG).
+     * <p>
+     * See {@link #previewTwirlXml(Xml, String, ProcessOptions)} for details.
+     *
+     * @param xslfo the XSL-FO to preview
+     * @param outputFormat the format to generate
+     * @return the output for the first page (or none, if the document has no
+     *         pages)
+     */
+    public List<byte[]> previewStringXml(String xslfo, String outputFormat);
+
+    /**
+     * Previews XSL-FO provided as a <code>String</code> of XML, applying the
+     * processing options: renders only the options' range of pages (by
+     * default, the first page), each separately, in the specified output
+     * format (typically PNG).
+     * <p>
+     * See {@link #previewTwirlXml(Xml, String, ProcessOptions)} for details.
+     *
+     * @param xslfo the XSL-FO to preview
+     * @param outputFormat the format to generate
+     * @param processOptions the processing options
+     * @return the output for each page in the range, in order. Pages beyond
+     *         the end of the document are left out.
+     */
+    public List<byte[]> previewStringXml(String xslfo, String outputFormat, ProcessOptions processOptions);
+
+    /**
+     * Returns the number of renders currently in progress, across all of this
+     * instance's <code>process...</code> methods.
+     *
+     * @return the number of renders
+     */
+    public int getRendersInFlight();
+
+    /**
+     * Returns the number of renders currently waiting for others to finish
+     * before starting. (Renders waiting for a thread in the rendering pool are
+     * not included.)
+     *
+     * @return the number of renders
+     */
+    public int getRendersQueued();
+
+    /**
+     * Takes statistics for PlayFOP's cache of Apache FOP configurations (see
+     * <code>playfop.fop-factory-cache</code> in PlayFOP's
+     * <code>reference.conf</code>).
+     *
+     * @return the statistics
+     */
+    public FopFactoryCacheStats getFopFactoryCacheStats();
+
+    /**
+     * Takes statistics for PlayFOP's cache of rendered output (see
+     * <code>playfop.output-cache</code> in PlayFOP's
+     * <code>reference.conf</code>).
+     *
+     * @return the statistics
+     */
+    public OutputCacheStats getOutputCacheStats();
+
+    /**
+     * Takes statistics for PlayFOP's cache of the resources (images, fonts,
+     * etc.) that Apache FOP reads while rendering (see
+     * <code>playfop.resource-cache</code> in PlayFOP's
+     * <code>reference.conf</code>).
+     *
+     * @return the statistics
+     */
+    public ResourceCacheStats getResourceCacheStats();
+
+    /**
+     * Takes statistics for the images preloaded through
+     * <code>preloadImages</code>, and for the use of Apache FOP's image caches
+     * (see <code>playfop.image-cache</code> in PlayFOP's
+     * <code>reference.conf</code>).
+     *
+     * @return the statistics
+     */
+    public ImageCacheStats getImageCacheStats();
+
+    /**
+     * Takes a snapshot of PlayFOP's metrics: render latencies, output and
+     * input sizes, and failures, by output format; and the use of its cache
+     * of Apache FOP configurations. To report metrics as they occur instead
+     * (for example, to a metrics library), see <code>playfop.metrics</code>
+     * in PlayFOP's <code>reference.conf</code>.
+     *
+     * @return the snapshot
+     */
+    public MetricsSnapshot getMetrics();
+
+    /**
+     * Prepares Apache FOP to render PDFs by rendering a minimal document and
+     * discarding the output. Subsequent <code>process...</code> invocations
+     * then avoid the cost of that preparation.
+     * <p>
+     * To warm up in the background as the application starts, see
+     * <code>playfop.warm-up</code> in PlayFOP's <code>reference.conf</code>.
+     */
+    public void warmUp();
+
+    /**
+     * Prepares Apache FOP to render PDFs with the supplied processing options,
+     * by rendering a minimal document and discarding the output. Subsequent
+     * <code>process...</code> invocations with the same font auto-detection
+     * and Apache FOP configuration options then avoid the cost of that
+     * preparation, which for font auto-detection can be several seconds.
+     * <p>
+     * The options' <code>FOUserAgentBlock</code>, if any, is not applied.
+     *
+     * @param processOptions the processing options
+     */
+    public void warmUp(ProcessOptions processOptions);
+
+    /**
+     * Preloads images (for example, logos used on every page) for rendering to
+     * the supplied output format, so that subsequent <code>process...</code>
+     * invocations find them decoded, rather than reading and decoding them.
+     * <p>
+     * The images are preloaded at once into Apache FOP's image cache for the
+     * default processing options, and, in the background, into those for
+     * other options: at once for options already used, and when first used
+     * for others. They are held there in memory, up to
+     * <code>playfop.image-cache.max-memory</code> (see PlayFOP's
+     * <code>reference.conf</code>), whereas Apache FOP otherwise lets the
+     * garbage collector clear the images it caches when memory runs short.
+     * <p>
+     * Documents must refer to the images by the same URIs (for example, in an
+     * <code>fo:external-graphic</code>'s <code>src</code>) to find them
+     * preloaded.
+     *
+     * @param uris the images' URIs
+     * @param outputFormat the output format to preload the images for
+     * @throws IllegalArgumentException if an image cannot be loaded
+     */
+    public void preloadImages(List<String> uris, String outputFormat);
+
+    /**
+     * Preloads images for rendering to the supplied output format, as
+     * <code>preloadImages(uris, outputFormat)</code> does, but preloads them
+     * at once for the processing options' font auto-detection and Apache FOP
+     * configuration options.
+     * <p>
+     * The options' <code>FOUserAgentBlock</code>, if any, is not applied.
+     *
+     * @param uris the images' URIs
+     * @param outputFormat the output format to preload the images for
+     * @param processOptions the processing options
+     * @throws IllegalArgumentException if an image cannot be loaded
+     */
+    public void preloadImages(List<String> uris, String outputFormat, ProcessOptions processOptions);
+
     /**
      * Creates a new <code>Fop</code> instance. Sets it up to save output to the
      * supplied <code>OutputStream</code> in the supplied format.
@@ -1,14 +1,61 @@
 package com.dmanchester.playfop.japi;
 
+import java.util.Optional;
+
+import com.dmanchester.playfop.api.MetricsListener;
 import com.dmanchester.playfop.jinternal.PlayFopImpl;
+import com.dmanchester.playfop.sinternal.PlayFopSettings;
+
+import play.inject.ApplicationLifecycle;
 
 /**
  * An interface for dependency-injecting PlayFOP into Java applications at
  * compile time.
+ * <p>
+ * By default, PlayFOP uses the settings in its <code>reference.conf</code>,
+ * and its resources are not released when the application stops. In a class
+ * that implements Play's <code>BuiltInComponents</code>, override
+ * <code>playFopSettings()</code> to return
+ * <code>PlayFopSettings.apply(new play.api.Configuration(config()))</code>,
+ * configuring PlayFOP from the application's configuration, and
+ * <code>playFopLifecycle()</code> to return
+ * <code>Optional.of(applicationLifecycle())</code>, releasing them.
  */
 public interface PlayFopComponents {
 
+    /**
+     * PlayFOP's settings.
+     *
+     * @return the settings
+     */
+    default PlayFopSettings playFopSettings() {
+        return PlayFopSettings.Default();
+    }
+
+    /**
+     * The application's lifecycle, if PlayFOP's resources are to be released
+     * when the application stops.
+     *
+     * @return the lifecycle, if any
+     */
+    default Optional<ApplicationLifecycle> playFopLifecycle() {
+        return Optional.empty();
+    }
+
+    /**
+     * The listener to pass PlayFOP's metrics on to.
+     *
+     * @return the listener
+     */
+    default MetricsListener playFopMetricsListener() {
+        return MetricsListener.NoOp();
+    }
+
     default PlayFop playFop() {
-        return new PlayFopImpl();
+        Optional<ApplicationLifecycle> lifecycle = playFopLifecycle();
+
+        return lifecycle.isPresent()
+                ? new PlayFopImpl(playFopSettings(), playFopMetricsListener(), lifecycle.get())
+                : new PlayFopImpl(playFopSettings(), playFopMetricsListener());
     }
 }
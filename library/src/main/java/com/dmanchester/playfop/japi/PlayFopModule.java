@@ -1,21 +1,41 @@
 package com.dmanchester.playfop.japi;
 
+import com.dmanchester.playfop.api.MetricsListener;
 import com.dmanchester.playfop.jinternal.PlayFopImpl;
+import com.dmanchester.playfop.sinternal.PlayFopSettings;
 import com.typesafe.config.Config;
 import play.inject.Module;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
+import scala.Option;
+
 /**
  * A Play <a href="https://www.playframework.com/documentation/2.8.x/api/scala/play/api/inject/Module.html"><code>Module</code></a>
  * for dependency-injecting PlayFOP into Java applications at runtime.
+ * <p>
+ * PlayFOP is configured from the <code>playfop</code> section of the
+ * application's configuration; see PlayFOP's <code>reference.conf</code> for
+ * the available settings. Its metrics are passed on to the
+ * {@link MetricsListener} named in <code>playfop.metrics.listener</code>, if
+ * any.
  */
 public class PlayFopModule extends Module {
 
     @Override
     public List<play.inject.Binding<?>> bindings(play.Environment environment, Config config) {
-        return Collections.singletonList(
+
+        play.api.Configuration configuration = new play.api.Configuration(config);
+
+        Option<Class<? extends MetricsListener>> listenerClass =
+                PlayFopSettings.metricsListenerClass(configuration, environment.classLoader());
+
+        return Arrays.asList(
+                bindClass(PlayFopSettings.class).toInstance(PlayFopSettings.apply(configuration)),
+                listenerClass.isDefined()
+                        ? bindClass(MetricsListener.class).to(listenerClass.get())
+                        : bindClass(MetricsListener.class).toInstance(MetricsListener.NoOp()),
                 bindClass(PlayFop.class).to(PlayFopImpl.class)
         );
     }
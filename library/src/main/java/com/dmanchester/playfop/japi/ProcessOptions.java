@@ -1,7 +1,15 @@
 package com.dmanchester.playfop.japi;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.fop.apps.FOUserAgent;
 
+import com.dmanchester.playfop.api.FontEmbedding;
+import com.dmanchester.playfop.api.FopConfig;
+import com.dmanchester.playfop.api.PageRange;
+
 /**
  * Packages processing options for {@link PlayFop} invocations. Instances can be
  * constructed via the {@link Builder} inner class.
@@ -13,6 +21,9 @@ public class ProcessOptions {
 
     private boolean autoDetectFontsForPDF;
     private FOUserAgentBlock foUserAgentBlock;
+    private FopConfig fopConfig;
+    private String cacheKey;
+    private PageRange pageRange;
 
     /**
      * Builder class for {@link ProcessOptions}. A builder instance can be
@@ -28,6 +39,11 @@ public class ProcessOptions {
             @Override
             public void withFOUserAgent(FOUserAgent foUserAgent) { /* no-op */ }
         };
+        private FopConfig fopConfig = FopConfig.Default();
+        private FontEmbedding fontEmbedding = null;
+        private List<String> referencedFonts = new ArrayList<>();
+        private String cacheKey = null;
+        private PageRange pageRange = PageRange.FirstPage();
 
         /**
          * Whether operating system fonts should be auto-detected and made
@@ -55,6 +71,90 @@ public class ProcessOptions {
             return this;
         }
 
+        /**
+         * Specifies an Apache FOP configuration to use in place of Apache
+         * FOP's default one (for example, to register a directory of fonts).
+         * If fonts are also to be auto-detected, auto-detection is added to
+         * the configuration. The <code>FopFactory</code> for each
+         * configuration is created once and cached.
+         *
+         * @param fopConfig the Apache FOP configuration, typically from
+         *        {@link FopConfig#fromFile(String)} or
+         *        {@link FopConfig#fromConfig(com.typesafe.config.Config)}
+         * @return the Builder (for chaining method calls)
+         */
+        public Builder fopConfig(FopConfig fopConfig) {
+            this.fopConfig = fopConfig;
+            return this;
+        }
+
+        /**
+         * Specifies how fonts registered individually by the Apache FOP
+         * configuration are embedded in PDF output: in full, or only the
+         * glyphs a document uses. (Apache FOP embeds a subset of TrueType and
+         * OpenType fonts registered by directory or auto-detected,
+         * regardless.) By default, the configuration's own settings apply.
+         *
+         * @param fontEmbedding the embedding mode, typically
+         *        {@link FontEmbedding#Subset()}
+         * @return the Builder (for chaining method calls)
+         * @see FopConfig#withFontEmbedding(FontEmbedding)
+         */
+        public Builder fontEmbedding(FontEmbedding fontEmbedding) {
+            this.fontEmbedding = fontEmbedding;
+            return this;
+        }
+
+        /**
+         * Specifies font families that PDF output should reference, rather
+         * than embed. Output is smaller, but renders as intended only where
+         * the fonts are installed. Adds to any families specified earlier.
+         *
+         * @param families the font families (names, not patterns)
+         * @return the Builder (for chaining method calls)
+         * @see FopConfig#withReferencedFonts(String...)
+         */
+        public Builder referencedFonts(String... families) {
+            this.referencedFonts.addAll(Arrays.asList(families));
+            return this;
+        }
+
+        /**
+         * Specifies a key under which to cache the output, if PlayFOP's
+         * output cache is enabled (see <code>playfop.output-cache</code> in
+         * PlayFOP's <code>reference.conf</code>). The key should stand for the
+         * <code>foUserAgentBlock</code> settings, and anything else besides
+         * the XSL-FO, output format, and other options that affects the
+         * output. Only the <code>processTwirlXml</code> and
+         * <code>processStringXml</code> methods returning a
+         * <code>byte[]</code> or <code>CompletionStage</code> consult the
+         * cache. By default, output is not cached.
+         *
+         * @param cacheKey the cache key, or <code>null</code> not to cache
+         * @return the Builder (for chaining method calls)
+         */
+        public Builder cacheKey(String cacheKey) {
+            this.cacheKey = cacheKey;
+            return this;
+        }
+
+        /**
+         * Specifies the range of pages to render when previewing (via
+         * <code>previewTwirlXml</code> or <code>previewStringXml</code>).
+         * Other methods ignore it. By default, only the first page is
+         * rendered.
+         *
+         * @param first the first page in the range (1-based)
+         * @param last the last page in the range (1-based, inclusive)
+         * @return the Builder (for chaining method calls)
+         * @throws IllegalArgumentException if <code>first</code> is less than
+         *         1 or <code>last</code> is less than <code>first</code>
+         */
+        public Builder pageRange(int first, int last) {
+            this.pageRange = new PageRange(first, last);
+            return this;
+        }
+
         /**
          * Produces a {@link ProcessOptions}.
          *
@@ -68,6 +168,13 @@ public class ProcessOptions {
     private ProcessOptions(Builder builder) {
         this.autoDetectFontsForPDF = builder.autoDetectFontsForPDF;
         this.foUserAgentBlock = builder.foUserAgentBlock;
+        FopConfig fopConfig = builder.fopConfig;
+        if (builder.fontEmbedding != null) {
+            fopConfig = fopConfig.withFontEmbedding(builder.fontEmbedding);
+        }
+        this.fopConfig = fopConfig.withReferencedFonts(builder.referencedFonts.toArray(new String[0]));
+        this.cacheKey = builder.cacheKey;
+        this.pageRange = builder.pageRange;
     }
 
     public boolean isAutoDetectFontsForPDF() {
@@ -77,4 +184,22 @@ public class ProcessOptions {
     public FOUserAgentBlock getFoUserAgentBlock() {
         return foUserAgentBlock;
     }
+
+    /**
+     * Returns the Apache FOP configuration, with the font embedding mode and
+     * referenced fonts, if any, applied to it.
+     *
+     * @return the configuration
+     */
+    public FopConfig getFopConfig() {
+        return fopConfig;
+    }
+
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public PageRange getPageRange() {
+        return pageRange;
+    }
 }
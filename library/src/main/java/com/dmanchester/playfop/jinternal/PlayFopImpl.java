@@ -1,18 +1,44 @@
 package com.dmanchester.playfop.jinternal;
 
 import java.io.OutputStream;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.apache.fop.apps.FOUserAgent;
 import org.apache.fop.apps.Fop;
 
+import com.dmanchester.playfop.api.BatchSink;
+import com.dmanchester.playfop.api.BatchStats;
+import com.dmanchester.playfop.api.FopFactoryCacheStats;
+import com.dmanchester.playfop.api.ImageCacheStats;
+import com.dmanchester.playfop.api.LaidOutDocument;
+import com.dmanchester.playfop.api.MetricsListener;
+import com.dmanchester.playfop.api.MetricsSnapshot;
+import com.dmanchester.playfop.api.OutputCacheStats;
+import com.dmanchester.playfop.api.RenderResult;
+import com.dmanchester.playfop.api.ResourceCacheStats;
 import com.dmanchester.playfop.japi.FOUserAgentBlock;
 import com.dmanchester.playfop.japi.PlayFop;
 import com.dmanchester.playfop.japi.ProcessOptions;
+import com.dmanchester.playfop.sinternal.PlayFopSettings;
 
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import play.inject.ApplicationLifecycle;
 import play.twirl.api.Xml;
 import scala.Function1;
+import scala.Option;
+import scala.collection.JavaConverters;
+import scala.compat.java8.FutureConverters;
 import scala.runtime.AbstractFunction1;
 import scala.runtime.BoxedUnit;
 
@@ -30,7 +56,60 @@ public class PlayFopImpl implements PlayFop {
 
     private static final ProcessOptions DEFAULT_PROCESS_OPTIONS = new ProcessOptions.Builder().build();
 
-    private com.dmanchester.playfop.sapi.PlayFop playFopScala = new com.dmanchester.playfop.sinternal.PlayFopImpl();
+    private final com.dmanchester.playfop.sinternal.PlayFopImpl playFopScala;
+
+    /**
+     * Creates an instance with the settings in PlayFOP's
+     * <code>reference.conf</code>.
+     */
+    public PlayFopImpl() {
+        this.playFopScala = new com.dmanchester.playfop.sinternal.PlayFopImpl();
+    }
+
+    /**
+     * Creates an instance whose metrics are passed on to a listener.
+     *
+     * @param settings PlayFOP's settings
+     * @param metricsListener the listener to pass PlayFOP's metrics on to
+     */
+    public PlayFopImpl(PlayFopSettings settings, MetricsListener metricsListener) {
+        this.playFopScala = new com.dmanchester.playfop.sinternal.PlayFopImpl(settings, metricsListener);
+    }
+
+    /**
+     * Creates an instance whose resources are released when the application
+     * stops.
+     *
+     * @param settings PlayFOP's settings
+     * @param lifecycle the application's lifecycle
+     */
+    public PlayFopImpl(PlayFopSettings settings, ApplicationLifecycle lifecycle) {
+
+        this(settings, MetricsListener.NoOp(), lifecycle);
+    }
+
+    /**
+     * Creates an instance whose resources are released when the application
+     * stops, and whose metrics are passed on to a listener.
+     *
+     * @param settings PlayFOP's settings
+     * @param metricsListener the listener to pass PlayFOP's metrics on to
+     * @param lifecycle the application's lifecycle
+     */
+    @Inject
+    public PlayFopImpl(PlayFopSettings settings, MetricsListener metricsListener, ApplicationLifecycle lifecycle) {
+
+        this(settings, metricsListener);
+
+        lifecycle.addStopHook(new Callable<CompletionStage<?>>() {
+
+            @Override
+            public CompletionStage<?> call() {
+                playFopScala.shutdown();
+                return CompletableFuture.completedFuture(null);
+            }
+        });
+    }
 
     @Override
     public byte[] processTwirlXml(Xml xslfo, String outputFormat) {
@@ -43,7 +122,7 @@ public class PlayFopImpl implements PlayFop {
 
         Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
 
-        return playFopScala.processTwirlXml(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction);
+        return playFopScala.processTwirlXml(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig(), Option.apply(processOptions.getCacheKey()));
     }
 
     @Override
@@ -57,7 +136,355 @@ public class PlayFopImpl implements PlayFop {
 
             Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
 
-            return playFopScala.processStringXml(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction);
+            return playFopScala.processStringXml(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig(), Option.apply(processOptions.getCacheKey()));
+    }
+
+    @Override
+    public void processTwirlXml(Xml xslfo, String outputFormat, OutputStream output) {
+
+        processTwirlXml(xslfo, outputFormat, output, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public void processTwirlXml(Xml xslfo, String outputFormat, OutputStream output, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        playFopScala.processTwirlXmlToStream(xslfo, outputFormat, output, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public void processStringXml(String xslfo, String outputFormat, OutputStream output) {
+
+        processStringXml(xslfo, outputFormat, output, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public void processStringXml(String xslfo, String outputFormat, OutputStream output, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        playFopScala.processStringXmlToStream(xslfo, outputFormat, output, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public Source<ByteString, NotUsed> processTwirlXmlAsSource(Xml xslfo, String outputFormat) {
+
+        return processTwirlXmlAsSource(xslfo, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public Source<ByteString, NotUsed> processTwirlXmlAsSource(Xml xslfo, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return playFopScala.processTwirlXmlAsSource(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig()).asJava();
+    }
+
+    @Override
+    public Source<ByteString, NotUsed> processStringXmlAsSource(String xslfo, String outputFormat) {
+
+        return processStringXmlAsSource(xslfo, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public Source<ByteString, NotUsed> processStringXmlAsSource(String xslfo, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return playFopScala.processStringXmlAsSource(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig()).asJava();
+    }
+
+    @Override
+    public CompletionStage<byte[]> processTwirlXmlAsync(Xml xslfo, String outputFormat) {
+
+        return processTwirlXmlAsync(xslfo, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public CompletionStage<byte[]> processTwirlXmlAsync(Xml xslfo, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return FutureConverters.toJava(playFopScala.processTwirlXmlAsync(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig(), Option.apply(processOptions.getCacheKey())));
+    }
+
+    @Override
+    public CompletionStage<byte[]> processStringXmlAsync(String xslfo, String outputFormat) {
+
+        return processStringXmlAsync(xslfo, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public CompletionStage<byte[]> processStringXmlAsync(String xslfo, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return FutureConverters.toJava(playFopScala.processStringXmlAsync(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig(), Option.apply(processOptions.getCacheKey())));
+    }
+
+    @Override
+    public RenderResult processTwirlXmlAsResult(Xml xslfo, String outputFormat) {
+
+        return processTwirlXmlAsResult(xslfo, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public RenderResult processTwirlXmlAsResult(Xml xslfo, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return playFopScala.processTwirlXmlAsResult(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public RenderResult processStringXmlAsResult(String xslfo, String outputFormat) {
+
+        return processStringXmlAsResult(xslfo, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public RenderResult processStringXmlAsResult(String xslfo, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return playFopScala.processStringXmlAsResult(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public byte[] processXmlSource(javax.xml.transform.Source xslfo, String outputFormat) {
+
+        return processXmlSource(xslfo, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public byte[] processXmlSource(javax.xml.transform.Source xslfo, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return playFopScala.processXmlSource(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public void processXmlSource(javax.xml.transform.Source xslfo, String outputFormat, OutputStream output) {
+
+        processXmlSource(xslfo, outputFormat, output, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public void processXmlSource(javax.xml.transform.Source xslfo, String outputFormat, OutputStream output, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        playFopScala.processXmlSourceToStream(xslfo, outputFormat, output, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public byte[] processWithXslt(javax.xml.transform.Source data, URL stylesheet, String outputFormat) {
+
+        return processWithXslt(data, stylesheet, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public byte[] processWithXslt(javax.xml.transform.Source data, URL stylesheet, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return playFopScala.processWithXslt(data, stylesheet, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public void processWithXslt(javax.xml.transform.Source data, URL stylesheet, String outputFormat, OutputStream output) {
+
+        processWithXslt(data, stylesheet, outputFormat, output, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public void processWithXslt(javax.xml.transform.Source data, URL stylesheet, String outputFormat, OutputStream output, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        playFopScala.processWithXsltToStream(data, stylesheet, outputFormat, output, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public <K> BatchStats processBatch(Iterator<K> inputs, Function<K, Xml> xslfo, String outputFormat, BatchSink<K> sink) {
+
+        return processBatch(inputs, xslfo, outputFormat, sink, 0, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public <K> BatchStats processBatch(Iterator<K> inputs, final Function<K, Xml> xslfo, String outputFormat, BatchSink<K> sink, int parallelism, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        Function1<K, Xml> xslfoAsFunction = new AbstractFunction1<K, Xml>() {
+
+            @Override
+            public Xml apply(K key) {
+                return xslfo.apply(key);
+            }
+        };
+
+        return playFopScala.processBatch(JavaConverters.asScalaIterator(inputs), xslfoAsFunction, outputFormat, sink, parallelism, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public byte[] processTwirlXmlConcatenated(List<Xml> parts, String outputFormat) {
+
+        return processTwirlXmlConcatenated(parts, outputFormat, 0, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public byte[] processTwirlXmlConcatenated(List<Xml> parts, String outputFormat, int parallelism, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return playFopScala.processTwirlXmlConcatenated(JavaConverters.asScalaBuffer(parts).toList(), outputFormat, parallelism, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public LaidOutDocument layOutTwirlXml(Xml xslfo, String outputFormat) {
+
+        return layOutTwirlXml(xslfo, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public LaidOutDocument layOutTwirlXml(Xml xslfo, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return playFopScala.layOutTwirlXml(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public LaidOutDocument layOutStringXml(String xslfo, String outputFormat) {
+
+        return layOutStringXml(xslfo, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public LaidOutDocument layOutStringXml(String xslfo, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return playFopScala.layOutStringXml(xslfo, outputFormat, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
+    }
+
+    @Override
+    public byte[] renderLaidOut(LaidOutDocument document, String outputFormat) {
+
+        return renderLaidOut(document, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public byte[] renderLaidOut(LaidOutDocument document, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return playFopScala.renderLaidOut(document, outputFormat, blockAsFunction);
+    }
+
+    @Override
+    public void renderLaidOut(LaidOutDocument document, String outputFormat, OutputStream output, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        playFopScala.renderLaidOutToStream(document, outputFormat, output, blockAsFunction);
+    }
+
+    @Override
+    public List<byte[]> previewTwirlXml(Xml xslfo, String outputFormat) {
+
+        return previewTwirlXml(xslfo, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public List<byte[]> previewTwirlXml(Xml xslfo, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return JavaConverters.seqAsJavaList(playFopScala.previewTwirlXml(xslfo, outputFormat, processOptions.getPageRange(), processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig()));
+    }
+
+    @Override
+    public List<byte[]> previewStringXml(String xslfo, String outputFormat) {
+
+        return previewStringXml(xslfo, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public List<byte[]> previewStringXml(String xslfo, String outputFormat, ProcessOptions processOptions) {
+
+        Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
+
+        return JavaConverters.seqAsJavaList(playFopScala.previewStringXml(xslfo, outputFormat, processOptions.getPageRange(), processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig()));
+    }
+
+    @Override
+    public int getRendersInFlight() {
+
+        return playFopScala.rendersInFlight();
+    }
+
+    @Override
+    public int getRendersQueued() {
+
+        return playFopScala.rendersQueued();
+    }
+
+    @Override
+    public FopFactoryCacheStats getFopFactoryCacheStats() {
+
+        return playFopScala.fopFactoryCacheStats();
+    }
+
+    @Override
+    public OutputCacheStats getOutputCacheStats() {
+
+        return playFopScala.outputCacheStats();
+    }
+
+    @Override
+    public ResourceCacheStats getResourceCacheStats() {
+
+        return playFopScala.resourceCacheStats();
+    }
+
+    @Override
+    public ImageCacheStats getImageCacheStats() {
+
+        return playFopScala.imageCacheStats();
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+
+        return playFopScala.metrics();
+    }
+
+    @Override
+    public void warmUp() {
+
+        warmUp(DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public void warmUp(ProcessOptions processOptions) {
+
+        playFopScala.warmUp(processOptions.isAutoDetectFontsForPDF(), processOptions.getFopConfig());
+    }
+
+    @Override
+    public void preloadImages(List<String> uris, String outputFormat) {
+
+        preloadImages(uris, outputFormat, DEFAULT_PROCESS_OPTIONS);
+    }
+
+    @Override
+    public void preloadImages(List<String> uris, String outputFormat, ProcessOptions processOptions) {
+
+        playFopScala.preloadImages(JavaConverters.asScalaBuffer(uris).toList(), outputFormat, processOptions.isAutoDetectFontsForPDF(), processOptions.getFopConfig());
     }
 
     @Override
@@ -71,7 +498,7 @@ public class PlayFopImpl implements PlayFop {
 
         Function1<FOUserAgent, BoxedUnit> blockAsFunction = new BlockAsFunction(processOptions.getFoUserAgentBlock());
 
-        return playFopScala.newFop(outputFormat, output, processOptions.isAutoDetectFontsForPDF(), blockAsFunction);
+        return playFopScala.newFop(outputFormat, output, processOptions.isAutoDetectFontsForPDF(), blockAsFunction, processOptions.getFopConfig());
     }
 
     private static class BlockAsFunction extends AbstractFunction1<FOUserAgent, BoxedUnit> {
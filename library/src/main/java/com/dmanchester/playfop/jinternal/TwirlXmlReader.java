@@ -0,0 +1,118 @@
+package com.dmanchester.playfop.jinternal;
+
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import play.twirl.api.Xml;
+import scala.collection.Iterator;
+
+/**
+ * A <code>Reader</code> over the text of a Twirl <code>Xml</code> value.
+ * <p>
+ * A rendered Twirl template is a tree of fragments: one per literal run of
+ * markup, interpolated value, or nested template call. Whereas
+ * <code>Xml.body</code> concatenates all of them into a single
+ * <code>String</code>, this class reads them one after another, so that the
+ * characters in memory at once (beyond the fragments themselves) are bounded
+ * by the reader's caller rather than by the size of the document.
+ * <p>
+ * This class is written in Java because the fragment tree
+ * (<code>BufferedContent.elements</code> and <code>text</code>) is protected
+ * in Scala, but public in bytecode.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class TwirlXmlReader extends Reader {
+
+    /** Iterators over the children of each fragment being read, innermost first. */
+    private final Deque<Iterator<Xml>> pending = new ArrayDeque<>();
+
+    private String text = "";
+    private int position = 0;
+    private long charsRead = 0;
+
+    /**
+     * Creates an instance.
+     *
+     * @param xml the <code>Xml</code> to read
+     */
+    public TwirlXmlReader(Xml xml) {
+
+        visit(xml);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+
+        if (length == 0) {
+            return 0;
+        }
+
+        if (!advance()) {
+            return -1;
+        }
+
+        int count = Math.min(length, text.length() - position);
+        text.getChars(position, position + count, buffer, offset);
+        position += count;
+        charsRead += count;
+
+        return count;
+    }
+
+    /**
+     * Returns the number of characters read so far.
+     *
+     * @return the number of characters
+     */
+    public long getCharsRead() {
+
+        return charsRead;
+    }
+
+    @Override
+    public void close() {
+
+        pending.clear();
+        text = "";
+        position = 0;
+    }
+
+    /**
+     * Moves to the next fragment with unread text, if the current one has
+     * none left.
+     *
+     * @return whether there is unread text
+     */
+    private boolean advance() {
+
+        while (position == text.length()) {
+
+            Iterator<Xml> children = pending.peek();
+            if (children == null) {
+                return false;
+            }
+
+            if (children.hasNext()) {
+                visit(children.next());
+            } else {
+                pending.pop();
+            }
+        }
+
+        return true;
+    }
+
+    private void visit(Xml xml) {
+
+        // Mirrors BufferedContent.buildString: a fragment's text is only used
+        // if it has no children.
+        if (xml.elements().isEmpty()) {
+            text = xml.text();
+            position = 0;
+        } else {
+            pending.push(xml.elements().iterator());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.dmanchester.playfop.api
+
+/** Receives the outcome of each document in a batch (see `processBatch`).
+  *
+  * Methods may be called from several threads at once, one call per
+  * document, and in any order. An exception thrown by `onOutput` counts the
+  * document as failed (and is logged); one thrown by `onFailure` is logged.
+  * Neither stops the batch.
+  *
+  * @tparam K the type of the keys identifying documents
+  */
+trait BatchSink[K] {
+
+  /** Receives a rendered document.
+    *
+    * @param key the document's key
+    * @param output the Apache FOP output
+    */
+  def onOutput(key: K, output: Array[Byte]): Unit
+
+  /** Receives the failure to render a document.
+    *
+    * @param key the document's key
+    * @param failure the cause of the failure
+    */
+  def onFailure(key: K, failure: Throwable): Unit
+}
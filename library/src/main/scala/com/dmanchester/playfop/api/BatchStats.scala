@@ -0,0 +1,20 @@
+package com.dmanchester.playfop.api
+
+/** Statistics for a completed batch (see `processBatch`).
+  *
+  * @param succeeded the number of documents rendered and delivered
+  * @param failed the number of documents that failed to render or be
+  *               delivered
+  * @param bytes the total size, in bytes, of the delivered output
+  * @param elapsedMillis how long, in milliseconds, the batch took
+  */
+case class BatchStats(succeeded: Long, failed: Long, bytes: Long, elapsedMillis: Long) {
+
+  /** The number of documents, rendered or not, per second.
+    *
+    * @return the throughput
+    */
+  def documentsPerSecond: Double = {
+    if (elapsedMillis == 0) 0.0 else (succeeded + failed) * 1000.0 / elapsedMillis
+  }
+}
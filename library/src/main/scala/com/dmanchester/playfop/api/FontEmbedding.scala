@@ -0,0 +1,33 @@
+package com.dmanchester.playfop.api
+
+/** How Apache FOP embeds a font in PDF output: in full, or only the glyphs a
+  * document uses (a subset). See `[[FopConfig.withFontEmbedding]]`.
+  *
+  * @param mode the mode's name in Apache FOP configuration XML
+  */
+final class FontEmbedding private (val mode: String) {
+
+  override def toString(): String = s"FontEmbedding($mode)"
+}
+
+/** Companion object of the `[[FontEmbedding]]` class.
+  */
+object FontEmbedding {
+
+  /** Embeds fonts in full. Output is larger, but text can be edited with any
+    * of the font's glyphs.
+    */
+  val Full: FontEmbedding = new FontEmbedding("full")
+
+  /** Embeds only the glyphs a document uses. For large fonts (for example,
+    * CJK ones), output is far smaller and quicker to write.
+    */
+  val Subset: FontEmbedding = new FontEmbedding("subset")
+
+  /** Gets the embedding mode with the supplied name.
+    *
+    * @param mode the name ("full" or "subset")
+    * @return the embedding mode, if the name is valid
+    */
+  def fromString(mode: String): Option[FontEmbedding] = Seq(Full, Subset).find(_.mode == mode)
+}
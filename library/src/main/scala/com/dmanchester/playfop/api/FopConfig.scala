@@ -0,0 +1,337 @@
+package com.dmanchester.playfop.api
+
+import java.io.File
+import java.net.URI
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+import java.util.regex.Pattern
+
+import scala.annotation.varargs
+import scala.xml.Elem
+import scala.xml.MinimizeMode
+import scala.xml.Node
+import scala.xml.Null
+import scala.xml.UnprefixedAttribute
+import scala.xml.Utility
+import scala.xml.XML
+
+import com.typesafe.config.Config
+
+import play.api.Configuration
+
+/** An Apache FOP configuration (as documented at
+  * [[https://xmlgraphics.apache.org/fop/2.5/configuration.html]]), for
+  * example to register font directories or adjust renderer settings.
+  *
+  * PlayFOP creates one `FopFactory` per distinct configuration and caches it
+  * (see `playfop.fop-factory-cache` in PlayFOP's `reference.conf`).
+  * Configurations are identified by a hash of their canonical form: whitespace
+  * between elements and the order of attributes do not affect it, so
+  * configurations that differ only in those respects share a `FopFactory`.
+  *
+  * Font embedding for PDF output can be adjusted without writing XML; see
+  * `[[withFontEmbedding]]` and `[[withReferencedFonts]]`.
+  *
+  * A configuration also determines whether the resources (images, fonts,
+  * etc.) read while rendering with it are served from PlayFOP's resource
+  * cache (see `playfop.resource-cache` in PlayFOP's `reference.conf`), if
+  * that cache is enabled. By default, they are; see `[[withResourceCache]]`.
+  *
+  * Instances are obtained from the companion object. They are immutable and
+  * thread-safe.
+  *
+  * @param xml the configuration XML, if any
+  * @param baseUri the URI against which relative URIs in the configuration
+  *                are resolved, if not the working directory
+  * @param cachesResources whether resources are served from PlayFOP's
+  *                        resource cache
+  */
+final class FopConfig private (private[playfop] val xml: Option[Elem], private[playfop] val baseUri: Option[URI],
+    private[playfop] val cachesResources: Boolean) {
+
+  /** The hash of this configuration's canonical form (hex-encoded SHA-256),
+    * or "default" for Apache FOP's default configuration; followed by
+    * "-uncached-resources" if the configuration opts out of PlayFOP's
+    * resource cache.
+    */
+  val hash: String = {
+    val configHash = xml.fold("default")(FopConfig.canonicalHash(_, baseUri))
+    if (cachesResources) configHash else configHash + "-uncached-resources"
+  }
+
+  /** This configuration, additionally auto-detecting fonts for PDF output.
+    */
+  private[playfop] lazy val withAutoDetectFontsForPDF: FopConfig = {
+    new FopConfig(Some(FopConfig.addAutoDetectFontsForPDF(xml.getOrElse(<fop version="1.0"/>))), baseUri,
+        cachesResources)
+  }
+
+  /** This configuration, with every font it registers individually (with a
+    * `font` element) embedded as specified. Apache FOP embeds a subset of
+    * TrueType and OpenType fonts registered by directory or auto-detected,
+    * regardless.
+    *
+    * @param embedding how to embed the fonts
+    * @return the configuration
+    */
+  def withFontEmbedding(embedding: FontEmbedding): FopConfig = {
+
+    xml.fold(this) { fop =>
+
+      val updated = FopConfig.updateChildren(fop, _.label == "renderers") { renderers =>
+        FopConfig.updateChildren(renderers, _.label == "renderer") { renderer =>
+          FopConfig.updateChildren(renderer, _.label == "fonts") { fonts =>
+            FopConfig.updateChildren(fonts, _.label == "font") {
+              _ % new UnprefixedAttribute("embedding-mode", embedding.mode, Null)
+            }
+          }
+        }
+      }
+
+      new FopConfig(Some(updated), baseUri, cachesResources)
+    }
+  }
+
+  /** This configuration, with the fonts of the supplied families referenced
+    * by PDF output, rather than embedded in it. Output is smaller, but
+    * renders as intended only where the fonts are installed.
+    *
+    * @param families the font families (names, not patterns)
+    * @return the configuration
+    */
+  @varargs
+  def withReferencedFonts(families: String*): FopConfig = {
+
+    if (families.isEmpty) {
+      this
+    } else {
+      val updated = FopConfig.updatePdfFonts(xml.getOrElse(<fop version="1.0"/>)) { fonts =>
+        FopConfig.updateChild(fonts, _.label == "referenced-fonts", <referenced-fonts/>) { referencedFonts =>
+          referencedFonts.copy(child = referencedFonts.child ++
+              families.map { family => <match font-family={Pattern.quote(family)}/> })
+        }
+      }
+      new FopConfig(Some(updated), baseUri, cachesResources)
+    }
+  }
+
+  /** This configuration, with resources served from PlayFOP's resource cache
+    * or not. Opting out suits resources that change between renders without
+    * their last-modified times changing.
+    *
+    * @param enabled whether to serve resources from the cache
+    * @return the configuration
+    */
+  def withResourceCache(enabled: Boolean): FopConfig = {
+    if (enabled == cachesResources) this else new FopConfig(xml, baseUri, enabled)
+  }
+
+  override def equals(other: Any): Boolean = other match {
+    case that: FopConfig => hash == that.hash
+    case _ => false
+  }
+
+  override def hashCode(): Int = hash.hashCode()
+
+  override def toString(): String = s"FopConfig($hash)"
+}
+
+/** Companion object of the `[[FopConfig]]` class.
+  */
+object FopConfig {
+
+  private val PdfMimeType = "application/pdf"
+
+  /** Apache FOP's default configuration.
+    */
+  val Default: FopConfig = new FopConfig(None, None, true)
+
+  /** Creates a configuration from XML. Relative URIs in it are resolved
+    * against the working directory.
+    *
+    * @param xml the configuration XML (a `fop` element)
+    * @return the configuration
+    */
+  def apply(xml: Elem): FopConfig = new FopConfig(Some(xml), None, true)
+
+  /** Creates a configuration from XML. Relative URIs in it are resolved
+    * against `baseUri`.
+    *
+    * @param xml the configuration XML (a `fop` element)
+    * @param baseUri the base URI
+    * @return the configuration
+    */
+  def apply(xml: Elem, baseUri: URI): FopConfig = new FopConfig(Some(xml), Some(baseUri), true)
+
+  /** Creates a configuration from a `String` of XML. Relative URIs in it are
+    * resolved against the working directory.
+    *
+    * @param xml the configuration XML (a `fop` element)
+    * @return the configuration
+    */
+  def fromString(xml: String): FopConfig = FopConfig(XML.loadString(xml))
+
+  /** Reads a configuration from a file. Relative URIs in it are resolved
+    * against the file's directory.
+    *
+    * @param file the file
+    * @return the configuration
+    */
+  def fromFile(file: File): FopConfig = {
+    val absoluteFile = file.getAbsoluteFile()
+    FopConfig(XML.loadFile(absoluteFile), absoluteFile.getParentFile().toURI())
+  }
+
+  /** Reads a configuration from a file. Relative URIs in it are resolved
+    * against the file's directory.
+    *
+    * @param path the file's path
+    * @return the configuration
+    */
+  def fromFile(path: String): FopConfig = fromFile(new File(path))
+
+  /** Creates a configuration from a section of a Play configuration, which
+    * must contain exactly one of the following:
+    *
+    *  - `file`: the path of an Apache FOP configuration file
+    *  - `xml`: Apache FOP configuration XML
+    *  - `font-directories`: a list of directories whose fonts (including
+    *    those in subdirectories) should be available for PDF output. May be
+    *    accompanied by `auto-detect-fonts` (a boolean; default `false`) to
+    *    also make the operating system's fonts available.
+    *
+    * It may also contain:
+    *
+    *  - `font-embedding` ("full" or "subset"): how to embed fonts registered
+    *    individually (see `[[FopConfig.withFontEmbedding withFontEmbedding]]`)
+    *  - `referenced-fonts`: a list of font families to reference rather than
+    *    embed (see `[[FopConfig.withReferencedFonts withReferencedFonts]]`)
+    *  - `cache-resources` (a boolean; default `true`): whether resources are
+    *    served from PlayFOP's resource cache (see
+    *    `[[FopConfig.withResourceCache withResourceCache]]`)
+    *
+    * @param configuration the section
+    * @return the configuration
+    * @throws play.api.PlayException if the section is invalid
+    */
+  def fromConfiguration(configuration: Configuration): FopConfig = {
+
+    val file = configuration.getOptional[String]("file")
+    val xml = configuration.getOptional[String]("xml")
+    val fontDirectories = configuration.getOptional[Seq[String]]("font-directories")
+
+    if (Seq(file, xml, fontDirectories).count(_.isDefined) != 1) {
+      throw configuration.globalError("Exactly one of file, xml, or font-directories must be set!")
+    }
+
+    val fontEmbedding = configuration.getOptional[String]("font-embedding").map { mode =>
+      FontEmbedding.fromString(mode).getOrElse {
+        throw configuration.reportError("font-embedding", s"Invalid font embedding mode: $mode (expected full or subset)!")
+      }
+    }
+    val referencedFonts = configuration.getOptional[Seq[String]]("referenced-fonts").getOrElse(Nil)
+    val cacheResources = configuration.getOptional[Boolean]("cache-resources").getOrElse(true)
+
+    val fopConfig = file.map(fromFile).orElse(xml.map(fromString)).getOrElse {
+
+      val fontsConfig = FopConfig(
+        <fop version="1.0">
+          <renderers>
+            <renderer mime={PdfMimeType}>
+              <fonts>
+                {fontDirectories.get.map { directory => <directory recursive="true">{directory}</directory> }}
+              </fonts>
+            </renderer>
+          </renderers>
+        </fop>
+      )
+
+      if (configuration.getOptional[Boolean]("auto-detect-fonts").getOrElse(false)) {
+        fontsConfig.withAutoDetectFontsForPDF
+      } else {
+        fontsConfig
+      }
+    }
+
+    fontEmbedding.fold(fopConfig)(fopConfig.withFontEmbedding)
+      .withReferencedFonts(referencedFonts: _*)
+      .withResourceCache(cacheResources)
+  }
+
+  /** Creates a configuration from a section of a Typesafe Config
+    * configuration (as for Java applications). See
+    * `[[fromConfiguration(configuration:play\.api\.Configuration)* fromConfiguration]]`
+    * for the section's contents.
+    *
+    * @param config the section
+    * @return the configuration
+    * @throws play.api.PlayException if the section is invalid
+    */
+  def fromConfig(config: Config): FopConfig = fromConfiguration(Configuration(config))
+
+  private def canonicalHash(xml: Elem, baseUri: Option[URI]): String = {
+
+    val canonical = Utility.serialize(Utility.sort(Utility.trim(xml)), minimizeTags = MinimizeMode.Always).toString()
+
+    val digest = MessageDigest.getInstance("SHA-256")
+    baseUri.foreach { uri => digest.update((uri.toString() + "\n").getBytes(StandardCharsets.UTF_8)) }
+    digest.digest(canonical.getBytes(StandardCharsets.UTF_8)).map {
+      "%02x".format(_)
+    }.mkString
+  }
+
+  /** Adds an `auto-detect` element to the PDF renderer's fonts, adding the
+    * renderer, etc., as necessary.
+    */
+  private def addAutoDetectFontsForPDF(fop: Elem): Elem = {
+
+    updatePdfFonts(fop) { fonts =>
+      updateChild(fonts, _.label == "auto-detect", <auto-detect/>)(identity)
+    }
+  }
+
+  /** Applies `update` to the PDF renderer's fonts, adding the renderer, etc.,
+    * as necessary.
+    */
+  private def updatePdfFonts(fop: Elem)(update: Elem => Elem): Elem = {
+
+    def isPdfRenderer(elem: Elem) = elem.label == "renderer" && elem.attribute("mime").exists(_.text == PdfMimeType)
+
+    updateChild(fop, _.label == "renderers", <renderers/>) { renderers =>
+      updateChild(renderers, isPdfRenderer, <renderer mime={PdfMimeType}/>) { renderer =>
+        updateChild(renderer, _.label == "fonts", <fonts/>)(update)
+      }
+    }
+  }
+
+  /** Applies `update` to every child element of `parent` satisfying
+    * `isTarget`.
+    */
+  private def updateChildren(parent: Elem, isTarget: Elem => Boolean)(update: Elem => Elem): Elem = {
+
+    parent.copy(child = parent.child.map {
+      case elem: Elem if isTarget(elem) => update(elem)
+      case node => node
+    })
+  }
+
+  /** Applies `update` to the first child element of `parent` satisfying
+    * `isTarget`, or to `empty` (appended as a child) if there is none.
+    */
+  private def updateChild(parent: Elem, isTarget: Elem => Boolean, empty: => Elem)(update: Elem => Elem): Elem = {
+
+    val children = parent.child
+    val index = children.indexWhere {
+      case elem: Elem => isTarget(elem)
+      case _ => false
+    }
+
+    val updatedChildren: Seq[Node] = if (index >= 0) {
+      children.updated(index, update(children(index).asInstanceOf[Elem]))
+    } else {
+      children :+ update(empty)
+    }
+
+    parent.copy(child = updatedChildren)
+  }
+}
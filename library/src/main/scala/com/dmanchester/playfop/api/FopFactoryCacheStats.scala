@@ -0,0 +1,34 @@
+package com.dmanchester.playfop.api
+
+import scala.collection.JavaConverters.seqAsJavaListConverter
+
+/** Statistics for PlayFOP's cache of Apache FOP configurations (that is, of
+  * `FopFactory` instances), as of when they were taken.
+  *
+  * @param hits the number of lookups answered from the cache
+  * @param misses the number of lookups that created an `FopFactory`
+  * @param evictions the number of `FopFactory` instances evicted, whether for
+  *                  exceeding the cache's maximum size or for going unused
+  * @param entries statistics for each cached `FopFactory`
+  */
+case class FopFactoryCacheStats(hits: Long, misses: Long, evictions: Long,
+    entries: Seq[FopFactoryCacheEntryStats]) {
+
+  /** Returns `entries` as a Java `List`.
+    *
+    * @return statistics for each cached `FopFactory`
+    */
+  def getEntries(): java.util.List[FopFactoryCacheEntryStats] = entries.asJava
+}
+
+/** Statistics for a single cached `FopFactory`.
+  *
+  * @param configHash a hash of the `FopFactory`'s configuration, which
+  *                   identifies it in the cache
+  * @param hits the number of lookups answered with this `FopFactory`
+  * @param buildMillis how long, in milliseconds, this `FopFactory` took to
+  *                    create
+  * @param idleMillis how long, in milliseconds, since this `FopFactory` was
+  *                   last looked up
+  */
+case class FopFactoryCacheEntryStats(configHash: String, hits: Long, buildMillis: Long, idleMillis: Long)
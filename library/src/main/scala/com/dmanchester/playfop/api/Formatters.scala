@@ -1,7 +1,6 @@
 package com.dmanchester.playfop.api
 
 import scala.xml.Node
-import scala.xml.Utility
 
 import play.twirl.api.XmlFormat
 
@@ -11,8 +10,6 @@ import play.twirl.api.XmlFormat
 object Formatters {
 
   private val NBSP = "\u00A0"  // non-breaking space
-  private val CRLF = "\r\n"
-  private val LF = "\n"
 
   /** Preserves "regular" spaces (U+0020) by replacing them with no-break
     * ones (U+00A0).
@@ -30,7 +27,8 @@ object Formatters {
     * they are not at the end of `text`, represents them with an `<fo:block>`
     * that renders as a blank line.
     *
-    * Disregards newlines at the end of `text`.
+    * Disregards newlines at the end of `text`. XML-escapes `text` with
+    * `XmlFormat.escape`.
     *
     * @param text
     * @return a Twirl `[[https://www.playframework.com/documentation/2.6.x/api/scala/index.html#play.twirl.api.Xml Xml]]`
@@ -38,14 +36,15 @@ object Formatters {
     */
   def preserveNewlinesForTwirlXml(text: String): play.twirl.api.Xml = {
 
-    preserveNewlines(text, XmlFormat.empty, { (foBlocks: play.twirl.api.Xml, blockValue) =>
+    // Builds one String, rather than folding XmlFormat.fill over the blocks,
+    // but escapes each block's text with XmlFormat.escape, as it always has.
+    val out = new java.lang.StringBuilder(text.length + 32)
+
+    appendBlocks(text, out) { (start, end) =>
+      out.append(XmlFormat.escape(text.substring(start, end)).body)
+    }
 
-      XmlFormat.fill(
-          foBlocks ::
-          XmlFormat.raw("<fo:block>") ::
-          XmlFormat.escape(blockValue) ::
-          XmlFormat.raw("</fo:block>") :: Nil)
-    })
+    XmlFormat.raw(out.toString())
   }
 
   /** Preserves newlines for use in [[https://github.com/scala/scala-xml scala-xml]]
@@ -61,10 +60,14 @@ object Formatters {
     */
   def preserveNewlinesForScalaXml(text: String): Seq[Node] = {
 
-    preserveNewlines(text, Seq.empty[Node], { (foBlocks: Seq[Node], blockValue) =>
+    val foBlocks = List.newBuilder[Node]
 
-      foBlocks :+ <fo:block>{blockValue}</fo:block>
-    })
+    foreachParagraph(text) { (start, end) =>
+      val blockValue = if (start == end) NBSP else text.substring(start, end)
+      foBlocks += <fo:block>{blockValue}</fo:block>
+    }
+
+    foBlocks.result()
   }
 
   /** Preserves newlines for use in `String`-based XML. XML-escapes `text` and
@@ -79,25 +82,104 @@ object Formatters {
     * @return an XML-escaped `String` reflecting the newline wrapping
     */
   def preserveNewlinesForStringXml(text: String): String = {
+    preserveNewlinesForStringXml(text, new java.lang.StringBuilder(text.length + 32)).toString()
+  }
+
+  /** As `preserveNewlinesForStringXml(text)`, but appends the XML to `out`
+    * as it goes, rather than returning it as a `String`. Suits large `text`
+    * written straight to a `Writer`, or into a `StringBuilder` holding the
+    * rest of the document.
+    *
+    * @tparam A the type of `out`
+    * @param text
+    * @param out the `Appendable` to append to
+    * @return `out`
+    */
+  def preserveNewlinesForStringXml[A <: Appendable](text: String, out: A): A = {
+
+    appendBlocks(text, out) { (start, end) =>
+      appendEscaped(text, start, end, out)
+    }
 
-    preserveNewlines(text, "" /* empty string */, { (foBlocks: String, blockValue) =>
+    out
+  }
 
-      foBlocks + "<fo:block>" + Utility.escape(blockValue) + "</fo:block>"
-    })
+  /** Appends an `<fo:block>` to `out` for each paragraph of `text`, calling
+    * `appendText` with the start and end of each non-empty paragraph to
+    * append its escaped text.
+    */
+  private def appendBlocks(text: String, out: Appendable)(appendText: (Int, Int) => Unit): Unit = {
+
+    foreachParagraph(text) { (start, end) =>
+      out.append("<fo:block>")
+      if (start == end) {
+        out.append(NBSP)
+      } else {
+        appendText(start, end)
+      }
+      out.append("</fo:block>")
+    }
   }
 
-  private def preserveNewlines[T](text: String, emptyFOBlocks: T, appendFOBlock: ((T, String) => T)): T = {
+  /** Calls `f` with the start and end of each paragraph of `text`, as
+    * `text.split("\r\n|\n")` would return them, but in one pass.
+    */
+  private def foreachParagraph(text: String)(f: (Int, Int) => Unit): Unit = {
+
+    if (text.isEmpty()) {
+      f(0, 0)
+    } else {
+
+      // Like split, disregard trailing newlines.
+      var limit = text.length
+      while (limit > 0 && text.charAt(limit - 1) == '\n') {
+        limit -= 1
+        if (limit > 0 && text.charAt(limit - 1) == '\r') limit -= 1
+      }
+
+      var start = 0
+      while (start < limit) {
+        val newline = text.indexOf('\n', start)
+        if (newline < 0 || newline >= limit) {
+          f(start, limit)
+          start = limit
+        } else {
+          f(start, if (newline > start && text.charAt(newline - 1) == '\r') newline - 1 else newline)
+          start = newline + 1
+        }
+      }
+    }
+  }
+
+  /** Appends `text` from `start` to `end` to `out`, escaped as by
+    * `Utility.escape`: escapes `<`, `>`, `&` and `"`, and drops control
+    * characters other than tab, line feed and carriage return.
+    */
+  private def appendEscaped(text: String, start: Int, end: Int, out: Appendable): Unit = {
 
-    val paragraphs = text.split(CRLF + "|" + LF)
+    var unescapedStart = start  // start of the run of characters not yet appended
 
-    paragraphs.foldLeft(emptyFOBlocks) { (foBlocks, paragraph) =>
+    var i = start
+    while (i < end) {
 
-      val blockValue = if (paragraph.isEmpty())
-        NBSP
-      else
-        paragraph
+      val replacement = text.charAt(i) match {
+        case '<' => "&lt;"
+        case '>' => "&gt;"
+        case '&' => "&amp;"
+        case '"' => "&quot;"
+        case '\t' | '\n' | '\r' => null
+        case c if c < ' ' => ""
+        case _ => null
+      }
 
-      appendFOBlock(foBlocks, blockValue)
+      if (replacement != null) {
+        out.append(text, unescapedStart, i).append(replacement)
+        unescapedStart = i + 1
+      }
+
+      i += 1
     }
+
+    out.append(text, unescapedStart, end)
   }
 }
@@ -0,0 +1,17 @@
+package com.dmanchester.playfop.api
+
+/** Statistics for the images preloaded into Apache FOP's image caches, and
+  * for those caches' use, as of when they were taken.
+  *
+  * @param images the number of images preloaded (per output format)
+  * @param pinned the number of decoded images held in memory, across all
+  *               Apache FOP configurations
+  * @param bytes the estimated total size, in bytes, of the decoded images held
+  *              in memory
+  * @param overLimit the number of decoded images not held in memory, as they
+  *                  would have exceeded the memory limit
+  * @param hits the number of renders' image loads answered from an image cache
+  * @param misses the number of renders' image loads that required loading the
+  *               image
+  */
+case class ImageCacheStats(images: Int, pinned: Int, bytes: Long, overLimit: Int, hits: Long, misses: Long)
@@ -0,0 +1,31 @@
+package com.dmanchester.playfop.api
+
+/** A document that Apache FOP has laid out into pages, but not yet rendered
+  * to an output format (see `layOutTwirlXml` and similar methods). Rendering
+  * it (via `renderLaidOut`) skips layout, the bulk of the work of processing
+  * XSL-FO, so one instance can be rendered to several formats (for example,
+  * PDF for download and PNG for a preview) cheaply.
+  *
+  * The layout is done for one output format, whose fonts and other metrics it
+  * uses. Rendering to another format works, but the result may differ
+  * slightly from processing the XSL-FO for that format directly.
+  *
+  * Instances hold the layout in Apache FOP's intermediate format, and can be
+  * cached as long as is useful. They are immutable and thread-safe.
+  *
+  * @param intermediateFormat the layout, in Apache FOP's intermediate format
+  * @param layoutFormat the output format the layout was done for
+  * @param autoDetectFontsForPDF whether the layout auto-detected fonts
+  * @param fopConfig the Apache FOP configuration of the layout
+  * @param pageCount the number of pages in the layout
+  */
+final class LaidOutDocument private[playfop] (private[playfop] val intermediateFormat: Array[Byte],
+    val layoutFormat: String, private[playfop] val autoDetectFontsForPDF: Boolean,
+    private[playfop] val fopConfig: FopConfig, val pageCount: Int) {
+
+  /** The size, in bytes, of the layout.
+    */
+  def size: Int = intermediateFormat.length
+
+  override def toString(): String = s"LaidOutDocument($layoutFormat, $pageCount pages, $size bytes)"
+}
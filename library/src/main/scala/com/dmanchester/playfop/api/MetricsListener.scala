@@ -0,0 +1,84 @@
+package com.dmanchester.playfop.api
+
+/** Receives metrics from PlayFOP: the outcome of each render, changes in the
+  * number of renders in progress, and the use of PlayFOP's cache of Apache FOP
+  * configurations.
+  *
+  * Implement this trait to report PlayFOP's metrics to a metrics library
+  * (Micrometer, Dropwizard Metrics, etc.), and name the implementation in the
+  * `playfop.metrics.listener` setting (see PlayFOP's `reference.conf`).
+  * PlayFOP records the same metrics itself, too, without any such library;
+  * see `metrics` (`getMetrics()` in Java).
+  *
+  * Every method does nothing unless overridden. Methods are called on the
+  * rendering threads, possibly from several at once, so they should be
+  * thread-safe and quick. An exception thrown by one is logged, and does not
+  * affect the render.
+  */
+trait MetricsListener {
+
+  /** Receives a completed render.
+    *
+    * @param render the render
+    */
+  def renderCompleted(render: RenderEvent): Unit = {}
+
+  /** Receives a failed render.
+    *
+    * @param outputFormat the output format
+    * @param elapsedNanos how long, in nanoseconds, the render ran before
+    *                     failing
+    * @param failure the cause of the failure
+    */
+  def renderFailed(outputFormat: String, elapsedNanos: Long, failure: Throwable): Unit = {}
+
+  /** Receives the number of renders in progress, each time a render starts
+    * or finishes. (Renders waiting for others to finish are not included.)
+    *
+    * @param inFlight the number of renders
+    */
+  def rendersInFlightChanged(inFlight: Int): Unit = {}
+
+  /** Receives a lookup answered from PlayFOP's cache of Apache FOP
+    * configurations.
+    *
+    * @param configHash a hash of the configuration, which identifies it in
+    *                   the cache
+    */
+  def fopFactoryCacheHit(configHash: String): Unit = {}
+
+  /** Receives a lookup that created an `FopFactory`, because PlayFOP's cache
+    * of Apache FOP configurations didn't hold it.
+    *
+    * @param configHash a hash of the configuration, which identifies it in
+    *                   the cache
+    * @param buildNanos how long, in nanoseconds, the `FopFactory` took to
+    *                   create
+    */
+  def fopFactoryCreated(configHash: String, buildNanos: Long): Unit = {}
+}
+
+/** Companion object of the `[[MetricsListener]]` trait.
+  */
+object MetricsListener {
+
+  /** A listener that ignores everything it receives.
+    */
+  val NoOp: MetricsListener = new MetricsListener {}
+}
+
+/** A completed render.
+  *
+  * Laying out XSL-FO (see `layOutTwirlXml` and similar methods) counts as a
+  * render whose output format is Apache FOP's intermediate format
+  * (`application/X-fop-intermediate-format`).
+  *
+  * @param outputFormat the output format
+  * @param inputSize the size of the input, if known: the number of characters
+  *                  of XSL-FO, or the number of bytes of a laid-out document.
+  *                  It is not known for XSL-FO supplied as a Scala XML `Node`
+  *                  or generated by an XSLT stylesheet.
+  * @param outputBytes the number of bytes produced
+  * @param elapsedNanos how long, in nanoseconds, the render took
+  */
+case class RenderEvent(outputFormat: String, inputSize: Option[Long], outputBytes: Long, elapsedNanos: Long)
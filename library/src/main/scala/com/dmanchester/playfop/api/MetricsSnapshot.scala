@@ -0,0 +1,84 @@
+package com.dmanchester.playfop.api
+
+import scala.collection.JavaConverters.mapAsJavaMapConverter
+import scala.collection.JavaConverters.seqAsJavaListConverter
+
+/** PlayFOP's metrics, as of when they were taken (see `metrics`).
+  *
+  * @param renders the metrics for each output format rendered to, keyed by
+  *                format
+  * @param fopFactoryCacheHits the number of lookups answered from PlayFOP's
+  *                            cache of Apache FOP configurations
+  * @param fopFactoriesCreated the number of `FopFactory` instances created
+  * @param fopFactoryBuildMillis how long, in milliseconds, creating those
+  *                              instances took in total
+  * @param peakRendersInFlight the largest number of renders in progress at
+  *                            once
+  */
+case class MetricsSnapshot(renders: Map[String, RenderMetrics], fopFactoryCacheHits: Long, fopFactoriesCreated: Long,
+    fopFactoryBuildMillis: Long, peakRendersInFlight: Int) {
+
+  /** Returns `renders` as a Java `Map`.
+    *
+    * @return the metrics for each output format rendered to
+    */
+  def getRenders(): java.util.Map[String, RenderMetrics] = renders.asJava
+}
+
+/** Metrics for the renders to one output format.
+  *
+  * @param completed the number of renders completed
+  * @param failed the number of renders failed
+  * @param outputBytes the number of bytes the completed renders produced
+  * @param inputSize the total size of the completed renders' inputs, where
+  *                  known (see `[[RenderEvent]]`)
+  * @param totalMillis how long, in milliseconds, the completed renders took
+  *                    in total
+  * @param maxMillis how long, in milliseconds, the slowest completed render
+  *                  took
+  * @param latencies a histogram of how long the completed renders took
+  */
+case class RenderMetrics(completed: Long, failed: Long, outputBytes: Long, inputSize: Long, totalMillis: Long,
+    maxMillis: Long, latencies: Seq[LatencyBucket]) {
+
+  /** How long, in milliseconds, the completed renders took on average.
+    *
+    * @return the time, or 0 if none completed
+    */
+  def meanMillis: Double = if (completed == 0) 0 else totalMillis.toDouble / completed
+
+  /** Estimates how long, in milliseconds, the given share of completed
+    * renders took at most, from `latencies`: the upper bound of the bucket in
+    * which that share is reached (or `maxMillis`, if lower).
+    *
+    * @param percentile the share, as a percentage (for example, 99)
+    * @return the time, or 0 if none completed
+    */
+  def percentileMillis(percentile: Double): Long = {
+
+    require(percentile >= 0 && percentile <= 100, s"percentile must be from 0 to 100! (was $percentile)")
+
+    val threshold = math.ceil(completed * percentile / 100).toLong
+    val cumulativeCounts = latencies.scanLeft(0L)(_ + _.count).tail
+
+    latencies.zip(cumulativeCounts).collectFirst {
+      case (bucket, cumulativeCount) if cumulativeCount >= threshold && cumulativeCount > 0 =>
+        math.min(bucket.upperBoundMillis, maxMillis)
+    }.getOrElse(0)
+  }
+
+  /** Returns `latencies` as a Java `List`.
+    *
+    * @return a histogram of how long the completed renders took
+    */
+  def getLatencies(): java.util.List[LatencyBucket] = latencies.asJava
+}
+
+/** A bucket of a latency histogram: the number of renders that took longer
+  * than the previous bucket's upper bound, but no longer than this one's.
+  *
+  * @param upperBoundMillis the upper bound, in milliseconds (`Long.MaxValue`
+  *                         for the last bucket)
+  * @param count the number of renders
+  */
+case class LatencyBucket(upperBoundMillis: Long, count: Long)
@@ -0,0 +1,19 @@
+package com.dmanchester.playfop.api
+
+/** Statistics for PlayFOP's cache of rendered output, as of when they were
+  * taken. Only lookups for renders given a cache key are counted.
+  *
+  * @param memoryHits the number of lookups answered from memory
+  * @param diskHits the number of lookups answered from disk
+  * @param misses the number of lookups that required rendering
+  * @param memoryEntries the number of outputs held in memory
+  * @param memoryBytes the total size, in bytes, of the outputs held in memory
+  */
+case class OutputCacheStats(memoryHits: Long, diskHits: Long, misses: Long, memoryEntries: Int, memoryBytes: Long) {
+
+  /** The number of lookups answered from memory or disk.
+    *
+    * @return the number of lookups
+    */
+  def hits: Long = memoryHits + diskHits
+}
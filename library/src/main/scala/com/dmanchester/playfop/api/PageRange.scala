@@ -0,0 +1,29 @@
+package com.dmanchester.playfop.api
+
+/** A range of pages of a document, for previews (see `previewTwirlXml` and
+  * similar methods).
+  *
+  * @param first the first page in the range (1-based)
+  * @param last the last page in the range (1-based, inclusive)
+  */
+case class PageRange(first: Int, last: Int) {
+
+  require(first >= 1, s"first must be at least 1! (was $first)")
+  require(last >= first, s"last must be at least first! (was $last; first was $first)")
+}
+
+/** Companion object of the `[[PageRange]]` class.
+  */
+object PageRange {
+
+  /** The first page of a document.
+    */
+  val FirstPage: PageRange = PageRange(1, 1)
+
+  /** A single page of a document.
+    *
+    * @param page the page (1-based)
+    * @return the range
+    */
+  def single(page: Int): PageRange = PageRange(page, page)
+}
@@ -0,0 +1,14 @@
+package com.dmanchester.playfop.api
+
+import java.util.concurrent.RejectedExecutionException
+
+/** Thrown when PlayFOP declines to process XSL-FO because it is saturated:
+  * too many renders are in progress or waiting, or a render waited too long
+  * for others to finish.
+  *
+  * Callers may respond by retrying later (for example, with an HTTP 503
+  * response).
+  *
+  * @param message the detail message
+  */
+class RenderRejectedException(message: String) extends RejectedExecutionException(message)
@@ -0,0 +1,50 @@
+package com.dmanchester.playfop.api
+
+import java.util.Locale
+import java.util.concurrent.TimeUnit
+
+/** The outcome of processing XSL-FO (see `processTwirlXmlAsResult` and
+  * similar methods): the output, and how the work of producing it was spent.
+  *
+  * @param output the Apache FOP output
+  * @param pageCount the number of pages in the output (0 if the output format
+  *                  doesn't report pages)
+  * @param timings how long each phase of processing took
+  */
+final class RenderResult private[playfop] (val output: Array[Byte], val pageCount: Int, val timings: RenderTimings) {
+
+  override def toString(): String = s"RenderResult(${output.length} bytes, $pageCount pages, $timings)"
+}
+
+/** How long, in nanoseconds, each phase of processing XSL-FO took.
+  *
+  * Apache FOP streams a document through the phases, laying out each page
+  * sequence as soon as it is read, and writing each page as soon as it is laid
+  * out; each phase's time excludes the time spent in the others. For output
+  * formats not rendered via Apache FOP's intermediate format (such as RTF),
+  * layout and output are included in `foTreeNanos`.
+  *
+  * @param setupNanos obtaining Apache FOP's configuration (an `FopFactory`)
+  *                   and preparing to process
+  * @param parsingNanos parsing the XSL-FO (or, for a Scala XML `Node`,
+  *                     traversing it; or, for XSLT processing, transforming
+  *                     the input)
+  * @param foTreeNanos building Apache FOP's tree of formatting objects from
+  *                    the XSL-FO
+  * @param layoutNanos laying out the formatting objects into pages
+  * @param outputNanos rendering the pages to the output format and writing
+  *                    them
+  * @param totalNanos processing overall, including time in none of the
+  *                   phases above
+  */
+case class RenderTimings(setupNanos: Long, parsingNanos: Long, foTreeNanos: Long, layoutNanos: Long,
+    outputNanos: Long, totalNanos: Long) {
+
+  override def toString(): String = {
+
+    def millis(nanos: Long) = "%.1f ms".formatLocal(Locale.ROOT, nanos.toDouble / TimeUnit.MILLISECONDS.toNanos(1))
+
+    s"setup ${millis(setupNanos)}, parsing ${millis(parsingNanos)}, FO tree ${millis(foTreeNanos)}, " +
+        s"layout ${millis(layoutNanos)}, output ${millis(outputNanos)}, total ${millis(totalNanos)}"
+  }
+}
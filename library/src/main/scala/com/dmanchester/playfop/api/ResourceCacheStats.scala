@@ -0,0 +1,12 @@
+package com.dmanchester.playfop.api
+
+/** Statistics for PlayFOP's cache of the resources (images, fonts, etc.) that
+  * Apache FOP reads while rendering, as of when they were taken.
+  *
+  * @param hits the number of reads answered from the cache
+  * @param misses the number of reads of cacheable resources that required
+  *               reading them from their source
+  * @param entries the number of resources cached
+  * @param bytes the total size, in bytes, of the resources cached
+  */
+case class ResourceCacheStats(hits: Long, misses: Long, entries: Int, bytes: Long)
@@ -1,31 +1,45 @@
 package com.dmanchester.playfop.api
 
+import java.math.RoundingMode
+
 /** Formats values with a unit of measure. Output is intended for use with
   * Apache FOP.
   *
+  * Values are formatted as `String.format("%.nf", ...)` would format them in
+  * the root locale, rounding half up: whatever the JVM's default locale, the
+  * decimal separator is "`.`" (as Apache FOP requires), and there is no
+  * grouping separator. Unlike `String.format`, formatting parses no format
+  * string, and, for values of typical magnitude, uses integer arithmetic.
+  *
   * Instances of this class are thread-safe.
+  *
+  * @param label units label to append when formatting a value
+  * @param precision number of decimal places to display when formatting a
+  *                  value
+  * @throws `IllegalArgumentException` if `precision` is negative
   */
-class Units private (formatString: String) {
+class Units(label: String, precision: Int) {
 
-  /** Creates a new instance.
-    *
-    * @param label units label to append when formatting a value
-    * @param precision number of decimal places to display when formatting a
-    *                  value
-    * @throws `IllegalArgumentException` if `precision` is negative
-    */
-  def this(label: String, precision: Int) = {
-    this(Units.formatString(label, precision))
+  if (precision < 0) {
+    throw new IllegalArgumentException(s"precision must be non-negative! (was $precision)")
   }
 
+  private val scale = math.pow(10, precision)  // exact for the precisions formatted with integer arithmetic
+
+  private val scaleLong = if (precision <= Units.MaxFastPrecision) scale.toLong else 0L  // 0: don't use integer arithmetic
+
   /** Formats `value`, displaying it with `precision` decimal places and
     * appending `label` (e.g., "`1.2cm`").
     *
     * @param value value to format
     * @return `value`, formatted
     */
-def format(value: Double): String = {
-    formatString.format(value)
+  def format(value: Double): String = {
+
+    val builder = Units.Builder.get()
+    builder.setLength(0)
+    appendTo(value, builder)
+    builder.toString()
   }
 
   /** Formats `value`, displaying it with `precision` decimal places and
@@ -37,6 +51,95 @@ def format(value: Double): String = {
   def format(value: Int): String = {
     format(value.toDouble)
   }
+
+  /** Formats `value` as `format(value)` does, but appends the result to
+    * `out`, rather than returning it. When formatting many values into one
+    * document, appending to the `StringBuilder` (or `Writer`) that holds the
+    * document avoids a `String` per value.
+    *
+    * @tparam A the type of `out`
+    * @param value value to format
+    * @param out the `Appendable` to append to
+    * @return `out`
+    */
+  def formatInto[A <: Appendable](value: Double, out: A): A = {
+
+    out match {
+      case builder: java.lang.StringBuilder =>
+        appendTo(value, builder)
+      case _ =>
+        val builder = Units.Builder.get()
+        builder.setLength(0)
+        appendTo(value, builder)
+        out.append(builder)
+    }
+
+    out
+  }
+
+  /** Formats `value` as `format(value)` does, but appends the result to
+    * `out`, rather than returning it.
+    *
+    * @tparam A the type of `out`
+    * @param value value to format
+    * @param out the `Appendable` to append to
+    * @return `out`
+    */
+  def formatInto[A <: Appendable](value: Int, out: A): A = {
+    formatInto(value.toDouble, out)
+  }
+
+  private def appendTo(value: Double, builder: java.lang.StringBuilder): Unit = {
+
+    if (value.isNaN() || value.isInfinite()) {
+      builder.append(value)  // "NaN", "Infinity" or "-Infinity", as String.format has it
+    } else {
+
+      // As String.format does, keep the sign of a negative value that rounds
+      // to zero (and of negative zero).
+      if (value < 0 || 1 / value < 0) builder.append('-')
+
+      val magnitude = math.abs(value)
+      val scaled = magnitude * scale
+      val whole = math.floor(scaled)
+      val fraction = scaled - whole
+
+      // String.format rounds the shortest decimal representation of the
+      // value (as from Double.toString), not its binary one; scaled can
+      // differ from that representation by a few ulps. Away from a tie, and
+      // while an ulp of scaled is far smaller than the tolerance, the two
+      // round alike.
+      if (scaleLong > 0 && scaled < Units.MaxFastScaled && math.abs(fraction - 0.5) > Units.TieTolerance) {
+        appendFixed(if (fraction > 0.5) whole.toLong + 1 else whole.toLong, builder)
+      } else {
+        builder.append(java.math.BigDecimal.valueOf(magnitude).setScale(precision, RoundingMode.HALF_UP).toPlainString())
+      }
+    }
+
+    builder.append(label)
+  }
+
+  /** Appends `scaled` (the value times 10 to the `precision`) with a decimal
+    * point `precision` places from the right.
+    */
+  private def appendFixed(scaled: Long, builder: java.lang.StringBuilder): Unit = {
+
+    builder.append(scaled / scaleLong)
+
+    if (precision > 0) {
+
+      builder.append('.')
+
+      val decimals = scaled % scaleLong
+      var place = scaleLong / 10
+      while (place > 1 && decimals < place) {  // leading zeros
+        builder.append('0')
+        place /= 10
+      }
+
+      builder.append(decimals)
+    }
+  }
 }
 
 /** Companion object of the `[[Units]]` class. Consists of private members for
@@ -44,13 +147,19 @@ def format(value: Double): String = {
   */
 object Units {
 
-  private def formatString(label: String, precision: Int): String = {
+  /** The largest precision formatted with integer arithmetic.
+    */
+  private val MaxFastPrecision = 9
 
-    if (precision < 0) {
-      throw new IllegalArgumentException(s"precision must be non-negative! (was $precision)")
-    }
+  /** The bound below which a scaled value is formatted with integer
+    * arithmetic. An ulp of a `Double` this large is about 1e-7.
+    */
+  private val MaxFastScaled = 1e9
 
-    val labelEscaped = label.replace("%", "%%")
-    s"%.${precision}f${labelEscaped}"  // create a format string like "%.1fmm"
-  }
-}
\ No newline at end of file
+  /** How far from a tie the fraction of a scaled value must be for it to be
+    * rounded with integer arithmetic.
+    */
+  private val TieTolerance = 1e-6
+
+  private val Builder = ThreadLocal.withInitial[java.lang.StringBuilder](() => new java.lang.StringBuilder(32))
+}
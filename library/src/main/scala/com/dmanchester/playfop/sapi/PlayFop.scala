@@ -1,15 +1,44 @@
 package com.dmanchester.playfop.sapi
 
 import java.io.OutputStream
+import java.net.URL
 
+import scala.concurrent.Future
 import scala.xml.Node
 
+import akka.NotUsed
+import akka.stream.scaladsl.Source
+import akka.util.ByteString
+
 import org.apache.fop.apps.FOUserAgent
 import org.apache.fop.apps.Fop
 
 import play.twirl.api.Xml
 
+import com.dmanchester.playfop.api.BatchSink
+import com.dmanchester.playfop.api.BatchStats
+import com.dmanchester.playfop.api.FopConfig
+import com.dmanchester.playfop.api.FopFactoryCacheStats
+import com.dmanchester.playfop.api.ImageCacheStats
+import com.dmanchester.playfop.api.LaidOutDocument
+import com.dmanchester.playfop.api.MetricsSnapshot
+import com.dmanchester.playfop.api.OutputCacheStats
+import com.dmanchester.playfop.api.PageRange
+import com.dmanchester.playfop.api.RenderResult
+import com.dmanchester.playfop.api.ResourceCacheStats
+
 /** The primary entry point into PlayFOP for Scala applications.
+  *
+  * All `process...` methods are subject to admission control (see
+  * `playfop.render-gate` in PlayFOP's `reference.conf`). When too many renders
+  * are in progress or waiting, they throw (or fail with) a
+  * `[[com.dmanchester.playfop.api.RenderRejectedException RenderRejectedException]]`.
+  *
+  * Methods accepting a `fopConfig` apply that Apache FOP configuration (for
+  * example, one registering a directory of fonts) in place of Apache FOP's
+  * default one. Font auto-detection, if requested, is added to it. The
+  * `FopFactory` for each configuration is created once and cached; see
+  * `[[com.dmanchester.playfop.api.FopConfig FopConfig]]`.
   */
 trait PlayFop {
 
@@ -24,11 +53,20 @@ trait PlayFop {
     * @param outputFormat the format to generate
     * @param autoDetectFontsForPDF whether to auto-detect fonts
     * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @param cacheKey if PlayFOP's output cache is enabled, a key standing for
+    *                 the `foUserAgentBlock` settings (and anything else besides
+    *                 the other arguments that affects the output), under
+    *                 which to cache the output; see `playfop.output-cache` in
+    *                 PlayFOP's `reference.conf`. If `None`, the output is not
+    *                 cached.
     * @return the Apache FOP output
     */
   def processTwirlXml[U](xslfo: Xml, outputFormat: String,
       autoDetectFontsForPDF: Boolean = false,
-      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => }): Array[Byte]
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Array[Byte]
 
   /** Processes XSL-FO provided as a [[https://github.com/scala/scala-xml scala-xml]]
     * `Node`. Optionally auto-detects fonts (for PDF output) and/or applies a
@@ -40,11 +78,20 @@ trait PlayFop {
     * @param outputFormat the format to generate
     * @param autoDetectFontsForPDF whether to auto-detect fonts
     * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @param cacheKey if PlayFOP's output cache is enabled, a key standing for
+    *                 the `foUserAgentBlock` settings (and anything else besides
+    *                 the other arguments that affects the output), under
+    *                 which to cache the output; see `playfop.output-cache` in
+    *                 PlayFOP's `reference.conf`. If `None`, the output is not
+    *                 cached.
     * @return the Apache FOP output
     */
   def processScalaXml[U](xslfo: Node, outputFormat: String,
       autoDetectFontsForPDF: Boolean = false,
-      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => }): Array[Byte]
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Array[Byte]
 
   /** Processes XSL-FO provided as a `String` of XML. Optionally auto-detects
     * fonts (for PDF output) and/or applies a code block to the `FOUserAgent`.
@@ -56,12 +103,820 @@ trait PlayFop {
     * @param outputFormat the format to generate
     * @param autoDetectFontsForPDF whether to auto-detect fonts
     * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @param cacheKey if PlayFOP's output cache is enabled, a key standing for
+    *                 the `foUserAgentBlock` settings (and anything else besides
+    *                 the other arguments that affects the output), under
+    *                 which to cache the output; see `playfop.output-cache` in
+    *                 PlayFOP's `reference.conf`. If `None`, the output is not
+    *                 cached.
     * @return the Apache FOP output
     */
   def processStringXml[U](xslfo: String, outputFormat: String,
       autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Array[Byte]
+
+  /** Processes XSL-FO generated from a [[https://www.playframework.com/documentation/2.6.x/ScalaTemplates Twirl]]
+    * XML template, writing the output to `output` as it is generated (rather
+    * than buffering it in memory). Optionally auto-detects fonts (for PDF
+    * output) and/or applies a code block to the `FOUserAgent`.
+    *
+    * `output` is flushed, but not closed, once processing completes.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param output the `OutputStream` to which to write the output
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    */
+  def processTwirlXmlToStream[U](xslfo: Xml, outputFormat: String, output: OutputStream,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit
+
+  /** Processes XSL-FO provided as a [[https://github.com/scala/scala-xml scala-xml]]
+    * `Node`, writing the output to `output` as it is generated (rather than
+    * buffering it in memory). Optionally auto-detects fonts (for PDF output)
+    * and/or applies a code block to the `FOUserAgent`.
+    *
+    * `output` is flushed, but not closed, once processing completes.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param output the `OutputStream` to which to write the output
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    */
+  def processScalaXmlToStream[U](xslfo: Node, outputFormat: String, output: OutputStream,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit
+
+  /** Processes XSL-FO provided as a `String` of XML, writing the output to
+    * `output` as it is generated (rather than buffering it in memory).
+    * Optionally auto-detects fonts (for PDF output) and/or applies a code block
+    * to the `FOUserAgent`.
+    *
+    * `output` is flushed, but not closed, once processing completes.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param output the `OutputStream` to which to write the output
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    */
+  def processStringXmlToStream[U](xslfo: String, outputFormat: String, output: OutputStream,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit
+
+  /** Returns an Akka Streams `Source` that, when materialized, processes
+    * XSL-FO generated from a [[https://www.playframework.com/documentation/2.6.x/ScalaTemplates Twirl]]
+    * XML template and emits the output as it is generated. Suitable for
+    * passing to `Ok.chunked(...)`. Optionally auto-detects fonts (for PDF
+    * output) and/or applies a code block to the `FOUserAgent`.
+    *
+    * Processing runs on PlayFOP's rendering thread pool (see
+    * `playfop.render-pool` in PlayFOP's `reference.conf`). If processing fails,
+    * or PlayFOP is saturated, so does the `Source`.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return a `Source` of the Apache FOP output
+    */
+  def processTwirlXmlAsSource[U](xslfo: Xml, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Source[ByteString, NotUsed]
+
+  /** Returns an Akka Streams `Source` that, when materialized, processes
+    * XSL-FO provided as a [[https://github.com/scala/scala-xml scala-xml]]
+    * `Node` and emits the output as it is generated. Suitable for passing to
+    * `Ok.chunked(...)`. Optionally auto-detects fonts (for PDF output) and/or
+    * applies a code block to the `FOUserAgent`.
+    *
+    * Processing runs on PlayFOP's rendering thread pool (see
+    * `playfop.render-pool` in PlayFOP's `reference.conf`). If processing fails,
+    * or PlayFOP is saturated, so does the `Source`.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return a `Source` of the Apache FOP output
+    */
+  def processScalaXmlAsSource[U](xslfo: Node, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Source[ByteString, NotUsed]
+
+  /** Returns an Akka Streams `Source` that, when materialized, processes
+    * XSL-FO provided as a `String` of XML and emits the output as it is
+    * generated. Suitable for passing to `Ok.chunked(...)`. Optionally
+    * auto-detects fonts (for PDF output) and/or applies a code block to the
+    * `FOUserAgent`.
+    *
+    * Processing runs on PlayFOP's rendering thread pool (see
+    * `playfop.render-pool` in PlayFOP's `reference.conf`). If processing fails,
+    * or PlayFOP is saturated, so does the `Source`.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return a `Source` of the Apache FOP output
+    */
+  def processStringXmlAsSource[U](xslfo: String, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Source[ByteString, NotUsed]
+
+  /** Asynchronously processes XSL-FO generated from a [[https://www.playframework.com/documentation/2.6.x/ScalaTemplates Twirl]]
+    * XML template. Optionally auto-detects fonts (for PDF output) and/or
+    * applies a code block to the `FOUserAgent`. Generates output in the
+    * specified format.
+    *
+    * Processing runs on PlayFOP's rendering thread pool (see
+    * `playfop.render-pool` in PlayFOP's `reference.conf`), not on the calling
+    * thread.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @param cacheKey if PlayFOP's output cache is enabled, a key standing for
+    *                 the `foUserAgentBlock` settings (and anything else besides
+    *                 the other arguments that affects the output), under
+    *                 which to cache the output; see `playfop.output-cache` in
+    *                 PlayFOP's `reference.conf`. If `None`, the output is not
+    *                 cached.
+    * @return a `Future` of the Apache FOP output. If PlayFOP is saturated,
+    *         the `Future` fails with a
+    *         `[[com.dmanchester.playfop.api.RenderRejectedException RenderRejectedException]]`.
+    */
+  def processTwirlXmlAsync[U](xslfo: Xml, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Future[Array[Byte]]
+
+  /** Asynchronously processes XSL-FO provided as a [[https://github.com/scala/scala-xml scala-xml]]
+    * `Node`. Optionally auto-detects fonts (for PDF output) and/or applies a
+    * code block to the `FOUserAgent`. Generates output in the specified format.
+    *
+    * Processing runs on PlayFOP's rendering thread pool (see
+    * `playfop.render-pool` in PlayFOP's `reference.conf`), not on the calling
+    * thread.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @param cacheKey if PlayFOP's output cache is enabled, a key standing for
+    *                 the `foUserAgentBlock` settings (and anything else besides
+    *                 the other arguments that affects the output), under
+    *                 which to cache the output; see `playfop.output-cache` in
+    *                 PlayFOP's `reference.conf`. If `None`, the output is not
+    *                 cached.
+    * @return a `Future` of the Apache FOP output. If PlayFOP is saturated,
+    *         the `Future` fails with a
+    *         `[[com.dmanchester.playfop.api.RenderRejectedException RenderRejectedException]]`.
+    */
+  def processScalaXmlAsync[U](xslfo: Node, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Future[Array[Byte]]
+
+  /** Asynchronously processes XSL-FO provided as a `String` of XML. Optionally
+    * auto-detects fonts (for PDF output) and/or applies a code block to the
+    * `FOUserAgent`. Generates output in the specified format.
+    *
+    * Processing runs on PlayFOP's rendering thread pool (see
+    * `playfop.render-pool` in PlayFOP's `reference.conf`), not on the calling
+    * thread.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @param cacheKey if PlayFOP's output cache is enabled, a key standing for
+    *                 the `foUserAgentBlock` settings (and anything else besides
+    *                 the other arguments that affects the output), under
+    *                 which to cache the output; see `playfop.output-cache` in
+    *                 PlayFOP's `reference.conf`. If `None`, the output is not
+    *                 cached.
+    * @return a `Future` of the Apache FOP output. If PlayFOP is saturated,
+    *         the `Future` fails with a
+    *         `[[com.dmanchester.playfop.api.RenderRejectedException RenderRejectedException]]`.
+    */
+  def processStringXmlAsync[U](xslfo: String, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Future[Array[Byte]]
+
+  /** Processes XSL-FO provided as a Twirl `Xml` object, returning the output
+    * along with its page count and how long each phase of processing took
+    * (parsing, building Apache FOP's tree of formatting objects, layout, and
+    * output), to find where the time for slow documents goes. Optionally
+    * auto-detects fonts (for PDF output) and/or applies a code block to the
+    * `FOUserAgent`. Generates output in the specified format.
+    *
+    * Timing the phases adds a small cost to processing. The output cache is
+    * not used.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the Apache FOP output, page count, and timings
+    */
+  def processTwirlXmlAsResult[U](xslfo: Xml, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): RenderResult
+
+  /** Processes XSL-FO provided as a Scala XML `Node`, returning the output
+    * along with its page count and how long each phase of processing took
+    * (parsing, building Apache FOP's tree of formatting objects, layout, and
+    * output), to find where the time for slow documents goes. Optionally
+    * auto-detects fonts (for PDF output) and/or applies a code block to the
+    * `FOUserAgent`. Generates output in the specified format.
+    *
+    * Timing the phases adds a small cost to processing. The output cache is
+    * not used.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the Apache FOP output, page count, and timings
+    */
+  def processScalaXmlAsResult[U](xslfo: Node, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): RenderResult
+
+  /** Processes XSL-FO provided as a `String` of XML, returning the output along
+    * with its page count and how long each phase of processing took (parsing,
+    * building Apache FOP's tree of formatting objects, layout, and output), to
+    * find where the time for slow documents goes. Optionally auto-detects fonts
+    * (for PDF output) and/or applies a code block to the `FOUserAgent`.
+    * Generates output in the specified format.
+    *
+    * Timing the phases adds a small cost to processing. The output cache is
+    * not used.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the Apache FOP output, page count, and timings
+    */
+  def processStringXmlAsResult[U](xslfo: String, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): RenderResult
+
+  /** Processes XSL-FO provided as a JAXP `Source` (for example, a
+    * `DOMSource` holding a DOM tree, a `SAXSource` whose `XMLReader`
+    * generates SAX events, or a `StAXSource`). The XSL-FO is fed to Apache
+    * FOP directly, rather than first being serialized. Optionally
+    * auto-detects fonts (for PDF output) and/or applies a code block to the
+    * `FOUserAgent`. Generates output in the specified format.
+    *
+    * A DOM tree may be built with or without namespace awareness; comments in
+    * a `DOMSource` or `StAXSource` are ignored. A `Source` can typically be
+    * read only once. The output cache is not used.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the Apache FOP output
+    */
+  def processXmlSource[U](xslfo: javax.xml.transform.Source, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Array[Byte]
+
+  /** Processes XSL-FO provided as a JAXP `Source`, writing the output to
+    * `output` as it is generated (rather than buffering it in memory). The
+    * XSL-FO is fed to Apache FOP directly, rather than first being
+    * serialized. Optionally auto-detects fonts (for PDF output) and/or
+    * applies a code block to the `FOUserAgent`.
+    *
+    * See `[[processXmlSource]]` for the kinds of `Source` supported.
+    * `output` is flushed, but not closed, once processing completes.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO to process
+    * @param outputFormat the format to generate
+    * @param output the `OutputStream` to which to write the output
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    */
+  def processXmlSourceToStream[U](xslfo: javax.xml.transform.Source, outputFormat: String, output: OutputStream,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit
+
+  /** Processes XSL-FO generated by applying an XSLT stylesheet to XML data.
+    * The stylesheet's output is fed to Apache FOP as it is generated, rather
+    * than first being serialized. Optionally auto-detects fonts (for PDF
+    * output) and/or applies a code block to the `FOUserAgent`. Generates
+    * output in the specified format.
+    *
+    * Stylesheets are compiled once and cached (see `playfop.templates-cache`
+    * in PlayFOP's `reference.conf`). Relative URIs in a stylesheet (for
+    * example, in `xsl:include`) are resolved against its URL.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param data the XML data to transform
+    * @param stylesheet the URL of the XSLT stylesheet (for example, from
+    *                   `getClass.getResource(...)`)
+    * @param outputFormat the format to generate
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the Apache FOP output
+    */
+  def processWithXslt[U](data: javax.xml.transform.Source, stylesheet: URL, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Array[Byte]
+
+  /** Processes XSL-FO generated by applying an XSLT stylesheet to XML data,
+    * writing the output to `output` as it is generated (rather than buffering
+    * it in memory). The stylesheet's output is fed to Apache FOP as it is
+    * generated, rather than first being serialized. Optionally auto-detects
+    * fonts (for PDF output) and/or applies a code block to the `FOUserAgent`.
+    *
+    * Stylesheets are compiled once and cached (see `playfop.templates-cache`
+    * in PlayFOP's `reference.conf`). Relative URIs in a stylesheet (for
+    * example, in `xsl:include`) are resolved against its URL.
+    *
+    * `output` is flushed, but not closed, once processing completes.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param data the XML data to transform
+    * @param stylesheet the URL of the XSLT stylesheet (for example, from
+    *                   `getClass.getResource(...)`)
+    * @param outputFormat the format to generate
+    * @param output the `OutputStream` to which to write the output
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    */
+  def processWithXsltToStream[U](data: javax.xml.transform.Source, stylesheet: URL, outputFormat: String,
+      output: OutputStream,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit
+
+  /** Processes a batch of documents, each from a [[https://www.playframework.com/documentation/2.6.x/ScalaTemplates Twirl]]
+    * XML template, rendering several at once. Optionally auto-detects fonts
+    * (for PDF output) and/or applies a code block to each `FOUserAgent`.
+    * Generates output in the specified format, delivering each document's
+    * output (or failure) to `sink` as it completes. Blocks until all
+    * documents are done.
+    *
+    * Documents are rendered on `parallelism` threads dedicated to the batch,
+    * each taking the next input from `inputs` (and calling `xslfo` for it)
+    * once it has delivered the previous document. The Apache FOP
+    * configuration is looked up once for the whole batch. Each document
+    * takes a place in the render gate (see `playfop.render-gate` in PlayFOP's
+    * `reference.conf`), as any other render does. While the gate is full,
+    * documents wait for a place however long it takes, and however many
+    * renders are waiting; they are not rejected.
+    *
+    * A document that fails to render does not stop the batch; see
+    * `[[com.dmanchester.playfop.api.BatchSink BatchSink]]`. To batch XSL-FO
+    * from a `String` or `Node`, wrap it with `XmlFormat.raw`.
+    *
+    * @tparam K the type of the keys identifying documents
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param inputs the keys of the documents to render
+    * @param xslfo produces the XSL-FO for a key
+    * @param outputFormat the format to generate
+    * @param sink the recipient of each document's output or failure
+    * @param parallelism the number of documents to render at once. 0 means one
+    *                    per available processor.
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for each `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return statistics for the batch
+    */
+  def processBatch[K, U](inputs: Iterator[K], xslfo: K => Xml, outputFormat: String, sink: BatchSink[K],
+      parallelism: Int = 0,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): BatchStats
+
+  /** Processes XSL-FO from several [[https://www.playframework.com/documentation/2.6.x/ScalaTemplates Twirl]]
+    * XML templates into one document, laying out several parts at once.
+    * Optionally auto-detects fonts (for PDF output) and/or applies a code
+    * block to each `FOUserAgent`. Generates output in the specified format.
+    *
+    * Each part is a complete XSL-FO document. The parts are laid out
+    * independently, on `parallelism` threads dedicated to the call, into
+    * Apache FOP's intermediate format; the results are then concatenated, in
+    * order, into the output. This spreads the layout of a large document
+    * (for example, a sheet of many pages of labels) across processors, where
+    * a single XSL-FO document would be laid out on one.
+    *
+    * Because the parts are laid out independently, page numbers and
+    * cross-references do not span them. Only output formats that Apache FOP
+    * renders via its intermediate format (among them PDF, PostScript, PNG, and
+    * TIFF) are supported. If any part fails to lay out, the first such
+    * part's exception is thrown.
+    *
+    * The document is admitted to the render gate (see `playfop.render-gate`
+    * in PlayFOP's `reference.conf`) once, before any part is laid out, and
+    * may be rejected then. Once admitted, its parts and their concatenation
+    * each wait for a place in the gate, however long it takes; they are not
+    * rejected.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param parts the XSL-FO of each part, in order
+    * @param outputFormat the format to generate
+    * @param parallelism the number of parts to lay out at once. 0 means one
+    *                    per available processor.
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for each `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the output
+    */
+  def processTwirlXmlConcatenated[U](parts: Seq[Xml], outputFormat: String,
+      parallelism: Int = 0,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Array[Byte]
+
+  /** Processes XSL-FO from several [[https://www.playframework.com/documentation/2.6.x/ScalaTemplates Twirl]]
+    * XML templates into one document, as
+    * `[[processTwirlXmlConcatenated processTwirlXmlConcatenated]]` does, but
+    * writes the output to `output`, rather than returning it.
+    *
+    * `output` is flushed, but not closed, once processing completes.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param parts the XSL-FO of each part, in order
+    * @param outputFormat the format to generate
+    * @param output the `OutputStream` to which to write the output
+    * @param parallelism the number of parts to lay out at once. 0 means one
+    *                    per available processor.
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for each `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    */
+  def processTwirlXmlConcatenatedToStream[U](parts: Seq[Xml], outputFormat: String, output: OutputStream,
+      parallelism: Int = 0,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit
+
+  /** Lays out XSL-FO from a [[https://www.playframework.com/documentation/2.6.x/ScalaTemplates Twirl]]
+    * XML template for the specified output format, but does
+    * not render it. Optionally auto-detects fonts (for PDF output) and/or
+    * applies a code block to the `FOUserAgent`.
+    *
+    * The returned document can be rendered, to the layout's format or
+    * others, via `[[renderLaidOut renderLaidOut]]`, without laying it out
+    * again; see `[[com.dmanchester.playfop.api.LaidOutDocument LaidOutDocument]]`.
+    * Only output formats that Apache FOP renders via its intermediate format
+    * (among them PDF, PostScript, PNG, and TIFF) are supported.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO
+    * @param outputFormat the format to lay out for
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the laid-out document
+    */
+  def layOutTwirlXml[U](xslfo: Xml, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): LaidOutDocument
+
+  /** Lays out XSL-FO from a
+    * [[https://github.com/scala/scala-xml scala-xml]] `Node` for the specified output format, but does
+    * not render it. Optionally auto-detects fonts (for PDF output) and/or
+    * applies a code block to the `FOUserAgent`.
+    *
+    * The returned document can be rendered, to the layout's format or
+    * others, via `[[renderLaidOut renderLaidOut]]`, without laying it out
+    * again; see `[[com.dmanchester.playfop.api.LaidOutDocument LaidOutDocument]]`.
+    * Only output formats that Apache FOP renders via its intermediate format
+    * (among them PDF, PostScript, PNG, and TIFF) are supported.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO
+    * @param outputFormat the format to lay out for
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the laid-out document
+    */
+  def layOutScalaXml[U](xslfo: Node, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): LaidOutDocument
+
+  /** Lays out XSL-FO from a `String` for the specified output format, but does
+    * not render it. Optionally auto-detects fonts (for PDF output) and/or
+    * applies a code block to the `FOUserAgent`.
+    *
+    * The returned document can be rendered, to the layout's format or
+    * others, via `[[renderLaidOut renderLaidOut]]`, without laying it out
+    * again; see `[[com.dmanchester.playfop.api.LaidOutDocument LaidOutDocument]]`.
+    * Only output formats that Apache FOP renders via its intermediate format
+    * (among them PDF, PostScript, PNG, and TIFF) are supported.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO
+    * @param outputFormat the format to lay out for
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the laid-out document
+    */
+  def layOutStringXml[U](xslfo: String, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): LaidOutDocument
+
+  /** Renders a laid-out document in the specified output format. Optionally
+    * applies a code block to the `FOUserAgent`. The document's Apache FOP
+    * configuration (and font auto-detection) are used.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param document the document
+    * @param outputFormat the format to generate
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    * @return the output
+    */
+  def renderLaidOut[U](document: LaidOutDocument, outputFormat: String,
       foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => }): Array[Byte]
 
+  /** Renders a laid-out document in the specified output format, writing the
+    * output to `output`. Optionally applies a code block to the `FOUserAgent`.
+    * The document's Apache FOP configuration (and font auto-detection) are
+    * used.
+    *
+    * `output` is flushed, but not closed, once rendering completes.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param document the document
+    * @param outputFormat the format to generate
+    * @param output the `OutputStream` to which to write the output
+    * @param foUserAgentBlock the code block for the `FOUserAgent`
+    */
+  def renderLaidOutToStream[U](document: LaidOutDocument, outputFormat: String, output: OutputStream,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => }): Unit
+
+  /** Previews XSL-FO from a [[https://www.playframework.com/documentation/2.6.x/ScalaTemplates Twirl]]
+    * XML template: renders only a range of its pages, each
+    * separately, in the specified output format (typically PNG). Optionally
+    * auto-detects fonts (for PDF output) and/or applies a code block to each
+    * `FOUserAgent`.
+    *
+    * Only as much of the XSL-FO as the pages need is laid out, so
+    * previewing the first pages of a long document takes a fraction of the
+    * time of processing it. As a result, references from those pages to
+    * content after them (for example, to cite the last page's number) are
+    * not resolved. Only output formats that Apache FOP renders via its
+    * intermediate format (among them PDF, PostScript, PNG, and TIFF) are
+    * supported.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO
+    * @param outputFormat the format to generate
+    * @param pages the pages to render. Pages beyond the end of the document
+    *              are left out.
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for each `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the output for each page, in order
+    */
+  def previewTwirlXml[U](xslfo: Xml, outputFormat: String,
+      pages: PageRange = PageRange.FirstPage,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Seq[Array[Byte]]
+
+  /** Previews XSL-FO from a
+    * [[https://github.com/scala/scala-xml scala-xml]] `Node`: renders only a range of its pages, each
+    * separately, in the specified output format (typically PNG). Optionally
+    * auto-detects fonts (for PDF output) and/or applies a code block to each
+    * `FOUserAgent`.
+    *
+    * Only as much of the XSL-FO as the pages need is laid out, so
+    * previewing the first pages of a long document takes a fraction of the
+    * time of processing it. As a result, references from those pages to
+    * content after them (for example, to cite the last page's number) are
+    * not resolved. Only output formats that Apache FOP renders via its
+    * intermediate format (among them PDF, PostScript, PNG, and TIFF) are
+    * supported.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO
+    * @param outputFormat the format to generate
+    * @param pages the pages to render. Pages beyond the end of the document
+    *              are left out.
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for each `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the output for each page, in order
+    */
+  def previewScalaXml[U](xslfo: Node, outputFormat: String,
+      pages: PageRange = PageRange.FirstPage,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Seq[Array[Byte]]
+
+  /** Previews XSL-FO from a `String`: renders only a range of its pages, each
+    * separately, in the specified output format (typically PNG). Optionally
+    * auto-detects fonts (for PDF output) and/or applies a code block to each
+    * `FOUserAgent`.
+    *
+    * Only as much of the XSL-FO as the pages need is laid out, so
+    * previewing the first pages of a long document takes a fraction of the
+    * time of processing it. As a result, references from those pages to
+    * content after them (for example, to cite the last page's number) are
+    * not resolved. Only output formats that Apache FOP renders via its
+    * intermediate format (among them PDF, PostScript, PNG, and TIFF) are
+    * supported.
+    *
+    * @tparam U the return type of `foUserAgentBlock` (typically inferred, as
+    *           opposed to explicitly specified)
+    * @param xslfo the XSL-FO
+    * @param outputFormat the format to generate
+    * @param pages the pages to render. Pages beyond the end of the document
+    *              are left out.
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param foUserAgentBlock the code block for each `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
+    * @return the output for each page, in order
+    */
+  def previewStringXml[U](xslfo: String, outputFormat: String,
+      pages: PageRange = PageRange.FirstPage,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Seq[Array[Byte]]
+
+  /** The number of renders currently in progress, across all of this
+    * instance's `process...` methods.
+    *
+    * @return the number of renders
+    */
+  def rendersInFlight: Int
+
+  /** The number of renders currently waiting for others to finish before
+    * starting. (Renders waiting for a thread in the rendering pool are not
+    * included.)
+    *
+    * @return the number of renders
+    */
+  def rendersQueued: Int
+
+  /** Takes statistics for PlayFOP's cache of Apache FOP configurations (see
+    * `playfop.fop-factory-cache` in PlayFOP's `reference.conf`).
+    *
+    * @return the statistics
+    */
+  def fopFactoryCacheStats: FopFactoryCacheStats
+
+  /** Takes statistics for PlayFOP's cache of rendered output (see
+    * `playfop.output-cache` in PlayFOP's `reference.conf`).
+    *
+    * @return the statistics
+    */
+  def outputCacheStats: OutputCacheStats
+
+  /** Takes statistics for PlayFOP's cache of the resources (images, fonts,
+    * etc.) that Apache FOP reads while rendering (see
+    * `playfop.resource-cache` in PlayFOP's `reference.conf`).
+    *
+    * @return the statistics
+    */
+  def resourceCacheStats: ResourceCacheStats
+
+  /** Takes statistics for the images preloaded through `preloadImages`, and
+    * for the use of Apache FOP's image caches (see `playfop.image-cache` in
+    * PlayFOP's `reference.conf`).
+    *
+    * @return the statistics
+    */
+  def imageCacheStats: ImageCacheStats
+
+  /** Takes a snapshot of PlayFOP's metrics: render latencies, output and
+    * input sizes, and failures, by output format; and the use of its cache
+    * of Apache FOP configurations. To report metrics as they occur instead
+    * (for example, to a metrics library), see `playfop.metrics` in PlayFOP's
+    * `reference.conf`.
+    *
+    * @return the snapshot
+    */
+  def metrics: MetricsSnapshot
+
+  /** Prepares Apache FOP to render PDFs, optionally with font auto-detection
+    * and/or a custom configuration, by rendering a minimal document and
+    * discarding the output. Subsequent `process...` invocations with the same
+    * `autoDetectFontsForPDF` and `fopConfig` values then avoid the cost of that
+    * preparation, which for font auto-detection can be several seconds.
+    *
+    * To warm up in the background as the application starts, see
+    * `playfop.warm-up` in PlayFOP's `reference.conf`.
+    *
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param fopConfig the Apache FOP configuration
+    */
+  def warmUp(autoDetectFontsForPDF: Boolean = false, fopConfig: FopConfig = FopConfig.Default): Unit
+
+  /** Preloads images (for example, logos used on every page) for rendering to
+    * the supplied output format, so that subsequent `process...` invocations
+    * find them decoded, rather than reading and decoding them.
+    *
+    * The images are preloaded at once into Apache FOP's image cache for the
+    * supplied `autoDetectFontsForPDF` and `fopConfig` values, and, in the
+    * background, into those for other values: at once for values already
+    * used, and when first used for others. They are held there in memory,
+    * up to `playfop.image-cache.max-memory` (see PlayFOP's `reference.conf`),
+    * whereas Apache FOP otherwise lets the garbage collector clear the images
+    * it caches when memory runs short.
+    *
+    * Documents must refer to the images by the same URIs (for example, in an
+    * `fo:external-graphic`'s `src`) to find them preloaded.
+    *
+    * @param uris the images' URIs
+    * @param outputFormat the output format to preload the images for
+    * @param autoDetectFontsForPDF whether to auto-detect fonts
+    * @param fopConfig the Apache FOP configuration
+    * @throws `IllegalArgumentException` if an image cannot be loaded
+    */
+  def preloadImages(uris: Seq[String], outputFormat: String = "application/pdf",
+      autoDetectFontsForPDF: Boolean = false, fopConfig: FopConfig = FopConfig.Default): Unit
+
   /** Creates a new `Fop` instance, optionally auto-detecting fonts (for PDF
     * output) and/or applying a code block to the `FOUserAgent`. Sets up the
     * `Fop` to save output to the supplied `OutputStream` in the supplied format.
@@ -77,9 +932,11 @@ trait PlayFop {
     * @param output the `OutputStream` to which the `Fop` should save output
     * @param autoDetectFontsForPDF whether to auto-detect fonts
     * @param foUserAgentBlock the code block for the `Fop`'s `FOUserAgent`
+    * @param fopConfig the Apache FOP configuration
     * @return the `Fop`
     */
   def newFop[U](outputFormat: String, output: OutputStream,
       autoDetectFontsForPDF: Boolean = false,
-      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => }): Fop
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Fop
 }
\ No newline at end of file
@@ -1,10 +1,39 @@
 package com.dmanchester.playfop.sapi
 
+import com.dmanchester.playfop.api.MetricsListener
 import com.dmanchester.playfop.sinternal.PlayFopImpl
+import com.dmanchester.playfop.sinternal.PlayFopSettings
+
+import play.api.inject.ApplicationLifecycle
 
 /** A trait for dependency-injecting PlayFOP into Scala applications at
   * compile time.
+  *
+  * By default, PlayFOP uses the settings in its `reference.conf`, and its
+  * resources are not released when the application stops. In a class that
+  * extends Play's `BuiltInComponents`, override `playFopSettings` with
+  * `PlayFopSettings(configuration)` to configure PlayFOP from the
+  * application's configuration, and `playFopLifecycle` with
+  * `Some(applicationLifecycle)` to release them.
   */
 trait PlayFopComponents {
-  lazy val playFop: PlayFop = new PlayFopImpl()
+
+  /** PlayFOP's settings.
+    */
+  def playFopSettings: PlayFopSettings = PlayFopSettings.Default
+
+  /** The application's lifecycle, if PlayFOP's resources are to be released
+    * when the application stops.
+    */
+  def playFopLifecycle: Option[ApplicationLifecycle] = None
+
+  /** The listener to pass PlayFOP's metrics on to.
+    */
+  def playFopMetricsListener: MetricsListener = MetricsListener.NoOp
+
+  lazy val playFop: PlayFop = playFopLifecycle.fold {
+    new PlayFopImpl(playFopSettings, playFopMetricsListener)
+  } { lifecycle =>
+    new PlayFopImpl(playFopSettings, playFopMetricsListener, lifecycle)
+  }
 }
@@ -1,6 +1,8 @@
 package com.dmanchester.playfop.sapi
 
+import com.dmanchester.playfop.api.MetricsListener
 import com.dmanchester.playfop.sinternal.PlayFopImpl
+import com.dmanchester.playfop.sinternal.PlayFopSettings
 
 import play.api.Configuration
 import play.api.Environment
@@ -8,10 +10,21 @@ import play.api.inject.Module
 
 /** A Play `[[https://playframework.com/documentation/2.6.x/api/scala/index.html#play.api.inject.Module Module]]`
   * for dependency-injecting PlayFOP into Scala applications at runtime.
+  *
+  * PlayFOP is configured from the `playfop` section of the application's
+  * configuration; see PlayFOP's `reference.conf` for the available settings.
+  * Its metrics are passed on to the `[[com.dmanchester.playfop.api.MetricsListener MetricsListener]]`
+  * named in `playfop.metrics.listener`, if any.
   */
 class PlayFopModule extends Module {
 
   def bindings(environment: Environment, configuration: Configuration) = Seq(
+    bind[PlayFopSettings].toInstance(PlayFopSettings(configuration)),
+    PlayFopSettings.metricsListenerClass(configuration, environment.classLoader).fold {
+      bind[MetricsListener].toInstance(MetricsListener.NoOp)
+    } { listenerClass =>
+      bind[MetricsListener].to(listenerClass)
+    },
     bind[PlayFop].to[PlayFopImpl]
   )
 }
@@ -0,0 +1,122 @@
+package com.dmanchester.playfop.sinternal
+
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.LongAdder
+
+import scala.util.control.NonFatal
+
+import org.slf4j.LoggerFactory
+
+import com.dmanchester.playfop.api.BatchSink
+import com.dmanchester.playfop.api.BatchStats
+
+/** Renders a batch of documents on a set of threads dedicated to it.
+  *
+  * Each thread takes the next input from the iterator as it finishes the
+  * previous one, so that inputs are produced (and their output held) only as
+  * fast as they are rendered. A document that fails to render is reported to
+  * the sink, and the batch carries on; only a failure of the iterator itself
+  * ends the batch early.
+  */
+object BatchRunner {
+
+  private val logger = LoggerFactory.getLogger(this.getClass())
+
+  /** Renders each input and delivers the output to `sink`, blocking until
+    * all are done.
+    *
+    * @tparam K the type of the inputs
+    * @param inputs the inputs
+    * @param parallelism the number of threads on which to render
+    * @param sink the recipient of each document's output or failure
+    * @param render renders an input
+    * @return statistics for the batch
+    * @throws Throwable whatever `inputs` threw, if anything
+    */
+  def run[K](inputs: Iterator[K], parallelism: Int, sink: BatchSink[K])(render: K => Array[Byte]): BatchStats = {
+
+    val start = System.nanoTime()
+
+    val succeeded = new LongAdder()
+    val failed = new LongAdder()
+    val bytes = new LongAdder()
+
+    def next(): Option[K] = inputs.synchronized {
+      if (inputs.hasNext) Some(inputs.next()) else None
+    }
+
+    def renderAndDeliver(key: K): Unit = {
+
+      val rendered = try {
+        Right(render(key))
+      } catch {
+        case NonFatal(e) => Left(e)
+      }
+
+      rendered match {
+        case Right(output) =>
+          try {
+            sink.onOutput(key, output)
+            succeeded.increment()
+            bytes.add(output.length)
+          } catch {
+            case NonFatal(e) =>
+              failed.increment()
+              logger.warn(s"Batch sink failed to accept output for $key.", e)
+          }
+        case Left(failure) =>
+          failed.increment()
+          logger.debug(s"Batch document $key failed to render.", failure)
+          try {
+            sink.onFailure(key, failure)
+          } catch {
+            case NonFatal(e) => logger.warn(s"Batch sink failed to accept failure for $key.", e)
+          }
+      }
+    }
+
+    val executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory())
+
+    try {
+
+      val workers = Seq.fill(parallelism) {
+        executor.submit(new Runnable {
+          def run(): Unit = {
+            var key = next()
+            while (key.isDefined && !Thread.currentThread().isInterrupted()) {
+              renderAndDeliver(key.get)
+              key = next()
+            }
+          }
+        })
+      }
+
+      try {
+        workers.foreach(_.get())
+      } catch {
+        case e: ExecutionException =>
+          executor.shutdownNow()  // stop the other workers
+          throw e.getCause()
+      }
+    } finally {
+      executor.shutdown()
+    }
+
+    BatchStats(succeeded.sum(), failed.sum(), bytes.sum(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+  }
+
+  private class DaemonThreadFactory extends ThreadFactory {
+
+    private val threadCount = new AtomicInteger()
+
+    def newThread(runnable: Runnable): Thread = {
+      val thread = new Thread(runnable, "playfop-batch-" + threadCount.incrementAndGet())
+      thread.setDaemon(true)
+      thread
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.FilterOutputStream
+import java.io.OutputStream
+
+/** An `OutputStream` that counts the bytes written through it to another
+  * `OutputStream`.
+  *
+  * Instances of this class are not thread-safe.
+  *
+  * @param out the `OutputStream` to write to
+  */
+class CountingOutputStream(out: OutputStream) extends FilterOutputStream(out) {
+
+  private var byteCount = 0L
+
+  /** The number of bytes written so far.
+    */
+  def count: Long = byteCount
+
+  override def write(b: Int): Unit = {
+    out.write(b)
+    byteCount += 1
+  }
+
+  // FilterOutputStream's implementation writes one byte at a time, so override
+  // it.
+  override def write(b: Array[Byte], off: Int, len: Int): Unit = {
+    out.write(b, off, len)
+    byteCount += len
+  }
+}
@@ -0,0 +1,120 @@
+package com.dmanchester.playfop.sinternal
+
+import org.xml.sax.Attributes
+import org.xml.sax.ContentHandler
+import org.xml.sax.helpers.XMLFilterImpl
+
+/** Passes on XSL-FO to `handler`, leaving out the flow content after the
+  * first `cutPoints` block-level elements, and any page sequences after that.
+  * The XSL-FO remains valid.
+  *
+  * Apache FOP breaks a page sequence into pages only once it has all of the
+  * sequence's content. Leaving out content that can't appear on the first
+  * pages lets a preview of those pages skip most of the work of laying out a
+  * long document.
+  *
+  * Content is only left out after the end of an `fo:block`,
+  * `fo:block-container`, `fo:table`, `fo:table-row`, `fo:list-block`, or
+  * `fo:list-item` whose ancestors (up to the `fo:flow`) are all blocks,
+  * block containers, wrappers, tables, table bodies, or list blocks; leaving
+  * out what follows those can't invalidate their ancestors.
+  *
+  * @param cutPoints the number of such elements after which to leave out
+  *                  content
+  * @param handler the handler
+  */
+class FlowTruncator(cutPoints: Int, handler: ContentHandler) extends XMLFilterImpl {
+
+  setContentHandler(handler)
+
+  private var flowDepth = 0  // the depth of the fo:flow, or 0 outside one
+
+  private var safeAncestors = List.empty[Boolean]  // whether each open element can safely be cut within
+
+  private var cutPointsPassed = 0
+
+  private var skippedDepth = 0  // the depth within a left-out element, or 0
+
+  private var lastEndSkipped = false
+
+  /** Whether content has been left out.
+    */
+  def truncated: Boolean = cutPointsPassed >= cutPoints
+
+  override def startElement(uri: String, localName: String, qName: String, attributes: Attributes): Unit = {
+
+    if (truncated) {
+      skippedDepth += 1
+    } else {
+
+      val isFo = uri == FlowTruncator.FoNamespace
+      val depth = safeAncestors.size + 1
+
+      if (flowDepth == 0 && isFo && localName == "flow") {
+        flowDepth = depth
+      }
+
+      val safe = flowDepth > 0 && (depth == flowDepth ||
+          (safeAncestors.head && isFo && FlowTruncator.SafeAncestors.contains(localName)))
+      safeAncestors = safe :: safeAncestors
+
+      super.startElement(uri, localName, qName, attributes)
+    }
+  }
+
+  override def endElement(uri: String, localName: String, qName: String): Unit = {
+
+    lastEndSkipped = skippedDepth > 0
+
+    if (skippedDepth > 0) {
+      skippedDepth -= 1
+    } else {
+
+      val depth = safeAncestors.size
+      val parentSafe = safeAncestors.tail.headOption.getOrElse(false)
+      safeAncestors = safeAncestors.tail
+
+      if (depth == flowDepth) {
+        flowDepth = 0
+      } else if (!truncated && flowDepth > 0 && parentSafe && uri == FlowTruncator.FoNamespace &&
+          FlowTruncator.CutAfter.contains(localName)) {
+        cutPointsPassed += 1
+      }
+
+      super.endElement(uri, localName, qName)
+    }
+  }
+
+  override def characters(ch: Array[Char], start: Int, length: Int): Unit = {
+    if (!truncated) super.characters(ch, start, length)
+  }
+
+  override def ignorableWhitespace(ch: Array[Char], start: Int, length: Int): Unit = {
+    if (!truncated) super.ignorableWhitespace(ch, start, length)
+  }
+
+  override def startPrefixMapping(prefix: String, uri: String): Unit = {
+    if (!truncated) super.startPrefixMapping(prefix, uri)
+  }
+
+  override def endPrefixMapping(prefix: String): Unit = {
+    // Follows the end of the element that declared the mapping.
+    if (!lastEndSkipped) super.endPrefixMapping(prefix)
+  }
+
+  override def processingInstruction(target: String, data: String): Unit = {
+    if (!truncated) super.processingInstruction(target, data)
+  }
+}
+
+/** Companion object of the `[[FlowTruncator]]` class. Consists of private
+  * members for the class's use.
+  */
+object FlowTruncator {
+
+  private val FoNamespace = "http://www.w3.org/1999/XSL/Format"
+
+  private val CutAfter = Set("block", "block-container", "table", "table-row", "list-block", "list-item")
+
+  private val SafeAncestors = Set("block", "block-container", "wrapper", "table", "table-body", "list-block")
+}
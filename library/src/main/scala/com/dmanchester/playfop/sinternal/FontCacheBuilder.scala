@@ -0,0 +1,53 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.File
+
+import com.dmanchester.playfop.api.FopConfig
+
+/** Pre-builds Apache FOP's font cache, so that applications started later
+  * (for example, from a container image) begin with the metrics of the
+  * operating system's fonts already cached.
+  *
+  * Usage: `FontCacheBuilder <cache-file> [<fop-config-file>]`
+  *
+  * Auto-detects fonts, plus any the Apache FOP configuration file registers,
+  * and writes their metrics to the cache file. Applications should then set
+  * `playfop.font-cache.file` to the same file.
+  */
+object FontCacheBuilder {
+
+  private val Usage = "Usage: FontCacheBuilder <cache-file> [<fop-config-file>]"
+
+  def main(args: Array[String]): Unit = {
+
+    if (args.length < 1 || args.length > 2) {
+      System.err.println(Usage)
+      sys.exit(2)
+    }
+
+    val cacheFile = new File(args(0))
+    val fopConfig = args.lift(1).fold(FopConfig.Default)(FopConfig.fromFile)
+
+    build(cacheFile, fopConfig)
+
+    println(s"Font cache written to ${cacheFile.getAbsolutePath()}.")
+  }
+
+  /** Builds the font cache.
+    *
+    * @param cacheFile the cache file
+    * @param fopConfig the Apache FOP configuration, for fonts beyond those
+    *                  auto-detected
+    */
+  def build(cacheFile: File, fopConfig: FopConfig): Unit = {
+
+    val settings = PlayFopSettings.Default.copy(fontCache = FontCacheSettings(enabled = true, file = Some(cacheFile)))
+    val playFop = new PlayFopImpl(settings)
+
+    try {
+      playFop.warmUp(autoDetectFontsForPDF = true, fopConfig)
+    } finally {
+      playFop.shutdown()
+    }
+  }
+}
@@ -3,25 +3,85 @@ package com.dmanchester.playfop.sinternal
 import java.io.ByteArrayInputStream
 import java.io.File
 import java.io.StringWriter
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.FutureTask
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
 
+import scala.collection.JavaConverters.collectionAsScalaIterableConverter
+import scala.util.Try
 import scala.xml.Elem
 import scala.xml.XML
 
-import org.apache.fop.configuration.DefaultConfigurationBuilder
+import org.apache.fop.apps.FopConfParser
 import org.apache.fop.apps.FopFactory
 import org.apache.fop.apps.FopFactoryBuilder
 import org.slf4j.LoggerFactory
 
+import com.dmanchester.playfop.api.FopConfig
+import com.dmanchester.playfop.api.FopFactoryCacheEntryStats
+import com.dmanchester.playfop.api.FopFactoryCacheStats
+import com.dmanchester.playfop.api.MetricsListener
+
 /** A source of `FopFactory` instances. Caches them for performance.
+  *
+  * The cache is keyed by each configuration's
+  * `[[com.dmanchester.playfop.api.FopConfig#hash hash]]`. It
+  * holds at most `settings.maxSize` instances, evicting the least recently
+  * used one to make room for another, and evicts instances that go unused for
+  * `settings.idleTimeout` (unless they hold preloaded images).
+  *
+  * Retrieving a cached instance takes no locks. Creating an instance, which
+  * can be slow, happens at most once per configuration, even when several
+  * threads request that configuration at the same time; those threads wait for
+  * it, but threads requesting other configurations do not.
   *
   * Instances of this class are thread-safe, but there are open questions around
   * the thread safety of `FopFactory` instances themselves. For more
   * information, see {@link com.dmanchester.playfop.sinternal.PlayFopImpl} and
   * the PlayFOP User Guide.
+  *
+  * Each `FopFactory` uses the font cache described by `fontCacheSettings`,
+  * unless its configuration sets up a font cache itself. Each reads resources
+  * (images, fonts, etc.) through `resourceCache`, using the cache unless its
+  * configuration opts out. Each holds the images preloaded through
+  * `imagePreloader`, which are preloaded into it on `preloadExecutor` once it
+  * is created, and as more are registered, rather than on the thread that
+  * retrieves it.
+  *
+  * @param settings the cache's settings
+  * @param fontCacheSettings the settings for Apache FOP's font cache
+  * @param metrics the listener to notify of cache hits and of `FopFactory`
+  *                instances created
+  * @param resourceCache the cache through which to read resources
+  * @param imagePreloader the source of images to preload
+  * @param preloadExecutor the executor on which to preload images. By default,
+  *                        images are preloaded on the calling thread.
   */
-class FopFactorySource {
+class FopFactorySource(settings: FopFactoryCacheSettings, fontCacheSettings: FontCacheSettings,
+    metrics: MetricsListener = MetricsListener.NoOp, resourceCache: ResourceCache = new ResourceCache(),
+    imagePreloader: ImagePreloader = new ImagePreloader(),
+    preloadExecutor: Executor = FopFactorySource.CallingThreadExecutor) {
+
+  /** Creates an instance with the settings in PlayFOP's `reference.conf`.
+    */
+  def this() = {
+    this(PlayFopSettings.Default.fopFactoryCache, PlayFopSettings.Default.fontCache)
+  }
+
+  fontCacheSettings.file.foreach { file =>
+    Option(file.getAbsoluteFile().getParentFile()).foreach(_.mkdirs())
+  }
 
-  private val fopFactoryCache = scala.collection.mutable.Map.empty[Option[Elem], FopFactory]
+  private val fopFactoryCache = new ConcurrentHashMap[String, FopFactorySource.Entry]()
+
+  private val hits = new LongAdder()
+  private val misses = new LongAdder()
+  private val evictions = new LongAdder()
+
+  private val evictionLock = new Object()
 
   private val logger = LoggerFactory.getLogger(this.getClass())
 
@@ -31,46 +91,207 @@ class FopFactorySource {
     * @return the `FopFactory`
     */
   def get(fopConfigXml: Option[Elem]): FopFactory = {
+    get(fopConfigXml.fold(FopConfig.Default)(FopConfig(_)))
+  }
 
-    logger.debug("Checking cache for an appropriate FopFactory instance...")
+  /** Gets an `FopFactory` with the supplied configuration.
+    *
+    * @param fopConfig the configuration
+    * @return the `FopFactory`
+    */
+  def get(fopConfig: FopConfig): FopFactory = {
 
-    val (fopFactory, fromCache) = fopFactoryCache.synchronized {
-      fopFactoryCache.get(fopConfigXml).map {
-        (_, true)
-      } getOrElse {
-        val newFopFactory = createFopFactory(fopConfigXml)
-        fopFactoryCache += (fopConfigXml -> newFopFactory)
-        (newFopFactory, false)
-      }
-    }
+    logger.debug(s"Checking cache for an FopFactory instance for $fopConfig...")
+
+    val cached = fopFactoryCache.get(fopConfig.hash)
 
-    // Do logging (and associated I/O) *outside* synchronized block.
-    if (fromCache) {
+    var created = false
+
+    val entry = if (cached != null) {
       logger.debug("...instance found.")
+      hit(cached)
     } else {
-      logger.debug("...no instance found. Instance created.")
+      val newEntry = new FopFactorySource.Entry(fopConfig.hash, createFopFactory(fopConfig))
+      val existingEntry = fopFactoryCache.putIfAbsent(fopConfig.hash, newEntry)
+      if (existingEntry != null) {
+        logger.debug("...instance found (or being created by another thread).")
+        hit(existingEntry)
+      } else {
+        misses.increment()
+        newEntry.task.run()
+        created = true
+        logger.debug(s"...no instance found. Instance created in ${newEntry.buildMillis} ms.")
+        evict()
+        newEntry
+      }
     }
 
-    fopFactory
+    try {
+      val fopFactory = entry.task.get()
+      if (created) {
+        metrics.fopFactoryCreated(entry.configHash, entry.buildNanos)
+        preloadLater(fopFactory)
+      }
+      fopFactory
+    } catch {
+      case e: ExecutionException =>
+        // Don't cache the failure; a later call may succeed.
+        fopFactoryCache.remove(fopConfig.hash, entry)
+        throw e.getCause()
+    }
   }
 
-  private def createFopFactory(fopConfigXml: Option[Elem]): FopFactory = {
+  /** Preloads images into the `FopFactory` with the supplied configuration,
+    * for an output format, and registers them to be preloaded, on
+    * `preloadExecutor`, into every other `FopFactory`: those cached now, and
+    * those created later. The images are held in memory within the limit of
+    * `imagePreloader`'s settings.
+    *
+    * @param uris the images' URIs, as documents refer to them
+    * @param outputFormat the output format
+    * @param fopConfig the configuration
+    * @throws `IllegalArgumentException` if an image cannot be loaded
+    */
+  def preloadImages(uris: Seq[String], outputFormat: String, fopConfig: FopConfig): Unit = {
+
+    val fopFactory = get(fopConfig)
+    imagePreloader.validate(fopFactory, uris)
+    imagePreloader.register(uris, outputFormat)
+    imagePreloader.preload(fopFactory)
 
-    val fopFactoryBuilder = new FopFactoryBuilder(new File(".").toURI() /* defaultBaseURI */)
+    fopFactoryCache.values().asScala.filter(_.task.isDone()).foreach { entry =>
+      Try(entry.task.get()).filter(_ ne fopFactory).foreach(preloadLater)
+    }
+  }
 
-    fopConfigXml.foreach { fopConfigXml =>
+  /** Takes statistics for the cache.
+    *
+    * @return the statistics
+    */
+  def stats: FopFactoryCacheStats = {
+
+    val now = System.nanoTime()
+
+    val entries = fopFactoryCache.values().asScala.toList.filter(_.task.isDone()).map { entry =>
+      FopFactoryCacheEntryStats(entry.configHash, entry.hits.sum(), entry.buildMillis,
+          TimeUnit.NANOSECONDS.toMillis(now - entry.lastAccessNanos))
+    }
+
+    FopFactoryCacheStats(hits.sum(), misses.sum(), evictions.sum(), entries)
+  }
+
+  private def preloadLater(fopFactory: FopFactory): Unit = {
+    preloadExecutor.execute(() => imagePreloader.preload(fopFactory))
+  }
+
+  private def hit(entry: FopFactorySource.Entry): FopFactorySource.Entry = {
+    hits.increment()
+    entry.hits.increment()
+    entry.lastAccessNanos = System.nanoTime()
+    metrics.fopFactoryCacheHit(entry.configHash)
+    entry
+  }
+
+  /** Evicts idle entries, then least recently used ones while the cache is
+    * over its maximum size. Entries still being created are left alone, as
+    * are idle entries holding preloaded images: preloading them again would
+    * cost more than keeping them.
+    *
+    * Only runs on a miss, keeping hits lock-free.
+    */
+  private def evict(): Unit = evictionLock.synchronized {
+
+    val now = System.nanoTime()
+    def completed = fopFactoryCache.values().asScala.filter(_.task.isDone())
+
+    settings.idleTimeout.foreach { idleTimeout =>
+      completed.filter(now - _.lastAccessNanos > idleTimeout.toNanos)
+          .filterNot(entry => Try(entry.task.get()).toOption.exists(imagePreloader.holdsImages))
+          .foreach(evict(_, "idle"))
+    }
+
+    while (fopFactoryCache.size() > settings.maxSize && completed.nonEmpty) {
+      evict(completed.minBy(_.lastAccessNanos), "least recently used")
+    }
+  }
+
+  private def evict(entry: FopFactorySource.Entry, reason: String): Unit = {
+
+    if (fopFactoryCache.remove(entry.configHash, entry)) {
+      evictions.increment()
+      Try(entry.task.get()).foreach(imagePreloader.release)
+      logger.debug(s"Evicted FopFactory instance for FopConfig(${entry.configHash}) (${reason}; " +
+          s"${entry.hits.sum()} hits, created in ${entry.buildMillis} ms).")
+    }
+  }
+
+  private def createFopFactory(fopConfig: FopConfig): FopFactory = {
+
+    val defaultBaseUri = fopConfig.baseUri.getOrElse(new File(".").toURI())
+    val resourceResolver = resourceCache.resolver(fopConfig.cachesResources)
+
+    val fopFactoryBuilder = fopConfig.xml.map { fopConfigXml =>
 
       val stringWriter = new StringWriter()
       XML.write(stringWriter, fopConfigXml, "utf-8", true /* xmlDecl */, null /* doctype */)
       val inputStream = new ByteArrayInputStream(stringWriter.toString().getBytes("utf-8"))
 
-      // DefaultConfigurationBuilder instances not documented as thread-safe, so
+      // Unlike FopFactoryBuilder.setConfiguration(), FopConfParser applies
+      // top-level settings (source resolution, font base, etc.) as well as
+      // renderer settings. Instances not documented as thread-safe, so
       // obtain a new one each time.
-      val fopConfig = new DefaultConfigurationBuilder().build(inputStream)
+      new FopConfParser(inputStream, defaultBaseUri, resourceResolver).getFopFactoryBuilder()
+    } getOrElse {
+      new FopFactoryBuilder(defaultBaseUri, resourceResolver)
+    }
 
-      fopFactoryBuilder.setConfiguration(fopConfig)
+    val fopFactory = fopFactoryBuilder.build()
+
+    val configuresFontCache = fopConfig.xml.exists { fopConfigXml =>
+      (fopConfigXml \ "use-cache").nonEmpty || (fopConfigXml \ "cache-file").nonEmpty
     }
 
-    fopFactoryBuilder.build()
+    if (!configuresFontCache) {
+      if (fontCacheSettings.enabled) {
+        fontCacheSettings.file.foreach { file => fopFactory.getFontManager().setCacheFile(file.getAbsoluteFile().toURI()) }
+      } else {
+        fopFactory.getFontManager().disableFontCache()
+      }
+    }
+
+    imagePreloader.attach(fopFactory)
+
+    fopFactory
+  }
+}
+
+private object FopFactorySource {
+
+  /** Runs tasks on the calling thread.
+    */
+  val CallingThreadExecutor: Executor = (task: Runnable) => task.run()
+
+  /** A cache entry: an `FopFactory` (possibly still being created) and its
+    * statistics.
+    */
+  class Entry(val configHash: String, create: => FopFactory) {
+
+    @volatile var buildNanos: Long = 0
+
+    @volatile var lastAccessNanos: Long = System.nanoTime()
+
+    val hits = new LongAdder()
+
+    val task = new FutureTask[FopFactory](() => {
+      val start = System.nanoTime()
+      try {
+        create
+      } finally {
+        buildNanos = System.nanoTime() - start
+        lastAccessNanos = System.nanoTime()  // not idle for the time spent creating it
+      }
+    })
+
+    def buildMillis: Long = TimeUnit.NANOSECONDS.toMillis(buildNanos)
   }
-}
\ No newline at end of file
+}
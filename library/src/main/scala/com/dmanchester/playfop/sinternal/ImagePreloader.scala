@@ -0,0 +1,333 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.IOException
+import java.io.StringReader
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+
+import scala.collection.mutable
+import scala.xml.Utility
+
+import org.apache.fop.apps.FopFactory
+import org.apache.xmlgraphics.image.loader.Image
+import org.apache.xmlgraphics.image.loader.ImageException
+import org.apache.xmlgraphics.image.loader.ImageFlavor
+import org.apache.xmlgraphics.image.loader.ImageInfo
+import org.apache.xmlgraphics.image.loader.XMLNamespaceEnabledImageFlavor
+import org.apache.xmlgraphics.image.loader.cache.ImageCacheListener
+import org.apache.xmlgraphics.image.loader.cache.ImageKey
+import org.apache.xmlgraphics.image.loader.impl.ImageRawStream
+import org.apache.xmlgraphics.image.loader.impl.ImageRendered
+import org.slf4j.LoggerFactory
+import org.xml.sax.InputSource
+
+import com.dmanchester.playfop.api.ImageCacheStats
+
+/** Preloads images into the image caches of `FopFactory` instances, and keeps
+  * them there.
+  *
+  * An `FopFactory` caches the images it decodes, but only softly: the garbage
+  * collector clears them when memory runs short, and they are then read and
+  * decoded again. Images preloaded through this class are instead held in
+  * memory ("pinned"), up to an estimated `settings.maxMemoryBytes` in total
+  * across all `FopFactory` instances; beyond that, they are cached as any
+  * other image.
+  *
+  * Images are `[[register registered]]` for an output format. They are
+  * preloaded by rendering a document containing them to that format, so that
+  * Apache FOP loads each in the form(s) it renders that format from. They are
+  * cached under the URIs they were registered with, so documents must refer to
+  * them (say, in an `fo:external-graphic`'s `src`) by the same URIs to benefit.
+  *
+  * Each `FopFactory` must be `[[attach attached]]` once created. Invoking
+  * `[[preload]]` with it then preloads the images registered since it last
+  * did, if any; it is cheap otherwise. Once an `FopFactory` is no longer used, `[[release]]`
+  * releases its images.
+  *
+  * Instances of this class are thread-safe.
+  *
+  * @param settings the settings for preloaded images
+  */
+class ImagePreloader(settings: ImageCacheSettings) {
+
+  /** Creates an instance with the settings in PlayFOP's `reference.conf`.
+    */
+  def this() = {
+    this(PlayFopSettings.Default.imageCache)
+  }
+
+  @volatile private var registered = Vector.empty[ImagePreloader.Registration]
+
+  private val targets = new ConcurrentHashMap[FopFactory, ImagePreloader.Target]()
+
+  // Guarded by this
+  private var pinnedImages = 0
+  private var pinnedBytes = 0L
+  private var overLimit = 0
+
+  private val hits = new LongAdder()
+  private val misses = new LongAdder()
+
+  /** The image cache keys that the current thread's preloading render asks
+    * for, if it is preloading.
+    */
+  private val recording = new ThreadLocal[mutable.Set[ImageKey]]()
+
+  private val listener = new ImageCacheListener {
+
+    override def invalidHit(uri: String): Unit = {}
+
+    override def cacheHitImageInfo(uri: String): Unit = {}
+
+    override def cacheMissImageInfo(uri: String): Unit = {}
+
+    override def cacheHitImage(key: ImageKey): Unit = recording.get() match {
+      case null => hits.increment()
+      case keys => keys += key
+    }
+
+    override def cacheMissImage(key: ImageKey): Unit = recording.get() match {
+      case null => misses.increment()
+      case keys => keys += key
+    }
+  }
+
+  private val logger = LoggerFactory.getLogger(this.getClass())
+
+  /** Registers images to preload into every `FopFactory`, for an output
+    * format. Images already registered for the format are ignored.
+    *
+    * @param uris the images' URIs
+    * @param outputFormat the output format
+    */
+  def register(uris: Seq[String], outputFormat: String): Unit = synchronized {
+
+    val registrations = uris.map(ImagePreloader.Registration(_, outputFormat)).distinct
+    registered ++= registrations.filterNot(registered.contains)
+  }
+
+  /** Checks that images can be loaded by an `FopFactory`, loading their
+    * dimensions, etc. (but not the images themselves) into its cache.
+    *
+    * @param fopFactory the `FopFactory`
+    * @param uris the images' URIs
+    * @throws `IllegalArgumentException` if an image cannot be loaded
+    */
+  def validate(fopFactory: FopFactory, uris: Seq[String]): Unit = {
+
+    val imageManager = fopFactory.getImageManager()
+    val sessionContext = fopFactory.newFOUserAgent().getImageSessionContext()
+
+    uris.foreach { uri =>
+      try {
+        imageManager.getImageInfo(uri, sessionContext)
+      } catch {
+        case e @ (_: ImageException | _: IOException) =>
+          throw new IllegalArgumentException(s"Cannot load image $uri!", e)
+      }
+    }
+  }
+
+  /** Attaches a newly created `FopFactory`, to preload images into and to
+    * take statistics for.
+    *
+    * @param fopFactory the `FopFactory`
+    */
+  def attach(fopFactory: FopFactory): Unit = {
+
+    fopFactory.getImageManager().getCache().setCacheListener(listener)
+    targets.put(fopFactory, new ImagePreloader.Target(fopFactory))
+  }
+
+  /** Preloads the images registered since `fopFactory` was last brought up to
+    * date, if any. Does nothing if `fopFactory` isn't attached (or has been
+    * released).
+    *
+    * Images that fail to load are logged, and not tried again.
+    *
+    * @param fopFactory the `FopFactory`
+    */
+  def preload(fopFactory: FopFactory): Unit = {
+
+    val target = targets.get(fopFactory)
+
+    if (target != null && target.preloaded < registered.size) {
+      target.synchronized {
+        if (!target.released) {
+          val registrations = registered
+          registrations.drop(target.preloaded).groupBy(_.outputFormat).foreach { case (outputFormat, pending) =>
+            preload(target, pending.map(_.uri), outputFormat)
+          }
+          target.preloaded = registrations.size
+        }
+      }
+    }
+  }
+
+  /** Whether images are pinned in an `FopFactory`'s cache.
+    *
+    * @param fopFactory the `FopFactory`
+    * @return `true` if `fopFactory` is attached and holds pinned images
+    */
+  def holdsImages(fopFactory: FopFactory): Boolean = {
+    Option(targets.get(fopFactory)).exists { target => target.synchronized { target.pinned.nonEmpty } }
+  }
+
+  /** Releases the images preloaded into an `FopFactory` that is no longer
+    * used, and detaches it.
+    *
+    * @param fopFactory the `FopFactory`
+    */
+  def release(fopFactory: FopFactory): Unit = {
+
+    Option(targets.remove(fopFactory)).foreach { target =>
+      target.synchronized {
+        target.released = true
+        synchronized {
+          pinnedImages -= target.pinned.size
+          pinnedBytes -= target.bytes
+          overLimit -= target.overLimit
+        }
+        target.pinned.clear()
+        target.infos.clear()
+      }
+    }
+  }
+
+  /** Takes statistics for preloaded images and for the image caches of
+    * attached `FopFactory` instances.
+    *
+    * @return the statistics
+    */
+  def stats: ImageCacheStats = synchronized {
+    ImageCacheStats(registered.size, pinnedImages, pinnedBytes, overLimit, hits.sum(), misses.sum())
+  }
+
+  private def preload(target: ImagePreloader.Target, uris: Seq[String], outputFormat: String): Unit = {
+
+    logger.debug(s"Preloading ${uris.size} image(s) for $outputFormat...")
+
+    val keys = mutable.Set[ImageKey]()
+    recording.set(keys)
+
+    try {
+
+      val fopFactory = target.fopFactory
+      val fop = fopFactory.newFop(outputFormat, fopFactory.newFOUserAgent(), PlayFopImpl.DiscardingOutputStream)
+      SaxParsing.parse(new InputSource(new StringReader(ImagePreloader.xslfo(uris))), fop.getDefaultHandler())
+
+      val imageManager = fopFactory.getImageManager()
+      val sessionContext = fopFactory.newFOUserAgent().getImageSessionContext()
+
+      uris.foreach { uri =>
+        try {
+          target.infos += imageManager.getImageInfo(uri, sessionContext)
+          ImagePreloader.Flavors.filter(flavor => keys.contains(new ImageKey(uri, flavor))).foreach { flavor =>
+            Option(imageManager.getCache().getImage(uri, flavor)).foreach(pin(target, _))
+          }
+        } catch {
+          case e: Exception => logger.warn(s"Could not preload image $uri.", e)
+        }
+      }
+
+      logger.debug("...preloaded.")
+    } catch {
+      case e: Exception => logger.warn(s"Could not preload images for $outputFormat.", e)
+    } finally {
+      recording.remove()
+    }
+  }
+
+  private def pin(target: ImagePreloader.Target, image: Image): Unit = {
+
+    val bytes = ImagePreloader.estimateBytes(image)
+
+    synchronized {
+      if (pinnedBytes + bytes <= settings.maxMemoryBytes) {
+        target.pinned += image
+        target.bytes += bytes
+        pinnedImages += 1
+        pinnedBytes += bytes
+      } else {
+        logger.debug(s"Not pinning image ${image.getInfo().getOriginalURI()} ($bytes bytes; over the limit).")
+        target.overLimit += 1
+        overLimit += 1
+      }
+    }
+  }
+}
+
+private object ImagePreloader {
+
+  /** An image registered for preloading, for an output format.
+    */
+  case class Registration(uri: String, outputFormat: String)
+
+  /** An `FopFactory`, the images pinned in its cache, and how many
+    * registrations it has been brought up to date with. Guarded by itself,
+    * except as noted.
+    */
+  class Target(val fopFactory: FopFactory) {
+
+    @volatile var preloaded = 0  // read unguarded
+
+    var released = false
+
+    val infos = mutable.Buffer[ImageInfo]()
+    val pinned = mutable.Buffer[Image]()
+    var bytes = 0L
+    var overLimit = 0
+  }
+
+  /** The flavors in which Apache FOP may cache an image.
+    */
+  val Flavors: Seq[ImageFlavor] = Seq(
+    ImageFlavor.RENDERED_IMAGE, ImageFlavor.BUFFERED_IMAGE, ImageFlavor.GRAPHICS2D, ImageFlavor.XML_DOM,
+    XMLNamespaceEnabledImageFlavor.SVG_DOM, ImageFlavor.RAW, ImageFlavor.RAW_PNG, ImageFlavor.RAW_JPEG,
+    ImageFlavor.RAW_TIFF, ImageFlavor.RAW_EMF, ImageFlavor.RAW_EPS, ImageFlavor.RAW_LZW, ImageFlavor.RAW_CCITTFAX)
+
+  /** Estimates the memory an image takes: for a raster image, the size of its
+    * pixels; for raw image data, its size; otherwise, the size of its pixels
+    * if it were a raster image.
+    */
+  def estimateBytes(image: Image): Long = image match {
+
+    case rendered: ImageRendered =>
+      val renderedImage = rendered.getRenderedImage()
+      val bitsPerPixel = Option(renderedImage.getColorModel()).fold(32)(_.getPixelSize())
+      renderedImage.getWidth().toLong * renderedImage.getHeight() * bitsPerPixel / 8
+
+    case raw: ImageRawStream =>
+      val output = new CountingOutputStream(PlayFopImpl.DiscardingOutputStream)
+      raw.writeTo(output)
+      output.count
+
+    case _ =>
+      val size = image.getSize()
+      size.getWidthPx().toLong * size.getHeightPx() * 4
+  }
+
+  /** A document containing the images at `uris`, each scaled to fit on a
+    * page.
+    */
+  def xslfo(uris: Seq[String]): String = {
+
+    val graphics = uris.map { uri =>
+      s"""<fo:block><fo:external-graphic src="${Utility.escape(uri)}" width="100%" height="1in"
+         |  content-width="scale-down-to-fit" content-height="scale-down-to-fit"/></fo:block>""".stripMargin
+    }
+
+    s"""<fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
+       |  <fo:layout-master-set>
+       |    <fo:simple-page-master master-name="page">
+       |      <fo:region-body/>
+       |    </fo:simple-page-master>
+       |  </fo:layout-master-set>
+       |  <fo:page-sequence master-reference="page">
+       |    <fo:flow flow-name="xsl-region-body">
+       |${graphics.mkString("\n")}
+       |    </fo:flow>
+       |  </fo:page-sequence>
+       |</fo:root>""".stripMargin
+  }
+}
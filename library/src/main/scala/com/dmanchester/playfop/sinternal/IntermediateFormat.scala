@@ -0,0 +1,216 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.ByteArrayInputStream
+import java.io.OutputStream
+
+import org.apache.fop.apps.FOUserAgent
+import org.apache.fop.apps.Fop
+import org.apache.fop.apps.MimeConstants
+import org.apache.fop.render.intermediate.IFConstants
+import org.apache.fop.render.intermediate.IFContext
+import org.apache.fop.render.intermediate.IFDocumentHandler
+import org.apache.fop.render.intermediate.IFParser
+import org.apache.fop.render.intermediate.IFSerializer
+import org.apache.fop.render.intermediate.IFUtil
+import org.apache.fop.render.intermediate.util.IFConcatenator
+import org.apache.fop.render.intermediate.util.IFDocumentHandlerProxy
+import org.xml.sax.Attributes
+import org.xml.sax.InputSource
+import org.xml.sax.helpers.AttributesImpl
+import org.xml.sax.helpers.XMLFilterImpl
+
+import javax.xml.transform.stream.StreamResult
+import javax.xml.transform.stream.StreamSource
+
+/** Apache FOP's intermediate format (IF): XSL-FO laid out into pages, but not
+  * yet rendered to a final output format. (See
+  * [[https://xmlgraphics.apache.org/fop/2.5/intermediate.html]].)
+  *
+  * Laying out is most of the work of rendering; IF lets it be done separately
+  * (for example, in parallel for parts of a document) from producing the
+  * output. Only the formats Apache FOP renders via IF (PDF, PostScript, PCL,
+  * AFP, PNG, and TIFF, among others) are supported.
+  */
+object IntermediateFormat {
+
+  /** A layout in progress: an `Fop` that lays out XSL-FO, writing IF, and
+    * the number of pages it has laid out.
+    */
+  class Layout private[IntermediateFormat] (val fop: Fop, handler: PageCountingHandler) {
+
+    /** The number of pages laid out so far.
+      */
+    def pageCount: Int = handler.pageCount
+  }
+
+  /** Starts a layout of XSL-FO for `outputFormat`, writing IF to `output`.
+    *
+    * If `lastPage` is supplied, the layout ends after that page: the IF is
+    * completed as if the document ended there, and the `Fop`'s handler throws
+    * an exception that `[[untilLastPage]]` ignores.
+    *
+    * @param foUserAgent the user agent for the layout
+    * @param outputFormat the format the IF will be rendered to (its fonts and
+    *                     other metrics are used in the layout)
+    * @param output the `OutputStream` to which to write the IF
+    * @param lastPage the page (1-based) after which to end the layout, if any
+    * @return the layout
+    */
+  def layOut(foUserAgent: FOUserAgent, outputFormat: String, output: OutputStream,
+      lastPage: Option[Int] = None): Layout = {
+
+    val serializer = new IFSerializer(new IFContext(foUserAgent))
+    serializer.mimicDocumentHandler(foUserAgent.getRendererFactory().createDocumentHandler(foUserAgent, outputFormat))
+
+    val handler = new PageCountingHandler(serializer, lastPage)
+    foUserAgent.setDocumentHandlerOverride(handler)
+
+    new Layout(foUserAgent.newFop(MimeConstants.MIME_FOP_IF, output), handler)
+  }
+
+  /** Runs `feed`, which reports XSL-FO to a layout's `Fop`, ignoring the
+    * exception that ends a layout at its last page.
+    *
+    * @param feed reports the XSL-FO
+    */
+  def untilLastPage(feed: => Unit): Unit = {
+
+    try {
+      feed
+    } catch {
+      case e: Exception if causes(e).exists(_.isInstanceOf[LastPageReached]) =>
+    }
+  }
+
+  /** Renders IF documents, in order, into one document in `outputFormat`.
+    *
+    * @param foUserAgent the user agent for the rendering
+    * @param outputFormat the format to generate (which each IF document
+    *                     should have been laid out for)
+    * @param documents the IF documents
+    * @param output the `OutputStream` to which to write the output
+    */
+  def concatenate(foUserAgent: FOUserAgent, outputFormat: String, documents: Seq[Array[Byte]],
+      output: OutputStream): Unit = {
+
+    val concatenator = new IFConcatenator(targetHandler(foUserAgent, outputFormat, output), null /* metadata */)
+    documents.foreach { document => concatenator.appendDocument(new StreamSource(new ByteArrayInputStream(document))) }
+    concatenator.finish()
+  }
+
+  /** Renders one page of an IF document in `outputFormat`.
+    *
+    * @param foUserAgent the user agent for the rendering
+    * @param outputFormat the format to generate
+    * @param document the IF document
+    * @param page the page (1-based)
+    * @param output the `OutputStream` to which to write the output
+    */
+  def renderPage(foUserAgent: FOUserAgent, outputFormat: String, document: Array[Byte], page: Int,
+      output: OutputStream): Unit = {
+
+    val handler = targetHandler(foUserAgent, outputFormat, output)
+
+    val filter = new PageFilter(page)
+    filter.setContentHandler(new IFParser().getContentHandler(handler, foUserAgent))
+
+    SaxParsing.parse(new InputSource(new ByteArrayInputStream(document)), filter)
+  }
+
+  private def targetHandler(foUserAgent: FOUserAgent, outputFormat: String, output: OutputStream): IFDocumentHandler = {
+
+    val handler = foUserAgent.getRendererFactory().createDocumentHandler(foUserAgent, outputFormat)
+    IFUtil.setupFonts(handler)
+    handler.setResult(new StreamResult(output))
+    handler
+  }
+
+  private def causes(throwable: Throwable): Iterator[Throwable] = {
+    Iterator.iterate(throwable)(_.getCause()).takeWhile(_ != null).take(16)  // bounded, in case of a cycle
+  }
+
+  /** Thrown to end a layout once its last page is written.
+    */
+  private class LastPageReached extends RuntimeException(null, null, false, false)
+
+  /** Counts the pages written to `delegate`, ending the document (and the
+    * layout) after `lastPage`, if supplied.
+    */
+  private class PageCountingHandler(delegate: IFDocumentHandler, lastPage: Option[Int])
+      extends IFDocumentHandlerProxy(delegate) {
+
+    @volatile var pageCount: Int = 0
+
+    override def endPage(): Unit = {
+
+      super.endPage()
+      pageCount += 1
+
+      if (lastPage.contains(pageCount)) {
+        super.endPageSequence()
+        super.startDocumentTrailer()
+        super.endDocumentTrailer()
+        super.endDocument()
+        throw new LastPageReached()
+      }
+    }
+  }
+
+  /** Passes on an IF document, leaving out all pages but `page`, which
+    * becomes the first (some renderers place pages by their index).
+    */
+  private class PageFilter(page: Int) extends XMLFilterImpl {
+
+    private var pageCount = 0
+
+    private var skippedDepth = 0  // the depth within a left-out page, or 0
+
+    override def startElement(uri: String, localName: String, qName: String, attributes: Attributes): Unit = {
+
+      if (skippedDepth > 0) {
+        skippedDepth += 1
+      } else if (uri == IFConstants.NAMESPACE && localName == IFConstants.EL_PAGE) {
+        pageCount += 1
+        if (pageCount == page) {
+          val renumbered = new AttributesImpl(attributes)
+          val index = renumbered.getIndex("index")
+          if (index >= 0) renumbered.setValue(index, "0")
+          super.startElement(uri, localName, qName, renumbered)
+        } else {
+          skippedDepth = 1
+        }
+      } else {
+        super.startElement(uri, localName, qName, attributes)
+      }
+    }
+
+    override def endElement(uri: String, localName: String, qName: String): Unit = {
+
+      if (skippedDepth > 0) {
+        skippedDepth -= 1
+      } else {
+        super.endElement(uri, localName, qName)
+      }
+    }
+
+    override def characters(ch: Array[Char], start: Int, length: Int): Unit = {
+      if (skippedDepth == 0) super.characters(ch, start, length)
+    }
+
+    override def ignorableWhitespace(ch: Array[Char], start: Int, length: Int): Unit = {
+      if (skippedDepth == 0) super.ignorableWhitespace(ch, start, length)
+    }
+
+    override def startPrefixMapping(prefix: String, uri: String): Unit = {
+      if (skippedDepth == 0) super.startPrefixMapping(prefix, uri)
+    }
+
+    override def endPrefixMapping(prefix: String): Unit = {
+      if (skippedDepth == 0) super.endPrefixMapping(prefix)
+    }
+
+    override def processingInstruction(target: String, data: String): Unit = {
+      if (skippedDepth == 0) super.processingInstruction(target, data)
+    }
+  }
+}
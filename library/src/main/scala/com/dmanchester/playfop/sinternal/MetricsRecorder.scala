@@ -0,0 +1,149 @@
+package com.dmanchester.playfop.sinternal
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAccumulator
+import java.util.concurrent.atomic.LongAdder
+
+import scala.collection.JavaConverters.mapAsScalaConcurrentMapConverter
+
+import org.slf4j.LoggerFactory
+
+import com.dmanchester.playfop.api.LatencyBucket
+import com.dmanchester.playfop.api.MetricsListener
+import com.dmanchester.playfop.api.MetricsSnapshot
+import com.dmanchester.playfop.api.RenderEvent
+import com.dmanchester.playfop.api.RenderMetrics
+
+/** Records PlayFOP's metrics in memory, and passes each one on to `listener`.
+  *
+  * Render latencies are recorded in a histogram per output format, with fixed
+  * buckets (see `[[MetricsRecorder$.LatencyBoundsMillis LatencyBoundsMillis]]`);
+  * recording takes no locks. An exception thrown by `listener` is logged, not
+  * rethrown.
+  *
+  * Instances of this class are thread-safe.
+  *
+  * @param listener the listener to pass metrics on to
+  */
+class MetricsRecorder(listener: MetricsListener = MetricsListener.NoOp) extends MetricsListener {
+
+  private val formats = new ConcurrentHashMap[String, MetricsRecorder.FormatMetrics]()
+
+  private val fopFactoryCacheHits = new LongAdder()
+  private val fopFactoriesCreated = new LongAdder()
+  private val fopFactoryBuildNanos = new LongAdder()
+
+  private val peakRendersInFlight = new LongAccumulator(math.max(_, _), 0)
+
+  private val logger = LoggerFactory.getLogger(this.getClass())
+
+  override def renderCompleted(render: RenderEvent): Unit = {
+
+    formatMetrics(render.outputFormat).recordCompleted(render)
+    passOn(listener.renderCompleted(render))
+  }
+
+  override def renderFailed(outputFormat: String, elapsedNanos: Long, failure: Throwable): Unit = {
+
+    formatMetrics(outputFormat).failed.increment()
+    passOn(listener.renderFailed(outputFormat, elapsedNanos, failure))
+  }
+
+  override def rendersInFlightChanged(inFlight: Int): Unit = {
+
+    peakRendersInFlight.accumulate(inFlight)
+    passOn(listener.rendersInFlightChanged(inFlight))
+  }
+
+  override def fopFactoryCacheHit(configHash: String): Unit = {
+
+    fopFactoryCacheHits.increment()
+    passOn(listener.fopFactoryCacheHit(configHash))
+  }
+
+  override def fopFactoryCreated(configHash: String, buildNanos: Long): Unit = {
+
+    fopFactoriesCreated.increment()
+    fopFactoryBuildNanos.add(buildNanos)
+    passOn(listener.fopFactoryCreated(configHash, buildNanos))
+  }
+
+  /** Takes a snapshot of the metrics recorded.
+    *
+    * @return the snapshot
+    */
+  def snapshot: MetricsSnapshot = {
+
+    val renders = formats.asScala.map { case (outputFormat, metrics) => outputFormat -> metrics.snapshot }.toMap
+
+    MetricsSnapshot(renders, fopFactoryCacheHits.sum(), fopFactoriesCreated.sum(),
+        TimeUnit.NANOSECONDS.toMillis(fopFactoryBuildNanos.sum()), peakRendersInFlight.get().toInt)
+  }
+
+  private def formatMetrics(outputFormat: String): MetricsRecorder.FormatMetrics = {
+
+    val existing = formats.get(outputFormat)
+    if (existing != null) {
+      existing
+    } else {
+      formats.computeIfAbsent(outputFormat, _ => new MetricsRecorder.FormatMetrics())
+    }
+  }
+
+  private def passOn(notify: => Unit): Unit = {
+
+    try {
+      notify
+    } catch {
+      case e: Exception => logger.warn("Metrics listener failed.", e)
+    }
+  }
+}
+
+/** Companion object of the `[[MetricsRecorder]]` class.
+  */
+object MetricsRecorder {
+
+  /** The upper bounds, in milliseconds, of the buckets of each latency
+    * histogram, save the last (which is unbounded).
+    */
+  val LatencyBoundsMillis: IndexedSeq[Long] =
+      IndexedSeq(1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000)
+
+  private val LatencyBoundsNanos = LatencyBoundsMillis.map(TimeUnit.MILLISECONDS.toNanos).toArray
+
+  /** The metrics for one output format.
+    */
+  private class FormatMetrics {
+
+    val completed = new LongAdder()
+    val failed = new LongAdder()
+    val outputBytes = new LongAdder()
+    val inputSize = new LongAdder()
+    val totalNanos = new LongAdder()
+    val maxNanos = new LongAccumulator(math.max(_, _), 0)
+    val buckets = Array.fill(LatencyBoundsNanos.length + 1)(new LongAdder())
+
+    def recordCompleted(render: RenderEvent): Unit = {
+
+      completed.increment()
+      outputBytes.add(render.outputBytes)
+      render.inputSize.foreach(inputSize.add)
+      totalNanos.add(render.elapsedNanos)
+      maxNanos.accumulate(render.elapsedNanos)
+
+      val bucket = LatencyBoundsNanos.indexWhere(render.elapsedNanos <= _)
+      buckets(if (bucket >= 0) bucket else LatencyBoundsNanos.length).increment()
+    }
+
+    def snapshot: RenderMetrics = {
+
+      val upperBounds = LatencyBoundsMillis :+ Long.MaxValue
+      val latencies = upperBounds.zip(buckets).map { case (upperBound, count) => LatencyBucket(upperBound, count.sum()) }
+
+      RenderMetrics(completed.sum(), failed.sum(), outputBytes.sum(), inputSize.sum(),
+          TimeUnit.NANOSECONDS.toMillis(totalNanos.sum()), TimeUnit.NANOSECONDS.toMillis(maxNanos.get()), latencies)
+    }
+  }
+}
@@ -0,0 +1,329 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.File
+import java.io.IOException
+import java.io.OutputStreamWriter
+import java.io.Reader
+import java.io.StringReader
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.DigestOutputStream
+import java.security.MessageDigest
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+
+import org.slf4j.LoggerFactory
+
+import com.dmanchester.playfop.api.FopConfig
+import com.dmanchester.playfop.api.OutputCacheStats
+
+/** A cache of rendered output, keyed by `OutputCache.key`.
+  *
+  * Outputs are held in memory, up to `settings.maxMemoryBytes` in total,
+  * evicting the least recently used ones to make room for others. If
+  * `settings.diskDirectory` is set, they are also written there, up to
+  * `settings.maxDiskBytes` in total, evicting the oldest ones; outputs evicted
+  * from memory (or written by an earlier run of the application) are then
+  * read back from disk. Outputs older than `settings.ttl` are not returned;
+  * an output's age counts from when it was rendered, wherever it is read
+  * from.
+  *
+  * The outputs on disk are totaled as they are written, and the directory is
+  * only listed when they exceed the maximum (and once, on creation). Pruning
+  * then deletes outputs down to somewhat below the maximum, so that the
+  * next several writes don't each list it again. It also deletes temporary
+  * files left behind by writes that never completed (say, because the
+  * application crashed).
+  *
+  * The disk tier is best-effort: failures to read or write it are logged, and
+  * treated as misses.
+  *
+  * Instances of this class are thread-safe.
+  *
+  * @param settings the cache's settings
+  */
+class OutputCache(settings: OutputCacheSettings) {
+
+  private val memory = new java.util.LinkedHashMap[String, OutputCache.Entry](16, 0.75f, true /* accessOrder */)
+  private var memoryBytes = 0L  // guarded by memory
+
+  private val memoryHits = new LongAdder()
+  private val diskHits = new LongAdder()
+  private val misses = new LongAdder()
+
+  private val diskLock = new Object()
+  private var diskBytes = 0L  // guarded by diskLock; approximate, as other instances may share the directory
+
+  private val logger = LoggerFactory.getLogger(this.getClass())
+
+  settings.diskDirectory.foreach { directory =>
+    directory.mkdirs()
+    pruneDisk(directory)
+  }
+
+  /** Whether the cache is enabled. If not, `get` always misses and `put` does
+    * nothing.
+    */
+  def enabled: Boolean = settings.enabled
+
+  /** Gets a cached output.
+    *
+    * @param key the output's key
+    * @return the output, if cached (and not expired)
+    */
+  def get(key: String): Option[Array[Byte]] = {
+
+    val output = if (enabled) lookUp(key) else None
+    output.map(_.clone())  // callers may modify the array
+  }
+
+  /** Caches an output.
+    *
+    * @param key the output's key
+    * @param output the output
+    */
+  def put(key: String, output: Array[Byte]): Unit = {
+
+    if (enabled) {
+      val copy = output.clone()  // the caller may modify the array
+      putInMemory(key, new OutputCache.Entry(copy, System.nanoTime()))
+      putOnDisk(key, copy)
+    }
+  }
+
+  /** Takes statistics for the cache.
+    *
+    * @return the statistics
+    */
+  def stats: OutputCacheStats = memory.synchronized {
+    OutputCacheStats(memoryHits.sum(), diskHits.sum(), misses.sum(), memory.size(), memoryBytes)
+  }
+
+  private def lookUp(key: String): Option[Array[Byte]] = {
+
+    val fromMemory = getFromMemory(key)
+    lazy val fromDisk = getFromDisk(key)
+
+    if (fromMemory.isDefined) {
+      memoryHits.increment()
+      fromMemory
+    } else if (fromDisk.isDefined) {
+      diskHits.increment()
+      putInMemory(key, fromDisk.get)  // keeping the time it was stored on disk, so that it expires no later
+      fromDisk.map(_.output)
+    } else {
+      misses.increment()
+      None
+    }
+  }
+
+  private def getFromMemory(key: String): Option[Array[Byte]] = memory.synchronized {
+
+    Option(memory.get(key)).flatMap { entry =>
+      if (expired(System.nanoTime() - entry.storedAtNanos, TimeUnit.NANOSECONDS)) {
+        remove(key)
+        None
+      } else {
+        Some(entry.output)
+      }
+    }
+  }
+
+  private def putInMemory(key: String, entry: OutputCache.Entry): Unit = memory.synchronized {
+
+    if (entry.output.length <= settings.maxMemoryBytes) {
+
+      remove(key)
+      memory.put(key, entry)
+      memoryBytes += entry.output.length
+
+      // Least recently used first
+      val entries = memory.entrySet().iterator()
+      while (memoryBytes > settings.maxMemoryBytes) {
+        memoryBytes -= entries.next().getValue().output.length
+        entries.remove()
+      }
+    }
+  }
+
+  private def remove(key: String): Unit = {
+    Option(memory.remove(key)).foreach { entry => memoryBytes -= entry.output.length }
+  }
+
+  /** Reads an output from disk, as an entry stored when the file was last
+    * modified.
+    */
+  private def getFromDisk(key: String): Option[OutputCache.Entry] = {
+
+    settings.diskDirectory.flatMap { directory =>
+
+      val file = OutputCache.file(directory, key)
+
+      try {
+        lazy val ageMillis = math.max(System.currentTimeMillis() - file.lastModified(), 0L)
+        if (!file.isFile()) {
+          None
+        } else if (expired(ageMillis, TimeUnit.MILLISECONDS)) {
+          deleteFromDisk(file)
+          None
+        } else {
+          val storedAtNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ageMillis)
+          Some(new OutputCache.Entry(Files.readAllBytes(file.toPath()), storedAtNanos))
+        }
+      } catch {
+        case e: IOException =>
+          logger.warn(s"Could not read cached output $file.", e)
+          None
+      }
+    }
+  }
+
+  private def putOnDisk(key: String, output: Array[Byte]): Unit = {
+
+    settings.diskDirectory.foreach { directory =>
+
+      val file = OutputCache.file(directory, key)
+
+      try {
+        // Write, then rename, so that readers never see a partial file.
+        val tempFile = File.createTempFile(OutputCache.TempPrefix, OutputCache.TempSuffix, directory).toPath()
+        try {
+          Files.write(tempFile, output)
+          diskLock.synchronized {
+            val replacedBytes = if (file.isFile()) file.length() else 0L
+            Files.move(tempFile, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+            diskBytes += output.length - replacedBytes
+          }
+        } finally {
+          Files.deleteIfExists(tempFile)
+        }
+
+        if (diskLock.synchronized { diskBytes > settings.maxDiskBytes }) {
+          pruneDisk(directory)
+        }
+      } catch {
+        case e: IOException => logger.warn(s"Could not write cached output $file.", e)
+      }
+    }
+  }
+
+  private def deleteFromDisk(file: File): Unit = diskLock.synchronized {
+
+    val bytes = file.length()
+    if (file.delete()) {
+      diskBytes -= bytes
+    }
+  }
+
+  /** Totals the outputs on disk, deleting the oldest ones, if they total more
+    * than the maximum size, until they total no more than
+    * `OutputCache.PruneToFraction` of it. Also deletes stale temporary
+    * files.
+    */
+  private def pruneDisk(directory: File): Unit = diskLock.synchronized {
+
+    val files = Option(directory.listFiles()).getOrElse(Array.empty[File])
+
+    val staleBefore = System.currentTimeMillis() - OutputCache.StaleTempMillis
+    files.filter(OutputCache.isTempFile).filter(_.lastModified() < staleBefore).foreach { file =>
+      logger.debug(s"Deleting stale temporary file $file.")
+      file.delete()
+    }
+
+    val outputs = files.filter(_.getName().endsWith(OutputCache.Suffix))
+    diskBytes = outputs.map(_.length()).sum
+
+    if (diskBytes > settings.maxDiskBytes) {
+      val target = (settings.maxDiskBytes * OutputCache.PruneToFraction).toLong
+      outputs.sortBy(_.lastModified()).iterator.takeWhile(_ => diskBytes > target).foreach { file =>
+        val bytes = file.length()
+        if (file.delete()) {
+          diskBytes -= bytes
+        }
+      }
+    }
+  }
+
+  private def expired(age: Long, unit: TimeUnit): Boolean = {
+    settings.ttl.exists(ttl => unit.toNanos(age) > ttl.toNanos)
+  }
+}
+
+/** Companion object of the `[[OutputCache]]` class.
+  */
+object OutputCache {
+
+  private val Suffix = ".out"
+
+  private val TempPrefix = "output"
+  private val TempSuffix = ".tmp"
+
+  /** How old a temporary file must be to be deemed left behind by a write
+    * that never completed, rather than one in progress.
+    */
+  private val StaleTempMillis = TimeUnit.HOURS.toMillis(1)
+
+  /** The fraction of the maximum size to which outputs on disk are pruned.
+    */
+  private val PruneToFraction = 0.9
+
+  private def isTempFile(file: File): Boolean = {
+    val name = file.getName()
+    name.startsWith(TempPrefix) && name.endsWith(TempSuffix)
+  }
+
+  /** Computes the key under which to cache output: a hash (hex-encoded
+    * SHA-256) of the XSL-FO and of everything else that determines the output.
+    *
+    * @param xslfo the XSL-FO, as text
+    * @param outputFormat the output format
+    * @param cacheKey the caller's key for anything else that affects the
+    *                 output (for example, `FOUserAgent` settings)
+    * @param autoDetectFontsForPDF whether fonts are auto-detected
+    * @param fopConfig the Apache FOP configuration
+    * @return the key
+    */
+  def key(xslfo: String, outputFormat: String, cacheKey: String, autoDetectFontsForPDF: Boolean,
+      fopConfig: FopConfig): String = {
+
+    key(new StringReader(xslfo), outputFormat, cacheKey, autoDetectFontsForPDF, fopConfig)
+  }
+
+  /** As `key(xslfo: String, ...)`, but reads the XSL-FO from `xslfo`, a
+    * chunk at a time, rather than taking it as one `String`. The key is the
+    * same for the same text.
+    *
+    * @param xslfo the XSL-FO, as text
+    * @param outputFormat the output format
+    * @param cacheKey the caller's key for anything else that affects the
+    *                 output (for example, `FOUserAgent` settings)
+    * @param autoDetectFontsForPDF whether fonts are auto-detected
+    * @param fopConfig the Apache FOP configuration
+    * @return the key
+    */
+  def key(xslfo: Reader, outputFormat: String, cacheKey: String, autoDetectFontsForPDF: Boolean,
+      fopConfig: FopConfig): String = {
+
+    val digest = MessageDigest.getInstance("SHA-256")
+    Seq(outputFormat, cacheKey, autoDetectFontsForPDF.toString, fopConfig.hash).foreach { part =>
+      digest.update(part.getBytes(StandardCharsets.UTF_8))
+      digest.update(0: Byte)  // so that, e.g., ("ab", "c") and ("a", "bc") differ
+    }
+
+    // The writer encodes characters split across chunks (surrogate pairs)
+    // as it would have unsplit.
+    val writer = new OutputStreamWriter(new DigestOutputStream(PlayFopImpl.DiscardingOutputStream, digest),
+        StandardCharsets.UTF_8)
+    val buffer = new Array[Char](8192)
+    Iterator.continually(xslfo.read(buffer)).takeWhile(_ >= 0).foreach(writer.write(buffer, 0, _))
+    writer.flush()
+    digest.update(0: Byte)
+
+    digest.digest().map("%02x".format(_)).mkString
+  }
+
+  private def file(directory: File, key: String) = new File(directory, key + Suffix)
+
+  private class Entry(val output: Array[Byte], val storedAtNanos: Long)
+}
@@ -0,0 +1,253 @@
+package com.dmanchester.playfop.sinternal
+
+import java.awt.Dimension
+import java.io.OutputStream
+
+import org.apache.fop.apps.FOUserAgent
+import org.apache.fop.fo.DelegatingFOEventHandler
+import org.apache.fop.fo.FOEventHandler
+import org.apache.fop.fo.extensions.ExternalDocument
+import org.apache.fop.fo.pagination.PageSequence
+import org.apache.fop.render.intermediate.IFDocumentHandler
+import org.apache.fop.render.intermediate.IFPainter
+import org.apache.fop.render.intermediate.util.IFDocumentHandlerProxy
+import org.xml.sax.Attributes
+import org.xml.sax.ContentHandler
+import org.xml.sax.helpers.XMLFilterImpl
+
+import com.dmanchester.playfop.api.RenderTimings
+
+/** Times the phases of a render (see `[[com.dmanchester.playfop.api.RenderTimings RenderTimings]]`).
+  *
+  * Apache FOP streams a document through its phases: it builds the FO tree as
+  * the input is parsed, lays out each page sequence as its end is reached,
+  * and writes each page as it is laid out. So phases nest, rather than follow
+  * one another; the time spent in a phase excludes the time spent in phases
+  * nested within it.
+  *
+  * Instances of this class are not thread-safe.
+  */
+class PhaseTimer {
+
+  private val phaseNanos = new Array[Long](PhaseTimer.PhaseCount)
+
+  private var phases = List.empty[Int]  // the phases entered, innermost first
+
+  private var startNanos = 0L  // when the first phase was entered
+
+  private var lastNanos = 0L  // when a phase was last entered or exited
+
+  /** Runs `body` in `phase`.
+    *
+    * @tparam T the result type of `body`
+    * @param phase the phase (one of `[[PhaseTimer$.Setup Setup]]`, etc.)
+    * @param body the code to run
+    * @return `body`'s result
+    */
+  def apply[T](phase: Int)(body: => T): T = {
+
+    enter(phase)
+
+    try {
+      body
+    } finally {
+      exit()
+    }
+  }
+
+  /** Enters `phase`, until the next call to `exit()`.
+    *
+    * @param phase the phase
+    */
+  def enter(phase: Int): Unit = {
+    charge()
+    phases = phase :: phases
+  }
+
+  /** Exits the phase most recently entered.
+    */
+  def exit(): Unit = {
+    charge()
+    phases = phases.drop(1)
+  }
+
+  /** The time spent in each phase, as of the last time a phase was entered or
+    * exited, and overall since the first phase was entered.
+    *
+    * @return the timings
+    */
+  def timings: RenderTimings = {
+
+    RenderTimings(phaseNanos(PhaseTimer.Setup), phaseNanos(PhaseTimer.Parsing), phaseNanos(PhaseTimer.FoTree),
+        phaseNanos(PhaseTimer.Layout), phaseNanos(PhaseTimer.Output), lastNanos - startNanos)
+  }
+
+  private def charge(): Unit = {
+
+    val now = System.nanoTime()
+    if (startNanos == 0) startNanos = now
+    phases.headOption.foreach { phase => phaseNanos(phase) += now - lastNanos }
+    lastNanos = now
+  }
+}
+
+/** Companion object of the `[[PhaseTimer]]` class.
+  */
+object PhaseTimer {
+
+  /** Obtaining an `FopFactory` and creating an `Fop`.
+    */
+  val Setup = 0
+
+  /** Parsing the input (or otherwise producing SAX events from it).
+    */
+  val Parsing = 1
+
+  /** Building the FO tree.
+    */
+  val FoTree = 2
+
+  /** Laying out pages.
+    */
+  val Layout = 3
+
+  /** Rendering pages and writing the output.
+    */
+  val Output = 4
+
+  private val PhaseCount = 5
+
+  /** Sets `foUserAgent` up to report layout and output to `timer`, by
+    * overriding its `FOEventHandler` and (for output formats rendered via
+    * Apache FOP's intermediate format) its `IFDocumentHandler`, so that each
+    * is wrapped in one that times it. Overrides already set are left alone,
+    * as are output formats with their own `FOEventHandler` (such as RTF); for
+    * those, layout and output are timed as FO tree building.
+    *
+    * @param foUserAgent the user agent
+    * @param outputFormat the output format
+    * @param output the `OutputStream` to which the output will be written
+    * @param timer the timer
+    */
+  def instrument(foUserAgent: FOUserAgent, outputFormat: String, output: OutputStream, timer: PhaseTimer): Unit = {
+
+    val rendererFactory = foUserAgent.getRendererFactory()
+
+    if (foUserAgent.getFOEventHandlerOverride() == null && rendererFactory.getFOEventHandlerMaker(outputFormat) == null) {
+
+      val rendersViaIF = foUserAgent.getRendererOverride() == null && foUserAgent.getDocumentHandlerOverride() == null &&
+          (!rendererFactory.isRendererPreferred() || rendererFactory.getRendererMaker(outputFormat) == null)
+
+      if (rendersViaIF) {
+        try {
+          val documentHandler = rendererFactory.createDocumentHandler(foUserAgent, outputFormat)
+          foUserAgent.setDocumentHandlerOverride(new TimedDocumentHandler(documentHandler, timer))
+        } catch {
+          case _: UnsupportedOperationException =>  // not rendered via IF after all
+        }
+      }
+
+      val foEventHandler = rendererFactory.createFOEventHandler(foUserAgent, outputFormat, output)
+      foUserAgent.setFOEventHandlerOverride(new TimedFOEventHandler(foEventHandler, timer))
+    }
+  }
+
+  /** Wraps a `Fop`'s SAX handler in one that times it as FO tree building.
+    *
+    * @param handler the handler
+    * @param timer the timer
+    * @return the wrapping handler
+    */
+  def timedHandler(handler: ContentHandler, timer: PhaseTimer): ContentHandler = new TimedContentHandler(handler, timer)
+
+  private class TimedContentHandler(handler: ContentHandler, timer: PhaseTimer) extends XMLFilterImpl {
+
+    setContentHandler(handler)
+
+    override def startDocument(): Unit = timer(FoTree) { super.startDocument() }
+
+    override def endDocument(): Unit = timer(FoTree) { super.endDocument() }
+
+    override def startPrefixMapping(prefix: String, uri: String): Unit = timer(FoTree) {
+      super.startPrefixMapping(prefix, uri)
+    }
+
+    override def endPrefixMapping(prefix: String): Unit = timer(FoTree) { super.endPrefixMapping(prefix) }
+
+    override def startElement(uri: String, localName: String, qName: String, attributes: Attributes): Unit =
+      timer(FoTree) { super.startElement(uri, localName, qName, attributes) }
+
+    override def endElement(uri: String, localName: String, qName: String): Unit = timer(FoTree) {
+      super.endElement(uri, localName, qName)
+    }
+
+    override def characters(ch: Array[Char], start: Int, length: Int): Unit = timer(FoTree) {
+      super.characters(ch, start, length)
+    }
+
+    override def ignorableWhitespace(ch: Array[Char], start: Int, length: Int): Unit = timer(FoTree) {
+      super.ignorableWhitespace(ch, start, length)
+    }
+
+    override def processingInstruction(target: String, data: String): Unit = timer(FoTree) {
+      super.processingInstruction(target, data)
+    }
+  }
+
+  /** Times the `FOEventHandler` callbacks in which Apache FOP lays out pages.
+    */
+  private class TimedFOEventHandler(delegate: FOEventHandler, timer: PhaseTimer)
+      extends DelegatingFOEventHandler(delegate) {
+
+    override def startDocument(): Unit = timer(Layout) { super.startDocument() }
+
+    override def endDocument(): Unit = timer(Layout) { super.endDocument() }
+
+    override def endPageSequence(pageSeq: PageSequence): Unit = timer(Layout) { super.endPageSequence(pageSeq) }
+
+    override def endExternalDocument(externalDocument: ExternalDocument): Unit = timer(Layout) {
+      super.endExternalDocument(externalDocument)
+    }
+  }
+
+  /** Times the `IFDocumentHandler` calls in which Apache FOP renders pages,
+    * including everything from the start of each page to its end (when its
+    * content is painted).
+    */
+  private class TimedDocumentHandler(delegate: IFDocumentHandler, timer: PhaseTimer)
+      extends IFDocumentHandlerProxy(delegate) {
+
+    override def startDocument(): Unit = timer(Output) { super.startDocument() }
+
+    override def startDocumentHeader(): Unit = timer(Output) { super.startDocumentHeader() }
+
+    override def endDocumentHeader(): Unit = timer(Output) { super.endDocumentHeader() }
+
+    override def startPageSequence(id: String): Unit = timer(Output) { super.startPageSequence(id) }
+
+    override def startPage(index: Int, name: String, pageMasterName: String, size: Dimension): Unit = {
+      timer.enter(Output)  // exited at the end of the page
+      super.startPage(index, name, pageMasterName, size)
+    }
+
+    override def startPageContent(): IFPainter = timer(Output) { super.startPageContent() }
+
+    override def endPage(): Unit = {
+      try {
+        super.endPage()
+      } finally {
+        timer.exit()
+      }
+    }
+
+    override def endPageSequence(): Unit = timer(Output) { super.endPageSequence() }
+
+    override def startDocumentTrailer(): Unit = timer(Output) { super.startDocumentTrailer() }
+
+    override def endDocumentTrailer(): Unit = timer(Output) { super.endDocumentTrailer() }
+
+    override def endDocument(): Unit = timer(Output) { super.endDocument() }
+
+    override def handleExtensionObject(extension: AnyRef): Unit = timer(Output) { super.handleExtensionObject(extension) }
+  }
+}
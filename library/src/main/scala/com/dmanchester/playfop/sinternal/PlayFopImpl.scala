@@ -2,23 +2,47 @@ package com.dmanchester.playfop.sinternal
 
 import java.io.ByteArrayOutputStream
 import java.io.OutputStream
+import java.io.Reader
 import java.io.StringReader
-import java.io.StringWriter
+import java.net.URL
 
-import scala.xml.Elem
+import scala.annotation.tailrec
+import scala.concurrent.Future
+import scala.concurrent.Promise
 import scala.xml.Node
-import scala.xml.XML
 
 import org.apache.fop.apps.FOUserAgent
 import org.apache.fop.apps.Fop
+import org.apache.fop.apps.FopFactory
+import org.apache.fop.apps.MimeConstants
 import org.slf4j.LoggerFactory
+import org.xml.sax.ContentHandler
+import org.xml.sax.InputSource
 
+import com.dmanchester.playfop.api.BatchSink
+import com.dmanchester.playfop.api.BatchStats
+import com.dmanchester.playfop.api.FopConfig
+import com.dmanchester.playfop.api.FopFactoryCacheStats
+import com.dmanchester.playfop.api.ImageCacheStats
+import com.dmanchester.playfop.api.LaidOutDocument
+import com.dmanchester.playfop.api.MetricsListener
+import com.dmanchester.playfop.api.MetricsSnapshot
+import com.dmanchester.playfop.api.OutputCacheStats
+import com.dmanchester.playfop.api.PageRange
+import com.dmanchester.playfop.api.RenderEvent
+import com.dmanchester.playfop.api.RenderResult
+import com.dmanchester.playfop.api.ResourceCacheStats
+import com.dmanchester.playfop.jinternal.TwirlXmlReader
 import com.dmanchester.playfop.sapi.PlayFop
 
+import akka.NotUsed
+import akka.stream.scaladsl.Source
+import akka.stream.scaladsl.StreamConverters
+import akka.util.ByteString
+import javax.inject.Inject
 import javax.inject.Singleton
-import javax.xml.transform.TransformerFactory
 import javax.xml.transform.sax.SAXResult
-import javax.xml.transform.stream.StreamSource
+import play.api.inject.ApplicationLifecycle
 import play.twirl.api.Xml
 
 /** The standard implementation of `[[com.dmanchester.playfop.sapi.PlayFop PlayFop]]`.
@@ -27,83 +51,835 @@ import play.twirl.api.Xml
   * integration point with Apache FOP, and there is an open question around the
   * thread safety of Apache FOP itself. For more information, see the "Thread
   * Safety" discussion in the PlayFOP User Guide.
+  *
+  * @param settings PlayFOP's settings
+  * @param metricsListener the listener to pass PlayFOP's metrics on to
   */
 @Singleton
-class PlayFopImpl extends PlayFop {
+class PlayFopImpl(settings: PlayFopSettings, metricsListener: MetricsListener) extends PlayFop {
+
+  /** Creates an instance with the supplied settings.
+    *
+    * @param settings PlayFOP's settings
+    */
+  def this(settings: PlayFopSettings) = {
+    this(settings, MetricsListener.NoOp)
+  }
+
+  /** Creates an instance with the settings in PlayFOP's `reference.conf`.
+    */
+  def this() = {
+    this(PlayFopSettings.Default)
+  }
+
+  /** Creates an instance whose resources are released when the application
+    * stops, and whose metrics are passed on to a listener.
+    *
+    * @param settings PlayFOP's settings
+    * @param metricsListener the listener to pass PlayFOP's metrics on to
+    * @param lifecycle the application's lifecycle
+    */
+  @Inject()
+  def this(settings: PlayFopSettings, metricsListener: MetricsListener, lifecycle: ApplicationLifecycle) = {
+    this(settings, metricsListener)
+    lifecycle.addStopHook { () => Future.successful(shutdown()) }
+  }
+
+  /** Creates an instance whose resources are released when the application
+    * stops.
+    *
+    * @param settings PlayFOP's settings
+    * @param lifecycle the application's lifecycle
+    */
+  def this(settings: PlayFopSettings, lifecycle: ApplicationLifecycle) = {
+    this(settings, MetricsListener.NoOp, lifecycle)
+  }
 
-  private val fopFactorySource = new FopFactorySource()
+  private val metricsRecorder = new MetricsRecorder(metricsListener)
+
+  private val resourceCache = new ResourceCache(settings.resourceCache)
+
+  private val imagePreloader = new ImagePreloader(settings.imageCache)
+
+  private val renderPool = new RenderPool(settings.renderPool)
+
+  // Images are preloaded into each FopFactory in the background, as warm-up
+  // runs, rather than on the thread of the render that needs the FopFactory.
+  // If the pool is saturated, they are not, and the FopFactory caches images
+  // as it renders, as it otherwise would.
+  private val fopFactorySource = new FopFactorySource(settings.fopFactoryCache, settings.fontCache, metricsRecorder,
+      resourceCache, imagePreloader, preload => renderPool.submit(preload.run(), callerMayRun = false))
+
+  private val templatesSource = new TemplatesSource(settings.templatesCache)
+
+  private val outputCache = new OutputCache(settings.outputCache)
+
+  private val renderGate = new RenderGate(settings.renderGate, metricsRecorder)
 
   private val logger = LoggerFactory.getLogger(this.getClass())
 
+  if (settings.warmUp.onStart) {
+    renderPool.submit({
+      try {
+        warmUp()
+        if (settings.warmUp.autoDetectFontsForPDF) {
+          warmUp(autoDetectFontsForPDF = true)
+        }
+      } catch {
+        case e: Exception => logger.warn("Warm-up failed.", e)
+      }
+    }, callerMayRun = false)
+  }
+
   def processTwirlXml[U](xslfo: Xml, outputFormat: String,
       autoDetectFontsForPDF: Boolean = false,
-      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => }): Array[Byte] = {
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Array[Byte] = {
 
-    processStringXml(xslfo.body, outputFormat, autoDetectFontsForPDF, foUserAgentBlock)
+    cached(new TwirlXmlReader(xslfo), outputFormat, autoDetectFontsForPDF, fopConfig, cacheKey) {
+      toByteArray { processTwirlXmlToStream(xslfo, outputFormat, _, autoDetectFontsForPDF, foUserAgentBlock, fopConfig) }
+    }
   }
 
   def processScalaXml[U](xslfo: Node, outputFormat: String,
       autoDetectFontsForPDF: Boolean = false,
-      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => }): Array[Byte] = {
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Array[Byte] = {
 
-    val stringWriter = new StringWriter()
-    XML.write(stringWriter, xslfo, "utf-8", true /* xmlDecl */, null /* doctype */)
-
-    processStringXml(stringWriter.toString(), outputFormat, autoDetectFontsForPDF, foUserAgentBlock)
+    cached(new StringReader(xslfo.toString()), outputFormat, autoDetectFontsForPDF, fopConfig, cacheKey) {
+      toByteArray { processScalaXmlToStream(xslfo, outputFormat, _, autoDetectFontsForPDF, foUserAgentBlock, fopConfig) }
+    }
   }
 
   def processStringXml[U](xslfo: String, outputFormat: String,
       autoDetectFontsForPDF: Boolean = false,
-      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => }): Array[Byte] = {
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Array[Byte] = {
 
-    logger.info("Rendering XSL-FO...")
-    if (logger.isTraceEnabled()) {
-      logger.trace(s"XSL-FO:\n$xslfo")
+    cached(new StringReader(xslfo), outputFormat, autoDetectFontsForPDF, fopConfig, cacheKey) {
+      toByteArray { processStringXmlToStream(xslfo, outputFormat, _, autoDetectFontsForPDF, foUserAgentBlock, fopConfig) }
     }
+  }
 
-    val output = new ByteArrayOutputStream()
-    val fop = newFop(outputFormat, output, autoDetectFontsForPDF, foUserAgentBlock)
+  def processTwirlXmlToStream[U](xslfo: Xml, outputFormat: String, output: OutputStream,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit = {
+
+    render(xslfo.body, outputFormat, output, autoDetectFontsForPDF, foUserAgentBlock, fopConfig)(feedTwirlXml(xslfo))
+  }
+
+  def processScalaXmlToStream[U](xslfo: Node, outputFormat: String, output: OutputStream,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit = {
+
+    render(xslfo.toString(), outputFormat, output, autoDetectFontsForPDF, foUserAgentBlock, fopConfig)(
+        feedScalaXml(xslfo))
+  }
 
-    val transformer = TransformerFactory.newInstance().newTransformer()
+  def processStringXmlToStream[U](xslfo: String, outputFormat: String, output: OutputStream,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit = {
 
-    val source = new StreamSource(new StringReader(xslfo))
+    render(xslfo, outputFormat, output, autoDetectFontsForPDF, foUserAgentBlock, fopConfig)(feedStringXml(xslfo))
+  }
 
-    val result = new SAXResult(fop.getDefaultHandler())
+  def processTwirlXmlAsSource[U](xslfo: Xml, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Source[ByteString, NotUsed] = {
 
-    transformer.transform(source, result)
+    toSource { processTwirlXmlToStream(xslfo, outputFormat, _, autoDetectFontsForPDF, foUserAgentBlock, fopConfig) }
+  }
 
-    val byteArray = output.toByteArray()
+  def processScalaXmlAsSource[U](xslfo: Node, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Source[ByteString, NotUsed] = {
 
-    logger.info(s"...XSL-FO rendered. ${byteArray.length} bytes produced.")
+    toSource { processScalaXmlToStream(xslfo, outputFormat, _, autoDetectFontsForPDF, foUserAgentBlock, fopConfig) }
+  }
+
+  def processStringXmlAsSource[U](xslfo: String, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Source[ByteString, NotUsed] = {
 
-    byteArray
+    toSource { processStringXmlToStream(xslfo, outputFormat, _, autoDetectFontsForPDF, foUserAgentBlock, fopConfig) }
   }
 
-  def newFop[U](outputFormat: String, output: OutputStream,
+  def processTwirlXmlAsync[U](xslfo: Xml, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Future[Array[Byte]] = {
+
+    renderPool.submit { processTwirlXml(xslfo, outputFormat, autoDetectFontsForPDF, foUserAgentBlock, fopConfig, cacheKey) }
+  }
+
+  def processScalaXmlAsync[U](xslfo: Node, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Future[Array[Byte]] = {
+
+    renderPool.submit { processScalaXml(xslfo, outputFormat, autoDetectFontsForPDF, foUserAgentBlock, fopConfig, cacheKey) }
+  }
+
+  def processStringXmlAsync[U](xslfo: String, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default,
+      cacheKey: Option[String] = None): Future[Array[Byte]] = {
+
+    renderPool.submit { processStringXml(xslfo, outputFormat, autoDetectFontsForPDF, foUserAgentBlock, fopConfig, cacheKey) }
+  }
+
+  def processTwirlXmlAsResult[U](xslfo: Xml, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): RenderResult = {
+
+    timed { (output, timer) =>
+      render(xslfo.body, outputFormat, output, autoDetectFontsForPDF, foUserAgentBlock, fopConfig, Some(timer))(
+          feedTwirlXml(xslfo))
+    }
+  }
+
+  def processScalaXmlAsResult[U](xslfo: Node, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): RenderResult = {
+
+    timed { (output, timer) =>
+      render(xslfo.toString(), outputFormat, output, autoDetectFontsForPDF, foUserAgentBlock, fopConfig, Some(timer))(
+          feedScalaXml(xslfo))
+    }
+  }
+
+  def processStringXmlAsResult[U](xslfo: String, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): RenderResult = {
+
+    timed { (output, timer) =>
+      render(xslfo, outputFormat, output, autoDetectFontsForPDF, foUserAgentBlock, fopConfig, Some(timer))(
+          feedStringXml(xslfo))
+    }
+  }
+
+  def processXmlSource[U](xslfo: javax.xml.transform.Source, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Array[Byte] = {
+
+    toByteArray { processXmlSourceToStream(xslfo, outputFormat, _, autoDetectFontsForPDF, foUserAgentBlock, fopConfig) }
+  }
+
+  def processXmlSourceToStream[U](xslfo: javax.xml.transform.Source, outputFormat: String, output: OutputStream,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit = {
+
+    render(s"(supplied as a ${xslfo.getClass().getSimpleName()})", outputFormat, output, autoDetectFontsForPDF,
+        foUserAgentBlock, fopConfig)(feedXmlSource(xslfo))
+  }
+
+  def processWithXslt[U](data: javax.xml.transform.Source, stylesheet: URL, outputFormat: String,
       autoDetectFontsForPDF: Boolean = false,
-      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => }): Fop = {
-
-    val fopConfigXml: Option[Elem] = if (autoDetectFontsForPDF) {
-      Some(
-          <fop version="1.0">
-            <renderers>
-              <renderer mime="application/pdf">
-                <fonts>
-                  <auto-detect/>
-                </fonts>
-              </renderer>
-            </renderers>
-          </fop>
-      )
-    } else {
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Array[Byte] = {
+
+    toByteArray { processWithXsltToStream(data, stylesheet, outputFormat, _, autoDetectFontsForPDF, foUserAgentBlock, fopConfig) }
+  }
+
+  def processWithXsltToStream[U](data: javax.xml.transform.Source, stylesheet: URL, outputFormat: String,
+      output: OutputStream,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit = {
+
+    // Compile (or look up) the stylesheet before rendering, so that an invalid
+    // one fails without occupying a place in the render gate.
+    val templates = templatesSource.get(stylesheet)
+
+    render(s"(generated by $stylesheet)", outputFormat, output, autoDetectFontsForPDF, foUserAgentBlock, fopConfig) { handler =>
+      templates.newTransformer().transform(data, new SAXResult(handler))
       None
     }
+  }
+
+  def processBatch[K, U](inputs: Iterator[K], xslfo: K => Xml, outputFormat: String, sink: BatchSink[K],
+      parallelism: Int = 0,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): BatchStats = {
+
+    val threads = this.threads(parallelism)
+
+    val fopFactory = this.fopFactory(autoDetectFontsForPDF, fopConfig)
+
+    logger.info(s"Rendering batch on $threads threads...")
+
+    // Each document takes its own place in the render gate, so a batch
+    // counts towards the renders in flight. Once the gate is full, documents
+    // wait for a place for as long as it takes: the gate's limits on waiting
+    // are meant for interactive renders, and batch documents should be
+    // delayed, not lost.
+    val stats = BatchRunner.run(inputs, threads, sink) { key =>
+      renderGate.awaiting {
+        measured(outputFormat) {
+          val output = new ByteArrayOutputStream()
+          val fop = newFop(fopFactory, outputFormat, output, foUserAgentBlock)
+          val inputSize = feedTwirlXml(xslfo(key))(fop.getDefaultHandler())
+          (output.toByteArray(), inputSize, output.size().toLong)
+        }
+      }
+    }
+
+    logger.info(s"...batch rendered. ${stats.succeeded} documents succeeded and ${stats.failed} failed, " +
+        f"in ${stats.elapsedMillis} ms (${stats.documentsPerSecond}%.1f documents/s).")
+
+    stats
+  }
+
+  def processTwirlXmlConcatenated[U](parts: Seq[Xml], outputFormat: String,
+      parallelism: Int = 0,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Array[Byte] = {
+
+    toByteArray {
+      processTwirlXmlConcatenatedToStream(parts, outputFormat, _, parallelism, autoDetectFontsForPDF, foUserAgentBlock,
+          fopConfig)
+    }
+  }
+
+  def processTwirlXmlConcatenatedToStream[U](parts: Seq[Xml], outputFormat: String, output: OutputStream,
+      parallelism: Int = 0,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Unit = {
+
+    require(parts.nonEmpty, "parts must not be empty!")
+
+    val indexedParts = parts.toIndexedSeq
+    val threads = math.min(this.threads(parallelism), indexedParts.size)
+
+    val fopFactory = this.fopFactory(autoDetectFontsForPDF, fopConfig)
+
+    logger.info(s"Laying out ${indexedParts.size} parts on $threads threads...")
+
+    val laidOut = new Array[Array[Byte]](indexedParts.size)
+    val failures = new Array[Throwable](indexedParts.size)
+
+    val sink = new BatchSink[Int] {
+      def onOutput(index: Int, output: Array[Byte]): Unit = laidOut(index) = output
+      def onFailure(index: Int, failure: Throwable): Unit = failures(index) = failure
+    }
+
+    // The document is admitted to the render gate once, up front, and may be
+    // rejected then, as any render may. Its parts and the concatenation then
+    // each take a place, so the gate bounds the CPU this uses just as it does
+    // other renders, but wait for one however long it takes: an admitted
+    // document is not thrown away part way through. The caller holds no place
+    // while it waits, so parts can't be starved by their own document.
+    renderGate.admitOnce()
+
+    val stats = BatchRunner.run(indexedParts.indices.iterator, threads, sink) { index =>
+      renderGate.awaiting {
+        measured(MimeConstants.MIME_FOP_IF) {
+          val intermediateOutput = new ByteArrayOutputStream()
+          val fop = IntermediateFormat.layOut(newFOUserAgent(fopFactory, foUserAgentBlock), outputFormat,
+              intermediateOutput).fop
+          val inputSize = feedTwirlXml(indexedParts(index))(fop.getDefaultHandler())
+          (intermediateOutput.toByteArray(), inputSize, intermediateOutput.size().toLong)
+        }
+      }
+    }
+
+    // BatchRunner's threads have finished, so their writes to the arrays are
+    // visible here.
+    failures.find(_ != null).foreach { failure => throw failure }
+
+    logger.info(s"...parts laid out in ${stats.elapsedMillis} ms. Concatenating...")
+
+    renderGate.awaiting {
+      measured(outputFormat) {
+        val countingOutput = new CountingOutputStream(output)
+        IntermediateFormat.concatenate(newFOUserAgent(fopFactory, foUserAgentBlock), outputFormat, laidOut,
+            countingOutput)
+        countingOutput.flush()
+
+        logger.info(s"...parts concatenated. ${countingOutput.count} bytes produced.")
+
+        ((), Some(laidOut.map(_.length.toLong).sum), countingOutput.count)
+      }
+    }
+  }
+
+  def layOutTwirlXml[U](xslfo: Xml, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): LaidOutDocument = {
+
+    layOut(xslfo.body, outputFormat, autoDetectFontsForPDF, foUserAgentBlock, fopConfig)(feedTwirlXml(xslfo))
+  }
+
+  def layOutScalaXml[U](xslfo: Node, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): LaidOutDocument = {
+
+    layOut(xslfo.toString(), outputFormat, autoDetectFontsForPDF, foUserAgentBlock, fopConfig)(feedScalaXml(xslfo))
+  }
+
+  def layOutStringXml[U](xslfo: String, outputFormat: String,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): LaidOutDocument = {
+
+    layOut(xslfo, outputFormat, autoDetectFontsForPDF, foUserAgentBlock, fopConfig)(feedStringXml(xslfo))
+  }
+
+  def renderLaidOut[U](document: LaidOutDocument, outputFormat: String,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => }): Array[Byte] = {
+
+    toByteArray { renderLaidOutToStream(document, outputFormat, _, foUserAgentBlock) }
+  }
+
+  def renderLaidOutToStream[U](document: LaidOutDocument, outputFormat: String, output: OutputStream,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => }): Unit = {
+
+    renderGate {
+      measured(outputFormat) {
+
+        logger.info(s"Rendering $document as $outputFormat...")
+
+        val fopFactory = this.fopFactory(document.autoDetectFontsForPDF, document.fopConfig)
 
-    val fopFactory = fopFactorySource.get(fopConfigXml)
+        val countingOutput = new CountingOutputStream(output)
+        IntermediateFormat.concatenate(newFOUserAgent(fopFactory, foUserAgentBlock), outputFormat,
+            Seq(document.intermediateFormat), countingOutput)
+        countingOutput.flush()
+
+        logger.info(s"...document rendered. ${countingOutput.count} bytes produced.")
+
+        ((), Some(document.size.toLong), countingOutput.count)
+      }
+    }
+  }
+
+  def previewTwirlXml[U](xslfo: Xml, outputFormat: String,
+      pages: PageRange = PageRange.FirstPage,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Seq[Array[Byte]] = {
+
+    preview(xslfo.body, outputFormat, pages, autoDetectFontsForPDF, foUserAgentBlock, fopConfig)(feedTwirlXml(xslfo))
+  }
+
+  def previewScalaXml[U](xslfo: Node, outputFormat: String,
+      pages: PageRange = PageRange.FirstPage,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Seq[Array[Byte]] = {
+
+    preview(xslfo.toString(), outputFormat, pages, autoDetectFontsForPDF, foUserAgentBlock, fopConfig)(feedScalaXml(xslfo))
+  }
+
+  def previewStringXml[U](xslfo: String, outputFormat: String,
+      pages: PageRange = PageRange.FirstPage,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Seq[Array[Byte]] = {
+
+    preview(xslfo, outputFormat, pages, autoDetectFontsForPDF, foUserAgentBlock, fopConfig)(feedStringXml(xslfo))
+  }
+
+  def rendersInFlight: Int = renderGate.inFlight
+
+  def rendersQueued: Int = renderGate.queued
+
+  def fopFactoryCacheStats: FopFactoryCacheStats = fopFactorySource.stats
+
+  def outputCacheStats: OutputCacheStats = outputCache.stats
+
+  def resourceCacheStats: ResourceCacheStats = resourceCache.stats
+
+  def imageCacheStats: ImageCacheStats = imagePreloader.stats
+
+  def metrics: MetricsSnapshot = metricsRecorder.snapshot
+
+  def warmUp(autoDetectFontsForPDF: Boolean = false, fopConfig: FopConfig = FopConfig.Default): Unit = {
+
+    logger.info(s"Warming up (autoDetectFontsForPDF = $autoDetectFontsForPDF, $fopConfig)...")
+    processStringXmlToStream(PlayFopImpl.WarmUpXslfo, "application/pdf", PlayFopImpl.DiscardingOutputStream,
+        autoDetectFontsForPDF, fopConfig = fopConfig)
+    logger.info("...warmed up.")
+  }
+
+  def preloadImages(uris: Seq[String], outputFormat: String = "application/pdf",
+      autoDetectFontsForPDF: Boolean = false, fopConfig: FopConfig = FopConfig.Default): Unit = {
+
+    val effectiveFopConfig = if (autoDetectFontsForPDF) fopConfig.withAutoDetectFontsForPDF else fopConfig
+
+    logger.info(s"Preloading ${uris.size} image(s) for $outputFormat...")
+    fopFactorySource.preloadImages(uris, outputFormat, effectiveFopConfig)
+    logger.info("...preloaded.")
+  }
+
+  def newFop[U](outputFormat: String, output: OutputStream,
+      autoDetectFontsForPDF: Boolean = false,
+      foUserAgentBlock: (FOUserAgent => U) = {_: FOUserAgent => },
+      fopConfig: FopConfig = FopConfig.Default): Fop = {
+
+    newFop(fopFactory(autoDetectFontsForPDF, fopConfig), outputFormat, output, foUserAgentBlock)
+  }
+
+  private def fopFactory(autoDetectFontsForPDF: Boolean, fopConfig: FopConfig): FopFactory = {
+
+    val effectiveFopConfig = if (autoDetectFontsForPDF) fopConfig.withAutoDetectFontsForPDF else fopConfig
+
+    fopFactorySource.get(effectiveFopConfig)
+  }
+
+  private def newFop[U](fopFactory: FopFactory, outputFormat: String, output: OutputStream,
+      foUserAgentBlock: FOUserAgent => U): Fop = {
+
+    fopFactory.newFop(outputFormat, newFOUserAgent(fopFactory, foUserAgentBlock), output)
+  }
+
+  private def newFOUserAgent[U](fopFactory: FopFactory, foUserAgentBlock: FOUserAgent => U): FOUserAgent = {
 
     val foUserAgent = fopFactory.newFOUserAgent()
     foUserAgentBlock(foUserAgent)
+    foUserAgent
+  }
+
+  /** The number of threads for a `parallelism` argument.
+    */
+  private def threads(parallelism: Int): Int = {
+
+    require(parallelism >= 0, s"parallelism must be non-negative! (was $parallelism)")
+    if (parallelism == 0) Runtime.getRuntime().availableProcessors() else parallelism
+  }
+
+  /** Renders XSL-FO that `feed` reports to the `Fop`'s SAX handler.
+    *
+    * @param xslfoForTrace the XSL-FO, as text; only evaluated when tracing
+    * @param timer the timer to report the phases of the render to, if any
+    * @return the number of pages rendered (0 if the output format doesn't
+    *         report pages)
+    */
+  private def render[U](xslfoForTrace: => String, outputFormat: String, output: OutputStream,
+      autoDetectFontsForPDF: Boolean, foUserAgentBlock: FOUserAgent => U, fopConfig: FopConfig,
+      timer: Option[PhaseTimer] = None)
+      (feed: ContentHandler => Option[Long]): Int = {
+
+    renderGate {
+      measured(outputFormat) {
+
+        logger.info("Rendering XSL-FO...")
+        trace(xslfoForTrace)
+
+        val countingOutput = new CountingOutputStream(output)
+
+        val fop = timer.fold {
+          newFop(outputFormat, countingOutput, autoDetectFontsForPDF, foUserAgentBlock, fopConfig)
+        } { timer =>
+          timer(PhaseTimer.Setup) {
+            val fopFactory = this.fopFactory(autoDetectFontsForPDF, fopConfig)
+            val foUserAgent = newFOUserAgent(fopFactory, foUserAgentBlock)
+            PhaseTimer.instrument(foUserAgent, outputFormat, countingOutput, timer)
+            fopFactory.newFop(outputFormat, foUserAgent, countingOutput)
+          }
+        }
+
+        val inputSize = timer.fold {
+          feed(fop.getDefaultHandler())
+        } { timer =>
+          timer(PhaseTimer.Parsing) { feed(PhaseTimer.timedHandler(fop.getDefaultHandler(), timer)) }
+        }
+
+        countingOutput.flush()
+
+        val pageCount = Option(fop.getResults()).fold(0)(_.getPageCount())
+
+        logger.info(s"...XSL-FO rendered. ${countingOutput.count} bytes produced" +
+            timer.fold(".")(timer => s" (${timer.timings})."))
+
+        (pageCount, inputSize, countingOutput.count)
+      }
+    }
+  }
+
+  /** Runs `render`, which renders to an `OutputStream`, timing its phases.
+    */
+  private def timed(render: (OutputStream, PhaseTimer) => Int): RenderResult = {
+
+    val output = new ByteArrayOutputStream()
+    val timer = new PhaseTimer()
+    val pageCount = render(output, timer)
+    new RenderResult(output.toByteArray(), pageCount, timer.timings)
+  }
+
+  /** Lays out XSL-FO that `feed` reports to the `Fop`'s SAX handler.
+    *
+    * @param xslfoForTrace the XSL-FO, as text; only evaluated when tracing
+    * @param lastPage the page (1-based) after which to end the layout, if any
+    */
+  private def layOut[U](xslfoForTrace: => String, outputFormat: String, autoDetectFontsForPDF: Boolean,
+      foUserAgentBlock: FOUserAgent => U, fopConfig: FopConfig, lastPage: Option[Int] = None)
+      (feed: ContentHandler => Option[Long]): LaidOutDocument = {
+
+    renderGate {
+      measured(MimeConstants.MIME_FOP_IF) {
+
+        logger.info(s"Laying out XSL-FO for $outputFormat...")
+        trace(xslfoForTrace)
+
+        val fopFactory = this.fopFactory(autoDetectFontsForPDF, fopConfig)
+
+        val output = new ByteArrayOutputStream()
+        val layout = IntermediateFormat.layOut(newFOUserAgent(fopFactory, foUserAgentBlock), outputFormat, output,
+            lastPage)
+
+        var inputSize: Option[Long] = None
+        IntermediateFormat.untilLastPage { inputSize = feed(layout.fop.getDefaultHandler()) }
+
+        logger.info(s"...XSL-FO laid out. ${layout.pageCount} pages and ${output.size()} bytes produced.")
+
+        val document = new LaidOutDocument(output.toByteArray(), outputFormat, autoDetectFontsForPDF, fopConfig,
+            layout.pageCount)
+
+        (document, inputSize, document.size.toLong)
+      }
+    }
+  }
+
+  /** Renders each page of `pages` in the XSL-FO that `feed` reports,
+    * separately, laying out only as much of the XSL-FO as those pages need.
+    *
+    * Lays out the XSL-FO's first block-level elements (see
+    * `[[FlowTruncator]]`), ending the layout after the page following the
+    * range. If the elements don't fill the range, and there are more, lays out
+    * twice as many, and so on. (Rendering the page following the range, too,
+    * keeps content that would appear after the range from being pulled into
+    * it.)
+    *
+    * @param xslfoForTrace the XSL-FO, as text; only evaluated when tracing
+    */
+  private def preview[U](xslfoForTrace: => String, outputFormat: String, pages: PageRange,
+      autoDetectFontsForPDF: Boolean, foUserAgentBlock: FOUserAgent => U, fopConfig: FopConfig)
+      (feed: ContentHandler => Option[Long]): Seq[Array[Byte]] = {
+
+    @tailrec
+    def layOutFrom(cutPoints: Int): LaidOutDocument = {
+
+      var truncator: FlowTruncator = null
+
+      val document = layOut(xslfoForTrace, outputFormat, autoDetectFontsForPDF, foUserAgentBlock, fopConfig,
+          Some(pages.last + 1)) { handler =>
+        truncator = new FlowTruncator(cutPoints, handler)
+        feed(truncator)
+      }
+
+      if (document.pageCount > pages.last || !truncator.truncated || cutPoints > Int.MaxValue / 2) {
+        document
+      } else {
+        logger.debug(s"$cutPoints block-level elements filled ${document.pageCount} pages. Trying twice as many...")
+        layOutFrom(cutPoints * 2)
+      }
+    }
+
+    renderPages(layOutFrom(PlayFopImpl.PreviewCutPointsPerPage * (pages.last + 1)), outputFormat, pages,
+        foUserAgentBlock)
+  }
+
+  /** Renders each page of `pages` that `document` has, separately.
+    */
+  private def renderPages[U](document: LaidOutDocument, outputFormat: String, pages: PageRange,
+      foUserAgentBlock: FOUserAgent => U): Seq[Array[Byte]] = {
+
+    renderGate {
+      measured(outputFormat) {
+
+        logger.info(s"Rendering pages ${pages.first} to ${pages.last} of $document as $outputFormat...")
+
+        val fopFactory = this.fopFactory(document.autoDetectFontsForPDF, document.fopConfig)
+
+        val outputs = (pages.first to math.min(pages.last, document.pageCount)).map { page =>
+          toByteArray {
+            IntermediateFormat.renderPage(newFOUserAgent(fopFactory, foUserAgentBlock), outputFormat,
+                document.intermediateFormat, page, _)
+          }
+        }
+
+        val outputBytes = outputs.map(_.length.toLong).sum
+
+        logger.info(s"...${outputs.size} pages rendered. $outputBytes bytes produced.")
+
+        (outputs, Some(document.size.toLong), outputBytes)
+      }
+    }
+  }
+
+  private def trace(xslfo: => String): Unit = {
+
+    if (logger.isTraceEnabled()) {
+      logger.trace(s"XSL-FO:\n$xslfo")
+    }
+  }
+
+  // The feed... methods report XSL-FO to a handler, returning its size in
+  // characters, if known.
+
+  private def feedTwirlXml(xslfo: Xml)(handler: ContentHandler): Option[Long] = {
+
+    // Reads the template's fragments in turn, rather than concatenating them
+    // into one String (xslfo.body) first.
+    val reader = new TwirlXmlReader(xslfo)
+    SaxParsing.parse(new InputSource(reader), handler)
+    Some(reader.getCharsRead())
+  }
+
+  private def feedScalaXml(xslfo: Node)(handler: ContentHandler): Option[Long] = {
+    SaxEmitter.emit(xslfo, handler)
+    None
+  }
+
+  private def feedStringXml(xslfo: String)(handler: ContentHandler): Option[Long] = {
+    SaxParsing.parse(new InputSource(new StringReader(xslfo)), handler)
+    Some(xslfo.length.toLong)
+  }
+
+  private def feedXmlSource(xslfo: javax.xml.transform.Source)(handler: ContentHandler): Option[Long] = {
+    SourceEmitter.emit(xslfo, handler)
+    None
+  }
+
+  /** Runs `render`, reporting its outcome to the metrics recorder. `render`
+    * returns its result, the size of its input (if known), and the number of
+    * bytes it produced.
+    */
+  private def measured[T](outputFormat: String)(render: => (T, Option[Long], Long)): T = {
+
+    val start = System.nanoTime()
+
+    val (result, inputSize, outputBytes) = try {
+      render
+    } catch {
+      case e: Exception =>
+        metricsRecorder.renderFailed(outputFormat, System.nanoTime() - start, e)
+        throw e
+    }
+
+    metricsRecorder.renderCompleted(RenderEvent(outputFormat, inputSize, outputBytes, System.nanoTime() - start))
+
+    result
+  }
+
+  /** Returns the output for `xslfo` from the output cache, if `cacheKey` is
+    * supplied and the output is cached. Otherwise, renders it, caching it if
+    * `cacheKey` is supplied.
+    *
+    * @param xslfo the XSL-FO, as text; only evaluated if `cacheKey` is
+    *              supplied and the cache is enabled
+    */
+  private def cached(xslfo: => Reader, outputFormat: String, autoDetectFontsForPDF: Boolean, fopConfig: FopConfig,
+      cacheKey: Option[String])(render: => Array[Byte]): Array[Byte] = {
+
+    cacheKey.filter(_ => outputCache.enabled).map { cacheKey =>
+
+      val key = OutputCache.key(xslfo, outputFormat, cacheKey, autoDetectFontsForPDF, fopConfig)
+
+      outputCache.get(key).getOrElse {
+        val output = render
+        outputCache.put(key, output)
+        output
+      }
+    }.getOrElse(render)
+  }
+
+  private def toByteArray(process: OutputStream => Unit): Array[Byte] = {
+
+    val output = new ByteArrayOutputStream()
+    process(output)
+    output.toByteArray()
+  }
+
+  /** Stops the rendering thread pool from accepting new work. Subsequent
+    * `...Async` and `...AsSource` invocations fail; other methods are
+    * unaffected.
+    */
+  def shutdown(): Unit = {
+    renderPool.shutdown()
+  }
+
+  private def toSource(process: OutputStream => Unit): Source[ByteString, NotUsed] = {
+
+    // Each materialization needs its own Promise, hence the flatMapConcat.
+    Source.single(NotUsed).flatMapConcat { _ =>
+
+      val processed = Promise[Unit]()
+
+      val output = StreamConverters.asOutputStream().mapMaterializedValue { outputStream =>
+        // Processing on the materializing thread would deadlock: the
+        // OutputStream blocks until the stream it feeds signals demand.
+        processed.completeWith(renderPool.submit({
+          try {
+            process(outputStream)
+          } finally {
+            outputStream.close()
+          }
+        }, callerMayRun = false))
+        NotUsed
+      }
+
+      // Emits nothing, but fails the Source if processing failed. (Closing the
+      // OutputStream above completes "output" either way.)
+      val outcome = Source.future(processed.future).flatMapConcat { _ => Source.empty[ByteString] }
+
+      output.concat(outcome)
+    }
+  }
+}
+
+/** Companion object of the `[[PlayFopImpl]]` class.
+  */
+private object PlayFopImpl {
+
+  /** A minimal document for warming up Apache FOP.
+    */
+  val WarmUpXslfo: String =
+    """<fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
+      |  <fo:layout-master-set>
+      |    <fo:simple-page-master master-name="page">
+      |      <fo:region-body/>
+      |    </fo:simple-page-master>
+      |  </fo:layout-master-set>
+      |  <fo:page-sequence master-reference="page">
+      |    <fo:flow flow-name="xsl-region-body">
+      |      <fo:block>PlayFOP</fo:block>
+      |    </fo:flow>
+      |  </fo:page-sequence>
+      |</fo:root>""".stripMargin
+
+  /** The number of block-level elements per page to lay out, initially,
+    * when previewing.
+    */
+  val PreviewCutPointsPerPage = 32
 
-    fopFactory.newFop(outputFormat, foUserAgent, output)
+  /** An `OutputStream` that discards what is written to it.
+    */
+  object DiscardingOutputStream extends OutputStream {
+    override def write(b: Int): Unit = {}
+    override def write(b: Array[Byte], off: Int, len: Int): Unit = {}
   }
 }
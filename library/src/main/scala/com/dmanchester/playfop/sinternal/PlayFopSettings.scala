@@ -0,0 +1,373 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.File
+
+import scala.concurrent.duration.Duration
+import scala.concurrent.duration.FiniteDuration
+
+import com.typesafe.config.ConfigMemorySize
+
+import play.api.Configuration
+
+import com.dmanchester.playfop.api.MetricsListener
+
+/** PlayFOP's settings, as read from the `playfop` section of a Play
+  * configuration. Defaults are in PlayFOP's `reference.conf`.
+  *
+  * @param renderPool the settings for the rendering thread pool
+  * @param renderGate the settings for render admission control
+  * @param fopFactoryCache the settings for the cache of Apache FOP
+  *                        configurations
+  * @param fontCache the settings for Apache FOP's font cache
+  * @param warmUp the settings for warming up Apache FOP
+  * @param templatesCache the settings for the cache of compiled XSLT
+  *                       stylesheets
+  * @param outputCache the settings for the cache of rendered output
+  * @param resourceCache the settings for the cache of resources read while
+  *                      rendering
+  * @param imageCache the settings for images preloaded into Apache FOP's
+  *                   image caches
+  */
+case class PlayFopSettings(renderPool: RenderPoolSettings, renderGate: RenderGateSettings,
+    fopFactoryCache: FopFactoryCacheSettings, fontCache: FontCacheSettings, warmUp: WarmUpSettings,
+    templatesCache: TemplatesCacheSettings, outputCache: OutputCacheSettings, resourceCache: ResourceCacheSettings,
+    imageCache: ImageCacheSettings)
+
+/** Companion object of the `[[PlayFopSettings]]` class.
+  */
+object PlayFopSettings {
+
+  /** The settings in PlayFOP's `reference.conf`.
+    */
+  lazy val Default: PlayFopSettings = PlayFopSettings(Configuration.reference)
+
+  /** Reads settings from a Play configuration.
+    *
+    * @param configuration the configuration
+    * @return the settings
+    */
+  def apply(configuration: Configuration): PlayFopSettings = {
+
+    PlayFopSettings(
+      RenderPoolSettings(configuration.get[Configuration]("playfop.render-pool")),
+      RenderGateSettings(configuration.get[Configuration]("playfop.render-gate")),
+      FopFactoryCacheSettings(configuration.get[Configuration]("playfop.fop-factory-cache")),
+      FontCacheSettings(configuration.get[Configuration]("playfop.font-cache")),
+      WarmUpSettings(configuration.get[Configuration]("playfop.warm-up")),
+      TemplatesCacheSettings(configuration.get[Configuration]("playfop.templates-cache")),
+      OutputCacheSettings(configuration.get[Configuration]("playfop.output-cache")),
+      ResourceCacheSettings(configuration.get[Configuration]("playfop.resource-cache")),
+      ImageCacheSettings(configuration.get[Configuration]("playfop.image-cache"))
+    )
+  }
+
+  /** Loads the class of the metrics listener named in a Play configuration
+    * (`playfop.metrics.listener`), if any.
+    *
+    * @param configuration the configuration
+    * @param classLoader the class loader with which to load the class
+    * @return the class
+    */
+  def metricsListenerClass(configuration: Configuration,
+      classLoader: ClassLoader): Option[Class[_ <: MetricsListener]] = {
+
+    configuration.getOptional[String]("playfop.metrics.listener").map { className =>
+      classLoader.loadClass(className).asSubclass(classOf[MetricsListener])
+    }
+  }
+
+  /** Reads a non-negative count, where 0 means one per available processor.
+    */
+  private[sinternal] def countOrProcessors(configuration: Configuration, path: String): Int = {
+
+    configuration.get[Int](path) match {
+      case 0 => Runtime.getRuntime().availableProcessors()
+      case n if n > 0 => n
+      case n => throw configuration.reportError(path, s"$path must be non-negative! (was $n)")
+    }
+  }
+
+  /** Reads a positive number.
+    */
+  private[sinternal] def positive(configuration: Configuration, path: String): Int = {
+
+    val n = configuration.get[Int](path)
+    if (n < 1) {
+      throw configuration.reportError(path, s"$path must be positive! (was $n)")
+    }
+    n
+  }
+}
+
+/** Settings for the thread pool on which PlayFOP processes XSL-FO
+  * asynchronously.
+  *
+  * @param threads the number of threads
+  * @param queueSize the maximum number of renders that may wait for a thread
+  * @param callerRunsWhenSaturated whether a render submitted while the queue is
+  *                                full should be processed on the submitting
+  *                                thread (as opposed to being rejected)
+  */
+case class RenderPoolSettings(threads: Int, queueSize: Int, callerRunsWhenSaturated: Boolean)
+
+/** Companion object of the `[[RenderPoolSettings]]` class.
+  */
+object RenderPoolSettings {
+
+  private val RejectionPolicies = Map("reject" -> false, "caller-runs" -> true)
+
+  /** Reads settings from the `playfop.render-pool` section of a Play
+    * configuration.
+    *
+    * @param configuration the section
+    * @return the settings
+    */
+  def apply(configuration: Configuration): RenderPoolSettings = {
+
+    val threads = PlayFopSettings.countOrProcessors(configuration, "threads")
+    val queueSize = PlayFopSettings.positive(configuration, "queue-size")
+
+    val rejectionPolicy = configuration.get[String]("rejection-policy")
+    val callerRunsWhenSaturated = RejectionPolicies.getOrElse(rejectionPolicy,
+        throw configuration.reportError("rejection-policy", s"Unknown rejection-policy: '$rejectionPolicy'"))
+
+    RenderPoolSettings(threads, queueSize, callerRunsWhenSaturated)
+  }
+}
+
+/** Settings for render admission control.
+  *
+  * @param maxConcurrent the maximum number of renders in progress at once
+  * @param maxQueued the maximum number of renders that may wait for one in
+  *                  progress to finish
+  * @param maxWait how long a render may wait before being rejected
+  */
+case class RenderGateSettings(maxConcurrent: Int, maxQueued: Int, maxWait: FiniteDuration)
+
+/** Companion object of the `[[RenderGateSettings]]` class.
+  */
+object RenderGateSettings {
+
+  /** Reads settings from the `playfop.render-gate` section of a Play
+    * configuration.
+    *
+    * @param configuration the section
+    * @return the settings
+    */
+  def apply(configuration: Configuration): RenderGateSettings = {
+
+    val maxConcurrent = PlayFopSettings.countOrProcessors(configuration, "max-concurrent")
+
+    val maxQueued = configuration.get[Int]("max-queued")
+    if (maxQueued < 0) {
+      throw configuration.reportError("max-queued", s"max-queued must be non-negative! (was $maxQueued)")
+    }
+
+    val maxWait = configuration.get[FiniteDuration]("max-wait")
+
+    RenderGateSettings(maxConcurrent, maxQueued, maxWait)
+  }
+}
+
+/** Settings for the cache of Apache FOP configurations.
+  *
+  * @param maxSize the maximum number of configurations cached
+  * @param idleTimeout how long a configuration may go unused before being
+  *                    evicted, if at all
+  */
+case class FopFactoryCacheSettings(maxSize: Int, idleTimeout: Option[FiniteDuration])
+
+/** Companion object of the `[[FopFactoryCacheSettings]]` class.
+  */
+object FopFactoryCacheSettings {
+
+  /** Reads settings from the `playfop.fop-factory-cache` section of a Play
+    * configuration.
+    *
+    * @param configuration the section
+    * @return the settings
+    */
+  def apply(configuration: Configuration): FopFactoryCacheSettings = {
+
+    val maxSize = PlayFopSettings.positive(configuration, "max-size")
+
+    val idleTimeout = Some(configuration.get[FiniteDuration]("idle-timeout")).filter(_ > Duration.Zero)
+
+    FopFactoryCacheSettings(maxSize, idleTimeout)
+  }
+}
+
+/** Settings for Apache FOP's font cache.
+  *
+  * @param enabled whether to use the cache
+  * @param file the cache file, if not Apache FOP's default one
+  */
+case class FontCacheSettings(enabled: Boolean, file: Option[File])
+
+/** Companion object of the `[[FontCacheSettings]]` class.
+  */
+object FontCacheSettings {
+
+  /** Reads settings from the `playfop.font-cache` section of a Play
+    * configuration.
+    *
+    * @param configuration the section
+    * @return the settings
+    */
+  def apply(configuration: Configuration): FontCacheSettings = {
+
+    FontCacheSettings(
+      configuration.get[Boolean]("enabled"),
+      configuration.getOptional[String]("file").map(new File(_))
+    )
+  }
+}
+
+/** Settings for warming up Apache FOP.
+  *
+  * @param onStart whether to warm up when the application starts
+  * @param autoDetectFontsForPDF whether to warm up PDF rendering with font
+  *                              auto-detection, in addition to without it
+  */
+case class WarmUpSettings(onStart: Boolean, autoDetectFontsForPDF: Boolean)
+
+/** Companion object of the `[[WarmUpSettings]]` class.
+  */
+object WarmUpSettings {
+
+  /** Reads settings from the `playfop.warm-up` section of a Play
+    * configuration.
+    *
+    * @param configuration the section
+    * @return the settings
+    */
+  def apply(configuration: Configuration): WarmUpSettings = {
+
+    WarmUpSettings(
+      configuration.get[Boolean]("on-start"),
+      configuration.get[Boolean]("auto-detect-fonts-for-pdf")
+    )
+  }
+}
+
+/** Settings for the cache of compiled XSLT stylesheets.
+  *
+  * @param maxSize the maximum number of stylesheets cached
+  * @param checkModified whether to check a stylesheet's last-modified time on
+  *                      each use, compiling it again if it has changed
+  */
+case class TemplatesCacheSettings(maxSize: Int, checkModified: Boolean)
+
+/** Companion object of the `[[TemplatesCacheSettings]]` class.
+  */
+object TemplatesCacheSettings {
+
+  /** Reads settings from the `playfop.templates-cache` section of a Play
+    * configuration.
+    *
+    * @param configuration the section
+    * @return the settings
+    */
+  def apply(configuration: Configuration): TemplatesCacheSettings = {
+
+    TemplatesCacheSettings(
+      PlayFopSettings.positive(configuration, "max-size"),
+      configuration.get[Boolean]("check-modified")
+    )
+  }
+}
+
+/** Settings for the cache of rendered output.
+  *
+  * @param enabled whether to cache output
+  * @param maxMemoryBytes the maximum total size of the outputs held in memory
+  * @param ttl how long an output may be served from the cache, if limited
+  * @param diskDirectory the directory in which to also cache outputs, if any
+  * @param maxDiskBytes the maximum total size of the outputs in
+  *                     `diskDirectory`
+  */
+case class OutputCacheSettings(enabled: Boolean, maxMemoryBytes: Long, ttl: Option[FiniteDuration],
+    diskDirectory: Option[File], maxDiskBytes: Long)
+
+/** Companion object of the `[[OutputCacheSettings]]` class.
+  */
+object OutputCacheSettings {
+
+  /** Reads settings from the `playfop.output-cache` section of a Play
+    * configuration.
+    *
+    * @param configuration the section
+    * @return the settings
+    */
+  def apply(configuration: Configuration): OutputCacheSettings = {
+
+    OutputCacheSettings(
+      configuration.get[Boolean]("enabled"),
+      configuration.get[ConfigMemorySize]("max-memory").toBytes(),
+      Some(configuration.get[FiniteDuration]("ttl")).filter(_ > Duration.Zero),
+      configuration.getOptional[String]("disk.directory").map(new File(_)),
+      configuration.get[ConfigMemorySize]("disk.max-size").toBytes()
+    )
+  }
+}
+
+/** Settings for the cache of resources (images, fonts, etc.) read while
+  * rendering.
+  *
+  * @param enabled whether to cache resources
+  * @param maxMemoryBytes the maximum total size of the resources cached
+  * @param maxResourceBytes the size beyond which a resource is not cached
+  * @param maxFontBytes the size beyond which a font is not cached (in place
+  *                     of `maxResourceBytes`)
+  * @param checkModified whether to check a resource's last-modified time on
+  *                      each use, reading it again if it has changed
+  */
+case class ResourceCacheSettings(enabled: Boolean, maxMemoryBytes: Long, maxResourceBytes: Long,
+    maxFontBytes: Long, checkModified: Boolean)
+
+/** Companion object of the `[[ResourceCacheSettings]]` class.
+  */
+object ResourceCacheSettings {
+
+  /** Reads settings from the `playfop.resource-cache` section of a Play
+    * configuration.
+    *
+    * @param configuration the section
+    * @return the settings
+    */
+  def apply(configuration: Configuration): ResourceCacheSettings = {
+
+    ResourceCacheSettings(
+      configuration.get[Boolean]("enabled"),
+      configuration.get[ConfigMemorySize]("max-memory").toBytes(),
+      configuration.get[ConfigMemorySize]("max-resource-size").toBytes(),
+      configuration.get[ConfigMemorySize]("max-font-size").toBytes(),
+      configuration.get[Boolean]("check-modified")
+    )
+  }
+}
+
+/** Settings for images preloaded into Apache FOP's image caches.
+  *
+  * @param maxMemoryBytes the maximum estimated total size of the decoded
+  *                       images held in memory
+  */
+case class ImageCacheSettings(maxMemoryBytes: Long)
+
+/** Companion object of the `[[ImageCacheSettings]]` class.
+  */
+object ImageCacheSettings {
+
+  /** Reads settings from the `playfop.image-cache` section of a Play
+    * configuration.
+    *
+    * @param configuration the section
+    * @return the settings
+    */
+  def apply(configuration: Configuration): ImageCacheSettings = {
+
+    ImageCacheSettings(
+      configuration.get[ConfigMemorySize]("max-memory").toBytes()
+    )
+  }
+}
@@ -0,0 +1,129 @@
+package com.dmanchester.playfop.sinternal
+
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.slf4j.LoggerFactory
+
+import com.dmanchester.playfop.api.MetricsListener
+import com.dmanchester.playfop.api.RenderRejectedException
+
+/** Admission control for renders. Limits how many may be in progress at once;
+  * beyond that limit, renders wait (in arrival order) for others to finish,
+  * up to a maximum number waiting and a maximum wait time.
+  *
+  * Instances of this class are thread-safe.
+  *
+  * @param settings the gate's settings
+  * @param metrics the listener to notify as renders start and finish
+  */
+class RenderGate(settings: RenderGateSettings, metrics: MetricsListener = MetricsListener.NoOp) {
+
+  private val permits = new Semaphore(settings.maxConcurrent, true /* fair */)
+
+  private val waiting = new AtomicInteger()
+
+  private val logger = LoggerFactory.getLogger(this.getClass())
+
+  /** The number of renders in progress.
+    */
+  def inFlight: Int = settings.maxConcurrent - permits.availablePermits()
+
+  /** The number of renders waiting for others to finish.
+    */
+  def queued: Int = waiting.get()
+
+  /** Runs `render` once admitted.
+    *
+    * @tparam T the result type of `render`
+    * @param render the render to run
+    * @return `render`'s result
+    * @throws RenderRejectedException if the render is not admitted
+    */
+  def apply[T](render: => T): T = {
+    run(admit())(render)
+  }
+
+  /** Runs `render` once admitted, waiting as long as it takes: neither the
+    * maximum number waiting nor the maximum wait applies, so `render` is
+    * never rejected. For work that should be delayed, rather than lost, while
+    * the gate is busy (for example, batches). While it waits, `render` counts
+    * as queued.
+    *
+    * @tparam T the result type of `render`
+    * @param render the render to run
+    * @return `render`'s result
+    * @throws InterruptedException if the thread is interrupted while waiting
+    */
+  def awaiting[T](render: => T): T = {
+    run(await())(render)
+  }
+
+  /** Waits for admission as `apply` does, or is rejected, then gives the
+    * place back at once. For work that runs as several renders, each taking
+    * a place by way of `awaiting`: admitted once, up front, the work is
+    * rejected (if at all) before any of its renders run, and, once admitted,
+    * is not rejected part way through.
+    *
+    * @throws RenderRejectedException if the work is not admitted
+    */
+  def admitOnce(): Unit = {
+    admit()
+    permits.release()
+  }
+
+  private def run[T](admit: => Unit)(render: => T): T = {
+
+    admit
+    metrics.rendersInFlightChanged(inFlight)
+
+    try {
+      render
+    } finally {
+      permits.release()
+      metrics.rendersInFlightChanged(inFlight)
+    }
+  }
+
+  private def admit(): Unit = {
+
+    // A zero-timeout tryAcquire() (unlike the no-argument one) respects
+    // fairness, so it won't overtake renders already waiting.
+    if (!permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+
+      if (waiting.incrementAndGet() > settings.maxQueued) {
+        waiting.decrementAndGet()
+        throw reject(s"${settings.maxConcurrent} renders in progress and ${settings.maxQueued} waiting.")
+      }
+
+      val acquired = try {
+        permits.tryAcquire(settings.maxWait.toNanos, TimeUnit.NANOSECONDS)
+      } finally {
+        waiting.decrementAndGet()
+      }
+
+      if (!acquired) {
+        throw reject(s"waited ${settings.maxWait} for one of ${settings.maxConcurrent} renders in progress to finish.")
+      }
+    }
+  }
+
+  private def await(): Unit = {
+
+    if (!permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+      waiting.incrementAndGet()
+      try {
+        permits.acquire()
+      } finally {
+        waiting.decrementAndGet()
+      }
+    }
+  }
+
+  private def reject(reason: String): RenderRejectedException = {
+    val message = "Render rejected: " + reason
+    logger.warn(message)
+    new RenderRejectedException(message)
+  }
+}
@@ -0,0 +1,108 @@
+package com.dmanchester.playfop.sinternal
+
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import scala.concurrent.Future
+import scala.concurrent.Promise
+import scala.util.Try
+
+import org.slf4j.LoggerFactory
+
+import com.dmanchester.playfop.api.RenderRejectedException
+
+/** A bounded thread pool on which XSL-FO is processed asynchronously, keeping
+  * that CPU-intensive work off of the caller's threads.
+  *
+  * Threads are created on demand, are daemons, and time out when idle, so an
+  * unused pool holds no threads.
+  *
+  * Instances of this class are thread-safe.
+  *
+  * @param settings the pool's settings
+  */
+class RenderPool(settings: RenderPoolSettings) {
+
+  private val logger = LoggerFactory.getLogger(this.getClass())
+
+  private val executor = {
+
+    val executor = new ThreadPoolExecutor(settings.threads, settings.threads,
+        RenderPool.KeepAliveSeconds, TimeUnit.SECONDS,
+        new ArrayBlockingQueue[Runnable](settings.queueSize),
+        RenderPool.DaemonThreadFactory)
+    executor.allowCoreThreadTimeOut(true)
+    executor
+  }
+
+  /** Runs `body` on the pool.
+    *
+    * If the pool is saturated and its rejection policy is "caller-runs",
+    * `body` is instead run on the calling thread--unless `callerMayRun` is
+    * `false`, in which case `body` is rejected. (Callers that would deadlock
+    * by running `body` themselves should pass `false`.)
+    *
+    * @tparam T the result type of `body`
+    * @param callerMayRun whether `body` may be run on the calling thread
+    * @param body the code to run
+    * @return a `Future` of `body`'s result. If `body` is rejected because the
+    *         pool is saturated, the `Future` fails with a
+    *         `RenderRejectedException`; because the pool is shut down, with a
+    *         `RejectedExecutionException`.
+    */
+  def submit[T](body: => T, callerMayRun: Boolean = true): Future[T] = {
+
+    val promise = Promise[T]()
+
+    // Future.apply() can't be used here: if the executor rejects the task, the
+    // resulting Future never completes.
+    try {
+      executor.execute(new Runnable {
+        def run(): Unit = promise.complete(Try(body))
+      })
+    } catch {
+      case e: RejectedExecutionException if executor.isShutdown() =>
+        promise.failure(e)
+      case e: RejectedExecutionException =>
+        if (settings.callerRunsWhenSaturated && callerMayRun) {
+          logger.debug("Rendering pool saturated. Rendering on calling thread.")
+          promise.complete(Try(body))
+        } else {
+          val message = s"Render rejected: all ${settings.threads} threads busy and ${settings.queueSize} renders queued."
+          logger.warn(message)
+          promise.failure(new RenderRejectedException(message))
+        }
+    }
+
+    promise.future
+  }
+
+  /** Stops accepting new work. Work already submitted is completed.
+    */
+  def shutdown(): Unit = {
+    executor.shutdown()
+  }
+}
+
+/** Companion object of the `[[RenderPool]]` class. Consists of private members
+  * for the class's use.
+  */
+object RenderPool {
+
+  private val KeepAliveSeconds = 60L
+
+  private object DaemonThreadFactory extends ThreadFactory {
+
+    private val threadCount = new AtomicInteger()
+
+    def newThread(runnable: Runnable): Thread = {
+      val thread = new Thread(runnable, "playfop-render-" + threadCount.incrementAndGet())
+      thread.setDaemon(true)
+      thread
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.FileNotFoundException
+import java.io.InputStream
+import java.io.OutputStream
+import java.io.SequenceInputStream
+import java.net.URI
+import java.net.URL
+import java.util.Locale
+import java.util.concurrent.atomic.LongAdder
+
+import org.apache.fop.apps.io.ResourceResolverFactory
+import org.apache.xmlgraphics.io.Resource
+import org.apache.xmlgraphics.io.ResourceResolver
+import org.slf4j.LoggerFactory
+
+import com.dmanchester.playfop.api.ResourceCacheStats
+
+/** A cache of the resources (images, fonts, etc.) that Apache FOP reads while
+  * rendering, shared by all `FopFactory` instances, and a source of the
+  * `ResourceResolver` instances through which they read them (see
+  * `[[resolver]]`).
+  *
+  * Resources are cached by URI, as bytes, up to `settings.maxMemoryBytes` in
+  * total, evicting the least recently used ones to make room for others.
+  * Resources larger than `settings.maxResourceBytes` (or, for fonts,
+  * `settings.maxFontBytes`) are not cached. When
+  * `settings.checkModified` is set, a resource whose last-modified time has
+  * changed since it was cached is read again.
+  *
+  * Only resources with `file`, `jar` or `classpath` URIs are cached; the
+  * latter name a resource on `classLoader`'s class path (for example,
+  * `classpath:public/images/logo.png` for an image among a Play
+  * application's assets). Other resources are read as Apache FOP would read
+  * them, every time.
+  *
+  * Two threads reading the same uncached resource at once may both read it.
+  *
+  * Instances of this class are thread-safe.
+  *
+  * @param settings the cache's settings
+  * @param classLoader the class loader from which to read `classpath`
+  *                    resources
+  */
+class ResourceCache(settings: ResourceCacheSettings, classLoader: ClassLoader) {
+
+  /** Creates an instance with the supplied settings, reading `classpath`
+    * resources from the current thread's context class loader.
+    *
+    * @param settings the cache's settings
+    */
+  def this(settings: ResourceCacheSettings) = {
+    this(settings, Option(Thread.currentThread().getContextClassLoader()).getOrElse(classOf[ResourceCache].getClassLoader()))
+  }
+
+  /** Creates an instance with the settings in PlayFOP's `reference.conf`.
+    */
+  def this() = {
+    this(PlayFopSettings.Default.resourceCache)
+  }
+
+  private val memory = new java.util.LinkedHashMap[URI, ResourceCache.Entry](16, 0.75f, true /* accessOrder */)
+  private var memoryBytes = 0L  // guarded by memory
+
+  private val hits = new LongAdder()
+  private val misses = new LongAdder()
+
+  private val logger = LoggerFactory.getLogger(this.getClass())
+
+  /** Creates a `ResourceResolver` for an `FopFactory`. It reads `classpath`
+    * resources whether or not it caches resources.
+    *
+    * @param caching whether the resolver should use the cache (if the cache
+    *                is enabled at all)
+    * @return the resolver
+    */
+  def resolver(caching: Boolean): ResourceResolver = new ResourceCache.Resolver(this, caching && settings.enabled)
+
+  /** Takes statistics for the cache.
+    *
+    * @return the statistics
+    */
+  def stats: ResourceCacheStats = memory.synchronized {
+    ResourceCacheStats(hits.sum(), misses.sum(), memory.size(), memoryBytes)
+  }
+
+  private def open(uri: URI, caching: Boolean, delegate: ResourceResolver): Resource = {
+
+    val url = uri.getScheme() match {
+      case "classpath" => Some(classpathURL(uri))
+      case "file" | "jar" => Some(uri.toURL())
+      case _ => None
+    }
+
+    url match {
+      case Some(url) if caching => new Resource(cached(uri, url))
+      case Some(url) if uri.getScheme() == "classpath" => new Resource(url.openStream())
+      case _ => delegate.getResource(uri)
+    }
+  }
+
+  private def classpathURL(uri: URI): URL = {
+
+    val path = uri.getSchemeSpecificPart().stripPrefix("/")
+    Option(classLoader.getResource(path)).getOrElse(throw new FileNotFoundException(s"No resource $path on the class path!"))
+  }
+
+  private def cached(uri: URI, url: URL): InputStream = {
+
+    val lastModified = if (settings.checkModified) TemplatesSource.lastModified(url) else 0L
+
+    getFromMemory(uri, lastModified) match {
+      case Some(bytes) =>
+        hits.increment()
+        new ByteArrayInputStream(bytes)
+      case None =>
+        misses.increment()
+        read(uri, url, lastModified)
+    }
+  }
+
+  private def read(uri: URI, url: URL, lastModified: Long): InputStream = {
+
+    val maxBytes = if (ResourceCache.isFont(uri)) settings.maxFontBytes else settings.maxResourceBytes
+    val input = url.openStream()
+    val buffer = new ByteArrayOutputStream()
+
+    try {
+
+      // Read one byte more than may be cached, to tell whether the resource
+      // is larger.
+      val chunk = new Array[Byte](8192)
+      var remaining = maxBytes + 1
+      var read = 0
+      while (read >= 0 && remaining > 0) {
+        read = input.read(chunk, 0, math.min(chunk.length.toLong, remaining).toInt)
+        if (read > 0) {
+          buffer.write(chunk, 0, read)
+          remaining -= read
+        }
+      }
+
+      if (read < 0) {  // read to the end
+        input.close()
+        val bytes = buffer.toByteArray()
+        putInMemory(uri, new ResourceCache.Entry(bytes, lastModified))
+        new ByteArrayInputStream(bytes)
+      } else {
+        logger.debug(s"Not caching resource $uri (larger than $maxBytes bytes).")
+        new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), input)
+      }
+    } catch {
+      case e: Exception =>
+        input.close()
+        throw e
+    }
+  }
+
+  private def getFromMemory(uri: URI, lastModified: Long): Option[Array[Byte]] = memory.synchronized {
+    Option(memory.get(uri)).filter(_.lastModified == lastModified).map(_.bytes)
+  }
+
+  private def putInMemory(uri: URI, entry: ResourceCache.Entry): Unit = memory.synchronized {
+
+    if (entry.bytes.length <= settings.maxMemoryBytes) {
+
+      Option(memory.put(uri, entry)).foreach { replaced => memoryBytes -= replaced.bytes.length }
+      memoryBytes += entry.bytes.length
+
+      // Least recently used first
+      val entries = memory.entrySet().iterator()
+      while (memoryBytes > settings.maxMemoryBytes) {
+        val evicted = entries.next()
+        memoryBytes -= evicted.getValue().bytes.length
+        entries.remove()
+        logger.debug(s"Evicted resource ${evicted.getKey()} (least recently used).")
+      }
+    }
+  }
+}
+
+private object ResourceCache {
+
+  /** A cache entry: a resource's bytes, and its last-modified time when they
+    * were read (0 if unknown or unchecked).
+    */
+  class Entry(val bytes: Array[Byte], val lastModified: Long)
+
+  private val FontExtensions = Seq(".ttf", ".otf", ".ttc", ".pfb", ".pfm", ".afm")
+
+  /** Whether `uri` names a font file, going by its extension.
+    */
+  def isFont(uri: URI): Boolean = {
+    val path = uri.getSchemeSpecificPart().toLowerCase(Locale.ROOT)
+    FontExtensions.exists(path.endsWith)
+  }
+
+  /** Reads resources through `cache`, or, for resources it doesn't handle,
+    * as Apache FOP would. Writes output as Apache FOP would.
+    */
+  class Resolver(cache: ResourceCache, caching: Boolean) extends ResourceResolver {
+
+    private val delegate = ResourceResolverFactory.createDefaultResourceResolver()
+
+    override def getResource(uri: URI): Resource = cache.open(uri, caching, delegate)
+
+    override def getOutputStream(uri: URI): OutputStream = delegate.getOutputStream(uri)
+  }
+}
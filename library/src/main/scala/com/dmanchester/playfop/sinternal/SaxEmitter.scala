@@ -0,0 +1,147 @@
+package com.dmanchester.playfop.sinternal
+
+import scala.xml.Atom
+import scala.xml.Comment
+import scala.xml.Document
+import scala.xml.Elem
+import scala.xml.EntityRef
+import scala.xml.Group
+import scala.xml.MetaData
+import scala.xml.NamespaceBinding
+import scala.xml.Node
+import scala.xml.PrefixedAttribute
+import scala.xml.ProcInstr
+import scala.xml.TopScope
+import scala.xml.UnprefixedAttribute
+
+import org.xml.sax.ContentHandler
+import org.xml.sax.helpers.AttributesImpl
+
+/** Walks a [[https://github.com/scala/scala-xml scala-xml]] tree, reporting
+  * it to a SAX `ContentHandler` as if it had been parsed. Avoids serializing
+  * the tree to text only to parse it again.
+  *
+  * Comments are not reported. Entity references are reported as the
+  * characters they stand for (when predefined) or as their literal text, and
+  * `Unparsed` nodes as text.
+  */
+object SaxEmitter {
+
+  /** Reports `node` to `handler` as a complete document.
+    *
+    * @param node the node
+    * @param handler the handler
+    */
+  def emit(node: Node, handler: ContentHandler): Unit = {
+
+    handler.startDocument()
+    emitNode(node, TopScope, handler)
+    handler.endDocument()
+  }
+
+  private def emitNode(node: Node, parentScope: NamespaceBinding, handler: ContentHandler): Unit = {
+
+    node match {
+      case elem: Elem => emitElem(elem, parentScope, handler)
+      case document: Document => document.children.foreach(emitNode(_, parentScope, handler))
+      case group: Group => group.nodes.foreach(emitNode(_, parentScope, handler))
+      case atom: Atom[_] => characters(atom.text, handler)
+      case entityRef: EntityRef => characters(entityRef.text, handler)
+      case procInstr: ProcInstr => handler.processingInstruction(procInstr.target, procInstr.proctext)
+      case _: Comment => // not reported
+      case other => other.child.foreach(emitNode(_, parentScope, handler))
+    }
+  }
+
+  private def emitElem(elem: Elem, parentScope: NamespaceBinding, handler: ContentHandler): Unit = {
+
+    val scope = effectiveScope(elem.scope, parentScope)
+
+    val bindings = newBindings(scope, parentScope)
+    bindings.foreach { binding => handler.startPrefixMapping(prefixOrEmpty(binding.prefix), binding.uri) }
+
+    val uri = uriOrEmpty(scope.getURI(elem.prefix))
+    val qName = qualifiedName(elem.prefix, elem.label)
+
+    handler.startElement(uri, elem.label, qName, attributes(elem, scope))
+    elem.child.foreach(emitNode(_, scope, handler))
+    handler.endElement(uri, elem.label, qName)
+
+    bindings.reverse.foreach { binding => handler.endPrefixMapping(prefixOrEmpty(binding.prefix)) }
+  }
+
+  /** The namespace bindings in effect for an element with the given scope.
+    *
+    * Typically, an element's scope extends its parent's, and is returned as
+    * is. But an element built apart from its eventual parent (for example, the
+    * `<fo:block>` elements from `Formatters.preserveNewlinesForScalaXml`) may
+    * not bind prefixes that the parent does, although serializing the tree
+    * and parsing it again would bind them. In that case, returns the
+    * element's own bindings on top of the parent's.
+    */
+  private def effectiveScope(scope: NamespaceBinding, parentScope: NamespaceBinding): NamespaceBinding = {
+
+    def extendsParentScope(binding: NamespaceBinding): Boolean = {
+      if (binding eq parentScope) true
+      else if (binding == null || (binding eq TopScope)) false
+      else extendsParentScope(binding.parent)
+    }
+
+    if (extendsParentScope(scope)) {
+      scope
+    } else {
+      ownBindings(scope).foldRight(parentScope) { (binding, parent) =>
+        NamespaceBinding(binding.prefix, binding.uri, parent)
+      }
+    }
+  }
+
+  /** The bindings `scope` adds to `parentScope`. When a child's scope extends
+    * its parent's (as is typical), that's the bindings declared on the child.
+    */
+  private def newBindings(scope: NamespaceBinding, parentScope: NamespaceBinding): List[NamespaceBinding] = {
+    ownBindings(scope, parentScope).filter(_.uri != null)  // a null URI is an undeclaration ("xmlns=''")
+  }
+
+  private def ownBindings(scope: NamespaceBinding, until: NamespaceBinding = TopScope): List[NamespaceBinding] = {
+
+    if (scope == null || (scope eq until) || (scope eq TopScope)) {
+      Nil
+    } else {
+      scope :: ownBindings(scope.parent, until)
+    }
+  }
+
+  private def attributes(elem: Elem, scope: NamespaceBinding): AttributesImpl = {
+
+    val attributes = new AttributesImpl()
+
+    def add(metaData: MetaData): Unit = metaData match {
+      case attribute: PrefixedAttribute =>
+        attributes.addAttribute(uriOrEmpty(scope.getURI(attribute.pre)), attribute.key,
+            qualifiedName(attribute.pre, attribute.key), "CDATA", attribute.value.text)
+      case attribute: UnprefixedAttribute =>
+        attributes.addAttribute("", attribute.key, attribute.key, "CDATA", attribute.value.text)
+      case _ =>
+    }
+
+    elem.attributes.foreach(add)
+
+    attributes
+  }
+
+  private def characters(text: String, handler: ContentHandler): Unit = {
+
+    if (!text.isEmpty()) {
+      handler.characters(text.toCharArray(), 0, text.length())
+    }
+  }
+
+  private def qualifiedName(prefix: String, localName: String): String = {
+    if (prefix == null) localName else s"$prefix:$localName"
+  }
+
+  private def prefixOrEmpty(prefix: String): String = if (prefix == null) "" else prefix
+
+  private def uriOrEmpty(uri: String): String = if (uri == null) "" else uri
+}
@@ -0,0 +1,69 @@
+package com.dmanchester.playfop.sinternal
+
+import org.xml.sax.ContentHandler
+import org.xml.sax.InputSource
+import org.xml.sax.XMLReader
+import org.xml.sax.helpers.DefaultHandler
+
+import javax.xml.parsers.SAXParserFactory
+
+/** Parses XML, reporting it to a SAX `ContentHandler`.
+  *
+  * The parser factory is looked up once. Each thread reuses its own parser,
+  * rather than creating one per document; a parser is not shared between
+  * threads, and a thread that parses while already parsing (say, from within
+  * a handler) gets a new one.
+  */
+object SaxParsing {
+
+  private val saxParserFactory = {
+    val factory = SAXParserFactory.newInstance()
+    factory.setNamespaceAware(true)
+    factory
+  }
+
+  private class PooledReader {
+    val reader: XMLReader = saxParserFactory.newSAXParser().getXMLReader()
+    var inUse = false
+  }
+
+  private val pooledReaders = new ThreadLocal[PooledReader]() {
+    override def initialValue() = new PooledReader()
+  }
+
+  /** A handler to leave installed in idle parsers, so they don't keep the
+    * last document's handler (and whatever it references) reachable.
+    */
+  private val IdleHandler = new DefaultHandler()
+
+  /** Parses `input`, reporting it to `handler`.
+    *
+    * @param input the XML
+    * @param handler the handler
+    */
+  def parse(input: InputSource, handler: ContentHandler): Unit = {
+
+    val pooledReader = pooledReaders.get()
+
+    if (pooledReader.inUse) {
+      parseWith(new PooledReader().reader, input, handler)
+    } else {
+      pooledReader.inUse = true
+      try {
+        parseWith(pooledReader.reader, input, handler)
+      } finally {
+        pooledReader.inUse = false
+      }
+    }
+  }
+
+  private def parseWith(reader: XMLReader, input: InputSource, handler: ContentHandler): Unit = {
+
+    reader.setContentHandler(handler)
+    try {
+      reader.parse(input)
+    } finally {
+      reader.setContentHandler(IdleHandler)
+    }
+  }
+}
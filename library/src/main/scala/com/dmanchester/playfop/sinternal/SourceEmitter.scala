@@ -0,0 +1,310 @@
+package com.dmanchester.playfop.sinternal
+
+import scala.collection.mutable.ListBuffer
+
+import org.w3c.dom
+import org.xml.sax.ContentHandler
+import org.xml.sax.helpers.AttributesImpl
+import org.xml.sax.helpers.NamespaceSupport
+
+import javax.xml.stream.XMLEventReader
+import javax.xml.stream.XMLStreamConstants
+import javax.xml.stream.XMLStreamReader
+import javax.xml.stream.events.Attribute
+import javax.xml.stream.events.Namespace
+import javax.xml.transform.Source
+import javax.xml.transform.dom.DOMSource
+import javax.xml.transform.sax.SAXSource
+import javax.xml.transform.stax.StAXSource
+import javax.xml.transform.stream.StreamSource
+
+/** Reports the XML in a JAXP `Source` to a SAX `ContentHandler` as if it had
+  * been parsed, without serializing it to text first (or running it through
+  * an identity `Transformer`).
+  *
+  * A `StreamSource` is parsed, as is a `SAXSource` (with its own `XMLReader`,
+  * if it has one). A `DOMSource`'s tree is walked, and a `StAXSource`'s
+  * reader read through; for those, comments and document types are not
+  * reported.
+  *
+  * A DOM tree may be built with or without namespace awareness. Nodes built
+  * without it are resolved against the namespace declarations (`xmlns`
+  * attributes) in the tree; nodes built with it carry their own namespace,
+  * which is declared where the tree doesn't declare it.
+  */
+object SourceEmitter {
+
+  /** Reports `source` to `handler` as a complete document.
+    *
+    * @param source the source
+    * @param handler the handler
+    * @throws `IllegalArgumentException` if `source` is of an unsupported type,
+    *         or is a `SAXSource` with neither an `InputSource` nor an
+    *         `XMLReader`
+    */
+  def emit(source: Source, handler: ContentHandler): Unit = source match {
+
+    case saxSource: SAXSource if saxSource.getXMLReader() != null =>
+      val reader = saxSource.getXMLReader()
+      reader.setContentHandler(handler)
+      reader.parse(saxSource.getInputSource())
+
+    case _: SAXSource | _: StreamSource =>
+      val input = SAXSource.sourceToInputSource(source)
+      if (input == null) {
+        throw new IllegalArgumentException("SAXSource has neither an InputSource nor an XMLReader!")
+      }
+      SaxParsing.parse(input, handler)
+
+    case domSource: DOMSource =>
+      emitDom(domSource.getNode(), handler)
+
+    case staxSource: StAXSource if staxSource.getXMLStreamReader() != null =>
+      emitStreamReader(staxSource.getXMLStreamReader(), handler)
+
+    case staxSource: StAXSource =>
+      emitEventReader(staxSource.getXMLEventReader(), handler)
+
+    case _ =>
+      throw new IllegalArgumentException(s"Unsupported Source type ${source.getClass().getName()}!")
+  }
+
+  private def emitDom(node: dom.Node, handler: ContentHandler): Unit = {
+
+    handler.startDocument()
+    emitDomNode(node, new NamespaceSupport(), handler)
+    handler.endDocument()
+  }
+
+  private def emitDomNode(node: dom.Node, namespaces: NamespaceSupport, handler: ContentHandler): Unit = {
+
+    node match {
+      case element: dom.Element => emitDomElement(element, namespaces, handler)
+      case text: dom.Text => characters(text.getData(), handler)  // including CDATA sections
+      case procInstr: dom.ProcessingInstruction => handler.processingInstruction(procInstr.getTarget(), procInstr.getData())
+      case _: dom.Document | _: dom.DocumentFragment | _: dom.EntityReference => emitDomChildren(node, namespaces, handler)
+      case _ => // comments, document types: not reported
+    }
+  }
+
+  private def emitDomChildren(node: dom.Node, namespaces: NamespaceSupport, handler: ContentHandler): Unit = {
+
+    var child = node.getFirstChild()
+    while (child != null) {
+      emitDomNode(child, namespaces, handler)
+      child = child.getNextSibling()
+    }
+  }
+
+  private def emitDomElement(element: dom.Element, namespaces: NamespaceSupport, handler: ContentHandler): Unit = {
+
+    namespaces.pushContext()
+    val declared = ListBuffer.empty[String]
+
+    def declare(prefix: String, uri: String): Unit = {
+      namespaces.declarePrefix(prefix, uri)
+      handler.startPrefixMapping(prefix, uri)
+      declared += prefix
+    }
+
+    // A node built with namespace awareness (say, by createElementNS) has a
+    // namespace whether or not an xmlns attribute declares it.
+    def declareIfUndeclared(node: dom.Node): Unit = {
+      val uri = node.getNamespaceURI()
+      val prefix = prefixOrEmpty(node.getPrefix())
+      if (uri != null && uri != namespaces.getURI(prefix) && !(prefix.isEmpty() && node.isInstanceOf[dom.Attr])) {
+        declare(prefix, uri)
+      }
+    }
+
+    val domAttributes = element.getAttributes()
+    val otherAttributes = ListBuffer.empty[dom.Attr]
+
+    for (index <- 0 until domAttributes.getLength()) {
+      val attribute = domAttributes.item(index).asInstanceOf[dom.Attr]
+      val name = attribute.getName()
+      if (name == "xmlns") {
+        declare("", attribute.getValue())
+      } else if (name.startsWith("xmlns:")) {
+        declare(name.substring("xmlns:".length), attribute.getValue())
+      } else {
+        otherAttributes += attribute
+      }
+    }
+
+    declareIfUndeclared(element)
+    otherAttributes.foreach(declareIfUndeclared)
+
+    val attributes = new AttributesImpl()
+    otherAttributes.foreach { attribute =>
+      val (uri, localName) = resolve(attribute, namespaces, isAttribute = true)
+      attributes.addAttribute(uri, localName, attribute.getName(), "CDATA", attribute.getValue())
+    }
+
+    val (uri, localName) = resolve(element, namespaces, isAttribute = false)
+    val qName = element.getTagName()
+
+    handler.startElement(uri, localName, qName, attributes)
+    emitDomChildren(element, namespaces, handler)
+    handler.endElement(uri, localName, qName)
+
+    declared.foreach(handler.endPrefixMapping)  // in declaration order, as parsers report them
+    namespaces.popContext()
+  }
+
+  /** The namespace URI and local name of an element or attribute.
+    */
+  private def resolve(node: dom.Node, namespaces: NamespaceSupport, isAttribute: Boolean): (String, String) = {
+
+    val localName = node.getLocalName()
+
+    if (localName != null) {
+      (uriOrEmpty(node.getNamespaceURI()), localName)
+    } else {  // built without namespace awareness
+      val parts = namespaces.processName(node.getNodeName(), new Array[String](3), isAttribute)
+      if (parts == null) ("", node.getNodeName()) else (parts(0), parts(1))  // null: an undeclared prefix
+    }
+  }
+
+  /** Reports the document or element at which `reader` is positioned, leaving
+    * it positioned at the document's or element's end.
+    */
+  private def emitStreamReader(reader: XMLStreamReader, handler: ContentHandler): Unit = {
+
+    handler.startDocument()
+
+    var event = reader.getEventType()
+    var depth = 0
+    var done = false
+
+    while (!done) {
+
+      event match {
+
+        case XMLStreamConstants.START_ELEMENT =>
+          depth += 1
+          for (index <- 0 until reader.getNamespaceCount()) {
+            handler.startPrefixMapping(prefixOrEmpty(reader.getNamespacePrefix(index)), uriOrEmpty(reader.getNamespaceURI(index)))
+          }
+          val attributes = new AttributesImpl()
+          for (index <- 0 until reader.getAttributeCount()) {
+            val localName = reader.getAttributeLocalName(index)
+            attributes.addAttribute(uriOrEmpty(reader.getAttributeNamespace(index)), localName,
+                qualifiedName(reader.getAttributePrefix(index), localName), "CDATA", reader.getAttributeValue(index))
+          }
+          handler.startElement(uriOrEmpty(reader.getNamespaceURI()), reader.getLocalName(),
+              qualifiedName(reader.getPrefix(), reader.getLocalName()), attributes)
+
+        case XMLStreamConstants.END_ELEMENT =>
+          handler.endElement(uriOrEmpty(reader.getNamespaceURI()), reader.getLocalName(),
+              qualifiedName(reader.getPrefix(), reader.getLocalName()))
+          for (index <- 0 until reader.getNamespaceCount()) {
+            handler.endPrefixMapping(prefixOrEmpty(reader.getNamespacePrefix(index)))
+          }
+          depth -= 1
+          done = depth == 0
+
+        case XMLStreamConstants.CHARACTERS | XMLStreamConstants.CDATA | XMLStreamConstants.SPACE if depth > 0 =>
+          handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength())
+
+        case XMLStreamConstants.PROCESSING_INSTRUCTION =>
+          handler.processingInstruction(reader.getPITarget(), reader.getPIData())
+
+        case XMLStreamConstants.END_DOCUMENT =>
+          done = true
+
+        case _ => // comments, document types, etc.: not reported
+      }
+
+      if (!done) {
+        event = reader.next()
+      }
+    }
+
+    handler.endDocument()
+  }
+
+  /** Reports the document or element that `reader` is about to read, leaving
+    * it just past the document's or element's end.
+    */
+  private def emitEventReader(reader: XMLEventReader, handler: ContentHandler): Unit = {
+
+    handler.startDocument()
+
+    // The prefixes each open element declares. (An EndElement need not
+    // report the namespaces going out of scope.)
+    var declared = List.empty[ListBuffer[String]]
+    var depth = 0
+    var done = false
+
+    while (!done && reader.hasNext()) {
+
+      val event = reader.nextEvent()
+
+      event.getEventType() match {
+
+        case XMLStreamConstants.START_ELEMENT =>
+          depth += 1
+          val start = event.asStartElement()
+          val prefixes = ListBuffer.empty[String]
+          val namespaces = start.getNamespaces()
+          while (namespaces.hasNext()) {
+            val namespace = namespaces.next().asInstanceOf[Namespace]
+            prefixes += prefixOrEmpty(namespace.getPrefix())
+            handler.startPrefixMapping(prefixes.last, uriOrEmpty(namespace.getNamespaceURI()))
+          }
+          declared ::= prefixes
+          val attributes = new AttributesImpl()
+          val startAttributes = start.getAttributes()
+          while (startAttributes.hasNext()) {
+            val attribute = startAttributes.next().asInstanceOf[Attribute]
+            val name = attribute.getName()
+            attributes.addAttribute(uriOrEmpty(name.getNamespaceURI()), name.getLocalPart(),
+                qualifiedName(name.getPrefix(), name.getLocalPart()), "CDATA", attribute.getValue())
+          }
+          val name = start.getName()
+          handler.startElement(uriOrEmpty(name.getNamespaceURI()), name.getLocalPart(),
+              qualifiedName(name.getPrefix(), name.getLocalPart()), attributes)
+
+        case XMLStreamConstants.END_ELEMENT =>
+          val end = event.asEndElement()
+          val name = end.getName()
+          handler.endElement(uriOrEmpty(name.getNamespaceURI()), name.getLocalPart(),
+              qualifiedName(name.getPrefix(), name.getLocalPart()))
+          declared.head.foreach(handler.endPrefixMapping)
+          declared = declared.tail
+          depth -= 1
+          done = depth == 0
+
+        case XMLStreamConstants.CHARACTERS | XMLStreamConstants.CDATA | XMLStreamConstants.SPACE if depth > 0 =>
+          characters(event.asCharacters().getData(), handler)
+
+        case XMLStreamConstants.PROCESSING_INSTRUCTION =>
+          val procInstr = event.asInstanceOf[javax.xml.stream.events.ProcessingInstruction]
+          handler.processingInstruction(procInstr.getTarget(), procInstr.getData())
+
+        case XMLStreamConstants.END_DOCUMENT =>
+          done = true
+
+        case _ => // comments, document types, etc.: not reported
+      }
+    }
+
+    handler.endDocument()
+  }
+
+  private def characters(text: String, handler: ContentHandler): Unit = {
+
+    if (!text.isEmpty()) {
+      handler.characters(text.toCharArray(), 0, text.length())
+    }
+  }
+
+  private def qualifiedName(prefix: String, localName: String): String = {
+    if (prefix == null || prefix.isEmpty()) localName else s"$prefix:$localName"
+  }
+
+  private def prefixOrEmpty(prefix: String): String = if (prefix == null) "" else prefix
+
+  private def uriOrEmpty(uri: String): String = if (uri == null) "" else uri
+}
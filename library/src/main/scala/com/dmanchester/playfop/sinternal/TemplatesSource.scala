@@ -0,0 +1,146 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.File
+import java.net.HttpURLConnection
+import java.net.JarURLConnection
+import java.net.URL
+import java.util.concurrent.ConcurrentHashMap
+
+import scala.collection.JavaConverters.collectionAsScalaIterableConverter
+
+import org.slf4j.LoggerFactory
+
+import javax.xml.transform.ErrorListener
+import javax.xml.transform.Templates
+import javax.xml.transform.TransformerConfigurationException
+import javax.xml.transform.TransformerException
+import javax.xml.transform.TransformerFactory
+import javax.xml.transform.stream.StreamSource
+
+/** A source of compiled XSLT stylesheets (`Templates` instances). Caches them
+  * for performance.
+  *
+  * The cache is keyed by each stylesheet's URL. When `settings.checkModified`
+  * is set, a stylesheet whose last-modified time has changed since it was
+  * compiled is compiled again; stylesheets whose last-modified time is unknown
+  * are compiled once. The cache holds at most `settings.maxSize` stylesheets,
+  * evicting the least recently used one to make room for another.
+  *
+  * Retrieving a cached stylesheet takes no locks. Compiling one does: the
+  * `TransformerFactory` that compiles stylesheets is created once, but is not
+  * thread-safe.
+  *
+  * Instances of this class are thread-safe, as are the `Templates` instances
+  * they return.
+  *
+  * @param settings the cache's settings
+  */
+class TemplatesSource(settings: TemplatesCacheSettings) {
+
+  /** Creates an instance with the settings in PlayFOP's `reference.conf`.
+    */
+  def this() = {
+    this(PlayFopSettings.Default.templatesCache)
+  }
+
+  private val logger = LoggerFactory.getLogger(this.getClass())
+
+  private val transformerFactory = TransformerFactory.newInstance()
+
+  // By default, the JDK's factory prints stylesheet errors and returns null,
+  // rather than throwing.
+  transformerFactory.setErrorListener(new ErrorListener {
+    def warning(e: TransformerException): Unit = logger.warn(e.getMessageAndLocation())
+    def error(e: TransformerException): Unit = throw e
+    def fatalError(e: TransformerException): Unit = throw e
+  })
+
+  private val templatesCache = new ConcurrentHashMap[String, TemplatesSource.Entry]()
+
+  /** Gets the compiled form of a stylesheet.
+    *
+    * @param stylesheet the stylesheet's URL
+    * @return the compiled stylesheet
+    * @throws javax.xml.transform.TransformerConfigurationException if the
+    *         stylesheet is invalid
+    */
+  def get(stylesheet: URL): Templates = {
+
+    val key = stylesheet.toExternalForm()
+    val lastModified = if (settings.checkModified) TemplatesSource.lastModified(stylesheet) else 0L
+
+    current(key, lastModified).getOrElse(compile(key, stylesheet, lastModified))
+  }
+
+  private def current(key: String, lastModified: Long): Option[Templates] = {
+
+    Option(templatesCache.get(key)).filter(_.lastModified == lastModified).map { entry =>
+      entry.lastAccessNanos = System.nanoTime()
+      entry.templates
+    }
+  }
+
+  private def compile(key: String, stylesheet: URL, lastModified: Long): Templates = transformerFactory.synchronized {
+
+    // Another thread may have compiled the stylesheet while this one waited.
+    current(key, lastModified).getOrElse {
+
+      logger.debug(s"Compiling stylesheet $key...")
+      val start = System.nanoTime()
+
+      val input = stylesheet.openStream()
+      val templates = try {
+        transformerFactory.newTemplates(new StreamSource(input, key))
+      } finally {
+        input.close()
+      }
+
+      if (templates == null) {
+        throw new TransformerConfigurationException(s"Could not compile stylesheet $key!")
+      }
+
+      templatesCache.put(key, new TemplatesSource.Entry(templates, lastModified))
+      logger.debug(s"...stylesheet compiled in ${(System.nanoTime() - start) / 1000000} ms.")
+
+      evict()
+      templates
+    }
+  }
+
+  /** Evicts least recently used stylesheets while the cache is over its
+    * maximum size. Only runs while compiling, keeping retrieval lock-free.
+    */
+  private def evict(): Unit = {
+
+    while (templatesCache.size() > settings.maxSize) {
+      val eldest = templatesCache.entrySet().asScala.minBy(_.getValue().lastAccessNanos)
+      templatesCache.remove(eldest.getKey(), eldest.getValue())
+      logger.debug(s"Evicted compiled stylesheet ${eldest.getKey()} (least recently used).")
+    }
+  }
+}
+
+private object TemplatesSource {
+
+  /** A cache entry: a compiled stylesheet and the last-modified time of the
+    * stylesheet it was compiled from.
+    */
+  class Entry(val templates: Templates, val lastModified: Long) {
+
+    @volatile var lastAccessNanos: Long = System.nanoTime()
+  }
+
+  /** The last-modified time of the resource at `url`, or 0 if unknown. For a
+    * resource in a JAR file, that of the JAR file.
+    */
+  def lastModified(url: URL): Long = url.getProtocol() match {
+    case "file" => new File(url.toURI()).lastModified()
+    case _ => url.openConnection() match {
+      // Avoid opening the JAR file (or, below, leaving a connection open) just
+      // to check a date.
+      case jar: JarURLConnection => lastModified(jar.getJarFileURL())
+      case http: HttpURLConnection => try http.getLastModified() finally http.disconnect()
+      case connection => connection.getLastModified()
+    }
+  }
+}
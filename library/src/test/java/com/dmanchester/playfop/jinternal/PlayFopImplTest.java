@@ -8,17 +8,30 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stax.StAXSource;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.commons.collections4.IterableUtils;
@@ -36,12 +49,26 @@ import org.apache.pdfbox.pdmodel.PDPageTree;
 import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.xmlgraphics.util.MimeConstants;
+import org.junit.AfterClass;
 import org.junit.Test;
-
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.dmanchester.playfop.api.BatchSink;
+import com.dmanchester.playfop.api.BatchStats;
+import com.dmanchester.playfop.api.FopConfig;
+import com.dmanchester.playfop.api.LaidOutDocument;
+import com.dmanchester.playfop.api.RenderMetrics;
+import com.dmanchester.playfop.api.RenderResult;
 import com.dmanchester.playfop.japi.FOUserAgentBlock;
 import com.dmanchester.playfop.japi.PlayFop;
 import com.dmanchester.playfop.japi.ProcessOptions;
 
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.util.ByteString;
 import play.twirl.api.Xml;
 import play.twirl.api.XmlFormat;
 
@@ -61,8 +88,15 @@ public class PlayFopImplTest {
         }
     };
 
+    private static final ActorSystem ACTOR_SYSTEM = ActorSystem.create("PlayFopImplTest");
+
     private PlayFop playFop = new PlayFopImpl();
 
+    @AfterClass
+    public static void shutDown() {
+        ACTOR_SYSTEM.terminate();
+    }
+
     @Test
     public void testProcessTwirlXml_xslfo_outputFormat() throws IOException {
 
@@ -123,6 +157,229 @@ public class PlayFopImplTest {
         checkForAuthorFromFOUserAgentBlock(pdfBytes, PDF_AUTHOR);
     }
 
+    @Test
+    public void testProcessTwirlXml_xslfo_outputFormat_output() throws IOException {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        playFop.processTwirlXml(wrapInTwirlXmlDocument(PDF_TEXT), MimeConstants.MIME_PDF, output);
+
+        checkText(output.toByteArray(), PDF_TEXT);
+    }
+
+    @Test
+    public void testProcessStringXml_xslfo_outputFormat_output_foUserAgentBlock() throws IOException {
+
+        ProcessOptions processOptions = new ProcessOptions.Builder().
+                foUserAgentBlock(FO_USER_AGENT_BLOCK).build();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        playFop.processStringXml(wrapInStringXmlDocument(PDF_TEXT), MimeConstants.MIME_PDF, output, processOptions);
+
+        byte[] pdfBytes = output.toByteArray();
+        checkText(pdfBytes, PDF_TEXT);
+        checkForAuthorFromFOUserAgentBlock(pdfBytes, PDF_AUTHOR);
+    }
+
+    @Test
+    public void testProcessTwirlXmlAsSource_xslfo_outputFormat() throws Exception {
+
+        akka.stream.javadsl.Source<ByteString, NotUsed> source = playFop.processTwirlXmlAsSource(wrapInTwirlXmlDocument(PDF_TEXT), MimeConstants.MIME_PDF);
+
+        checkText(runToByteArray(source), PDF_TEXT);
+    }
+
+    @Test
+    public void testProcessStringXmlAsSource_xslfo_outputFormat_foUserAgentBlock() throws Exception {
+
+        ProcessOptions processOptions = new ProcessOptions.Builder().
+                foUserAgentBlock(FO_USER_AGENT_BLOCK).build();
+        akka.stream.javadsl.Source<ByteString, NotUsed> source = playFop.processStringXmlAsSource(wrapInStringXmlDocument(PDF_TEXT), MimeConstants.MIME_PDF, processOptions);
+
+        byte[] pdfBytes = runToByteArray(source);
+        checkText(pdfBytes, PDF_TEXT);
+        checkForAuthorFromFOUserAgentBlock(pdfBytes, PDF_AUTHOR);
+    }
+
+    @Test
+    public void testProcessTwirlXmlAsync_xslfo_outputFormat() throws Exception {
+
+        byte[] pdfBytes = playFop.processTwirlXmlAsync(wrapInTwirlXmlDocument(PDF_TEXT), MimeConstants.MIME_PDF).
+                toCompletableFuture().get();
+
+        checkText(pdfBytes, PDF_TEXT);
+    }
+
+    @Test
+    public void testProcessStringXmlAsync_xslfo_outputFormat_foUserAgentBlock() throws Exception {
+
+        ProcessOptions processOptions = new ProcessOptions.Builder().
+                foUserAgentBlock(FO_USER_AGENT_BLOCK).build();
+        byte[] pdfBytes = playFop.processStringXmlAsync(wrapInStringXmlDocument(PDF_TEXT), MimeConstants.MIME_PDF, processOptions).
+                toCompletableFuture().get();
+
+        checkText(pdfBytes, PDF_TEXT);
+        checkForAuthorFromFOUserAgentBlock(pdfBytes, PDF_AUTHOR);
+    }
+
+    @Test
+    public void testProcessStringXml_xslfo_outputFormat_fopConfig() throws IOException {
+
+        final float[] sourceResolution = new float[1];
+        ProcessOptions processOptions = new ProcessOptions.Builder().
+                fopConfig(FopConfig.fromString("<fop version=\"1.0\"><source-resolution>123</source-resolution></fop>")).
+                foUserAgentBlock(new FOUserAgentBlock() {
+
+                    @Override
+                    public void withFOUserAgent(FOUserAgent foUserAgent) {
+                        sourceResolution[0] = foUserAgent.getSourceResolution();
+                    }
+                }).build();
+        byte[] pdfBytes = playFop.processStringXml(wrapInStringXmlDocument(PDF_TEXT), MimeConstants.MIME_PDF, processOptions);
+
+        checkText(pdfBytes, PDF_TEXT);
+        assertEquals(123f, sourceResolution[0], 0f);
+    }
+
+    @Test
+    public void testProcessWithXslt_data_stylesheet_outputFormat_output_foUserAgentBlock() throws IOException {
+
+        ProcessOptions processOptions = new ProcessOptions.Builder().
+                foUserAgentBlock(FO_USER_AGENT_BLOCK).build();
+        Source data = new StreamSource(new StringReader("<greeting>" + PDF_TEXT + "</greeting>"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        playFop.processWithXslt(data, getClass().getResource("/com/dmanchester/playfop/greeting.xsl"), MimeConstants.MIME_PDF, output, processOptions);
+
+        byte[] pdfBytes = output.toByteArray();
+        checkText(pdfBytes, PDF_TEXT);
+        checkForAuthorFromFOUserAgentBlock(pdfBytes, PDF_AUTHOR);
+    }
+
+    @Test
+    public void testProcessXmlSource_domSource_outputFormat_foUserAgentBlock() throws IOException, ParserConfigurationException, SAXException {
+
+        ProcessOptions processOptions = new ProcessOptions.Builder().
+                foUserAgentBlock(FO_USER_AGENT_BLOCK).build();
+        // Built without namespace awareness, as DocumentBuilderFactory does by default
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+                new InputSource(new StringReader(wrapInStringXmlDocument(PDF_TEXT))));
+        byte[] pdfBytes = playFop.processXmlSource(new DOMSource(document), MimeConstants.MIME_PDF, processOptions);
+
+        checkText(pdfBytes, PDF_TEXT);
+        checkForAuthorFromFOUserAgentBlock(pdfBytes, PDF_AUTHOR);
+    }
+
+    @Test
+    public void testProcessXmlSource_saxSource_outputFormat() throws IOException {
+
+        Source xslfo = new SAXSource(new InputSource(new StringReader(wrapInStringXmlDocument(PDF_TEXT))));
+        byte[] pdfBytes = playFop.processXmlSource(xslfo, MimeConstants.MIME_PDF);
+
+        checkText(pdfBytes, PDF_TEXT);
+    }
+
+    @Test
+    public void testProcessXmlSource_staxSource_outputFormat_output() throws IOException, XMLStreamException {
+
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(wrapInStringXmlDocument(PDF_TEXT)));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        playFop.processXmlSource(new StAXSource(reader), MimeConstants.MIME_PDF, output);
+
+        checkText(output.toByteArray(), PDF_TEXT);
+    }
+
+    @Test
+    public void testProcessStringXml_xslfo_outputFormat_cacheKey() throws IOException {
+
+        ProcessOptions processOptions = new ProcessOptions.Builder().
+                cacheKey("k").build();
+        byte[] pdfBytes = playFop.processStringXml(wrapInStringXmlDocument(PDF_TEXT), MimeConstants.MIME_PDF, processOptions);
+
+        checkText(pdfBytes, PDF_TEXT);
+        assertEquals(0, playFop.getOutputCacheStats().hits());  // the cache is disabled by default
+    }
+
+    @Test
+    public void testProcessStringXmlAsResult_xslfo_outputFormat() throws IOException {
+
+        RenderResult result = playFop.processStringXmlAsResult(wrapInStringXmlDocument(PDF_TEXT), MimeConstants.MIME_PDF);
+
+        checkText(result.output(), PDF_TEXT);
+        assertEquals(1, result.pageCount());
+        assertTrue(result.timings().layoutNanos() > 0);
+    }
+
+    @Test
+    public void testGetMetrics() {
+
+        byte[] pdfBytes = playFop.processStringXml(wrapInStringXmlDocument(PDF_TEXT), MimeConstants.MIME_PDF);
+
+        RenderMetrics pdfMetrics = playFop.getMetrics().getRenders().get(MimeConstants.MIME_PDF);
+        assertTrue(pdfMetrics.completed() >= 1);
+        assertTrue(pdfMetrics.outputBytes() >= pdfBytes.length);
+    }
+
+    @Test
+    public void testProcessBatch_inputs_xslfo_outputFormat_sink() throws IOException {
+
+        final Map<String, byte[]> outputs = new ConcurrentHashMap<>();
+        BatchSink<String> sink = new BatchSink<String>() {
+
+            @Override
+            public void onOutput(String key, byte[] output) {
+                outputs.put(key, output);
+            }
+
+            @Override
+            public void onFailure(String key, Throwable failure) { /* no-op */ }
+        };
+
+        BatchStats stats = playFop.processBatch(Arrays.asList("one", "two").iterator(), new Function<String, Xml>() {
+
+            @Override
+            public Xml apply(String key) {
+                return wrapInTwirlXmlDocument(key);
+            }
+        }, MimeConstants.MIME_PDF, sink);
+
+        assertEquals(2, stats.succeeded());
+        checkText(outputs.get("one"), "one");
+        checkText(outputs.get("two"), "two");
+    }
+
+    @Test
+    public void testProcessTwirlXmlConcatenated_parts_outputFormat() throws IOException {
+
+        byte[] pdfBytes = playFop.processTwirlXmlConcatenated(Arrays.asList(wrapInTwirlXmlDocument("one"), wrapInTwirlXmlDocument("two")), MimeConstants.MIME_PDF);
+
+        checkText(pdfBytes, "one\ntwo");
+    }
+
+    @Test
+    public void testLayOutTwirlXml_xslfo_outputFormat_and_renderLaidOut_document_outputFormat() throws IOException {
+
+        LaidOutDocument document = playFop.layOutTwirlXml(wrapInTwirlXmlDocument(PDF_TEXT), MimeConstants.MIME_PDF);
+
+        checkText(playFop.renderLaidOut(document, MimeConstants.MIME_PDF), PDF_TEXT);
+    }
+
+    @Test
+    public void testPreviewStringXml_xslfo_outputFormat_processOptions() throws IOException {
+
+        ProcessOptions processOptions = new ProcessOptions.Builder().pageRange(2, 2).build();
+
+        List<byte[]> pages = playFop.previewStringXml(pagedStringXmlDocument(5), MimeConstants.MIME_PDF, processOptions);
+
+        assertEquals(1, pages.size());
+        checkText(pages.get(0), "Page 2");
+    }
+
+    @Test
+    public void testWarmUp() {
+
+        playFop.warmUp();
+
+        assertEquals(0, playFop.getRendersInFlight());
+    }
+
     @Test
     public void testNewFop_outputFormat_output() throws IOException {
 
@@ -193,6 +450,16 @@ public class PlayFopImplTest {
                "</fo:root>";
     }
 
+    private String pagedStringXmlDocument(int pages) {
+
+        StringBuilder foBlocks = new StringBuilder();
+        for (int page = 1; page <= pages; page++) {
+            foBlocks.append("<fo:block break-before=\"page\">Page ").append(page).append("</fo:block>");
+        }
+
+        return wrapInStringXmlDocument(foBlocks.toString());
+    }
+
     private String chooseFontFamilyOutsideBase14WithSingleWordName() {
 
         List<String> fontFamilies = getFontFamilies();
@@ -290,6 +557,12 @@ public class PlayFopImplTest {
         }
     }
 
+    private byte[] runToByteArray(akka.stream.javadsl.Source<ByteString, NotUsed> source) throws InterruptedException, ExecutionException {
+
+        return source.runFold(ByteString.emptyByteString(), ByteString::concat, Materializer.matFromSystem(ACTOR_SYSTEM)).
+                toCompletableFuture().get().toArray();
+    }
+
     private PDDocument toPDDocument(byte[] pdfBytes) throws IOException {
 
         return PDDocument.load(new ByteArrayInputStream(pdfBytes));
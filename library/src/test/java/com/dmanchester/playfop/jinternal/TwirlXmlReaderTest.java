@@ -0,0 +1,73 @@
+package com.dmanchester.playfop.jinternal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import play.twirl.api.Xml;
+import play.twirl.api.XmlFormat;
+import scala.collection.JavaConverters;
+
+public class TwirlXmlReaderTest {
+
+    @Test
+    public void testReadsLeafFragment() throws IOException {
+
+        Xml xml = XmlFormat.raw("<root/>");
+
+        assertEquals(xml.body(), readAll(new TwirlXmlReader(xml), 1024));
+    }
+
+    @Test
+    public void testReadsNestedFragmentsInOrder() throws IOException {
+
+        Xml xml = fill(
+                XmlFormat.raw("<root>"),
+                fill(XmlFormat.raw("<a>"), XmlFormat.escape("1 < 2"), XmlFormat.raw("</a>")),
+                fill(),
+                fill(fill(XmlFormat.raw("<b/>"))),
+                XmlFormat.raw("</root>"));
+
+        assertEquals("<root><a>1 &lt; 2</a><b/></root>", readAll(new TwirlXmlReader(xml), 1024));
+        assertEquals(xml.body(), readAll(new TwirlXmlReader(xml), 3));
+    }
+
+    @Test
+    public void testReadsEmptyXml() throws IOException {
+
+        assertEquals(-1, new TwirlXmlReader(fill()).read());
+        assertEquals(-1, new TwirlXmlReader(XmlFormat.raw("")).read());
+    }
+
+    @Test
+    public void testCountsCharsRead() throws IOException {
+
+        Xml xml = fill(XmlFormat.raw("<root>"), XmlFormat.escape("1 < 2"), XmlFormat.raw("</root>"));
+
+        TwirlXmlReader reader = new TwirlXmlReader(xml);
+        assertEquals(0, reader.getCharsRead());
+
+        readAll(reader, 4);
+        assertEquals(xml.body().length(), reader.getCharsRead());
+    }
+
+    private Xml fill(Xml... fragments) {
+
+        return XmlFormat.fill(JavaConverters.asScalaBuffer(Arrays.asList(fragments)).toList());
+    }
+
+    private String readAll(Reader reader, int bufferSize) throws IOException {
+
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[bufferSize];
+        int count;
+        while ((count = reader.read(buffer, 0, bufferSize)) != -1) {
+            result.append(buffer, 0, count);
+        }
+        return result.toString();
+    }
+}
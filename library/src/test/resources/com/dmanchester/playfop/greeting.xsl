@@ -0,0 +1,21 @@
+<?xml version="1.0" encoding="utf-8"?>
+<!-- Renders a <greeting> element's text as a one-page XSL-FO document. -->
+<xsl:stylesheet version="1.0"
+    xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
+    xmlns:fo="http://www.w3.org/1999/XSL/Format">
+
+  <xsl:template match="/greeting">
+    <fo:root>
+      <fo:layout-master-set>
+        <fo:simple-page-master master-name="label">
+          <fo:region-body region-name="xsl-region-body"/>
+        </fo:simple-page-master>
+      </fo:layout-master-set>
+      <fo:page-sequence master-reference="label">
+        <fo:flow flow-name="xsl-region-body">
+          <fo:block><xsl:value-of select="."/></fo:block>
+        </fo:flow>
+      </fo:page-sequence>
+    </fo:root>
+  </xsl:template>
+</xsl:stylesheet>
@@ -1,7 +1,9 @@
 package com.dmanchester.playfop
 
 import java.io.ByteArrayInputStream
+import java.io.StringReader
 import java.io.StringWriter
+import java.net.URL
 
 import scala.collection.JavaConverters.iterableAsScalaIterableConverter
 import scala.xml.Node
@@ -11,6 +13,8 @@ import scala.xml.XML
 import org.apache.pdfbox.pdmodel.PDDocument
 import org.apache.pdfbox.text.PDFTextStripper
 
+import javax.xml.transform.Source
+import javax.xml.transform.stream.StreamSource
 import play.twirl.api.Xml
 import play.twirl.api.XmlFormat
 import resource.managed
@@ -48,11 +52,62 @@ object TestHelpers {
     toStringXml(wrapInScalaXmlDocument(text, fontFamily))
   }
 
+  /** A document of `pages` pages, each reading "Page n".
+    */
+  def pagedStringXmlDocument(pages: Int): String = {
+
+    toStringXml(
+      <fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
+        <fo:layout-master-set>
+          <fo:simple-page-master master-name="page">
+            <fo:region-body region-name="xsl-region-body"/>
+          </fo:simple-page-master>
+        </fo:layout-master-set>
+        <fo:page-sequence master-reference="page">
+          <fo:flow flow-name="xsl-region-body">
+            {(1 to pages).map { page => <fo:block break-before="page">Page {page}</fo:block> }}
+          </fo:flow>
+        </fo:page-sequence>
+      </fo:root>
+    )
+  }
+
+  /** A document of `paragraphs` paragraphs, flowing from page to page.
+    */
+  def flowingStringXmlDocument(paragraphs: Int): String = {
+
+    toStringXml(
+      <fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
+        <fo:layout-master-set>
+          <fo:simple-page-master master-name="page" page-height="4in" page-width="4in">
+            <fo:region-body region-name="xsl-region-body"/>
+          </fo:simple-page-master>
+        </fo:layout-master-set>
+        <fo:page-sequence master-reference="page">
+          <fo:flow flow-name="xsl-region-body">
+            {(1 to paragraphs).map { paragraph =>
+              <fo:block space-after="6pt">Paragraph {paragraph}: The quick brown fox jumps over the lazy dog.</fo:block>
+            }}
+          </fo:flow>
+        </fo:page-sequence>
+      </fo:root>
+    )
+  }
+
+  /** An XSLT stylesheet that renders a `greeting` element's text as XSL-FO.
+    */
+  val GreetingStylesheet: URL = getClass().getResource("/com/dmanchester/playfop/greeting.xsl")
+
+  def greetingData(text: String): Source = {
+
+    new StreamSource(new StringReader(toStringXml(<greeting>{text}</greeting>)))
+  }
+
   private def toTwirlXml(xml: Node): Xml = {
     XmlFormat.raw(toStringXml(xml))
   }
 
-  private def toStringXml(xml: Node): String = {
+  def toStringXml(xml: Node): String = {
     val stringWriter = new StringWriter()
     XML.write(stringWriter, xml, "utf-8", true /* xmlDecl */, null /* doctype */)
     stringWriter.toString()
@@ -66,6 +121,17 @@ object TestHelpers {
     }
   }
 
+  def textFromPDFBytes(pdfBytes: Array[Byte], page: Int) = {
+
+    managed(toPDDocument(pdfBytes)) acquireAndGet { pdDocument =>
+
+      val stripper = new PDFTextStripper()
+      stripper.setStartPage(page)
+      stripper.setEndPage(page)
+      stripper.getText(pdDocument).trim()
+    }
+  }
+
   def authorFromPDFBytes(pdfBytes: Array[Byte]) = {
 
     managed(toPDDocument(pdfBytes)) acquireAndGet { pdDocument =>
@@ -74,6 +140,14 @@ object TestHelpers {
     }
   }
 
+  def pageCountFromPDFBytes(pdfBytes: Array[Byte]) = {
+
+    managed(toPDDocument(pdfBytes)) acquireAndGet { pdDocument =>
+
+      pdDocument.getNumberOfPages()
+    }
+  }
+
   def fontsFromPDFBytes(pdfBytes: Array[Byte]) = {
 
     managed(toPDDocument(pdfBytes)) acquireAndGet { pdDocument =>
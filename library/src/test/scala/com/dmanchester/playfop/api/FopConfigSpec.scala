@@ -0,0 +1,224 @@
+package com.dmanchester.playfop.api
+
+import java.io.File
+import java.nio.file.Files
+
+import scala.xml.Elem
+import scala.xml.Utility
+
+import org.specs2.mutable.Specification
+
+import play.api.Configuration
+import play.api.PlayException
+
+class FopConfigSpec extends Specification {
+
+  private val AutoDetectFontsConfigXml =
+    <fop version="1.0">
+      <renderers>
+        <renderer mime="application/pdf">
+          <fonts>
+            <auto-detect/>
+          </fonts>
+        </renderer>
+      </renderers>
+    </fop>
+
+  "hash" should {
+    "be \"default\" for the default configuration" in {
+      FopConfig.Default.hash must beEqualTo("default")
+    }
+
+    "ignore whitespace between elements and the order of attributes" in {
+      val config = FopConfig(<fop version="1.0" strict-configuration="true"><renderers/></fop>)
+      val equivalentConfig = FopConfig(
+        <fop strict-configuration="true" version="1.0">
+          <renderers></renderers>
+        </fop>
+      )
+
+      config.hash must beEqualTo(equivalentConfig.hash)
+      config must beEqualTo(equivalentConfig)
+    }
+
+    "differ for different configurations" in {
+      FopConfig(<fop version="1.0"/>).hash must not(beEqualTo(FopConfig(<fop version="2.0"/>).hash))
+    }
+
+    "differ for different base URIs" in {
+      val xml = <fop version="1.0"/>
+      FopConfig(xml, new File("a").toURI()).hash must not(beEqualTo(FopConfig(xml, new File("b").toURI()).hash))
+    }
+
+    "differ for a configuration that opts out of the resource cache" in {
+      FopConfig.Default.withResourceCache(false).hash must beEqualTo("default-uncached-resources")
+    }
+  }
+
+  "withResourceCache" should {
+    "return the same configuration if unchanged" in {
+      FopConfig.Default.withResourceCache(true) must beTheSameAs(FopConfig.Default)
+    }
+
+    "be preserved by withAutoDetectFontsForPDF" in {
+      FopConfig.Default.withResourceCache(false).withAutoDetectFontsForPDF.cachesResources must beFalse
+    }
+  }
+
+  "withAutoDetectFontsForPDF" should {
+    "add auto-detection to the default configuration" in {
+      FopConfig.Default.withAutoDetectFontsForPDF must beEqualTo(FopConfig(AutoDetectFontsConfigXml))
+    }
+
+    "add auto-detection to an existing PDF renderer's fonts" in {
+      val config = FopConfig(
+        <fop version="1.0">
+          <renderers>
+            <renderer mime="application/pdf">
+              <fonts>
+                <directory>/fonts</directory>
+              </fonts>
+            </renderer>
+          </renderers>
+        </fop>
+      )
+
+      trimmed(config.withAutoDetectFontsForPDF.xml.get) must beEqualTo(trimmed(
+        <fop version="1.0">
+          <renderers>
+            <renderer mime="application/pdf">
+              <fonts>
+                <directory>/fonts</directory>
+                <auto-detect/>
+              </fonts>
+            </renderer>
+          </renderers>
+        </fop>
+      ))
+    }
+
+    "leave a configuration that already auto-detects unchanged" in {
+      val config = FopConfig(AutoDetectFontsConfigXml)
+      config.withAutoDetectFontsForPDF must beEqualTo(config)
+    }
+  }
+
+  "withFontEmbedding" should {
+    "set the embedding mode of every font registered individually" in {
+      val config = FopConfig(
+        <fop version="1.0">
+          <renderers>
+            <renderer mime="application/pdf">
+              <fonts>
+                <font embed-url="a.ttf" embedding-mode="full"><font-triplet name="A" style="normal" weight="normal"/></font>
+                <font embed-url="b.ttf"><font-triplet name="B" style="normal" weight="normal"/></font>
+                <directory>/fonts</directory>
+              </fonts>
+            </renderer>
+            <renderer mime="application/postscript">
+              <fonts>
+                <font embed-url="c.ttf"><font-triplet name="C" style="normal" weight="normal"/></font>
+              </fonts>
+            </renderer>
+          </renderers>
+        </fop>
+      )
+
+      val fonts = config.withFontEmbedding(FontEmbedding.Subset).xml.get \\ "font"
+      fonts.map(_ \@ "embedding-mode") must beEqualTo(Seq("subset", "subset", "subset"))
+    }
+
+    "leave the default configuration unchanged" in {
+      FopConfig.Default.withFontEmbedding(FontEmbedding.Full) must beTheSameAs(FopConfig.Default)
+    }
+  }
+
+  "withReferencedFonts" should {
+    "add the families, as literal patterns, to the PDF renderer's referenced fonts" in {
+      val config = FopConfig.Default.withReferencedFonts("Noto Sans CJK JP", "A.B").withAutoDetectFontsForPDF
+
+      trimmed(config.xml.get) must beEqualTo(trimmed(
+        <fop version="1.0">
+          <renderers>
+            <renderer mime="application/pdf">
+              <fonts>
+                <referenced-fonts>
+                  <match font-family="\QNoto Sans CJK JP\E"/>
+                  <match font-family="\QA.B\E"/>
+                </referenced-fonts>
+                <auto-detect/>
+              </fonts>
+            </renderer>
+          </renderers>
+        </fop>
+      ))
+    }
+
+    "return the same configuration for no families" in {
+      FopConfig.Default.withReferencedFonts() must beTheSameAs(FopConfig.Default)
+    }
+  }
+
+  "fromFile" should {
+    "read the file and resolve relative URIs against its directory" in {
+      val file = File.createTempFile("fop", ".xconf")
+      try {
+        Files.write(file.toPath(), "<fop version=\"1.0\"/>".getBytes("utf-8"))
+        val config = FopConfig.fromFile(file.getPath())
+
+        config must beEqualTo(FopConfig(<fop version="1.0"/>, file.getParentFile().toURI()))
+      } finally {
+        file.delete()
+      }
+    }
+  }
+
+  "fromConfiguration" should {
+    "read inline XML" in {
+      FopConfig.fromConfiguration(Configuration("xml" -> "<fop version=\"1.0\"/>")) must
+        beEqualTo(FopConfig(<fop version="1.0"/>))
+    }
+
+    "register font directories" in {
+      val config = FopConfig.fromConfiguration(Configuration("font-directories" -> Seq("/fonts")))
+
+      (config.xml.get \\ "directory").map(_.text) must beEqualTo(Seq("/fonts"))
+      (config.xml.get \\ "auto-detect") must beEmpty
+    }
+
+    "register font directories and auto-detect fonts" in {
+      val config = FopConfig.fromConfiguration(
+          Configuration("font-directories" -> Seq("/fonts"), "auto-detect-fonts" -> true))
+
+      (config.xml.get \\ "auto-detect") must haveSize(1)
+    }
+
+    "opt out of the resource cache" in {
+      val config = FopConfig.fromConfiguration(Configuration("xml" -> "<fop version=\"1.0\"/>", "cache-resources" -> false))
+      config must beEqualTo(FopConfig(<fop version="1.0"/>).withResourceCache(false))
+    }
+
+    "set the font embedding and referenced fonts" in {
+      val config = FopConfig.fromConfiguration(Configuration("xml" -> "<fop version=\"1.0\"/>",
+          "font-embedding" -> "subset", "referenced-fonts" -> Seq("Arial")))
+      config must beEqualTo(FopConfig(<fop version="1.0"/>).withFontEmbedding(FontEmbedding.Subset)
+          .withReferencedFonts("Arial"))
+    }
+
+    "reject an invalid font embedding mode" in {
+      FopConfig.fromConfiguration(Configuration("xml" -> "<fop/>", "font-embedding" -> "partial")) must
+        throwA[PlayException]
+    }
+
+    "reject a section setting more than one source" in {
+      FopConfig.fromConfiguration(Configuration("xml" -> "<fop/>", "file" -> "fop.xconf")) must
+        throwA[PlayException]
+    }
+
+    "reject a section setting no source" in {
+      FopConfig.fromConfiguration(Configuration("auto-detect-fonts" -> true)) must throwA[PlayException]
+    }
+  }
+
+  private def trimmed(xml: Elem) = Utility.trim(xml)
+}
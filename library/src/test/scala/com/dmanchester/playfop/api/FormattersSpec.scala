@@ -116,4 +116,46 @@ class FormattersSpec extends Specification {
       )
     }
   }
-}
\ No newline at end of file
+
+  "preserveNewlinesForStringXml (appending to an Appendable)" should {
+    "append what preserveNewlinesForStringXml returns, and return the Appendable" in {
+      val text = CRLF + "1 < 2" + CRLF + "4 > 3" + CRLF + CRLF + "5 = 5" + CRLF + CRLF
+      val out = new java.lang.StringBuilder("<fo:block-container>")
+      (Formatters.preserveNewlinesForStringXml(text, out) must beTheSameAs(out)) and
+        (out.toString() must beEqualTo("<fo:block-container>" + Formatters.preserveNewlinesForStringXml(text)))
+    }
+  }
+
+  "the preserveNewlines... methods" should {
+    """split text as String.split("\r\n|\n") does, disregarding only trailing
+      |newlines""".stripMargin in {
+      val texts = Seq("\n", "\n\n", "a\r", "a\r\r\n", "\r\n a \n\nb\r\n\n", "\r", "\r\n\r\n")
+      forall(texts) { text =>
+        val paragraphs = text.split(CRLF + "|" + LF).toSeq
+        Formatters.preserveNewlinesForScalaXml(text).map(_.text) must beEqualTo(
+          paragraphs.map { paragraph => if (paragraph.isEmpty()) NBSP else paragraph })
+      }
+    }
+
+    "escape as scala-xml does, dropping control characters other than tab and CR" in {
+      val text = "<a & \"b\"> \t\r\u0001\u0085'"
+      Formatters.preserveNewlinesForStringXml(text) must beEqualTo(
+        "<fo:block>" + scala.xml.Utility.escape(text) + "</fo:block>")
+    }
+
+    "escape for Twirl XML as XmlFormat.escape does" in {
+      val text = "<a & \"b\"> \t\r\u0001\u0085'"
+      Formatters.preserveNewlinesForTwirlXml(text + LF + text).body must beEqualTo(
+        "<fo:block>" + play.twirl.api.XmlFormat.escape(text).body + "</fo:block>" +
+        "<fo:block>" + play.twirl.api.XmlFormat.escape(text).body + "</fo:block>")
+    }
+
+    "handle many thousands of lines" in {
+      val text = (1 to 50000).map { i => s"Line $i & more" }.mkString(LF)
+      val xml = Formatters.preserveNewlinesForStringXml(text)
+      (xml must startWith("<fo:block>Line 1 &amp; more</fo:block>")) and
+        (xml must endWith("<fo:block>Line 50000 &amp; more</fo:block>")) and
+        (Formatters.preserveNewlinesForScalaXml(text) must haveSize(50000))
+    }
+  }
+}
@@ -20,6 +20,33 @@ class UnitsSpec extends Specification {
       val units = new Units("mm", 0)
       units.format(2.34) must beEqualTo("2mm")
     }
+
+    "round half up, as String.format does, the value as Double.toString represents it" in {
+      val units = new Units("mm", 2)
+      (units.format(1.005) must beEqualTo("1.01mm")) and
+        (units.format(2.675) must beEqualTo("2.68mm")) and
+        (units.format(0.125) must beEqualTo("0.13mm")) and
+        (units.format(7.004999) must beEqualTo("7.00mm"))
+    }
+
+    "keep the sign of negative values that round to zero" in {
+      val units = new Units("mm", 1)
+      (units.format(-0.04) must beEqualTo("-0.0mm")) and
+        (units.format(-1.25) must beEqualTo("-1.3mm"))
+    }
+
+    "format values as String.format does in the root locale" in {
+      val random = new scala.util.Random(0)
+      val values = Seq(0.0, 1e20, 123456789.125, 1e-25, Double.NaN, Double.NegativeInfinity) ++
+        Seq.fill(10000)(random.nextGaussian() * math.pow(10, random.nextInt(16) - 8)) ++
+        Seq.fill(10000)(random.nextInt(100000) * 0.005)
+      forall(0 to 11) { precision =>
+        val units = new Units("pt", precision)
+        forall(values) { value =>
+          units.format(value) must beEqualTo(String.format(java.util.Locale.ROOT, s"%.${precision}fpt", Double.box(value)))
+        }
+      }
+    }
   }
 
   "format(Int)" should {
@@ -40,4 +67,15 @@ class UnitsSpec extends Specification {
       units.format(6.78) must beEqualTo("6.8%")
     }
   }
-}
\ No newline at end of file
+
+  "formatInto" should {
+    "append what format returns, and return the Appendable" in {
+      val units = new Units("in", 3)
+      val builder = new java.lang.StringBuilder("width=")
+      val writer = new java.io.StringWriter()
+      (units.formatInto(8.5, builder) must beTheSameAs(builder)) and
+        (builder.toString() must beEqualTo("width=8.500in")) and
+        (units.formatInto(11, writer).toString() must beEqualTo("11.000in"))
+    }
+  }
+}
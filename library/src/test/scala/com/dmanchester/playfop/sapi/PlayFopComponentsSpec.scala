@@ -0,0 +1,39 @@
+package com.dmanchester.playfop.sapi
+
+import java.util.concurrent.RejectedExecutionException
+
+import scala.concurrent.Await
+import scala.concurrent.duration.DurationInt
+
+import org.apache.xmlgraphics.util.MimeConstants
+import org.specs2.mutable.Specification
+
+import com.dmanchester.playfop.TestHelpers
+
+import play.api.inject.ApplicationLifecycle
+import play.api.inject.DefaultApplicationLifecycle
+
+class PlayFopComponentsSpec extends Specification {
+
+  "playFop" should {
+    "be available without overriding any members" in {
+      val components = new PlayFopComponents {}
+      val xslfo = TestHelpers.wrapInStringXmlDocument("Hello")
+
+      TestHelpers.textFromPDFBytes(components.playFop.processStringXml(xslfo, MimeConstants.MIME_PDF)) must
+        beEqualTo("Hello")
+    }
+
+    "release PlayFOP's resources when an overriding lifecycle stops" in {
+      val lifecycle = new DefaultApplicationLifecycle()
+      val components = new PlayFopComponents {
+        override def playFopLifecycle: Option[ApplicationLifecycle] = Some(lifecycle)
+      }
+      val playFop = components.playFop
+      Await.result(lifecycle.stop(), 10.seconds)
+
+      Await.result(playFop.processStringXmlAsync(TestHelpers.wrapInStringXmlDocument("Hello"), MimeConstants.MIME_PDF),
+        10.seconds) must throwA[RejectedExecutionException]
+    }
+  }
+}
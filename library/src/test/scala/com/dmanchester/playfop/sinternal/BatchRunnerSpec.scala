@@ -0,0 +1,78 @@
+package com.dmanchester.playfop.sinternal
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.TimeUnit
+
+import scala.collection.JavaConverters.mapAsScalaConcurrentMapConverter
+
+import org.specs2.mutable.Specification
+
+import com.dmanchester.playfop.api.BatchSink
+
+class BatchRunnerSpec extends Specification {
+
+  private class RecordingSink extends BatchSink[Int] {
+
+    val outputs = new ConcurrentHashMap[Int, Array[Byte]]().asScala
+    val failures = new ConcurrentHashMap[Int, Throwable]().asScala
+
+    def onOutput(key: Int, output: Array[Byte]): Unit = outputs.put(key, output)
+    def onFailure(key: Int, failure: Throwable): Unit = failures.put(key, failure)
+  }
+
+  "run()" should {
+    "deliver every input's output, and count it" in {
+      val sink = new RecordingSink()
+      val stats = BatchRunner.run(Iterator.range(0, 20), 3, sink) { key => Array.fill(key)(0: Byte) }
+
+      (sink.outputs.keySet must beEqualTo((0 until 20).toSet)) and
+        (stats.succeeded must beEqualTo(20)) and
+        (stats.failed must beEqualTo(0)) and
+        (stats.bytes must beEqualTo((0 until 20).sum))
+    }
+
+    "deliver each failure to the sink, carrying on with the other inputs" in {
+      val sink = new RecordingSink()
+      val stats = BatchRunner.run(Iterator.range(0, 10), 2, sink) { key =>
+        if (key % 5 == 0) throw new IllegalStateException(s"bad $key") else Array.empty[Byte]
+      }
+
+      (sink.failures.keySet must beEqualTo(Set(0, 5))) and
+        (sink.failures(5).getMessage() must beEqualTo("bad 5")) and
+        (stats.succeeded must beEqualTo(8)) and
+        (stats.failed must beEqualTo(2))
+    }
+
+    "count an output the sink fails to accept as failed" in {
+      val sink = new BatchSink[Int] {
+        def onOutput(key: Int, output: Array[Byte]): Unit = if (key == 1) throw new IllegalStateException()
+        def onFailure(key: Int, failure: Throwable): Unit = {}
+      }
+
+      val stats = BatchRunner.run(Iterator.range(0, 3), 1, sink) { _ => Array.empty[Byte] }
+
+      (stats.succeeded must beEqualTo(2)) and (stats.failed must beEqualTo(1))
+    }
+
+    "render inputs concurrently, up to the parallelism" in {
+      val barrier = new CyclicBarrier(2)
+      val sink = new RecordingSink()
+
+      // Each render waits for another to be in progress at the same time.
+      val stats = BatchRunner.run(Iterator.range(0, 4), 2, sink) { _ =>
+        barrier.await(10, TimeUnit.SECONDS)
+        Array.empty[Byte]
+      }
+
+      stats.succeeded must beEqualTo(4)
+    }
+
+    "end the batch with the iterator's exception, if it throws" in {
+      val inputs = Iterator.range(0, 3).map { key => if (key == 2) throw new IllegalStateException("no more") else key }
+
+      BatchRunner.run(inputs, 1, new RecordingSink()) { _ => Array.empty[Byte] } must
+        throwA[IllegalStateException]("no more")
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.StringReader
+import java.io.StringWriter
+
+import scala.xml.Elem
+import scala.xml.XML
+
+import org.specs2.mutable.Specification
+import org.xml.sax.InputSource
+
+import javax.xml.transform.TransformerFactory
+import javax.xml.transform.sax.SAXTransformerFactory
+import javax.xml.transform.stream.StreamResult
+
+class FlowTruncatorSpec extends Specification {
+
+  /** Passes `xslfo` through a truncator, returning the result and whether it
+    * truncated.
+    */
+  private def truncate(xslfo: Elem, cutPoints: Int): (Elem, Boolean) = {
+
+    val writer = new StringWriter()
+    val serializer = TransformerFactory.newInstance().asInstanceOf[SAXTransformerFactory].newTransformerHandler()
+    serializer.setResult(new StreamResult(writer))
+
+    val truncator = new FlowTruncator(cutPoints, serializer)
+    SaxParsing.parse(new InputSource(new StringReader(xslfo.toString())), truncator)
+
+    (XML.loadString(writer.toString()), truncator.truncated)
+  }
+
+  private def document(flows: Elem*): Elem = {
+    <fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
+      <fo:layout-master-set/>
+      {flows.map { flow => <fo:page-sequence master-reference="page">{flow}</fo:page-sequence> }}
+    </fo:root>
+  }
+
+  private def texts(xslfo: Elem): Seq[String] = (xslfo \\ "block").filter(_.child.forall(_.isAtom)).map(_.text)
+
+  "FlowTruncator" should {
+    "leave out flow content after the cut points, and later page sequences" in {
+
+      val (truncated, wasTruncated) = truncate(document(
+        <fo:flow><fo:block>1</fo:block><fo:block>2</fo:block><fo:block>3</fo:block></fo:flow>,
+        <fo:flow><fo:block>4</fo:block></fo:flow>
+      ), 2)
+
+      (texts(truncated) must beEqualTo(Seq("1", "2"))) and
+        ((truncated \ "page-sequence") must haveSize(1)) and
+        (wasTruncated must beTrue)
+    }
+
+    "pass everything on, if there are too few cut points" in {
+
+      val (truncated, wasTruncated) = truncate(document(<fo:flow><fo:block>1</fo:block></fo:flow>), 2)
+
+      (texts(truncated) must beEqualTo(Seq("1"))) and (wasTruncated must beFalse)
+    }
+
+    "cut between nested blocks and table rows" in {
+
+      val (truncated, _) = truncate(document(
+        <fo:flow>
+          <fo:block><fo:block>1</fo:block><fo:block>2</fo:block></fo:block>
+          <fo:table><fo:table-body>
+            <fo:table-row><fo:table-cell><fo:block>3</fo:block></fo:table-cell></fo:table-row>
+            <fo:table-row><fo:table-cell><fo:block>4</fo:block></fo:table-cell></fo:table-row>
+          </fo:table-body></fo:table>
+        </fo:flow>
+      ), 4)  // the inner blocks, the outer block, and the first row
+
+      texts(truncated) must beEqualTo(Seq("1", "2", "3"))
+    }
+
+    "not cut where the remaining content would be invalid" in {
+
+      val (truncated, _) = truncate(document(
+        <fo:flow>
+          <fo:list-block>
+            <fo:list-item>
+              <fo:list-item-label><fo:block>a</fo:block><fo:block>b</fo:block></fo:list-item-label>
+              <fo:list-item-body><fo:block>c</fo:block></fo:list-item-body>
+            </fo:list-item>
+            <fo:list-item>
+              <fo:list-item-label><fo:block>d</fo:block></fo:list-item-label>
+              <fo:list-item-body><fo:block>e</fo:block></fo:list-item-body>
+            </fo:list-item>
+          </fo:list-block>
+        </fo:flow>
+      ), 1)
+
+      texts(truncated) must beEqualTo(Seq("a", "b", "c"))
+    }
+  }
+}
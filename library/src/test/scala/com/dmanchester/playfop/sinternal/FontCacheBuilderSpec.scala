@@ -0,0 +1,28 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.File
+import java.nio.file.Files
+
+import org.specs2.mutable.Specification
+
+import com.dmanchester.playfop.api.FopConfig
+
+class FontCacheBuilderSpec extends Specification {
+
+  "build" should {
+    "write the metrics of auto-detected fonts to the cache file" in {
+
+      val directory = Files.createTempDirectory("playfop").toFile()
+      val cacheFile = new File(new File(directory, "nested"), "fop-fonts.cache")
+
+      try {
+        FontCacheBuilder.build(cacheFile, FopConfig.Default)
+        cacheFile.length() must beGreaterThan(0L)
+      } finally {
+        cacheFile.delete()
+        cacheFile.getParentFile().delete()
+        directory.delete()
+      }
+    }
+  }
+}
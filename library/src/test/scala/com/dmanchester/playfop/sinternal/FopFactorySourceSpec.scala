@@ -1,5 +1,20 @@
 package com.dmanchester.playfop.sinternal
 
+import java.awt.image.BufferedImage
+import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
+import scala.collection.JavaConverters.asScalaBufferConverter
+import scala.collection.JavaConverters.seqAsJavaListConverter
+import scala.collection.mutable.ListBuffer
+
+import scala.concurrent.duration.DurationInt
+
+import javax.imageio.ImageIO
+
 import org.specs2.mutable.Specification
 
 class FopFactoryCacheSpec extends Specification {
@@ -8,6 +23,14 @@ class FopFactoryCacheSpec extends Specification {
   private val FopConfig =
     <fop version={BogusFopVersion}/>
 
+  private val DefaultFontCacheSettings = PlayFopSettings.Default.fontCache
+
+  private def image(): String = {
+    val file = File.createTempFile("FopFactorySourceSpec", ".png")
+    ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", file)
+    file.toURI().toString()
+  }
+
   "get()" should {
     "return the same instance when called repeatedly without fopConfigXml" in {
       val cache = new FopFactorySource()
@@ -21,10 +44,132 @@ class FopFactoryCacheSpec extends Specification {
       )
     }
 
+    "return the same instance to threads calling concurrently with the same fopConfigXml" in {
+      val cache = new FopFactorySource()
+      val threads = 8
+      val executor = Executors.newFixedThreadPool(threads)
+      val barrier = new CyclicBarrier(threads)
+      val calls = Seq.fill(threads) {
+        new Callable[AnyRef] {
+          def call() = {
+            barrier.await()
+            cache.get(Some(FopConfig))
+          }
+        }
+      }
+
+      try {
+        val factories = executor.invokeAll(calls.asJava).asScala.map(_.get())
+        factories.distinct must haveSize(1)
+      } finally {
+        executor.shutdown()
+      }
+    }
+
     "apply the fopConfigXml it receives" in {
       val cache = new FopFactorySource()
       val factory = cache.get(Some(FopConfig))
       factory.getUserConfig.getAttribute("version") must beEqualTo(BogusFopVersion)
     }
+
+    "evict the least recently used instance when over the maximum size" in {
+      val cache = new FopFactorySource(FopFactoryCacheSettings(maxSize = 2, idleTimeout = None), DefaultFontCacheSettings)
+      val first = cache.get(Some(<fop version="1"/>))
+      cache.get(Some(<fop version="2"/>))
+      cache.get(Some(<fop version="1"/>))
+      cache.get(Some(<fop version="3"/>))  // evicts version 2
+
+      cache.get(Some(<fop version="1"/>)) must beTheSameAs(first)
+      cache.stats.evictions must beEqualTo(1)
+      cache.stats.entries must haveSize(2)
+    }
+
+    "evict instances that go unused for the idle timeout" in {
+      val cache = new FopFactorySource(FopFactoryCacheSettings(maxSize = 2, idleTimeout = Some(1.milli)), DefaultFontCacheSettings)
+      val first = cache.get(Some(<fop version="1"/>))
+      Thread.sleep(10)
+      cache.get(Some(<fop version="2"/>))  // evicts version 1
+
+      cache.get(Some(<fop version="1"/>)) must not(beTheSameAs(first))
+    }
+
+    "preload registered images into each instance as it is created" in {
+      val preloader = new ImagePreloader()
+      val cache = new FopFactorySource(PlayFopSettings.Default.fopFactoryCache, DefaultFontCacheSettings,
+          imagePreloader = preloader)
+
+      cache.preloadImages(Seq(image()), "application/pdf", com.dmanchester.playfop.api.FopConfig.Default)
+      cache.get(Some(FopConfig))
+
+      preloader.stats.pinned must beEqualTo(2)
+    }
+
+    "preload newly registered images into instances already created" in {
+      val preloader = new ImagePreloader()
+      val cache = new FopFactorySource(PlayFopSettings.Default.fopFactoryCache, DefaultFontCacheSettings,
+          imagePreloader = preloader)
+
+      cache.get(Some(FopConfig))
+      cache.preloadImages(Seq(image()), "application/pdf", com.dmanchester.playfop.api.FopConfig.Default)
+
+      preloader.stats.pinned must beEqualTo(2)
+    }
+
+    "preload images on the preload executor, not the retrieving thread" in {
+      val preloader = new ImagePreloader()
+      val pending = ListBuffer.empty[Runnable]
+      val cache = new FopFactorySource(PlayFopSettings.Default.fopFactoryCache, DefaultFontCacheSettings,
+          imagePreloader = preloader, preloadExecutor = new Executor {
+            def execute(task: Runnable): Unit = pending += task
+          })
+
+      cache.preloadImages(Seq(image()), "application/pdf", com.dmanchester.playfop.api.FopConfig.Default)
+      cache.get(Some(FopConfig))
+      cache.get(Some(FopConfig))
+      val pinnedBeforeRunning = preloader.stats.pinned
+      pending.foreach(_.run())
+
+      (pinnedBeforeRunning must beEqualTo(1)) and (preloader.stats.pinned must beEqualTo(2))
+    }
+
+    "not evict idle instances that hold preloaded images" in {
+      val preloader = new ImagePreloader()
+      val cache = new FopFactorySource(FopFactoryCacheSettings(maxSize = 2, idleTimeout = Some(1.milli)),
+          DefaultFontCacheSettings, imagePreloader = preloader)
+
+      cache.preloadImages(Seq(image()), "application/pdf", com.dmanchester.playfop.api.FopConfig.Default)
+      val first = cache.get(None)
+      Thread.sleep(10)
+      cache.get(Some(FopConfig))
+
+      (cache.get(None) must beTheSameAs(first)) and (cache.stats.evictions must beEqualTo(0))
+    }
+
+    "release the images preloaded into instances it evicts" in {
+      val preloader = new ImagePreloader()
+      val cache = new FopFactorySource(FopFactoryCacheSettings(maxSize = 1, idleTimeout = None), DefaultFontCacheSettings,
+          imagePreloader = preloader)
+
+      cache.preloadImages(Seq(image()), "application/pdf", com.dmanchester.playfop.api.FopConfig.Default)
+      cache.get(Some(FopConfig))  // evicts the default instance
+
+      preloader.stats.pinned must beEqualTo(1)
+    }
+  }
+
+  "stats" should {
+    "count hits and misses overall and per instance" in {
+      val cache = new FopFactorySource()
+      cache.get(None)
+      cache.get(None)
+      cache.get(Some(FopConfig))
+
+      val stats = cache.stats
+      stats.hits must beEqualTo(1)
+      stats.misses must beEqualTo(2)
+      stats.evictions must beEqualTo(0)
+      stats.entries.map(entry => entry.configHash -> entry.hits) must containTheSameElementsAs(
+          Seq("default" -> 1L, com.dmanchester.playfop.api.FopConfig(FopConfig).hash -> 0L))
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,131 @@
+package com.dmanchester.playfop.sinternal
+
+import java.awt.image.BufferedImage
+import java.io.File
+import java.io.StringReader
+import java.nio.file.Files
+
+import javax.imageio.ImageIO
+
+import org.apache.fop.apps.FopFactory
+import org.apache.xmlgraphics.util.MimeConstants
+import org.specs2.mutable.Specification
+import org.xml.sax.InputSource
+
+class ImagePreloaderSpec extends Specification {
+
+  private val directory = Files.createTempDirectory("ImagePreloaderSpec").toFile()
+
+  private def image(name: String, width: Int = 10, height: Int = 10): String = {
+    val file = new File(directory, name)
+    ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file)
+    file.toURI().toString()
+  }
+
+  private def attachedFopFactory(preloader: ImagePreloader): FopFactory = {
+    val fopFactory = FopFactory.newInstance(directory.toURI())
+    preloader.attach(fopFactory)
+    fopFactory
+  }
+
+  private def render(fopFactory: FopFactory, uris: String*): Unit = {
+    val fop = fopFactory.newFop(MimeConstants.MIME_PDF, fopFactory.newFOUserAgent(), PlayFopImpl.DiscardingOutputStream)
+    SaxParsing.parse(new InputSource(new StringReader(ImagePreloader.xslfo(uris))), fop.getDefaultHandler())
+  }
+
+  "preload()" should {
+    "pin registered images, decoded, in the FopFactory's image cache, so that renders find them there" in {
+      val preloader = new ImagePreloader(ImageCacheSettings(1024 * 1024))
+      val fopFactory = attachedFopFactory(preloader)
+      val uri = image("a.png", 10, 20)
+
+      preloader.register(Seq(uri), MimeConstants.MIME_PDF)
+      preloader.preload(fopFactory)
+      render(fopFactory, uri)
+
+      val stats = preloader.stats
+      (stats.images must beEqualTo(1)) and (stats.pinned must beEqualTo(1)) and
+        (stats.bytes must beEqualTo(10 * 20 * 3)) and  // 24 bits per pixel, as decoded
+        (stats.hits must beEqualTo(1)) and (stats.misses must beEqualTo(0))
+    }
+
+    "preload only the images registered since the last invocation" in {
+      val preloader = new ImagePreloader(ImageCacheSettings(1024 * 1024))
+      val fopFactory = attachedFopFactory(preloader)
+
+      preloader.register(Seq(image("b.png")), MimeConstants.MIME_PDF)
+      preloader.preload(fopFactory)
+      preloader.register(Seq(image("c.png")), MimeConstants.MIME_PDF)
+      preloader.preload(fopFactory)
+      preloader.preload(fopFactory)
+
+      (preloader.stats.images must beEqualTo(2)) and (preloader.stats.pinned must beEqualTo(2))
+    }
+
+    "ignore images already registered for the output format" in {
+      val preloader = new ImagePreloader(ImageCacheSettings(1024 * 1024))
+      val uri = image("d.png")
+
+      preloader.register(Seq(uri, uri), MimeConstants.MIME_PDF)
+      preloader.register(Seq(uri), MimeConstants.MIME_PDF)
+      preloader.register(Seq(uri), MimeConstants.MIME_PNG)
+
+      preloader.stats.images must beEqualTo(2)
+    }
+
+    "not pin images beyond the memory limit" in {
+      val preloader = new ImagePreloader(ImageCacheSettings(10 * 10 * 3))
+      val fopFactory = attachedFopFactory(preloader)
+
+      preloader.register(Seq(image("e.png"), image("f.png")), MimeConstants.MIME_PDF)
+      preloader.preload(fopFactory)
+
+      val stats = preloader.stats
+      (stats.pinned must beEqualTo(1)) and (stats.bytes must beEqualTo(10 * 10 * 3)) and
+        (stats.overLimit must beEqualTo(1))
+    }
+
+    "skip images that cannot be loaded" in {
+      val preloader = new ImagePreloader(ImageCacheSettings(1024 * 1024))
+      val fopFactory = attachedFopFactory(preloader)
+
+      preloader.register(Seq("missing.png", image("g.png")), MimeConstants.MIME_PDF)
+      preloader.preload(fopFactory)
+
+      preloader.stats.pinned must beEqualTo(1)
+    }
+
+    "do nothing for an FopFactory not attached" in {
+      val preloader = new ImagePreloader(ImageCacheSettings(1024 * 1024))
+
+      preloader.register(Seq(image("h.png")), MimeConstants.MIME_PDF)
+      preloader.preload(FopFactory.newInstance(directory.toURI()))
+
+      preloader.stats.pinned must beEqualTo(0)
+    }
+  }
+
+  "release()" should {
+    "release the images pinned for an FopFactory, and detach it" in {
+      val preloader = new ImagePreloader(ImageCacheSettings(1024 * 1024))
+      val fopFactory = attachedFopFactory(preloader)
+
+      preloader.register(Seq(image("i.png")), MimeConstants.MIME_PDF)
+      preloader.preload(fopFactory)
+      preloader.release(fopFactory)
+      preloader.register(Seq(image("j.png")), MimeConstants.MIME_PDF)
+      preloader.preload(fopFactory)
+
+      (preloader.stats.pinned must beEqualTo(0)) and (preloader.stats.bytes must beEqualTo(0))
+    }
+  }
+
+  "validate()" should {
+    "throw an IllegalArgumentException for an image that cannot be loaded" in {
+      val preloader = new ImagePreloader(ImageCacheSettings(1024 * 1024))
+      val fopFactory = attachedFopFactory(preloader)
+
+      preloader.validate(fopFactory, Seq(image("k.png"), "missing.png")) must throwA[IllegalArgumentException]
+    }
+  }
+}
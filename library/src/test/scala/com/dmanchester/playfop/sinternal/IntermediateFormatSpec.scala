@@ -0,0 +1,65 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.ByteArrayOutputStream
+import java.io.StringReader
+
+import org.apache.fop.apps.FopFactory
+import org.apache.xmlgraphics.util.MimeConstants
+import org.specs2.mutable.Specification
+import org.xml.sax.InputSource
+
+import com.dmanchester.playfop.TestHelpers
+import com.dmanchester.playfop.api.FopConfig
+
+class IntermediateFormatSpec extends Specification {
+
+  private val fopFactory: FopFactory = new FopFactorySource().get(FopConfig.Default)
+
+  private def layOut(pages: Int, lastPage: Option[Int]): (Array[Byte], Int) = {
+
+    val output = new ByteArrayOutputStream()
+    val layout = IntermediateFormat.layOut(fopFactory.newFOUserAgent(), MimeConstants.MIME_PDF, output, lastPage)
+
+    IntermediateFormat.untilLastPage {
+      SaxParsing.parse(new InputSource(new StringReader(TestHelpers.pagedStringXmlDocument(pages))),
+          layout.fop.getDefaultHandler())
+    }
+
+    (output.toByteArray(), layout.pageCount)
+  }
+
+  "layOut()" should {
+    "lay out every page, absent a last page" in {
+      layOut(5, None)._2 must beEqualTo(5)
+    }
+
+    "end the layout after the last page" in {
+      layOut(50, Some(2))._2 must beEqualTo(2)
+    }
+  }
+
+  "renderPage()" should {
+    "render only the chosen page, from a layout that was ended early" in {
+
+      val (document, _) = layOut(50, Some(3))
+
+      val output = new ByteArrayOutputStream()
+      IntermediateFormat.renderPage(fopFactory.newFOUserAgent(), MimeConstants.MIME_PDF, document, 2, output)
+
+      (TestHelpers.pageCountFromPDFBytes(output.toByteArray()) must beEqualTo(1)) and
+        (TestHelpers.textFromPDFBytes(output.toByteArray()) must beEqualTo("Page 2"))
+    }
+  }
+
+  "concatenate()" should {
+    "render the documents' pages, in order" in {
+
+      val output = new ByteArrayOutputStream()
+      IntermediateFormat.concatenate(fopFactory.newFOUserAgent(), MimeConstants.MIME_PDF,
+          Seq(layOut(2, None)._1, layOut(1, None)._1), output)
+
+      TestHelpers.textFromPDFBytes(output.toByteArray()).split("\\s+").toSeq must
+        beEqualTo(Seq("Page", "1", "Page", "2", "Page", "1"))
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.dmanchester.playfop.sinternal
+
+import java.util.concurrent.TimeUnit
+
+import org.specs2.mutable.Specification
+
+import com.dmanchester.playfop.api.MetricsListener
+import com.dmanchester.playfop.api.RenderEvent
+
+class MetricsRecorderSpec extends Specification {
+
+  private def render(outputFormat: String, millis: Long, inputSize: Option[Long] = Some(100)) =
+    RenderEvent(outputFormat, inputSize, 1000, TimeUnit.MILLISECONDS.toNanos(millis))
+
+  "snapshot" should {
+    "record renders by output format" in {
+      val recorder = new MetricsRecorder()
+      recorder.renderCompleted(render("application/pdf", 3))
+      recorder.renderCompleted(render("application/pdf", 40, inputSize = None))
+      recorder.renderFailed("application/pdf", 1, new Exception())
+      recorder.renderCompleted(render("image/png", 7))
+
+      val renders = recorder.snapshot.renders
+      renders.keySet must beEqualTo(Set("application/pdf", "image/png"))
+
+      val pdf = renders("application/pdf")
+      pdf.completed must beEqualTo(2)
+      pdf.failed must beEqualTo(1)
+      pdf.outputBytes must beEqualTo(2000)
+      pdf.inputSize must beEqualTo(100)
+      pdf.totalMillis must beEqualTo(43)
+      pdf.maxMillis must beEqualTo(40)
+      pdf.latencies.filter(_.count > 0).map(_.upperBoundMillis) must beEqualTo(Seq(5, 50))
+    }
+
+    "estimate percentiles from the latency histogram" in {
+      val recorder = new MetricsRecorder()
+      (1 to 9).foreach { _ => recorder.renderCompleted(render("application/pdf", 20)) }
+      recorder.renderCompleted(render("application/pdf", 60000))
+
+      val pdf = recorder.snapshot.renders("application/pdf")
+      pdf.percentileMillis(50) must beEqualTo(25)
+      pdf.percentileMillis(90) must beEqualTo(25)
+      pdf.percentileMillis(99) must beEqualTo(60000)  // the unbounded bucket, so the maximum
+      pdf.meanMillis must beEqualTo(6018.0)
+    }
+
+    "record the use of the FopFactory cache and the peak renders in flight" in {
+      val recorder = new MetricsRecorder()
+      recorder.fopFactoryCreated("hash", TimeUnit.MILLISECONDS.toNanos(12))
+      recorder.fopFactoryCacheHit("hash")
+      recorder.fopFactoryCacheHit("hash")
+      Seq(1, 2, 1, 0).foreach(recorder.rendersInFlightChanged)
+
+      val snapshot = recorder.snapshot
+      snapshot.fopFactoriesCreated must beEqualTo(1)
+      snapshot.fopFactoryCacheHits must beEqualTo(2)
+      snapshot.fopFactoryBuildMillis must beEqualTo(12)
+      snapshot.peakRendersInFlight must beEqualTo(2)
+    }
+  }
+
+  "the listener" should {
+    "receive each metric, and not disrupt recording by failing" in {
+      var received = List.empty[RenderEvent]
+      val recorder = new MetricsRecorder(new MetricsListener {
+        override def renderCompleted(render: RenderEvent): Unit = {
+          received = render :: received
+          throw new IllegalStateException()
+        }
+      })
+
+      recorder.renderCompleted(render("application/pdf", 3)) must not(throwAn[Exception])
+      received must beEqualTo(List(render("application/pdf", 3)))
+      recorder.snapshot.renders("application/pdf").completed must beEqualTo(1)
+    }
+  }
+}
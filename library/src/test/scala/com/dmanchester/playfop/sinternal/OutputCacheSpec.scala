@@ -0,0 +1,143 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.File
+import java.nio.file.Files
+
+import scala.concurrent.duration.DurationInt
+import scala.concurrent.duration.FiniteDuration
+
+import org.specs2.mutable.Specification
+
+import com.dmanchester.playfop.api.FopConfig
+import com.dmanchester.playfop.jinternal.TwirlXmlReader
+
+import play.twirl.api.XmlFormat
+
+class OutputCacheSpec extends Specification {
+
+  private def settings(maxMemoryBytes: Long = 1024, ttl: Option[FiniteDuration] = None,
+      disk: Boolean = false, maxDiskBytes: Long = 1024) = {
+    val diskDirectory = if (disk) Some(Files.createTempDirectory("OutputCacheSpec").toFile()) else None
+    OutputCacheSettings(enabled = true, maxMemoryBytes, ttl, diskDirectory, maxDiskBytes)
+  }
+
+  private def output(size: Int, value: Int = 1) = Array.fill[Byte](size)(value.toByte)
+
+  "get()" should {
+    "return what was put, counting the hit" in {
+      val cache = new OutputCache(settings())
+      cache.put("a", output(10))
+      (cache.get("a").map(_.toSeq) must beSome(output(10).toSeq)) and
+        (cache.stats.memoryHits must beEqualTo(1))
+    }
+
+    "miss, counting the miss, for what was not put" in {
+      val cache = new OutputCache(settings())
+      (cache.get("a") must beNone) and (cache.stats.misses must beEqualTo(1))
+    }
+
+    "return a copy, unaffected by changes to the original or to other copies" in {
+      val cache = new OutputCache(settings())
+      val original = output(10)
+      cache.put("a", original)
+      original(0) = 9
+      cache.get("a").get(1) = 9
+      cache.get("a").map(_.toSeq) must beSome(output(10).toSeq)
+    }
+
+    "evict the least recently used outputs once memory is exceeded" in {
+      val cache = new OutputCache(settings(maxMemoryBytes = 25))
+      cache.put("a", output(10))
+      cache.put("b", output(10))
+      cache.get("a")
+      cache.put("c", output(10))
+      (cache.get("b") must beNone) and (cache.get("a") must beSome) and (cache.get("c") must beSome) and
+        (cache.stats.memoryBytes must beEqualTo(20))
+    }
+
+    "not return expired outputs" in {
+      val cache = new OutputCache(settings(ttl = Some(1.millisecond)))
+      cache.put("a", output(10))
+      Thread.sleep(20)
+      (cache.get("a") must beNone) and (cache.stats.memoryEntries must beEqualTo(0))
+    }
+
+    "return outputs from disk once evicted from memory" in {
+      val cache = new OutputCache(settings(maxMemoryBytes = 15, disk = true))
+      cache.put("a", output(10))
+      cache.put("b", output(10))
+      (cache.get("a").map(_.toSeq) must beSome(output(10).toSeq)) and (cache.stats.diskHits must beEqualTo(1))
+    }
+
+    "return outputs that another instance wrote to disk" in {
+      val sharedSettings = settings(disk = true)
+      new OutputCache(sharedSettings).put("a", output(10))
+      new OutputCache(sharedSettings).get("a").map(_.toSeq) must beSome(output(10).toSeq)
+    }
+
+    "delete the oldest outputs once the disk maximum is exceeded" in {
+      val diskSettings = settings(maxMemoryBytes = 0, disk = true, maxDiskBytes = 25)
+      val cache = new OutputCache(diskSettings)
+      cache.put("a", output(10))
+      diskSettings.diskDirectory.get.listFiles().foreach(_.setLastModified(System.currentTimeMillis() - 60000))
+      cache.put("b", output(10))
+      cache.put("c", output(10))
+      (cache.get("a") must beNone) and (cache.get("b") must beSome) and (cache.get("c") must beSome)
+    }
+
+    "count the age of an output read from disk from when it was written" in {
+      val diskSettings = settings(maxMemoryBytes = 15, ttl = Some(3.seconds), disk = true)
+      val cache = new OutputCache(diskSettings)
+      cache.put("a", output(10))
+      cache.put("b", output(10))
+      diskSettings.diskDirectory.get.listFiles().foreach(_.setLastModified(System.currentTimeMillis() - 2000))
+      val fromDisk = cache.get("a")
+      Thread.sleep(1500)
+      (fromDisk must beSome) and (cache.get("a") must beNone)
+    }
+
+    "delete stale temporary files left on disk" in {
+      val diskSettings = settings(disk = true)
+      val directory = diskSettings.diskDirectory.get
+      val stale = File.createTempFile("output", ".tmp", directory)
+      stale.setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000)
+      val recent = File.createTempFile("output", ".tmp", directory)
+      new OutputCache(diskSettings)
+      (stale.exists() must beFalse) and (recent.exists() must beTrue)
+    }
+
+    "always miss when disabled" in {
+      val cache = new OutputCache(settings().copy(enabled = false))
+      cache.put("a", output(10))
+      cache.get("a") must beNone
+    }
+  }
+
+  "key()" should {
+    "differ when any of its inputs differ" in {
+      val keys = Seq(
+        OutputCache.key("<a/>", "application/pdf", "k", false, FopConfig.Default),
+        OutputCache.key("<b/>", "application/pdf", "k", false, FopConfig.Default),
+        OutputCache.key("<a/>", "image/png", "k", false, FopConfig.Default),
+        OutputCache.key("<a/>", "application/pdf", "j", false, FopConfig.Default),
+        OutputCache.key("<a/>", "application/pdf", "k", true, FopConfig.Default),
+        OutputCache.key("<a/>", "application/pdf", "k", false, FopConfig(<fop version="1.0"/>))
+      )
+      keys.distinct must haveSize(keys.size)
+    }
+
+    "be the same for the same inputs" in {
+      OutputCache.key("<a/>", "application/pdf", "k", false, FopConfig.Default) must
+        beEqualTo(OutputCache.key("<a/>", "application/pdf", "k", false, FopConfig.Default))
+    }
+
+    "be the same for XSL-FO read from Twirl XML as for its text" in {
+      // Long enough to be read in several chunks, and to split a surrogate pair
+      val xml = XmlFormat.fill(List(XmlFormat.raw("<a>"), XmlFormat.raw("x" * 8191 + "\uD83D\uDE00" * 4000),
+        XmlFormat.escape("&"), XmlFormat.raw("</a>")))
+
+      OutputCache.key(new TwirlXmlReader(xml), "application/pdf", "k", false, FopConfig.Default) must
+        beEqualTo(OutputCache.key(xml.body, "application/pdf", "k", false, FopConfig.Default))
+    }
+  }
+}
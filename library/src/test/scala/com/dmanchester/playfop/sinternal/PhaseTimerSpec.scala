@@ -0,0 +1,54 @@
+package com.dmanchester.playfop.sinternal
+
+import org.specs2.mutable.Specification
+
+class PhaseTimerSpec extends Specification {
+
+  private val Millis = 1000000L
+
+  "timings" should {
+    "charge time to the innermost phase only" in {
+      val timer = new PhaseTimer()
+
+      timer(PhaseTimer.Parsing) {
+        Thread.sleep(20)
+        timer(PhaseTimer.Layout) {
+          Thread.sleep(200)
+        }
+      }
+
+      val timings = timer.timings
+      timings.parsingNanos must beBetween(20 * Millis, 200 * Millis)  // excluding the layout
+      timings.layoutNanos must beGreaterThanOrEqualTo(200 * Millis)
+      timings.setupNanos must beEqualTo(0)
+      timings.totalNanos must beEqualTo(timings.parsingNanos + timings.layoutNanos)
+    }
+
+    "accumulate time across separate entries to a phase" in {
+      val timer = new PhaseTimer()
+
+      (1 to 3).foreach { _ =>
+        timer.enter(PhaseTimer.Output)
+        Thread.sleep(10)
+        timer.exit()
+      }
+
+      timer.timings.outputNanos must beGreaterThanOrEqualTo(30 * Millis)
+    }
+
+    "exit a phase whose code throws" in {
+      val timer = new PhaseTimer()
+
+      timer(PhaseTimer.Setup) {
+        timer[Unit](PhaseTimer.FoTree) { throw new IllegalStateException() } must throwAn[IllegalStateException]
+        Thread.sleep(10)
+      }
+
+      timer.timings.setupNanos must beGreaterThanOrEqualTo(10 * Millis)
+    }
+
+    "be all zeros if no phase was entered" in {
+      new PhaseTimer().timings.totalNanos must beEqualTo(0)
+    }
+  }
+}
@@ -1,26 +1,57 @@
 package com.dmanchester.playfop.sinternal
 
+import java.awt.image.BufferedImage
 import java.io.ByteArrayOutputStream
+import java.io.File
 import java.io.StringReader
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
 
+import scala.collection.JavaConverters.asScalaSetConverter
 import scala.collection.JavaConverters.collectionAsScalaIterableConverter
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext
+import scala.concurrent.Future
+import scala.concurrent.duration.DurationInt
 
 import org.apache.fop.apps.FOUserAgent
 import org.apache.fop.apps.Fop
 import org.apache.fop.fo.FOTreeBuilder
 import org.apache.xmlgraphics.util.MimeConstants
 import org.specs2.mutable.Specification
+import org.specs2.specification.AfterAll
+import org.xml.sax.InputSource
+import org.xml.sax.SAXParseException
 
 import com.dmanchester.playfop.TestHelpers
+import com.dmanchester.playfop.api.BatchSink
+import com.dmanchester.playfop.api.FopConfig
+import com.dmanchester.playfop.api.MetricsListener
+import com.dmanchester.playfop.api.OutputCacheStats
+import com.dmanchester.playfop.api.PageRange
+import com.dmanchester.playfop.api.RenderEvent
+import com.dmanchester.playfop.api.RenderRejectedException
 import com.dmanchester.playfop.sapi.PlayFop
 import com.dmanchester.playfop.playFopBlock
 
+import akka.NotUsed
+import akka.actor.ActorSystem
+import akka.stream.scaladsl.Sink
+import akka.stream.scaladsl.Source
+import akka.util.ByteString
+import javax.imageio.ImageIO
+import javax.xml.parsers.DocumentBuilderFactory
+import javax.xml.stream.XMLInputFactory
 import javax.xml.transform.TransformerFactory
+import javax.xml.transform.dom.DOMSource
 import javax.xml.transform.sax.SAXResult
+import javax.xml.transform.stax.StAXSource
 import javax.xml.transform.stream.StreamSource
 import play.twirl.api.Xml
+import play.twirl.api.XmlFormat
 
-class PlayFopImplSpec extends Specification {
+class PlayFopImplSpec extends Specification with AfterAll {
 
   private val PdfText = "Hello there"
   private val PdfAuthor = "PlayFopSpec"
@@ -29,6 +60,12 @@ class PlayFopImplSpec extends Specification {
     foUserAgent.setAuthor(PdfAuthor)
   }
 
+  private implicit val actorSystem = ActorSystem("PlayFopImplSpec")
+
+  def afterAll(): Unit = {
+    actorSystem.terminate()
+  }
+
   "processTwirlXml(xslfo, outputFormat)" should {
     "render the XSL-FO in the chosen format" in new playFopBlock {
 
@@ -143,6 +180,539 @@ class PlayFopImplSpec extends Specification {
     }
   }
 
+  "processTwirlXmlToStream(xslfo, outputFormat, output)" should {
+    "render the XSL-FO in the chosen format to the OutputStream" in new playFopBlock {
+
+      val xslfo = TestHelpers.wrapInTwirlXmlDocument(PdfText)
+      val output = new ByteArrayOutputStream()
+      playFop.processTwirlXmlToStream(xslfo, MimeConstants.MIME_PDF, output)
+
+      TestHelpers.textFromPDFBytes(output.toByteArray()) must beEqualTo(PdfText)
+    }
+  }
+
+  "processScalaXmlToStream(xslfo, outputFormat, output, foUserAgentBlock)" should {
+    "render the XSL-FO in the chosen format to the OutputStream, applying the FOUserAgent block" in new playFopBlock {
+
+      val xslfo = TestHelpers.wrapInScalaXmlDocument(PdfText)
+      val output = new ByteArrayOutputStream()
+      playFop.processScalaXmlToStream(xslfo, MimeConstants.MIME_PDF, output, foUserAgentBlock = FOUserAgentBlock)
+
+      val pdfBytes = output.toByteArray()
+      TestHelpers.textFromPDFBytes(pdfBytes) must beEqualTo(PdfText)
+      TestHelpers.authorFromPDFBytes(pdfBytes) must beEqualTo(PdfAuthor)
+    }
+  }
+
+  "processStringXmlToStream(xslfo, outputFormat, output)" should {
+    "render the XSL-FO in the chosen format to the OutputStream" in new playFopBlock {
+
+      val xslfo = TestHelpers.wrapInStringXmlDocument(PdfText)
+      val output = new ByteArrayOutputStream()
+      playFop.processStringXmlToStream(xslfo, MimeConstants.MIME_PDF, output)
+
+      TestHelpers.textFromPDFBytes(output.toByteArray()) must beEqualTo(PdfText)
+    }
+  }
+
+  "processWithXslt(data, stylesheet, outputFormat, foUserAgentBlock)" should {
+    "render the stylesheet's output in the chosen format, applying the FOUserAgent block" in new playFopBlock {
+
+      val pdfBytes = playFop.processWithXslt(TestHelpers.greetingData(PdfText), TestHelpers.GreetingStylesheet,
+          MimeConstants.MIME_PDF, foUserAgentBlock = FOUserAgentBlock)
+
+      TestHelpers.textFromPDFBytes(pdfBytes) must beEqualTo(PdfText)
+      TestHelpers.authorFromPDFBytes(pdfBytes) must beEqualTo(PdfAuthor)
+    }
+  }
+
+  "processWithXsltToStream(data, stylesheet, outputFormat, output)" should {
+    "render the stylesheet's output in the chosen format" in new playFopBlock {
+
+      val output = new ByteArrayOutputStream()
+      playFop.processWithXsltToStream(TestHelpers.greetingData(PdfText), TestHelpers.GreetingStylesheet,
+          MimeConstants.MIME_PDF, output)
+
+      TestHelpers.textFromPDFBytes(output.toByteArray()) must beEqualTo(PdfText)
+    }
+  }
+
+  "processXmlSource(xslfo, outputFormat, foUserAgentBlock)" should {
+    "render the XSL-FO in the chosen format, applying the FOUserAgent block" in new playFopBlock {
+
+      val documentBuilderFactory = DocumentBuilderFactory.newInstance()
+      documentBuilderFactory.setNamespaceAware(true)
+      val document = documentBuilderFactory.newDocumentBuilder().parse(
+          new InputSource(new StringReader(TestHelpers.wrapInStringXmlDocument(PdfText))))
+
+      val pdfBytes = playFop.processXmlSource(new DOMSource(document), MimeConstants.MIME_PDF,
+          foUserAgentBlock = FOUserAgentBlock)
+
+      TestHelpers.textFromPDFBytes(pdfBytes) must beEqualTo(PdfText)
+      TestHelpers.authorFromPDFBytes(pdfBytes) must beEqualTo(PdfAuthor)
+    }
+  }
+
+  "processXmlSourceToStream(xslfo, outputFormat, output)" should {
+    "render the XSL-FO in the chosen format to the OutputStream" in new playFopBlock {
+
+      val reader = XMLInputFactory.newInstance().createXMLEventReader(
+          new StringReader(TestHelpers.wrapInStringXmlDocument(PdfText)))
+      val output = new ByteArrayOutputStream()
+      playFop.processXmlSourceToStream(new StAXSource(reader), MimeConstants.MIME_PDF, output)
+
+      TestHelpers.textFromPDFBytes(output.toByteArray()) must beEqualTo(PdfText)
+    }
+  }
+
+  "processTwirlXmlAsync(xslfo, outputFormat)" should {
+    "render the XSL-FO in the chosen format" in new playFopBlock {
+
+      val xslfo = TestHelpers.wrapInTwirlXmlDocument(PdfText)
+      val pdfBytes = Await.result(playFop.processTwirlXmlAsync(xslfo, MimeConstants.MIME_PDF), 30.seconds)
+
+      TestHelpers.textFromPDFBytes(pdfBytes) must beEqualTo(PdfText)
+    }
+  }
+
+  "processScalaXmlAsync(xslfo, outputFormat, foUserAgentBlock)" should {
+    "render the XSL-FO in the chosen format, applying the FOUserAgent block" in new playFopBlock {
+
+      val xslfo = TestHelpers.wrapInScalaXmlDocument(PdfText)
+      val pdfBytes = Await.result(playFop.processScalaXmlAsync(xslfo, MimeConstants.MIME_PDF, foUserAgentBlock = FOUserAgentBlock), 30.seconds)
+
+      TestHelpers.textFromPDFBytes(pdfBytes) must beEqualTo(PdfText)
+      TestHelpers.authorFromPDFBytes(pdfBytes) must beEqualTo(PdfAuthor)
+    }
+  }
+
+  "processStringXmlAsync(xslfo, outputFormat)" should {
+    "render the XSL-FO in the chosen format" in new playFopBlock {
+
+      val xslfo = TestHelpers.wrapInStringXmlDocument(PdfText)
+      val pdfBytes = Await.result(playFop.processStringXmlAsync(xslfo, MimeConstants.MIME_PDF), 30.seconds)
+
+      TestHelpers.textFromPDFBytes(pdfBytes) must beEqualTo(PdfText)
+    }
+
+    "fail once the PlayFopImpl has been shut down" in {
+
+      val playFop = new PlayFopImpl()
+      playFop.shutdown()
+
+      val xslfo = TestHelpers.wrapInStringXmlDocument(PdfText)
+      Await.result(playFop.processStringXmlAsync(xslfo, MimeConstants.MIME_PDF), 30.seconds) must
+        throwA[RejectedExecutionException]
+    }
+  }
+
+  "processTwirlXmlAsSource(xslfo, outputFormat, foUserAgentBlock)" should {
+    "emit the XSL-FO rendered in the chosen format, applying the FOUserAgent block" in new playFopBlock {
+
+      val xslfo = TestHelpers.wrapInTwirlXmlDocument(PdfText)
+      val pdfBytes = runToByteArray(playFop.processTwirlXmlAsSource(xslfo, MimeConstants.MIME_PDF, foUserAgentBlock = FOUserAgentBlock))
+
+      TestHelpers.textFromPDFBytes(pdfBytes) must beEqualTo(PdfText)
+      TestHelpers.authorFromPDFBytes(pdfBytes) must beEqualTo(PdfAuthor)
+    }
+  }
+
+  "processStringXmlAsSource(xslfo, outputFormat)" should {
+    "emit the XSL-FO rendered in the chosen format" in new playFopBlock {
+
+      val xslfo = TestHelpers.wrapInStringXmlDocument(PdfText)
+      val pdfBytes = runToByteArray(playFop.processStringXmlAsSource(xslfo, MimeConstants.MIME_PDF))
+
+      TestHelpers.textFromPDFBytes(pdfBytes) must beEqualTo(PdfText)
+    }
+
+    "produce a Source that can be materialized more than once" in new playFopBlock {
+
+      val source = playFop.processStringXmlAsSource(TestHelpers.wrapInStringXmlDocument(PdfText), MimeConstants.MIME_PDF)
+
+      TestHelpers.textFromPDFBytes(runToByteArray(source)) must beEqualTo(PdfText)
+      TestHelpers.textFromPDFBytes(runToByteArray(source)) must beEqualTo(PdfText)
+    }
+
+    "produce a Source that fails if the XSL-FO cannot be processed" in new playFopBlock {
+
+      val source = playFop.processStringXmlAsSource("<not-xsl-fo/>", MimeConstants.MIME_PDF)
+
+      runToByteArray(source) must throwAn[Exception]
+    }
+  }
+
+  "processBatch(inputs, xslfo, outputFormat, sink, parallelism, foUserAgentBlock)" should {
+    "render each input, isolating failures and applying the FOUserAgent block" in new playFopBlock {
+
+      val outputs = new ConcurrentHashMap[String, Array[Byte]]()
+      val failures = new ConcurrentHashMap[String, Throwable]()
+      val sink = new BatchSink[String] {
+        def onOutput(key: String, output: Array[Byte]): Unit = outputs.put(key, output)
+        def onFailure(key: String, failure: Throwable): Unit = failures.put(key, failure)
+      }
+
+      val xslfo = { key: String =>
+        if (key == "bad") XmlFormat.raw("<fo:root") else TestHelpers.wrapInTwirlXmlDocument(key)
+      }
+
+      val stats = playFop.processBatch(Iterator("one", "bad", "two"), xslfo, MimeConstants.MIME_PDF, sink,
+          parallelism = 2, foUserAgentBlock = FOUserAgentBlock)
+
+      stats.succeeded must beEqualTo(2)
+      stats.failed must beEqualTo(1)
+      failures.keySet().asScala must beEqualTo(Set("bad"))
+      TestHelpers.textFromPDFBytes(outputs.get("two")) must beEqualTo("two")
+      TestHelpers.authorFromPDFBytes(outputs.get("one")) must beEqualTo(PdfAuthor)
+    }
+
+    "take a place in the render gate for each document, waiting for one rather than being rejected" in {
+
+      val playFop = new PlayFopImpl(PlayFopSettings.Default.copy(
+          renderGate = RenderGateSettings(maxConcurrent = 1, maxQueued = 0, maxWait = 50.millis)))
+      val started = new CountDownLatch(1)
+      val release = new CountDownLatch(1)
+      val blockingFOUserAgentBlock = { _: FOUserAgent =>
+        started.countDown()
+        release.await()
+      }
+      val sink = new BatchSink[String] {
+        def onOutput(key: String, output: Array[Byte]): Unit = {}
+        def onFailure(key: String, failure: Throwable): Unit = {}
+      }
+
+      val batch = Future {
+        playFop.processBatch(Iterator("one", "two"), TestHelpers.wrapInTwirlXmlDocument(_: String),
+            MimeConstants.MIME_PDF, sink, parallelism = 2, foUserAgentBlock = blockingFOUserAgentBlock)
+      }(ExecutionContext.global)
+      started.await()
+
+      try {
+        playFop.rendersInFlight must beEqualTo(1)
+        playFop.rendersQueued must eventually(beEqualTo(1))
+        Thread.sleep(100)  // past the maximum wait
+      } finally {
+        release.countDown()
+      }
+
+      Await.result(batch, 30.seconds).succeeded must beEqualTo(2)
+      playFop.rendersInFlight must beEqualTo(0)
+    }
+  }
+
+  "processTwirlXmlConcatenated(parts, outputFormat, parallelism, foUserAgentBlock)" should {
+    "lay out each part and concatenate them, in order, applying the FOUserAgent block" in new playFopBlock {
+
+      val parts = Seq("one", "two", "three", "four").map(TestHelpers.wrapInTwirlXmlDocument(_))
+
+      val pdfBytes = playFop.processTwirlXmlConcatenated(parts, MimeConstants.MIME_PDF, parallelism = 2,
+          foUserAgentBlock = FOUserAgentBlock)
+
+      TestHelpers.pageCountFromPDFBytes(pdfBytes) must beEqualTo(4)
+      TestHelpers.textFromPDFBytes(pdfBytes).split("\\s+").toSeq must beEqualTo(Seq("one", "two", "three", "four"))
+      TestHelpers.authorFromPDFBytes(pdfBytes) must beEqualTo(PdfAuthor)
+    }
+
+    "throw the exception of a part that fails to lay out" in new playFopBlock {
+
+      val parts = Seq(TestHelpers.wrapInTwirlXmlDocument("one"), XmlFormat.raw("<fo:root"))
+
+      playFop.processTwirlXmlConcatenated(parts, MimeConstants.MIME_PDF) must throwA[SAXParseException]
+    }
+
+    "admit the document once, then let its parts wait for places rather than be rejected" in {
+
+      val playFop = new PlayFopImpl(PlayFopSettings.Default.copy(
+          renderGate = RenderGateSettings(maxConcurrent = 1, maxQueued = 0, maxWait = 50.millis)))
+      val started = new CountDownLatch(1)
+      val release = new CountDownLatch(1)
+      val blockingFOUserAgentBlock = { _: FOUserAgent =>
+        started.countDown()
+        release.await()
+      }
+      val parts = Seq("one", "two").map(TestHelpers.wrapInTwirlXmlDocument(_))
+
+      val document = Future {
+        playFop.processTwirlXmlConcatenated(parts, MimeConstants.MIME_PDF, parallelism = 2,
+            foUserAgentBlock = blockingFOUserAgentBlock)
+      }(ExecutionContext.global)
+      started.await()
+
+      try {
+        playFop.rendersInFlight must beEqualTo(1)
+        playFop.rendersQueued must eventually(beEqualTo(1))
+        playFop.processTwirlXmlConcatenated(parts, MimeConstants.MIME_PDF) must throwA[RenderRejectedException]
+        Thread.sleep(100)  // past the maximum wait
+      } finally {
+        release.countDown()
+      }
+
+      TestHelpers.pageCountFromPDFBytes(Await.result(document, 30.seconds)) must beEqualTo(2)
+      playFop.rendersInFlight must beEqualTo(0)
+    }
+  }
+
+  "layOutTwirlXml(xslfo, outputFormat) and renderLaidOut(document, outputFormat, foUserAgentBlock)" should {
+    "render the laid-out document to several formats" in new playFopBlock {
+
+      val document = playFop.layOutTwirlXml(TestHelpers.wrapInTwirlXmlDocument(PdfText), MimeConstants.MIME_PDF)
+
+      val pdfBytes = playFop.renderLaidOut(document, MimeConstants.MIME_PDF, FOUserAgentBlock)
+      val pngBytes = playFop.renderLaidOut(document, MimeConstants.MIME_PNG)
+
+      document.layoutFormat must beEqualTo(MimeConstants.MIME_PDF)
+      TestHelpers.textFromPDFBytes(pdfBytes) must beEqualTo(PdfText)
+      TestHelpers.authorFromPDFBytes(pdfBytes) must beEqualTo(PdfAuthor)
+      pngBytes.take(4).toSeq must beEqualTo(Seq(0x89, 'P', 'N', 'G').map(_.toByte))
+    }
+  }
+
+  "layOutStringXml(xslfo, outputFormat, foUserAgentBlock) and renderLaidOutToStream(document, outputFormat, output)" should {
+    "render the laid-out document to the stream" in new playFopBlock {
+
+      val document = playFop.layOutStringXml(TestHelpers.wrapInStringXmlDocument(PdfText), MimeConstants.MIME_PDF,
+          foUserAgentBlock = FOUserAgentBlock)
+
+      val output = new ByteArrayOutputStream()
+      playFop.renderLaidOutToStream(document, MimeConstants.MIME_PDF, output)
+
+      TestHelpers.textFromPDFBytes(output.toByteArray()) must beEqualTo(PdfText)
+    }
+  }
+
+  "previewTwirlXml(xslfo, outputFormat)" should {
+    "render the first page" in new playFopBlock {
+
+      val pages = playFop.previewTwirlXml(TestHelpers.wrapInTwirlXmlDocument(PdfText), MimeConstants.MIME_PNG)
+
+      pages must haveSize(1)
+      pages.head.take(4).toSeq must beEqualTo(Seq(0x89, 'P', 'N', 'G').map(_.toByte))
+    }
+  }
+
+  "previewStringXml(xslfo, outputFormat, pages, foUserAgentBlock)" should {
+    "render each page in the range separately, applying the FOUserAgent block" in new playFopBlock {
+
+      val pages = playFop.previewStringXml(TestHelpers.pagedStringXmlDocument(20), MimeConstants.MIME_PDF,
+          PageRange(2, 3), foUserAgentBlock = FOUserAgentBlock)
+
+      pages.map(TestHelpers.textFromPDFBytes) must beEqualTo(Seq("Page 2", "Page 3"))
+      TestHelpers.authorFromPDFBytes(pages.head) must beEqualTo(PdfAuthor)
+    }
+
+    "render pages of flowing content as processing the whole document does" in new playFopBlock {
+
+      val xslfo = TestHelpers.flowingStringXmlDocument(2000)
+
+      val pages = playFop.previewStringXml(xslfo, MimeConstants.MIME_PDF, PageRange(2, 3))
+      val wholePdfBytes = playFop.processStringXml(xslfo, MimeConstants.MIME_PDF)
+
+      pages.map(TestHelpers.textFromPDFBytes) must beEqualTo(Seq(2, 3).map(TestHelpers.textFromPDFBytes(wholePdfBytes, _)))
+    }
+
+    "leave out pages beyond the end of the document" in new playFopBlock {
+
+      val pages = playFop.previewStringXml(TestHelpers.pagedStringXmlDocument(3), MimeConstants.MIME_PDF,
+          PageRange(3, 5))
+
+      pages.map(TestHelpers.textFromPDFBytes) must beEqualTo(Seq("Page 3"))
+    }
+  }
+
+  "rendersInFlight and rendersQueued" should {
+    "reflect renders in progress and waiting" in {
+
+      val playFop = new PlayFopImpl(PlayFopSettings.Default.copy(
+          renderPool = RenderPoolSettings(threads = 2, queueSize = 1, callerRunsWhenSaturated = false),
+          renderGate = RenderGateSettings(maxConcurrent = 1, maxQueued = 1, maxWait = 30.seconds)))
+      val started = new CountDownLatch(1)
+      val release = new CountDownLatch(1)
+      val blockingFOUserAgentBlock = { _: FOUserAgent =>
+        started.countDown()
+        release.await()
+      }
+      val xslfo = TestHelpers.wrapInStringXmlDocument(PdfText)
+
+      val first = playFop.processStringXmlAsync(xslfo, MimeConstants.MIME_PDF, foUserAgentBlock = blockingFOUserAgentBlock)
+      started.await()
+      val second = playFop.processStringXmlAsync(xslfo, MimeConstants.MIME_PDF)
+
+      try {
+        playFop.rendersInFlight must beEqualTo(1)
+        playFop.rendersQueued must eventually(beEqualTo(1))
+        playFop.processStringXml(xslfo, MimeConstants.MIME_PDF) must throwA[RenderRejectedException]
+      } finally {
+        release.countDown()
+      }
+
+      Await.result(second, 30.seconds) must not(beEmpty)
+      Await.result(first, 30.seconds) must not(beEmpty)
+      playFop.rendersInFlight must beEqualTo(0)
+      playFop.rendersQueued must beEqualTo(0)
+    }
+  }
+
+  "fopFactoryCacheStats" should {
+    "reflect lookups made while processing" in new playFopBlock {
+      val xslfo = TestHelpers.wrapInStringXmlDocument(PdfText)
+      playFop.processStringXml(xslfo, MimeConstants.MIME_PDF)
+      playFop.processStringXml(xslfo, MimeConstants.MIME_PDF)
+
+      val stats = playFop.fopFactoryCacheStats
+      stats.misses must beEqualTo(1)
+      stats.hits must beEqualTo(1)
+    }
+  }
+
+  "resourceCacheStats" should {
+    "reflect images read through the resource cache, across Apache FOP configurations" in {
+      val playFop = new PlayFopImpl(PlayFopSettings.Default.copy(
+          resourceCache = PlayFopSettings.Default.resourceCache.copy(enabled = true)))
+      val image = File.createTempFile("PlayFopImplSpec", ".png")
+      ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", image)
+      val xslfo = TestHelpers.toStringXml(
+        <fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
+          <fo:layout-master-set>
+            <fo:simple-page-master master-name="page">
+              <fo:region-body/>
+            </fo:simple-page-master>
+          </fo:layout-master-set>
+          <fo:page-sequence master-reference="page">
+            <fo:flow flow-name="xsl-region-body">
+              <fo:block><fo:external-graphic src={image.toURI().toString()}/></fo:block>
+            </fo:flow>
+          </fo:page-sequence>
+        </fo:root>
+      )
+
+      // Each FopFactory caches decoded images itself, so use two.
+      playFop.processStringXml(xslfo, MimeConstants.MIME_PDF)
+      playFop.processStringXml(xslfo, MimeConstants.MIME_PDF, fopConfig = FopConfig(<fop version="1.0"/>))
+
+      val stats = playFop.resourceCacheStats
+      (stats.misses must beEqualTo(1)) and (stats.hits must beGreaterThanOrEqualTo(1L)) and
+        (stats.bytes must beEqualTo(image.length()))
+    }
+  }
+
+  "preloadImages" should {
+    "preload images that renders then find in Apache FOP's image cache" in new playFopBlock {
+      val image = File.createTempFile("PlayFopImplSpec", ".png")
+      ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", image)
+      val xslfo = TestHelpers.toStringXml(
+        <fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
+          <fo:layout-master-set>
+            <fo:simple-page-master master-name="page">
+              <fo:region-body/>
+            </fo:simple-page-master>
+          </fo:layout-master-set>
+          <fo:page-sequence master-reference="page">
+            <fo:flow flow-name="xsl-region-body">
+              <fo:block><fo:external-graphic src={image.toURI().toString()}/></fo:block>
+            </fo:flow>
+          </fo:page-sequence>
+        </fo:root>
+      )
+
+      playFop.preloadImages(Seq(image.toURI().toString()))
+      playFop.processStringXml(xslfo, MimeConstants.MIME_PDF)
+
+      val stats = playFop.imageCacheStats
+      (stats.images must beEqualTo(1)) and (stats.pinned must beEqualTo(1)) and
+        (stats.hits must beEqualTo(1)) and (stats.misses must beEqualTo(0))
+    }
+
+    "throw an IllegalArgumentException for an image that cannot be loaded" in new playFopBlock {
+      playFop.preloadImages(Seq("no-such-image.png")) must throwA[IllegalArgumentException]
+    }
+  }
+
+  "processStringXmlAsResult(xslfo, outputFormat)" should {
+    "return the output, its page count, and the time spent in each phase" in new playFopBlock {
+      val xslfo = TestHelpers.pagedStringXmlDocument(3)
+      val result = playFop.processStringXmlAsResult(xslfo, MimeConstants.MIME_PDF)
+
+      TestHelpers.pageCountFromPDFBytes(result.output) must beEqualTo(3)
+      result.pageCount must beEqualTo(3)
+
+      val timings = result.timings
+      Seq(timings.setupNanos, timings.parsingNanos, timings.foTreeNanos, timings.layoutNanos,
+          timings.outputNanos).foreach { _ must beGreaterThan(0L) }
+      timings.totalNanos must beGreaterThanOrEqualTo(timings.setupNanos + timings.parsingNanos +
+          timings.foTreeNanos + timings.layoutNanos + timings.outputNanos)
+    }
+
+    "render formats not rendered via the intermediate format" in new playFopBlock {
+      val xslfo = TestHelpers.wrapInStringXmlDocument(PdfText)
+      val result = playFop.processStringXmlAsResult(xslfo, MimeConstants.MIME_RTF)
+
+      new String(result.output, "US-ASCII") must contain(PdfText)
+      result.timings.layoutNanos must beEqualTo(0)  // included in FO tree building
+    }
+  }
+
+  "processTwirlXmlAsResult(xslfo, outputFormat, foUserAgentBlock)" should {
+    "apply the FOUserAgent block" in new playFopBlock {
+      val xslfo = TestHelpers.wrapInTwirlXmlDocument(PdfText)
+      val result = playFop.processTwirlXmlAsResult(xslfo, MimeConstants.MIME_PDF, foUserAgentBlock = FOUserAgentBlock)
+
+      TestHelpers.textFromPDFBytes(result.output) must beEqualTo(PdfText)
+      TestHelpers.authorFromPDFBytes(result.output) must beEqualTo(PdfAuthor)
+      result.pageCount must beEqualTo(1)
+    }
+  }
+
+  "metrics" should {
+    "reflect renders and FopFactory lookups, passing them on to the listener" in {
+      var received = List.empty[RenderEvent]
+      val playFop = new PlayFopImpl(PlayFopSettings.Default, new MetricsListener {
+        override def renderCompleted(render: RenderEvent): Unit = synchronized { received = render :: received }
+      })
+      val xslfo = TestHelpers.wrapInStringXmlDocument(PdfText)
+      val output = playFop.processStringXml(xslfo, MimeConstants.MIME_PDF)
+      playFop.processStringXml(xslfo, MimeConstants.MIME_PDF)
+
+      val metrics = playFop.metrics
+      val pdf = metrics.renders(MimeConstants.MIME_PDF)
+      pdf.completed must beEqualTo(2)
+      pdf.outputBytes must beEqualTo(2L * output.length)
+      pdf.inputSize must beEqualTo(2L * xslfo.length)
+      metrics.fopFactoriesCreated must beEqualTo(1)
+      metrics.fopFactoryCacheHits must beEqualTo(1)
+      metrics.peakRendersInFlight must beEqualTo(1)
+      received.map(_.outputFormat) must beEqualTo(List(MimeConstants.MIME_PDF, MimeConstants.MIME_PDF))
+    }
+
+    "count a failed render" in new playFopBlock {
+      playFop.processStringXml("<not-xsl-fo/>", MimeConstants.MIME_PDF) must throwAn[Exception]
+      playFop.metrics.renders(MimeConstants.MIME_PDF).failed must beEqualTo(1)
+    }
+  }
+
+  "processStringXml(xslfo, outputFormat, cacheKey)" should {
+    "render once, then serve the same output from the output cache" in {
+      val playFop = new PlayFopImpl(PlayFopSettings.Default.copy(
+          outputCache = PlayFopSettings.Default.outputCache.copy(enabled = true)))
+      val xslfo = TestHelpers.wrapInStringXmlDocument(PdfText)
+
+      val first = playFop.processStringXml(xslfo, MimeConstants.MIME_PDF, cacheKey = Some("k"))
+      val second = playFop.processStringXml(xslfo, MimeConstants.MIME_PDF, cacheKey = Some("k"))
+      playFop.processStringXml(xslfo, MimeConstants.MIME_PDF)
+
+      second.toSeq must beEqualTo(first.toSeq)
+      playFop.outputCacheStats must beEqualTo(OutputCacheStats(memoryHits = 1, diskHits = 0, misses = 1,
+          memoryEntries = 1, memoryBytes = first.length))
+      playFop.fopFactoryCacheStats.hits must beEqualTo(1)  // two renders, the first being a miss
+    }
+  }
+
+  "warmUp()" should {
+    "render without error, leaving no renders in progress" in new playFopBlock {
+      playFop.warmUp() must not(throwA[Exception])
+      playFop.rendersInFlight must beEqualTo(0)
+    }
+  }
+
   "newFop(outputFormat, output)" should {
     "obtain an Fop for the output format" in new playFopBlock {
 
@@ -156,6 +726,16 @@ class PlayFopImplSpec extends Specification {
     }
   }
 
+  "newFop(outputFormat, output, fopConfig)" should {
+    "obtain an Fop that applies the configuration" in new playFopBlock {
+
+      val fopConfig = FopConfig(<fop version="1.0"><source-resolution>123</source-resolution></fop>)
+      val fop = playFop.newFop(MimeConstants.MIME_PDF, new ByteArrayOutputStream(), fopConfig = fopConfig)
+
+      fop.getUserAgent().getSourceResolution() must beEqualTo(123f)
+    }
+  }
+
   "newFop(outputFormat, fopConfig, autoDetectFontsForPDF)" should {
     "obtain an Fop that respects the font choice" in new playFopBlock {
 
@@ -203,6 +783,11 @@ class PlayFopImplSpec extends Specification {
     transformer.transform(source, result)
   }
 
+  private def runToByteArray(source: Source[ByteString, NotUsed]): Array[Byte] = {
+
+    Await.result(source.runWith(Sink.fold(ByteString.empty)(_ ++ _)), 30.seconds).toArray
+  }
+
   private def chooseFontFamilyOutsideBase14WithSingleWordName(playFop: PlayFop) = {
 
     val fontFamilies = getFontFamilies(playFop)
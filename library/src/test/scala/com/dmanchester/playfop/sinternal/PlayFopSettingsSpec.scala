@@ -0,0 +1,123 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.File
+
+import scala.concurrent.duration.DurationInt
+
+import org.specs2.mutable.Specification
+
+import play.api.Configuration
+import play.api.PlayException
+
+class PlayFopSettingsSpec extends Specification {
+
+  private def renderPoolConfig(threads: Int = 2, queueSize: Int = 8, rejectionPolicy: String = "reject") =
+    Configuration("threads" -> threads, "queue-size" -> queueSize, "rejection-policy" -> rejectionPolicy)
+
+  "PlayFopSettings.Default" should {
+    "reflect reference.conf" in {
+      val processors = Runtime.getRuntime().availableProcessors()
+      PlayFopSettings.Default must beEqualTo(PlayFopSettings(
+          RenderPoolSettings(processors, 64, callerRunsWhenSaturated = false),
+          RenderGateSettings(processors, 64, 30.seconds),
+          FopFactoryCacheSettings(16, None),
+          FontCacheSettings(enabled = true, file = None),
+          WarmUpSettings(onStart = false, autoDetectFontsForPDF = false),
+          TemplatesCacheSettings(32, checkModified = true),
+          OutputCacheSettings(enabled = false, 32L * 1024 * 1024, Some(10.minutes), None, 256L * 1024 * 1024),
+          ResourceCacheSettings(enabled = false, 64L * 1024 * 1024, 4L * 1024 * 1024, 32L * 1024 * 1024,
+              checkModified = true),
+          ImageCacheSettings(64L * 1024 * 1024)))
+    }
+  }
+
+  "RenderPoolSettings(configuration)" should {
+    "read the settings" in {
+      RenderPoolSettings(renderPoolConfig(rejectionPolicy = "caller-runs")) must beEqualTo(
+          RenderPoolSettings(2, 8, callerRunsWhenSaturated = true))
+    }
+
+    "reject a negative thread count" in {
+      RenderPoolSettings(renderPoolConfig(threads = -1)) must throwA[PlayException]
+    }
+
+    "reject a non-positive queue size" in {
+      RenderPoolSettings(renderPoolConfig(queueSize = 0)) must throwA[PlayException]
+    }
+
+    "reject an unknown rejection policy" in {
+      RenderPoolSettings(renderPoolConfig(rejectionPolicy = "discard")) must throwA[PlayException]
+    }
+  }
+
+  "RenderGateSettings(configuration)" should {
+    "read the settings" in {
+      RenderGateSettings(Configuration("max-concurrent" -> 3, "max-queued" -> 0, "max-wait" -> "2 seconds")) must
+        beEqualTo(RenderGateSettings(3, 0, 2.seconds))
+    }
+
+    "reject a negative maximum queued" in {
+      RenderGateSettings(Configuration("max-concurrent" -> 3, "max-queued" -> -1, "max-wait" -> "2 seconds")) must
+        throwA[PlayException]
+    }
+  }
+
+  "FopFactoryCacheSettings(configuration)" should {
+    "read the settings" in {
+      FopFactoryCacheSettings(Configuration("max-size" -> 4, "idle-timeout" -> "10 minutes")) must
+        beEqualTo(FopFactoryCacheSettings(4, Some(10.minutes)))
+    }
+
+    "treat a zero idle timeout as none" in {
+      FopFactoryCacheSettings(Configuration("max-size" -> 4, "idle-timeout" -> "0 seconds")).idleTimeout must
+        beNone
+    }
+  }
+
+  "FontCacheSettings(configuration)" should {
+    "read the settings" in {
+      FontCacheSettings(Configuration("enabled" -> true, "file" -> "fonts.cache")) must
+        beEqualTo(FontCacheSettings(enabled = true, file = Some(new File("fonts.cache"))))
+    }
+  }
+
+  "WarmUpSettings(configuration)" should {
+    "read the settings" in {
+      WarmUpSettings(Configuration("on-start" -> true, "auto-detect-fonts-for-pdf" -> false)) must
+        beEqualTo(WarmUpSettings(onStart = true, autoDetectFontsForPDF = false))
+    }
+  }
+
+  "TemplatesCacheSettings(configuration)" should {
+    "read the settings" in {
+      TemplatesCacheSettings(Configuration("max-size" -> 4, "check-modified" -> false)) must
+        beEqualTo(TemplatesCacheSettings(4, checkModified = false))
+    }
+
+    "reject a non-positive maximum size" in {
+      TemplatesCacheSettings(Configuration("max-size" -> 0, "check-modified" -> false)) must throwA[PlayException]
+    }
+  }
+
+  "OutputCacheSettings(configuration)" should {
+    "read the settings" in {
+      OutputCacheSettings(Configuration("enabled" -> true, "max-memory" -> "1 MiB", "ttl" -> "0 seconds",
+          "disk.directory" -> "output", "disk.max-size" -> "2 MiB")) must
+        beEqualTo(OutputCacheSettings(enabled = true, 1024 * 1024, None, Some(new File("output")), 2 * 1024 * 1024))
+    }
+  }
+
+  "ResourceCacheSettings(configuration)" should {
+    "read the settings" in {
+      ResourceCacheSettings(Configuration("enabled" -> false, "max-memory" -> "1 MiB", "max-resource-size" -> "64 KiB",
+          "max-font-size" -> "512 KiB", "check-modified" -> false)) must
+        beEqualTo(ResourceCacheSettings(enabled = false, 1024 * 1024, 64 * 1024, 512 * 1024, checkModified = false))
+    }
+  }
+
+  "ImageCacheSettings(configuration)" should {
+    "read the settings" in {
+      ImageCacheSettings(Configuration("max-memory" -> "1 MiB")) must beEqualTo(ImageCacheSettings(1024 * 1024))
+    }
+  }
+}
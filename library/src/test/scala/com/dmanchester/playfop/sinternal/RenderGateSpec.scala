@@ -0,0 +1,121 @@
+package com.dmanchester.playfop.sinternal
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext
+import scala.concurrent.Future
+import scala.concurrent.duration.DurationInt
+
+import org.specs2.mutable.Specification
+
+import com.dmanchester.playfop.api.RenderRejectedException
+
+class RenderGateSpec extends Specification {
+
+  // Renders that block must not starve one another of threads, however few
+  // processors there are, so use an unbounded pool.
+  private implicit val executionContext = ExecutionContext.fromExecutorService(Executors.newCachedThreadPool())
+
+  "apply()" should {
+    "run the render and return its result" in {
+      val gate = new RenderGate(RenderGateSettings(maxConcurrent = 1, maxQueued = 0, maxWait = 1.second))
+      gate { "result" } must beEqualTo("result")
+    }
+
+    "count the render as in flight only while it runs" in {
+      val gate = new RenderGate(RenderGateSettings(maxConcurrent = 2, maxQueued = 0, maxWait = 1.second))
+      gate { gate.inFlight } must beEqualTo(1)
+      gate.inFlight must beEqualTo(0)
+    }
+
+    "release admission if the render throws" in {
+      val gate = new RenderGate(RenderGateSettings(maxConcurrent = 1, maxQueued = 0, maxWait = 1.second))
+      gate[Unit] { throw new IllegalStateException() } must throwAn[IllegalStateException]
+      gate { "result" } must beEqualTo("result")
+    }
+
+    "reject a render when the maximum are in flight and none may wait" in {
+      val gate = new RenderGate(RenderGateSettings(maxConcurrent = 1, maxQueued = 0, maxWait = 1.second))
+      val release = occupy(gate)
+      try {
+        gate { "result" } must throwA[RenderRejectedException]
+      } finally {
+        release.countDown()
+      }
+    }
+
+    "reject a render that waits longer than the maximum wait" in {
+      val gate = new RenderGate(RenderGateSettings(maxConcurrent = 1, maxQueued = 1, maxWait = 50.millis))
+      val release = occupy(gate)
+      try {
+        gate { "result" } must throwA[RenderRejectedException]
+        gate.queued must beEqualTo(0)
+      } finally {
+        release.countDown()
+      }
+    }
+
+    "admit a waiting render once one in flight finishes" in {
+      val gate = new RenderGate(RenderGateSettings(maxConcurrent = 1, maxQueued = 1, maxWait = 5.seconds))
+      val release = occupy(gate)
+      val waiter = Future { gate { "result" } }
+
+      gate.queued must eventually(beEqualTo(1))
+      release.countDown()
+
+      Await.result(waiter, 5.seconds) must beEqualTo("result")
+    }
+  }
+
+  "awaiting()" should {
+    "wait, beyond the maximum number waiting and the maximum wait, rather than reject" in {
+      val gate = new RenderGate(RenderGateSettings(maxConcurrent = 1, maxQueued = 0, maxWait = 50.millis))
+      val release = occupy(gate)
+      val waiter = Future { gate.awaiting { "result" } }
+
+      gate.queued must eventually(beEqualTo(1))
+      Thread.sleep(100)  // past the maximum wait
+      waiter.isCompleted must beFalse
+      release.countDown()
+
+      Await.result(waiter, 5.seconds) must beEqualTo("result")
+    }
+  }
+
+  "admitOnce()" should {
+    "give its place back once admitted" in {
+      val gate = new RenderGate(RenderGateSettings(maxConcurrent = 1, maxQueued = 0, maxWait = 1.second))
+      gate.admitOnce()
+      gate.inFlight must beEqualTo(0)
+    }
+
+    "reject work when the maximum are in flight and none may wait" in {
+      val gate = new RenderGate(RenderGateSettings(maxConcurrent = 1, maxQueued = 0, maxWait = 1.second))
+      val release = occupy(gate)
+      try {
+        gate.admitOnce() must throwA[RenderRejectedException]
+      } finally {
+        release.countDown()
+      }
+    }
+  }
+
+  /** Starts a render that occupies one of `gate`'s slots until the returned
+    * latch is counted down.
+    */
+  private def occupy(gate: RenderGate): CountDownLatch = {
+
+    val started = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+    Future {
+      gate {
+        started.countDown()
+        release.await()
+      }
+    }
+    started.await()
+    release
+  }
+}
@@ -0,0 +1,73 @@
+package com.dmanchester.playfop.sinternal
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+
+import scala.concurrent.Await
+import scala.concurrent.duration.DurationInt
+
+import org.specs2.mutable.Specification
+import org.specs2.specification.Scope
+
+class RenderPoolSpec extends Specification {
+
+  "submit()" should {
+    "run the code on a pool thread" in {
+      val pool = new RenderPool(RenderPoolSettings(threads = 1, queueSize = 1, callerRunsWhenSaturated = false))
+      val threadName = Await.result(pool.submit { Thread.currentThread().getName() }, 5.seconds)
+      threadName must startWith("playfop-render-")
+    }
+
+    "fail the Future if the code throws" in {
+      val pool = new RenderPool(RenderPoolSettings(threads = 1, queueSize = 1, callerRunsWhenSaturated = false))
+      Await.result(pool.submit[Unit] { throw new IllegalStateException() }, 5.seconds) must throwAn[IllegalStateException]
+    }
+
+    "reject work when saturated, if so configured" in new saturatedPool(callerRunsWhenSaturated = false) {
+      try {
+        Await.result(pool.submit { "result" }, 5.seconds) must throwA[RejectedExecutionException]
+      } finally {
+        release()
+      }
+    }
+
+    "run work on the calling thread when saturated, if so configured" in new saturatedPool(callerRunsWhenSaturated = true) {
+      try {
+        val callingThread = Thread.currentThread()
+        Await.result(pool.submit { Thread.currentThread() }, 5.seconds) must beTheSameAs(callingThread)
+      } finally {
+        release()
+      }
+    }
+
+    "reject work when saturated and the caller may not run it, regardless of configuration" in new saturatedPool(callerRunsWhenSaturated = true) {
+      try {
+        Await.result(pool.submit({ "result" }, callerMayRun = false), 5.seconds) must throwA[RejectedExecutionException]
+      } finally {
+        release()
+      }
+    }
+  }
+
+  "shutdown()" should {
+    "cause subsequent work to be rejected" in {
+      val pool = new RenderPool(RenderPoolSettings(threads = 1, queueSize = 1, callerRunsWhenSaturated = true))
+      pool.shutdown()
+      Await.result(pool.submit { "result" }, 5.seconds) must throwA[RejectedExecutionException]
+    }
+  }
+
+  /** A pool whose single thread is blocked and whose single queue slot is
+    * filled until `release()` is called.
+    */
+  class saturatedPool(callerRunsWhenSaturated: Boolean) extends Scope {
+
+    private val latch = new CountDownLatch(1)
+
+    val pool = new RenderPool(RenderPoolSettings(threads = 1, queueSize = 1, callerRunsWhenSaturated))
+    pool.submit { latch.await() }
+    pool.submit { latch.await() }
+
+    def release(): Unit = latch.countDown()
+  }
+}
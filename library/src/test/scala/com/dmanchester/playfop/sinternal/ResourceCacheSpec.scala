@@ -0,0 +1,182 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.InputStream
+import java.net.URI
+import java.net.URLClassLoader
+import java.nio.file.Files
+
+import org.specs2.mutable.Specification
+
+class ResourceCacheSpec extends Specification {
+
+  private def settings(enabled: Boolean = true, maxMemoryBytes: Long = 1024, maxResourceBytes: Long = 100,
+      maxFontBytes: Long = 100, checkModified: Boolean = true) = {
+    ResourceCacheSettings(enabled, maxMemoryBytes, maxResourceBytes, maxFontBytes, checkModified)
+  }
+
+  private val directory = Files.createTempDirectory("ResourceCacheSpec").toFile()
+
+  private val classLoader = new URLClassLoader(Array(directory.toURI().toURL()), null /* parent */)
+
+  private def resource(name: String, size: Int, value: Int = 1): File = {
+    val file = new File(directory, name)
+    Files.write(file.toPath(), Array.fill[Byte](size)(value.toByte))
+    file
+  }
+
+  private def readAll(input: InputStream): Seq[Byte] = {
+    try {
+      Iterator.continually(input.read()).takeWhile(_ >= 0).map(_.toByte).toList
+    } finally {
+      input.close()
+    }
+  }
+
+  "resolver(caching = true)" should {
+    "read a file once, then serve it from the cache, counting the miss and the hit" in {
+      val cache = new ResourceCache(settings(), classLoader)
+      val uri = resource("a.png", 10).toURI()
+      val resolver = cache.resolver(caching = true)
+
+      val first = readAll(resolver.getResource(uri))
+      val second = readAll(resolver.getResource(uri))
+
+      (first must beEqualTo(Seq.fill[Byte](10)(1))) and (second must beEqualTo(first)) and
+        (cache.stats.misses must beEqualTo(1)) and (cache.stats.hits must beEqualTo(1)) and
+        (cache.stats.bytes must beEqualTo(10))
+    }
+
+    "share cached resources between resolvers" in {
+      val cache = new ResourceCache(settings(), classLoader)
+      val uri = resource("b.png", 10).toURI()
+
+      readAll(cache.resolver(caching = true).getResource(uri))
+      readAll(cache.resolver(caching = true).getResource(uri))
+
+      cache.stats.hits must beEqualTo(1)
+    }
+
+    "read a file again once its last-modified time changes" in {
+      val cache = new ResourceCache(settings(), classLoader)
+      val file = resource("c.png", 10)
+      val resolver = cache.resolver(caching = true)
+
+      readAll(resolver.getResource(file.toURI()))
+      resource("c.png", 10, value = 2).setLastModified(file.lastModified() + 10000)
+
+      (readAll(resolver.getResource(file.toURI())) must beEqualTo(Seq.fill[Byte](10)(2))) and
+        (cache.stats.misses must beEqualTo(2))
+    }
+
+    "serve a file from the cache despite changes, if not checking last-modified times" in {
+      val cache = new ResourceCache(settings(checkModified = false), classLoader)
+      val file = resource("d.png", 10)
+      val resolver = cache.resolver(caching = true)
+
+      readAll(resolver.getResource(file.toURI()))
+      resource("d.png", 10, value = 2).setLastModified(file.lastModified() + 10000)
+
+      readAll(resolver.getResource(file.toURI())) must beEqualTo(Seq.fill[Byte](10)(1))
+    }
+
+    "return a resource larger than the maximum in full, without caching it" in {
+      val cache = new ResourceCache(settings(maxResourceBytes = 100), classLoader)
+      val uri = resource("e.bin", 101).toURI()
+
+      (readAll(cache.resolver(caching = true).getResource(uri)) must haveSize(101)) and
+        (cache.stats.entries must beEqualTo(0))
+    }
+
+    "cache a resource of exactly the maximum" in {
+      val cache = new ResourceCache(settings(maxResourceBytes = 100), classLoader)
+      val uri = resource("f.bin", 100).toURI()
+
+      (readAll(cache.resolver(caching = true).getResource(uri)) must haveSize(100)) and
+        (cache.stats.entries must beEqualTo(1))
+    }
+
+    "cache a font larger than the maximum for resources, within the maximum for fonts" in {
+      val cache = new ResourceCache(settings(maxResourceBytes = 100, maxFontBytes = 200), classLoader)
+      val uri = resource("f2.TTF", 200).toURI()
+
+      (readAll(cache.resolver(caching = true).getResource(uri)) must haveSize(200)) and
+        (cache.stats.entries must beEqualTo(1))
+    }
+
+    "not cache a font larger than the maximum for fonts" in {
+      val cache = new ResourceCache(settings(maxResourceBytes = 300, maxFontBytes = 200), classLoader)
+      val uri = resource("f3.otf", 201).toURI()
+
+      (readAll(cache.resolver(caching = true).getResource(uri)) must haveSize(201)) and
+        (cache.stats.entries must beEqualTo(0))
+    }
+
+    "evict the least recently used resources once memory is exceeded" in {
+      val cache = new ResourceCache(settings(maxMemoryBytes = 25), classLoader)
+      val resolver = cache.resolver(caching = true)
+      val Seq(a, b, c) = Seq("g1.png", "g2.png", "g3.png").map(resource(_, 10).toURI())
+
+      readAll(resolver.getResource(a))
+      readAll(resolver.getResource(b))
+      readAll(resolver.getResource(a))
+      readAll(resolver.getResource(c))
+      readAll(resolver.getResource(b))  // evicted, so a miss
+
+      (cache.stats.misses must beEqualTo(4)) and (cache.stats.bytes must beEqualTo(20))
+    }
+
+    "read and cache classpath resources from the class loader" in {
+      val cache = new ResourceCache(settings(), classLoader)
+      resource("h.png", 10)
+      val resolver = cache.resolver(caching = true)
+
+      readAll(resolver.getResource(new URI("classpath:h.png")))
+
+      (readAll(resolver.getResource(new URI("classpath:/h.png"))) must haveSize(10)) and
+        (cache.stats.misses must beEqualTo(2)) and  // the two URIs differ
+        (readAll(resolver.getResource(new URI("classpath:h.png"))) must haveSize(10)) and
+        (cache.stats.hits must beEqualTo(1))
+    }
+
+    "fail with a FileNotFoundException for a classpath resource that doesn't exist" in {
+      val cache = new ResourceCache(settings(), classLoader)
+      cache.resolver(caching = true).getResource(new URI("classpath:missing.png")) must
+        throwA[FileNotFoundException]
+    }
+  }
+
+  "resolver(caching = false)" should {
+    "read files and classpath resources every time, without caching them" in {
+      val cache = new ResourceCache(settings(), classLoader)
+      val uri = resource("i.png", 10).toURI()
+      val resolver = cache.resolver(caching = false)
+
+      readAll(resolver.getResource(uri))
+      readAll(resolver.getResource(new URI("classpath:i.png")))
+
+      (readAll(resolver.getResource(uri)) must haveSize(10)) and
+        (cache.stats must beEqualTo(cache.stats.copy(hits = 0, misses = 0, entries = 0, bytes = 0)))
+    }
+  }
+
+  "resolver(caching = true), with the cache disabled" should {
+    "not cache" in {
+      val cache = new ResourceCache(settings(enabled = false), classLoader)
+      val uri = resource("j.png", 10).toURI()
+
+      readAll(cache.resolver(caching = true).getResource(uri))
+
+      cache.stats.entries must beEqualTo(0)
+    }
+
+    "still read classpath resources" in {
+      val cache = new ResourceCache(settings(enabled = false), classLoader)
+      resource("k.png", 10)
+
+      (readAll(cache.resolver(caching = true).getResource(new URI("classpath:k.png"))) must haveSize(10)) and
+        (cache.stats.entries must beEqualTo(0))
+    }
+  }
+}
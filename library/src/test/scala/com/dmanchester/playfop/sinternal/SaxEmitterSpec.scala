@@ -0,0 +1,71 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.StringWriter
+
+import scala.xml.EntityRef
+import scala.xml.Node
+import scala.xml.PCData
+import scala.xml.Utility
+import scala.xml.XML
+
+import org.specs2.mutable.Specification
+
+import javax.xml.transform.TransformerFactory
+import javax.xml.transform.sax.SAXTransformerFactory
+import javax.xml.transform.stream.StreamResult
+
+class SaxEmitterSpec extends Specification {
+
+  "emit" should {
+    "report elements, attributes, and text" in {
+      val xml = <root a="1" b="two"><child>text</child><empty/></root>
+      roundTrip(xml) must beEqualTo(xml)
+    }
+
+    "report namespaces, both prefixed and default" in {
+      val xml =
+        <fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format" xmlns:fox="http://xmlgraphics.apache.org/fop/extensions">
+          <fo:block fox:alt-text="alt"><svg xmlns="http://www.w3.org/2000/svg"><rect/></svg></fo:block>
+        </fo:root>
+
+      val result = roundTrip(xml)
+
+      result must beEqualTo(Utility.trim(xml))
+      (result \\ "rect").head.namespace must beEqualTo("http://www.w3.org/2000/svg")
+      (result \\ "block").head.attribute("http://xmlgraphics.apache.org/fop/extensions", "alt-text").map(_.text) must
+        beSome("alt")
+    }
+
+    "resolve prefixes that an element leaves to the enclosing tree, as a parser would" in {
+      // As from Formatters.preserveNewlinesForScalaXml: "fo" is unbound in the
+      // block's own scope.
+      val block = <fo:block>text</fo:block>
+      val xml = <fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">{block}</fo:root>
+
+      (roundTrip(xml) \\ "block").head.namespace must beEqualTo("http://www.w3.org/1999/XSL/Format")
+    }
+
+    "report the xml:lang attribute in the XML namespace" in {
+      val xml = <root xml:lang="en"/>
+      roundTrip(xml).attribute("http://www.w3.org/XML/1998/namespace", "lang").map(_.text) must beSome("en")
+    }
+
+    "report CDATA sections, predefined entity references, and interpolated values as text" in {
+      val value = 42
+      val xml = <root>{PCData("<a>")}{EntityRef("amp")}{value}</root>
+      roundTrip(xml).text must beEqualTo("<a>&42")
+    }
+  }
+
+  private def roundTrip(node: Node): Node = {
+
+    val transformerFactory = TransformerFactory.newInstance().asInstanceOf[SAXTransformerFactory]
+    val handler = transformerFactory.newTransformerHandler()
+    val writer = new StringWriter()
+    handler.setResult(new StreamResult(writer))
+
+    SaxEmitter.emit(node, handler)
+
+    Utility.trim(XML.loadString(writer.toString()))
+  }
+}
@@ -0,0 +1,63 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.StringReader
+
+import scala.collection.mutable.ListBuffer
+
+import org.specs2.mutable.Specification
+import org.xml.sax.Attributes
+import org.xml.sax.InputSource
+import org.xml.sax.SAXParseException
+import org.xml.sax.helpers.DefaultHandler
+
+class SaxParsingSpec extends Specification {
+
+  private class RecordingHandler extends DefaultHandler {
+
+    val events = ListBuffer.empty[String]
+
+    override def startElement(uri: String, localName: String, qName: String, attributes: Attributes): Unit = {
+      events += s"{$uri}$localName"
+    }
+  }
+
+  private def input(xml: String) = new InputSource(new StringReader(xml))
+
+  "parse" should {
+    "report namespace-qualified elements" in {
+      val handler = new RecordingHandler()
+      SaxParsing.parse(input("""<a xmlns="urn:x"><b/></a>"""), handler)
+      handler.events must beEqualTo(Seq("{urn:x}a", "{urn:x}b"))
+    }
+
+    "parse successive documents on the same thread" in {
+      val first = new RecordingHandler()
+      val second = new RecordingHandler()
+      SaxParsing.parse(input("<a/>"), first)
+      SaxParsing.parse(input("<b/>"), second)
+      (first.events must beEqualTo(Seq("{}a"))) and (second.events must beEqualTo(Seq("{}b")))
+    }
+
+    "parse a document from within the handler of another" in {
+      val inner = new RecordingHandler()
+      val outer = new RecordingHandler() {
+        override def startElement(uri: String, localName: String, qName: String, attributes: Attributes): Unit = {
+          super.startElement(uri, localName, qName, attributes)
+          SaxParsing.parse(input("<inner/>"), inner)
+        }
+      }
+
+      SaxParsing.parse(input("<outer/>"), outer)
+
+      (outer.events must beEqualTo(Seq("{}outer"))) and (inner.events must beEqualTo(Seq("{}inner")))
+    }
+
+    "recover after a malformed document" in {
+      SaxParsing.parse(input("<a>"), new DefaultHandler()) must throwA[SAXParseException]
+
+      val handler = new RecordingHandler()
+      SaxParsing.parse(input("<b/>"), handler)
+      handler.events must beEqualTo(Seq("{}b"))
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.StringReader
+
+import scala.collection.mutable.ListBuffer
+
+import org.specs2.mutable.Specification
+import org.xml.sax.Attributes
+import org.xml.sax.InputSource
+import org.xml.sax.helpers.DefaultHandler
+
+import javax.xml.parsers.DocumentBuilderFactory
+import javax.xml.parsers.SAXParserFactory
+import javax.xml.stream.XMLInputFactory
+import javax.xml.transform.Source
+import javax.xml.transform.dom.DOMSource
+import javax.xml.transform.sax.SAXSource
+import javax.xml.transform.stax.StAXSource
+import javax.xml.transform.stream.StreamSource
+
+class SourceEmitterSpec extends Specification {
+
+  /** Records the events reported to it, merging adjacent runs of characters.
+    */
+  private class RecordingHandler extends DefaultHandler {
+
+    val events = ListBuffer.empty[String]
+    private val text = new StringBuilder()
+
+    override def startPrefixMapping(prefix: String, uri: String): Unit = {
+      flush()
+      events += s"xmlns:$prefix=$uri"
+    }
+
+    override def endPrefixMapping(prefix: String): Unit = {
+      flush()
+      events += s"/xmlns:$prefix"
+    }
+
+    override def startElement(uri: String, localName: String, qName: String, attributes: Attributes): Unit = {
+      flush()
+      val attributeEvents = (0 until attributes.getLength()).map { index =>
+        s"{${attributes.getURI(index)}}${attributes.getLocalName(index)}(${attributes.getQName(index)})=${attributes.getValue(index)}"
+      }
+      events += s"{$uri}$localName($qName)${attributeEvents.mkString("[", ",", "]")}"
+    }
+
+    override def endElement(uri: String, localName: String, qName: String): Unit = {
+      flush()
+      events += s"/{$uri}$localName($qName)"
+    }
+
+    override def characters(ch: Array[Char], start: Int, length: Int): Unit = {
+      text.appendAll(ch, start, length)
+    }
+
+    override def processingInstruction(target: String, data: String): Unit = {
+      flush()
+      events += s"?$target $data"
+    }
+
+    override def endDocument(): Unit = {
+      flush()
+      events += "end"
+    }
+
+    private def flush(): Unit = {
+      if (text.nonEmpty) {
+        events += s"'$text'"
+        text.clear()
+      }
+    }
+  }
+
+  private val Xml =
+    """<fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format" xmlns:fox="http://xmlgraphics.apache.org/fop/extensions">
+      |  <!-- comment -->
+      |  <fo:block fox:alt-text="alt" id="b1">Hello<![CDATA[ & ]]>world<?pi data?></fo:block>
+      |  <svg xmlns="http://www.w3.org/2000/svg"><rect width="1"/></svg>
+      |</fo:root>""".stripMargin
+
+  private def parsed(xml: String): Seq[String] = {
+    val handler = new RecordingHandler()
+    SaxParsing.parse(new InputSource(new StringReader(xml)), handler)
+    handler.events.toList
+  }
+
+  private def emitted(source: Source): Seq[String] = {
+    val handler = new RecordingHandler()
+    SourceEmitter.emit(source, handler)
+    handler.events.toList
+  }
+
+  private def domDocument(xml: String, namespaceAware: Boolean) = {
+    val factory = DocumentBuilderFactory.newInstance()
+    factory.setNamespaceAware(namespaceAware)
+    factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)))
+  }
+
+  "emit" should {
+    "report a StreamSource as parsing does" in {
+      emitted(new StreamSource(new StringReader(Xml))) must beEqualTo(parsed(Xml))
+    }
+
+    "report a SAXSource through its own XMLReader" in {
+      val saxParserFactory = SAXParserFactory.newInstance()
+      saxParserFactory.setNamespaceAware(true)
+      val reader = saxParserFactory.newSAXParser().getXMLReader()
+
+      emitted(new SAXSource(reader, new InputSource(new StringReader(Xml)))) must beEqualTo(parsed(Xml))
+    }
+
+    "report a namespace-aware DOM tree as parsing does" in {
+      emitted(new DOMSource(domDocument(Xml, namespaceAware = true))) must beEqualTo(parsed(Xml))
+    }
+
+    "report a DOM tree built without namespace awareness as parsing does" in {
+      emitted(new DOMSource(domDocument(Xml, namespaceAware = false))) must beEqualTo(parsed(Xml))
+    }
+
+    "declare the namespaces of DOM nodes built without xmlns attributes" in {
+      val document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument()
+      val root = document.createElementNS("urn:x", "x:root")
+      root.setAttributeNS("urn:y", "y:attr", "1")
+      document.appendChild(root)
+
+      emitted(new DOMSource(document)) must beEqualTo(parsed("""<x:root xmlns:x="urn:x" xmlns:y="urn:y" y:attr="1"/>"""))
+    }
+
+    "report a DOM element as a complete document" in {
+      val element = domDocument(Xml, namespaceAware = true).getDocumentElement().getElementsByTagNameNS("*", "svg").item(0)
+
+      emitted(new DOMSource(element)) must beEqualTo(parsed("""<svg xmlns="http://www.w3.org/2000/svg"><rect width="1"/></svg>"""))
+    }
+
+    "report a StAXSource with an XMLStreamReader as parsing does" in {
+      val reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(Xml))
+      emitted(new StAXSource(reader)) must beEqualTo(parsed(Xml))
+    }
+
+    "report a StAXSource with an XMLEventReader as parsing does" in {
+      val reader = XMLInputFactory.newInstance().createXMLEventReader(new StringReader(Xml))
+      emitted(new StAXSource(reader)) must beEqualTo(parsed(Xml))
+    }
+
+    "reject an unsupported Source" in {
+      emitted(new Source {
+        override def setSystemId(systemId: String): Unit = {}
+        override def getSystemId(): String = null
+      }) must throwAn[IllegalArgumentException]
+    }
+  }
+}
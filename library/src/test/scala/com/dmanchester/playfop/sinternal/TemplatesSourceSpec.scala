@@ -0,0 +1,95 @@
+package com.dmanchester.playfop.sinternal
+
+import java.io.File
+import java.io.StringReader
+import java.io.StringWriter
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+
+import org.specs2.mutable.Specification
+
+import javax.xml.transform.TransformerConfigurationException
+import javax.xml.transform.stream.StreamResult
+import javax.xml.transform.stream.StreamSource
+
+class TemplatesSourceSpec extends Specification {
+
+  private def stylesheet(text: String) =
+    s"""<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+       |  <xsl:output method="text"/>
+       |  <xsl:template match="/">$text</xsl:template>
+       |</xsl:stylesheet>""".stripMargin
+
+  private def writeStylesheet(text: String, lastModified: Long = 0L): File = {
+    val file = File.createTempFile("TemplatesSourceSpec", ".xsl")
+    file.deleteOnExit()
+    rewrite(file, text, lastModified)
+  }
+
+  private def rewrite(file: File, text: String, lastModified: Long): File = {
+    Files.write(file.toPath(), stylesheet(text).getBytes(StandardCharsets.UTF_8))
+    if (lastModified != 0L) {
+      file.setLastModified(lastModified)
+    }
+    file
+  }
+
+  private def transform(source: TemplatesSource, file: File): String = {
+    val writer = new StringWriter()
+    source.get(file.toURI().toURL()).newTransformer().transform(
+        new StreamSource(new StringReader("<data/>")), new StreamResult(writer))
+    writer.toString()
+  }
+
+  "get()" should {
+    "return the same instance when called repeatedly with an unchanged stylesheet" in {
+      val source = new TemplatesSource()
+      val url = writeStylesheet("one").toURI().toURL()
+      source.get(url) must beTheSameAs(source.get(url))
+    }
+
+    "compile the stylesheet again once it is modified" in {
+      val source = new TemplatesSource()
+      val file = writeStylesheet("one", lastModified = 1000000000000L)
+      val before = transform(source, file)
+      rewrite(file, "two", lastModified = 2000000000000L)
+      (before must beEqualTo("one")) and (transform(source, file) must beEqualTo("two"))
+    }
+
+    "not check for modifications when told not to" in {
+      val source = new TemplatesSource(TemplatesCacheSettings(4, checkModified = false))
+      val file = writeStylesheet("one", lastModified = 1000000000000L)
+      transform(source, file)
+      rewrite(file, "two", lastModified = 2000000000000L)
+      transform(source, file) must beEqualTo("one")
+    }
+
+    "evict the least recently used stylesheet when over its maximum size" in {
+      val source = new TemplatesSource(TemplatesCacheSettings(1, checkModified = true))
+      val first = writeStylesheet("one").toURI().toURL()
+      val second = writeStylesheet("two").toURI().toURL()
+      val firstTemplates = source.get(first)
+      source.get(second)
+      source.get(first) must not(beTheSameAs(firstTemplates))
+    }
+
+    "resolve relative includes against the stylesheet's URL" in {
+      val included = writeStylesheet("included")
+      val including = File.createTempFile("TemplatesSourceSpec", ".xsl", included.getParentFile())
+      including.deleteOnExit()
+      Files.write(including.toPath(),
+          s"""<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+             |  <xsl:include href="${included.getName()}"/>
+             |</xsl:stylesheet>""".stripMargin.getBytes(StandardCharsets.UTF_8))
+      transform(new TemplatesSource(), including) must beEqualTo("included")
+    }
+
+    "reject an invalid stylesheet, and not cache it" in {
+      val source = new TemplatesSource()
+      val file = File.createTempFile("TemplatesSourceSpec", ".xsl")
+      file.deleteOnExit()
+      Files.write(file.toPath(), "<xsl:stylesheet".getBytes(StandardCharsets.UTF_8))
+      source.get(file.toURI().toURL()) must throwA[TransformerConfigurationException]
+    }
+  }
+}
@@ -12,6 +12,8 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -251,12 +253,12 @@ public class Application extends Controller {
         return imageURI;
     }
 
-    public Result generateLabelsSheetAsPDF(Http.Request request) {
+    public CompletionStage<Result> generateLabelsSheetAsPDF(Http.Request request) {
 
         Form<Label> labelForm = formFactory.form(Label.class).bindFromRequest(request);
         if (labelForm.hasErrors()) {
             // See comment above about not bothering with a nice presentation.
-            return badRequest(labelForm.errorsAsJson());
+            return CompletableFuture.completedFuture(badRequest(labelForm.errorsAsJson()));
         }
 
         Label label = labelForm.get();
@@ -279,13 +281,17 @@ public class Application extends Controller {
 
         String contentDispHeader = String.format("attachment; filename=%s", SHEET_FILENAME);
 
-        byte[] pdfBytes = playFop.processTwirlXml(
+        // A full sheet takes a while to render, so render it on PlayFOP's
+        // rendering pool rather than on a Play request thread.
+        CompletionStage<byte[]> pdfBytes = playFop.processTwirlXmlAsync(
             views.xml.labelsSheet.render(SHEET_SIZE_AND_WHITESPACE_IN_MM, MM, SHEET_ROWS, SHEET_COLS, imageURI, label),
             mimeType,
             processOptions
         );
 
-        return ok(pdfBytes).as(mimeType).withHeader(HeaderNames.CONTENT_DISPOSITION, contentDispHeader);
+        return pdfBytes.thenApply(bytes ->
+            ok(bytes).as(mimeType).withHeader(HeaderNames.CONTENT_DISPOSITION, contentDispHeader)
+        );
     }
 
     public Result showAbout() {
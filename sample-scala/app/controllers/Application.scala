@@ -6,6 +6,8 @@ import java.nio.file.Paths
 
 import scala.collection.JavaConverters.collectionAsScalaIterableConverter
 import scala.collection.immutable.ListMap
+import scala.concurrent.ExecutionContext
+import scala.concurrent.Future
 import scala.util.matching.Regex
 
 import org.apache.fop.apps.FOUserAgent
@@ -33,7 +35,7 @@ import play.api.mvc.ControllerComponents
 import views.util.Calc
 
 class Application @Inject() (config: Configuration, cc: ControllerComponents, val playFop: PlayFop)
-    extends AbstractController(cc) with I18nSupport {
+    (implicit executionContext: ExecutionContext) extends AbstractController(cc) with I18nSupport {
 
   private val AboutPageAddlInfoConfigPath = "about.page.addl.info"
   private val FontFamilyExclusionRegexConfigPath = "font.family.exclusion.regex"
@@ -175,12 +177,12 @@ class Application @Inject() (config: Configuration, cc: ControllerComponents, va
     imagePath.map(thePath => this.getClass().getClassLoader().getResource(thePath).toString())
   }
 
-  def generateLabelsSheetAsPDF() = Action { implicit request =>
+  def generateLabelsSheetAsPDF() = Action.async { implicit request =>
 
     LabelForm.bindFromRequest.fold(
       formWithErrors => {
         // See comment above about not bothering with a nice presentation.
-        BadRequest(formWithErrors.errorsAsJson)
+        Future.successful(BadRequest(formWithErrors.errorsAsJson))
       },
       label => {
 
@@ -192,14 +194,18 @@ class Application @Inject() (config: Configuration, cc: ControllerComponents, va
           foUserAgent.setCreator(SheetPdfCreator)
         }
 
-        val pdfBytes: Array[Byte] = playFop.processTwirlXml(
+        // A full sheet takes a while to render, so render it on PlayFOP's
+        // rendering pool rather than on a Play request thread.
+        val pdfBytes: Future[Array[Byte]] = playFop.processTwirlXmlAsync(
           views.xml.labelsSheet.render(SheetSizeAndWhiteSpaceInMM, mm, SheetRows, SheetCols, imageURI, label),
           mimeType,
           autoDetectFontsForPDF = true,
           foUserAgentBlock = foUserAgentBlock
         )
 
-        Ok(pdfBytes).as(mimeType).withHeaders(CONTENT_DISPOSITION -> s"attachment; filename=$SheetFilename")
+        pdfBytes.map { bytes =>
+          Ok(bytes).as(mimeType).withHeaders(CONTENT_DISPOSITION -> s"attachment; filename=$SheetFilename")
+        }
       }
     )
   }